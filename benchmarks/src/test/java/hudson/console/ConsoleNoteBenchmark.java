@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.console;
+
+import jenkins.benchmark.JenkinsState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding {@link ConsoleNote}s, which happens for every hyperlink written to and rendered from a build log.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConsoleNoteBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class NoteState extends JenkinsState {
+        ConsoleNote<?> note;
+        byte[] encoded;
+        String line;
+
+        @Override
+        protected void setup() throws Exception {
+            // the MAC key lives in Jenkins, hence the state
+            note = new HyperlinkNote("/job/folder/job/downstream/", 10);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            note.encodeTo(out);
+            encoded = out.toByteArray();
+            line = "Triggering a new build of " + note.encode() + "downstream";
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(NoteState state) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        state.note.encodeTo(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public ConsoleNote<?> decode(NoteState state) throws IOException, ClassNotFoundException {
+        return ConsoleNote.readFrom(new DataInputStream(new ByteArrayInputStream(state.encoded)));
+    }
+
+    @Benchmark
+    public String removeNotes(NoteState state) {
+        return ConsoleNote.removeNotes(state.line);
+    }
+}
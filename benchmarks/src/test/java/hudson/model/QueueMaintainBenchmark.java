@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import hudson.slaves.DumbSlave;
+import jenkins.benchmark.JenkinsState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Queue#maintain()} with many buildable items that none of the idle executors can take,
+ * which is the case where every pass has to try every item against every executor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueueMaintainBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class QueueState extends JenkinsState {
+        @Param({"100", "1000"})
+        public int items;
+
+        @Param({"8"})
+        public int agents;
+
+        @Param({"false", "true"})
+        public boolean incremental;
+
+        private boolean wasIncremental;
+        Queue queue;
+
+        @Override
+        protected void setup() throws Exception {
+            wasIncremental = Queue.INCREMENTAL_MAINTENANCE;
+            Queue.INCREMENTAL_MAINTENANCE = incremental;
+            for (int i = 0; i < agents; i++) {
+                DumbSlave agent = j.createOnlineSlave();
+                agent.setLabelString("linux gpu-" + i);
+            }
+            queue = j.jenkins.getQueue();
+            for (int i = 0; i < items; i++) {
+                FreeStyleProject p = j.createFreeStyleProject();
+                // labels that look like the ones of the agents, but that no agent has
+                p.setAssignedLabel(j.jenkins.getLabel("linux && gpu-" + (agents + i % 10)));
+                queue.schedule2(p, 0);
+            }
+            queue.maintain();
+            if (queue.getBuildableItems().size() != items) {
+                throw new IllegalStateException("expected " + items + " buildable items but got " + queue.getBuildableItems());
+            }
+        }
+
+        @Override
+        protected void tearDown() {
+            Queue.INCREMENTAL_MAINTENANCE = wasIncremental;
+        }
+    }
+
+    @Benchmark
+    public void maintain(QueueState state) {
+        state.queue.maintain();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.labels;
+
+import antlr.ANTLRException;
+import hudson.model.Label;
+import jenkins.benchmark.JenkinsState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing label expressions, and evaluating them against the labels of a node.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LabelExpressionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LabelState extends JenkinsState {
+        @Param({"linux", "linux && docker", "(linux || windows) && !arm && jdk8", "docker -> linux <-> !windows"})
+        public String expression;
+
+        Label label;
+        /**
+         * Labels of nodes, some matching and some not.
+         */
+        final List<Set<LabelAtom>> nodes = new ArrayList<>();
+
+        @Override
+        protected void setup() throws Exception {
+            label = Label.parseExpression(expression);
+            String[][] labels = {
+                    {"linux", "docker", "jdk8"},
+                    {"linux", "arm", "jdk8"},
+                    {"windows", "jdk8"},
+                    {"linux", "docker", "jdk8", "jdk11", "highmem", "ssd", "eu-west"},
+                    {},
+            };
+            for (String[] l : labels) {
+                Set<LabelAtom> atoms = new HashSet<>();
+                for (String a : l) {
+                    atoms.add(LabelAtom.get(a));
+                }
+                nodes.add(atoms);
+            }
+        }
+    }
+
+    @Benchmark
+    public Label parse(LabelState state) throws ANTLRException {
+        return Label.parseExpression(state.expression);
+    }
+
+    @Benchmark
+    public int matches(LabelState state) {
+        int r = 0;
+        for (Set<LabelAtom> n : state.nodes) {
+            if (state.label.matches(n)) {
+                r++;
+            }
+        }
+        return r;
+    }
+}
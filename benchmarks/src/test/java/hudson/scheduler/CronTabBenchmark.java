@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.scheduler;
+
+import antlr.ANTLRException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing {@link CronTab}s and computing their next and previous fire times,
+ * as done for every timer trigger every minute.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CronTabBenchmark {
+
+    @Param({"H/15 * * * *", "H H(0-7) * * 1-5", "30 2 * * 0", "0 0 13 * 5"})
+    public String spec;
+
+    private CronTab tab;
+    private Calendar now;
+    private long nowMillis;
+
+    @Setup
+    public void setup() throws ANTLRException {
+        tab = new CronTab(spec, Hash.from("folder/job"));
+        now = new GregorianCalendar(2018, Calendar.JUNE, 12, 13, 37);
+        nowMillis = now.getTimeInMillis();
+    }
+
+    @Benchmark
+    public CronTab parse() throws ANTLRException {
+        return new CronTab(spec, Hash.from("folder/job"));
+    }
+
+    @Benchmark
+    public Calendar ceil() {
+        return tab.ceil((Calendar) now.clone());
+    }
+
+    @Benchmark
+    public Calendar floor() {
+        return tab.floor((Calendar) now.clone());
+    }
+
+    @Benchmark
+    public long nextFireTime() {
+        return tab.nextFireTime(nowMillis);
+    }
+
+    @Benchmark
+    public long previousFireTime() {
+        return tab.previousFireTime(nowMillis);
+    }
+
+    @Benchmark
+    public long[] nextFireTimes() {
+        return tab.nextFireTimes(nowMillis, 10);
+    }
+
+    @Benchmark
+    public boolean check() {
+        return tab.check(now);
+    }
+
+    @Benchmark
+    public Hash hash() {
+        return Hash.from("folder/job");
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Items;
+import hudson.model.Run;
+import hudson.tasks.ArtifactArchiver;
+import hudson.tasks.Shell;
+import jenkins.benchmark.JenkinsState;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unmarshalling {@code config.xml} and {@code build.xml} with {@link XStream2}, which dominates startup and lazy loading of builds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XStream2Benchmark {
+
+    @State(Scope.Benchmark)
+    public static class XmlState extends JenkinsState {
+        String configXml;
+        String buildXml;
+        FreeStyleBuild build;
+
+        @Override
+        protected void setup() throws Exception {
+            FreeStyleProject p = j.createFreeStyleProject();
+            p.setDescription("A job with a few builders and publishers");
+            p.getBuildersList().add(new Shell("echo hello > out.txt"));
+            p.getBuildersList().add(new Shell("echo world >> out.txt"));
+            p.getPublishersList().add(new ArtifactArchiver("*.txt"));
+            p.save();
+            build = j.buildAndAssertSuccess(p);
+            configXml = p.getConfigFile().asString();
+            buildXml = FileUtils.readFileToString(new File(build.getRootDir(), "build.xml"), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public Object unmarshalConfig(XmlState state) {
+        return Items.XSTREAM2.fromXML(state.configXml);
+    }
+
+    @Benchmark
+    public Object unmarshalBuild(XmlState state) {
+        return Run.XSTREAM2.fromXML(state.buildXml);
+    }
+
+    /**
+     * Builds loaded per second, which is what loading a long build history is bound by.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object unmarshalBuildThroughput(XmlState state) {
+        return Run.XSTREAM2.fromXML(state.buildXml);
+    }
+
+    /**
+     * As {@link #unmarshalBuild} when the field mappings have to be looked up again, as for the first build of each kind.
+     */
+    @Benchmark
+    public Object unmarshalBuildUncached(XmlState state) {
+        XStream2.invalidateCaches();
+        return Run.XSTREAM2.fromXML(state.buildXml);
+    }
+
+    @Benchmark
+    public String marshalBuild(XmlState state) {
+        return Run.XSTREAM2.toXML(state.build);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.benchmark;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, typically one from the last release and one from the current tree.
+ *
+ * <p>
+ * A benchmark counts as a regression when it got worse by more than the threshold,
+ * and the difference is larger than the error margins of both runs together,
+ * so that noisy benchmarks do not flap.
+ */
+public final class BaselineComparison {
+    private final double threshold;
+    private final List<Entry> entries = new ArrayList<>();
+
+    private BaselineComparison(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param threshold
+     *      how much worse a benchmark may get, in percent.
+     */
+    public static BaselineComparison compare(File baseline, File current, double threshold) throws IOException {
+        return compare(read(baseline), read(current), threshold);
+    }
+
+    /*package*/ static BaselineComparison compare(JSONArray baseline, JSONArray current, double threshold) {
+        BaselineComparison c = new BaselineComparison(threshold);
+        Map<String,JSONObject> before = index(baseline);
+        for (Map.Entry<String,JSONObject> e : index(current).entrySet()) {
+            c.entries.add(new Entry(e.getKey(), before.get(e.getKey()), e.getValue()));
+        }
+        return c;
+    }
+
+    private static JSONArray read(File f) throws IOException {
+        return JSONArray.fromObject(FileUtils.readFileToString(f, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Keys results by benchmark name and parameters.
+     */
+    private static Map<String,JSONObject> index(JSONArray results) {
+        Map<String,JSONObject> r = new LinkedHashMap<>();
+        for (Object o : results) {
+            JSONObject result = (JSONObject) o;
+            StringBuilder key = new StringBuilder(result.getString("benchmark"));
+            JSONObject params = result.optJSONObject("params");
+            if (params != null && !params.isNullObject()) {
+                // sort, as the order of the parameters is not significant
+                Map<String,String> sorted = new TreeMap<>();
+                for (Object p : params.keySet()) {
+                    sorted.put((String) p, params.getString((String) p));
+                }
+                key.append(sorted);
+            }
+            r.put(key.toString(), result);
+        }
+        return r;
+    }
+
+    /**
+     * Benchmarks that got worse by more than the threshold.
+     */
+    public List<Entry> getRegressions() {
+        List<Entry> r = new ArrayList<>();
+        for (Entry e : entries) {
+            if (e.isRegression(threshold)) {
+                r.add(e);
+            }
+        }
+        return r;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Entry e : entries) {
+            b.append(e.isRegression(threshold) ? "REGRESSION " : "           ").append(e).append('\n');
+        }
+        return b.toString();
+    }
+
+    /**
+     * One benchmark with one set of parameters.
+     */
+    public static final class Entry {
+        private final String name;
+        private final String unit;
+        private final boolean higherIsBetter;
+        private final double current, currentError;
+        /**
+         * {@link Double#NaN} if the benchmark is new.
+         */
+        private final double baseline, baselineError;
+
+        Entry(String name, JSONObject baseline, JSONObject current) {
+            this.name = name;
+            this.higherIsBetter = "thrpt".equals(current.getString("mode"));
+            JSONObject metric = current.getJSONObject("primaryMetric");
+            this.unit = metric.getString("scoreUnit");
+            this.current = metric.getDouble("score");
+            this.currentError = error(metric);
+            if (baseline == null) {
+                this.baseline = this.baselineError = Double.NaN;
+            } else {
+                JSONObject b = baseline.getJSONObject("primaryMetric");
+                this.baseline = b.getDouble("score");
+                this.baselineError = error(b);
+            }
+        }
+
+        private static double error(JSONObject metric) {
+            // NaN when there were too few iterations to compute it
+            Object e = metric.opt("scoreError");
+            return e instanceof Number ? ((Number) e).doubleValue() : 0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * How much worse the benchmark got, in percent; negative for an improvement.
+         */
+        public double getChange() {
+            if (Double.isNaN(baseline) || baseline == 0) {
+                return 0;
+            }
+            double change = (current - baseline) / baseline * 100;
+            return higherIsBetter ? -change : change;
+        }
+
+        boolean isRegression(double threshold) {
+            if (Double.isNaN(baseline)) {
+                return false;
+            }
+            double margin = (Double.isNaN(currentError) ? 0 : currentError) + (Double.isNaN(baselineError) ? 0 : baselineError);
+            return getChange() > threshold && Math.abs(current - baseline) > margin;
+        }
+
+        @Override
+        public String toString() {
+            if (Double.isNaN(baseline)) {
+                return String.format(Locale.ENGLISH, "%s: %.3f %s (new)", name, current, unit);
+            }
+            return String.format(Locale.ENGLISH, "%s: %.3f -> %.3f %s (%+.1f%%)", name, baseline, current, unit, getChange());
+        }
+    }
+}
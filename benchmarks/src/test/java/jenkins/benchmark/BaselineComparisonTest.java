@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.benchmark;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BaselineComparisonTest {
+
+    private static JSONObject result(String benchmark, String mode, double score, double error, String param) {
+        JSONObject metric = new JSONObject()
+                .element("score", score)
+                .element("scoreError", error)
+                .element("scoreUnit", "us/op");
+        JSONObject r = new JSONObject()
+                .element("benchmark", benchmark)
+                .element("mode", mode)
+                .element("primaryMetric", metric);
+        if (param != null) {
+            r.element("params", new JSONObject().element("size", param));
+        }
+        return r;
+    }
+
+    @Test
+    public void regressions() {
+        JSONArray baseline = new JSONArray();
+        baseline.add(result("a.Slower.run", "avgt", 100, 1, null));
+        baseline.add(result("a.Faster.run", "avgt", 100, 1, null));
+        baseline.add(result("a.Noisy.run", "avgt", 100, 30, null));
+        baseline.add(result("a.Throughput.run", "thrpt", 100, 1, null));
+        baseline.add(result("a.Param.run", "avgt", 100, 1, "10"));
+        baseline.add(result("a.Param.run", "avgt", 100, 1, "1000"));
+
+        JSONArray current = new JSONArray();
+        current.add(result("a.Slower.run", "avgt", 150, 1, null));
+        current.add(result("a.Faster.run", "avgt", 50, 1, null));
+        current.add(result("a.Noisy.run", "avgt", 120, 30, null));
+        current.add(result("a.Throughput.run", "thrpt", 50, 1, null));
+        current.add(result("a.Param.run", "avgt", 100, 1, "10"));
+        current.add(result("a.Param.run", "avgt", 200, 1, "1000"));
+        current.add(result("a.New.run", "avgt", 100, 1, null));
+
+        BaselineComparison c = BaselineComparison.compare(baseline, current, 10);
+        assertEquals(7, c.getEntries().size());
+        List<BaselineComparison.Entry> regressions = c.getRegressions();
+        assertEquals(3, regressions.size());
+        assertEquals("a.Slower.run", regressions.get(0).getName());
+        assertEquals(50, regressions.get(0).getChange(), 0.001);
+        assertEquals("a.Throughput.run", regressions.get(1).getName());
+        assertEquals(50, regressions.get(1).getChange(), 0.001);
+        assertEquals("a.Param.run{size=1000}", regressions.get(2).getName());
+        assertEquals(-50, c.getEntries().get(1).getChange(), 0.001);
+        assertTrue(c.toString(), c.toString().contains("a.New.run: 100.000 us/op (new)"));
+    }
+}
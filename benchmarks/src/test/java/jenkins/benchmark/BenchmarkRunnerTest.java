@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the benchmarks when {@code -Dbenchmark=true} is given, and compares them with {@code -Dbenchmark.baseline}.
+ *
+ * <p>
+ * Iterations and forks are taken from the annotations of each benchmark.
+ *
+ * @see BaselineComparison
+ */
+public class BenchmarkRunnerTest {
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        Assume.assumeTrue("run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+
+        File dir = new File(System.getProperty("buildDirectory", "target"));
+        File report = new File(dir, "jmh-report.json");
+        Options options = new OptionsBuilder()
+                .include(System.getProperty("benchmark.include", ".*"))
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result(report.getAbsolutePath())
+                .build();
+        new Runner(options).run();
+
+        String baseline = System.getProperty("benchmark.baseline");
+        if (baseline != null && !baseline.isEmpty()) {
+            double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "10"));
+            BaselineComparison comparison = BaselineComparison.compare(new File(baseline), report, threshold);
+            String text = comparison.toString();
+            FileUtils.writeStringToFile(new File(dir, "jmh-comparison.txt"), text, StandardCharsets.UTF_8);
+            System.out.println(text);
+            assertTrue("Benchmarks regressed by more than " + threshold + "%:\n" + text, comparison.getRegressions().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.benchmark;
+
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Benchmark state that keeps a {@link JenkinsRule} running for the whole trial,
+ * for benchmarks of code that needs a live {@link jenkins.model.Jenkins}.
+ *
+ * <p>
+ * The rule is evaluated as usual on a thread of its own, which just waits for the trial to end,
+ * so that the benchmark threads see the same Jenkins as a test would.
+ * Subclasses prepare what they measure in {@link #setup()}.
+ */
+@State(Scope.Benchmark)
+public abstract class JenkinsState {
+    protected JenkinsRule j;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Throwable failure;
+    private Thread thread;
+
+    @Setup(Level.Trial)
+    public final void startJenkins() throws Throwable {
+        j = new JenkinsRule();
+        j.timeout = 0; // trials can take longer than a test
+        final Statement s = j.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                started.countDown();
+                finished.await();
+            }
+        }, Description.createSuiteDescription(getClass()));
+        thread = new Thread("Jenkins for " + getClass().getName()) {
+            @Override
+            public void run() {
+                try {
+                    s.evaluate();
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    started.countDown();
+                }
+            }
+        };
+        thread.start();
+        started.await();
+        if (failure != null) {
+            throw failure;
+        }
+        setup();
+    }
+
+    @TearDown(Level.Trial)
+    public final void stopJenkins() throws Throwable {
+        try {
+            tearDown();
+        } finally {
+            finished.countDown();
+            thread.join();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Called once Jenkins is up.
+     */
+    protected abstract void setup() throws Exception;
+
+    /**
+     * Called before Jenkins is shut down.
+     */
+    protected void tearDown() throws Exception {
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model.lazy;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in {@link AbstractLazyLoadRunMap}, both with the builds already loaded and right after the cache was purged.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LazyLoadRunMapBenchmark {
+
+    @Param({"1000", "10000"})
+    public int builds;
+
+    private File dir;
+    private RecordMap map;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("lazyload").toFile();
+        for (int n = 1; n <= builds; n++) {
+            // leave gaps, as deleted builds do
+            if (n % 7 == 0) {
+                continue;
+            }
+            File build = new File(dir, Integer.toString(n));
+            FileUtils.writeStringToFile(new File(build, "n"), Integer.toString(n), StandardCharsets.UTF_8);
+        }
+        map = new RecordMap(dir);
+        // load everything once, so that the loaded benchmarks only measure the lookups
+        for (Record r : map.values()) {
+            r.hashCode();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private int randomNumber() {
+        return ThreadLocalRandom.current().nextInt(1, builds + 1);
+    }
+
+    @Benchmark
+    public Record getByNumber() {
+        return map.getByNumber(randomNumber());
+    }
+
+    @Benchmark
+    public Record searchDescending() {
+        return map.search(randomNumber(), AbstractLazyLoadRunMap.Direction.DESC);
+    }
+
+    @Benchmark
+    public Record newestBuild() {
+        return map.newestBuild();
+    }
+
+    /**
+     * Loads one build from the disk, as the first page view of an old build does.
+     */
+    @Benchmark
+    public Record getByNumberCold() {
+        map.purgeCache();
+        return map.getByNumber(randomNumber());
+    }
+
+    static final class Record {
+        final int n;
+
+        Record(int n) {
+            this.n = n;
+        }
+    }
+
+    static final class RecordMap extends AbstractLazyLoadRunMap<Record> {
+        RecordMap(File dir) {
+            super(dir);
+        }
+
+        @Override
+        protected int getNumberOf(Record r) {
+            return r.n;
+        }
+
+        @Override
+        protected Record retrieve(File dir) throws IOException {
+            return new Record(Integer.parseInt(FileUtils.readFileToString(new File(dir, "n"), StandardCharsets.UTF_8).trim()));
+        }
+    }
+}
@@ -49,6 +49,7 @@ import hudson.remoting.VirtualChannel;
 import hudson.remoting.Which;
 import hudson.security.AccessControlled;
 import hudson.util.DaemonThreadFactory;
+import hudson.util.DigestCache;
 import hudson.util.DirScanner;
 import hudson.util.ExceptionCatchingThreadFactory;
 import hudson.util.FileVisitor;
@@ -91,6 +92,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -104,6 +106,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -114,6 +117,7 @@ import jenkins.SoloFilePathFilter;
 import jenkins.model.Jenkins;
 import jenkins.security.MasterToSlaveCallable;
 import jenkins.util.ContextResettingExecutorService;
+import jenkins.util.SystemProperties;
 import jenkins.util.VirtualFile;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
@@ -2173,9 +2177,10 @@ public final class FilePath implements Serializable {
     }
     private class Digest extends SecureFileCallable<String> {
         private static final long serialVersionUID = 1L;
+        private final boolean cached = DigestCache.ENABLED;
         @Override
         public String invoke(File f, VirtualChannel channel) throws IOException {
-            return Util.getDigestOf(reading(f));
+            return cached ? DigestCache.forDirectory(null).digest(reading(f)) : Util.getDigestOf(reading(f));
         }
     }
 
@@ -2409,6 +2414,27 @@ public final class FilePath implements Serializable {
      * @since 1.532
      */
     public int copyRecursiveTo(final DirScanner scanner, final FilePath target, final String description) throws IOException, InterruptedException {
+        return copyRecursiveTo(scanner, target, description, null);
+    }
+
+    /**
+     * Copies files according to a specified scanner to a target node,
+     * over {@link #PARALLEL_COPY_STREAMS} streams when copying between this Jenkins and an agent.
+     * @param scanner a way of enumerating some files (must be serializable for possible delivery to remote side)
+     * @param target the destination basedir
+     * @param description a description of the fileset, for logging purposes
+     * @param listener where to report how long a parallel copy took, if anywhere
+     * @return the number of files copied
+     * @since TODO
+     */
+    public int copyRecursiveTo(final DirScanner scanner, final FilePath target, final String description, @CheckForNull TaskListener listener) throws IOException, InterruptedException {
+        int streams = PARALLEL_COPY_STREAMS;
+        if (streams > 1 && (this.channel == null) != (target.channel == null)) {
+            Integer count = copyRecursiveParallel(scanner, target, description, listener, streams);
+            if (count != null) {
+                return count;
+            }
+        }
         if(this.channel==target.channel) {
             // local to local copy.
             return act(new CopyRecursiveLocal(target, scanner));
@@ -2463,6 +2489,195 @@ public final class FilePath implements Serializable {
             }
         }
     }
+
+    /**
+     * @return null if the files cannot be split between streams, or are too few to bother
+     */
+    private @CheckForNull Integer copyRecursiveParallel(DirScanner scanner, FilePath target, String description, @CheckForNull TaskListener listener, int streams) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        List<CopyEntry> entries = act(new ListForCopy(scanner));
+        if (entries == null || entries.size() < 2) {
+            return null;
+        }
+        long total = 0;
+        long compressedBytes = 0;
+        for (CopyEntry e : entries) {
+            total += e.size;
+            if (e.compressed) {
+                compressedBytes += e.size;
+            }
+        }
+        if (total < PARALLEL_COPY_THRESHOLD) {
+            return null;
+        }
+        streams = Math.min(streams, entries.size());
+
+        // files already compressed get their own streams, in proportion to their size, which are not compressed again
+        int storedStreams = 0;
+        if (compressedBytes > 0) {
+            storedStreams = compressedBytes == total ? streams : (int) Math.max(1, Math.min(streams - 1, Math.round((double) streams * compressedBytes / total)));
+        }
+        List<CopyStream> parts = new ArrayList<>();
+        for (int i = 0; i < streams; i++) {
+            parts.add(new CopyStream(i >= streams - storedStreams));
+        }
+        // largest first, each to the least loaded stream of its kind
+        Collections.sort(entries, new Comparator<CopyEntry>() {
+            @Override public int compare(CopyEntry a, CopyEntry b) {
+                return Long.compare(b.size, a.size);
+            }
+        });
+        for (CopyEntry e : entries) {
+            CopyStream least = null;
+            for (CopyStream p : parts) {
+                if (p.stored == (e.compressed && storedStreams > 0 || storedStreams == streams) && (least == null || p.bytes < least.bytes)) {
+                    least = p;
+                }
+            }
+            least.add(e);
+        }
+
+        List<Future<Void>> readers = new ArrayList<>();
+        List<Future<Integer>> writers = new ArrayList<>();
+        for (CopyStream p : parts) {
+            if (p.files.isEmpty()) {
+                continue;
+            }
+            Pipe pipe = this.channel == null ? Pipe.createLocalToRemote() : Pipe.createRemoteToLocal();
+            readers.add(target.actAsync(new ReadToTar(pipe, description, !p.stored)));
+            writers.add(actAsync(new WriteToTar(new ExplicitlySpecifiedDirScanner(p.files), pipe, p.stored ? 0 : Deflater.BEST_SPEED)));
+        }
+        int count = 0;
+        try {
+            // JENKINS-9540 in case the reading side failed, report that error first
+            for (Future<Void> f : readers) {
+                f.get();
+            }
+            for (Future<Integer> f : writers) {
+                count += f.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<?> f : readers) {
+                f.cancel(true);
+            }
+            for (Future<?> f : writers) {
+                f.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause == null) cause = e;
+            throw cause instanceof IOException
+                    ? (IOException) cause
+                    : new IOException(cause)
+            ;
+        }
+        if (listener != null) {
+            long ms = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            listener.getLogger().println("Copied " + count + " files (" + Functions.humanReadableByteSize(total) + ") in " + ms + " ms over "
+                    + readers.size() + " streams, " + Functions.humanReadableByteSize(total * 1000 / ms) + "/s");
+        }
+        return count;
+    }
+
+    /**
+     * A file to copy, as listed by {@link ListForCopy}.
+     */
+    private static final class CopyEntry implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /**
+         * Relative path in the target.
+         */
+        final String path;
+        /**
+         * Relative path in the source.
+         */
+        final String source;
+        final long size;
+        /**
+         * Whether the file is compressed already, so that compressing it again would only waste time.
+         */
+        final boolean compressed;
+        CopyEntry(String path, String source, long size, boolean compressed) {
+            this.path = path;
+            this.source = source;
+            this.size = size;
+            this.compressed = compressed;
+        }
+    }
+
+    private static final class CopyStream {
+        /**
+         * Whether the stream is not compressed.
+         */
+        final boolean stored;
+        final Map<String, String> files = new LinkedHashMap<>();
+        long bytes;
+        CopyStream(boolean stored) {
+            this.stored = stored;
+        }
+        void add(CopyEntry e) {
+            files.put(e.path, e.source);
+            bytes += e.size + 512; // tar header
+        }
+    }
+
+    private static final Pattern COMPRESSED_FILE = Pattern.compile(
+            ".*\\.(jar|war|ear|hpi|jpi|zip|gz|tgz|bz2|xz|7z|zst|apk|aar|nupkg|whl|png|jpe?g|gif|mp[34]|webm)$", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Lists what a {@link DirScanner} would copy, so that it can be split between streams.
+     * Returns null if some file is outside of the scanned directory, as that could not be expressed with {@link ExplicitlySpecifiedDirScanner}.
+     */
+    private class ListForCopy extends SecureFileCallable<ArrayList<CopyEntry>> {
+        private static final long serialVersionUID = 1L;
+        private final DirScanner scanner;
+        ListForCopy(DirScanner scanner) {
+            this.scanner = scanner;
+        }
+        @Override
+        public ArrayList<CopyEntry> invoke(File base, VirtualChannel channel) throws IOException {
+            final ArrayList<CopyEntry> r = new ArrayList<>();
+            if (!base.exists()) {
+                return r;
+            }
+            final Path root = fileToPath(base.getAbsoluteFile());
+            final boolean[] outside = new boolean[1];
+            scanner.scan(base, reading(new FileVisitor() {
+                @Override
+                public void visit(File f, String relativePath) throws IOException {
+                    add(f, relativePath, f.isFile() ? f.length() : 0);
+                }
+                @Override
+                public boolean understandsSymlink() {
+                    return true;
+                }
+                @Override
+                public void visitSymlink(File link, String target, String relativePath) throws IOException {
+                    add(link, relativePath, 0);
+                }
+                private void add(File f, String relativePath, long size) {
+                    Path p = fileToPath(f.getAbsoluteFile());
+                    if (!p.startsWith(root) || p.equals(root)) {
+                        outside[0] = true;
+                        return;
+                    }
+                    String source = root.relativize(p).toString().replace(File.separatorChar, '/');
+                    r.add(new CopyEntry(relativePath, source, size, COMPRESSED_FILE.matcher(relativePath).matches()));
+                }
+            }));
+            return outside[0] ? null : r;
+        }
+    }
+
+    /**
+     * Like {@link TarCompression#GZIP}, but trading some compression for speed.
+     */
+    private static final class FastGZIPOutputStream extends java.util.zip.GZIPOutputStream {
+        FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(new BufferedOutputStream(out), 65536);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
     private class CopyRecursiveLocal extends SecureFileCallable<Integer> {
         private final FilePath target;
         private final DirScanner scanner;
@@ -2512,15 +2727,20 @@ public final class FilePath implements Serializable {
     private class ReadToTar extends SecureFileCallable<Void> {
         private final Pipe pipe;
         private final String description;
+        private final boolean compressed;
         ReadToTar(Pipe pipe, String description) {
+            this(pipe, description, true);
+        }
+        ReadToTar(Pipe pipe, String description, boolean compressed) {
             this.pipe = pipe;
             this.description = description;
+            this.compressed = compressed;
         }
         private static final long serialVersionUID = 1L;
         @Override
         public Void invoke(File f, VirtualChannel channel) throws IOException {
             try (InputStream in = pipe.getIn()) {
-                readFromTar(remote + '/' + description, f, TarCompression.GZIP.extract(in));
+                readFromTar(remote + '/' + description, f, (compressed ? TarCompression.GZIP : TarCompression.NONE).extract(in));
                 return null;
             }
         }
@@ -2528,14 +2748,33 @@ public final class FilePath implements Serializable {
     private class WriteToTar extends SecureFileCallable<Integer> {
         private final DirScanner scanner;
         private final Pipe pipe;
+        /**
+         * A {@link Deflater} level, or -1 for {@link TarCompression#GZIP}.
+         */
+        private final int level;
         WriteToTar(DirScanner scanner, Pipe pipe) {
+            this(scanner, pipe, -1);
+        }
+        WriteToTar(DirScanner scanner, Pipe pipe, int level) {
             this.scanner = scanner;
             this.pipe = pipe;
+            this.level = level;
         }
         private static final long serialVersionUID = 1L;
         @Override
         public Integer invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
-            return writeToTar(new File(remote), scanner, TarCompression.GZIP.compress(pipe.getOut()));
+            OutputStream out = pipe.getOut();
+            switch (level) {
+            case -1:
+                out = TarCompression.GZIP.compress(out);
+                break;
+            case Deflater.NO_COMPRESSION:
+                out = new BufferedOutputStream(out);
+                break;
+            default:
+                out = new FastGZIPOutputStream(out);
+            }
+            return writeToTar(new File(remote), scanner, out);
         }
     }
     private class CopyRecursiveRemoteToLocal extends SecureFileCallable<Integer> {
@@ -3058,6 +3297,19 @@ public final class FilePath implements Serializable {
 
     public static int SIDE_BUFFER_SIZE = 1024;
 
+    /**
+     * Number of streams over which {@link #copyRecursiveTo(DirScanner, FilePath, String, TaskListener)} copies files between
+     * this Jenkins and an agent; with more than one, the files are spread over that many tar streams, copied concurrently,
+     * which are compressed faster and not at all for files which are already compressed.
+     */
+    @Restricted(NoExternalUse.class)
+    public static /* Script Console modifiable */ int PARALLEL_COPY_STREAMS = SystemProperties.getInteger(FilePath.class.getName() + ".parallelCopyStreams", 1);
+
+    /**
+     * Below this many bytes, a single stream is used whatever {@link #PARALLEL_COPY_STREAMS}.
+     */
+    private static final long PARALLEL_COPY_THRESHOLD = 1024 * 1024;
+
     private static final Logger LOGGER = Logger.getLogger(FilePath.class.getName());
 
     /**
@@ -902,6 +902,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
             } catch (ReactorException e) {
                 throw new IOException("Failed to initialize "+ sn +" plugin",e);
             }
+            XStream2.invalidateCaches();
 
             // recalculate dependencies of plugins optionally depending the newly deployed one.
             for (PluginWrapper depender: plugins) {
@@ -34,20 +34,33 @@ import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import jenkins.util.io.BlockCompressedFile;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.framework.io.ByteBuffer;
+import org.kohsuke.stapler.framework.io.CharSpool;
 import org.kohsuke.stapler.framework.io.LargeText;
+import org.kohsuke.stapler.framework.io.LineEndNormalizingWriter;
+import org.kohsuke.stapler.framework.io.WriterOutputStream;
 
+import javax.annotation.CheckForNull;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
+import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import com.jcraft.jzlib.GZIPInputStream;
 import com.jcraft.jzlib.GZIPOutputStream;
 
@@ -77,14 +90,94 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     private T context;
 
+    /**
+     * Set when reading a {@link BlockCompressedFile}, which {@link LargeText} itself cannot read.
+     */
+    private final @CheckForNull BlockCompressedFile blocks;
+
     public AnnotatedLargeText(File file, Charset charset, boolean completed, T context) {
         super(file, charset, completed, true);
         this.context = context;
+        this.blocks = null;
     }
 
     public AnnotatedLargeText(ByteBuffer memory, Charset charset, boolean completed, T context) {
         super(memory, charset, completed);
         this.context = context;
+        this.blocks = null;
+    }
+
+    /**
+     * Serves a log kept as a {@link BlockCompressedFile}, seeking to the offsets asked for
+     * by decompressing only the blocks they fall in.
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public AnnotatedLargeText(BlockCompressedFile blocks, Charset charset, boolean completed, T context) {
+        super(blocks.getFile(), charset, completed, false);
+        this.context = context;
+        this.blocks = blocks;
+    }
+
+    @Override
+    public long length() {
+        if (blocks == null) {
+            return super.length();
+        }
+        try {
+            return blocks.length();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + blocks.getFile(), e);
+            return 0;
+        }
+    }
+
+    @Override
+    public Reader readAll() throws IOException {
+        if (blocks == null) {
+            return super.readAll();
+        }
+        return new InputStreamReader(blocks.open(0), charset);
+    }
+
+    @Override
+    public void doProgressText(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (blocks == null) {
+            super.doProgressText(req, rsp);
+            return;
+        }
+        // what LargeText does, with the length of the text rather than that of the file
+        setContentType(rsp);
+        rsp.setStatus(HttpServletResponse.SC_OK);
+
+        if (!blocks.exists()) {
+            rsp.addHeader("X-Text-Size", "0");
+            rsp.addHeader("X-More-Data", "true");
+            return;
+        }
+
+        long start = 0;
+        String s = req.getParameter("start");
+        if (s != null)
+            start = Long.parseLong(s);
+
+        if (length() < start)
+            start = 0;  // text rolled over
+
+        CharSpool spool = new CharSpool();
+        long r = writeLogTo(start, spool);
+
+        rsp.addHeader("X-Text-Size", String.valueOf(r));
+        if (!isComplete())
+            rsp.addHeader("X-More-Data", "true");
+
+        Writer w;
+        if (r - start > 4096)
+            w = rsp.getCompressedWriter(req);
+        else
+            w = rsp.getWriter();
+        spool.writeTo(new LineEndNormalizingWriter(w));
+        w.close();
     }
 
     public void doProgressiveHtml(StaplerRequest req, StaplerResponse rsp) throws IOException {
@@ -142,7 +235,12 @@ public class AnnotatedLargeText<T> extends LargeText {
     public long writeLogTo(long start, Writer w) throws IOException {
         if (isHtml())
             return writeHtmlTo(start, w);
-        else
+        else if (blocks != null) {
+            WriterOutputStream out = new WriterOutputStream(w, charset);
+            long r = writeBlocksTo(start, out);
+            out.flush();
+            return r;
+        } else
             return super.writeLogTo(start,w);
     }
 
@@ -152,7 +250,7 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     @Override
     public long writeLogTo(long start, OutputStream out) throws IOException {
-        return super.writeLogTo(start, new PlainTextConsoleOutputStream(out));
+        return writeRaw(start, new PlainTextConsoleOutputStream(out));
     }
 
     /**
@@ -160,13 +258,53 @@ public class AnnotatedLargeText<T> extends LargeText {
      * @since 1.577
      */
     public long writeRawLogTo(long start, OutputStream out) throws IOException {
+        return writeRaw(start, out);
+    }
+
+    private long writeRaw(long start, OutputStream out) throws IOException {
+        if (blocks != null) {
+            return writeBlocksTo(start, out);
+        }
         return super.writeLogTo(start, out);
     }
 
+    /**
+     * Does what {@link LargeText#writeLogTo(long, OutputStream)} does for a {@link BlockCompressedFile}:
+     * writes everything from the given offset if the text is complete, and only the complete lines otherwise.
+     */
+    private long writeBlocksTo(long start, OutputStream out) throws IOException {
+        boolean completed = isComplete();
+        long pos = start;
+        ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        try (InputStream in = blocks.open(start)) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                int end = n;
+                if (!completed) {
+                    while (end > 0 && buf[end - 1] != '\n') {
+                        end--;
+                    }
+                    if (end == 0) {
+                        partial.write(buf, 0, n);
+                        continue;
+                    }
+                    pos += partial.size();
+                    partial.writeTo(out);
+                    partial.reset();
+                    partial.write(buf, end, n - end);
+                }
+                out.write(buf, 0, end);
+                pos += end;
+            }
+        }
+        return pos;
+    }
+
     public long writeHtmlTo(long start, Writer w) throws IOException {
         ConsoleAnnotationOutputStream caw = new ConsoleAnnotationOutputStream(
                 w, createAnnotator(Stapler.getCurrentRequest()), context, charset);
-        long r = super.writeLogTo(start,caw);
+        long r = writeRaw(start,caw);
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Cipher sym = PASSING_ANNOTATOR.encrypt();
@@ -184,4 +322,6 @@ public class AnnotatedLargeText<T> extends LargeText {
      * Used for sending the state of ConsoleAnnotator to the client, because we are deserializing this object later.
      */
     private static final CryptoConfidentialKey PASSING_ANNOTATOR = new CryptoConfidentialKey(AnnotatedLargeText.class,"consoleAnnotator");
+
+    private static final Logger LOGGER = Logger.getLogger(AnnotatedLargeText.class.getName());
 }
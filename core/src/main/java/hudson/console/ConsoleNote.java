@@ -40,9 +40,11 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
 import java.io.Writer;
 import java.util.ArrayList;
@@ -54,6 +56,8 @@ import com.jcraft.jzlib.GZIPOutputStream;
 import hudson.remoting.ClassFilter;
 import jenkins.security.HMACConfidentialKey;
 import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.jenkinsci.remoting.util.AnonymousClassWarnings;
 
 /**
@@ -96,6 +100,7 @@ import org.jenkinsci.remoting.util.AnonymousClassWarnings;
  * {@link ConsoleNote}s are serialized and gzip compressed into a byte sequence and then embedded into the
  * console output text file, with a bit of preamble/postamble to allow tools to ignore them. In this way
  * {@link ConsoleNote} always sticks to a particular point in the console output.
+ * The notes of core itself may instead be written in a compact text form, see {@link #COMPACT}.
  *
  * <p>
  * The preamble and postamble includes a certain ANSI escape sequence designed in such a way to minimize garbage
@@ -132,6 +137,13 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
      */
     static /* nonfinal for tests & script console */ boolean INSECURE = SystemProperties.getBoolean(ConsoleNote.class.getName() + ".INSECURE");
 
+    /**
+     * Writes the notes of core in a compact form rather than as serialized Java objects.
+     * Such notes are always read, but versions of Jenkins from before this form cannot read logs written with it.
+     */
+    @Restricted(NoExternalUse.class)
+    public static /* Script Console modifiable */ boolean COMPACT = SystemProperties.getBoolean(ConsoleNote.class.getName() + ".compact");
+
     /**
      * When the line of a console output that this annotation is attached is read by someone,
      * a new {@link ConsoleNote} is de-serialized and this method is invoked to annotate that line.
@@ -180,6 +192,14 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
     }
 
     private ByteArrayOutputStream encodeToBytes() throws IOException {
+        if (COMPACT && ConsoleNoteCodec.supports(this)) {
+            byte[] payload = ConsoleNoteCodec.payload(this);
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            // else we are in another JVM and cannot sign; result will be ignored unless INSECURE
+            ConsoleNoteCodec.write(payload, Jenkins.getInstanceOrNull() != null ? MAC.mac(payload) : null, buf);
+            return buf;
+        }
+
         ByteArrayOutputStream buf = new ByteArrayOutputStream();
         try (ObjectOutputStream oos = AnonymousClassWarnings.checkingObjectOutputStream(new GZIPOutputStream(buf))) {
             oos.writeObject(this);
@@ -226,7 +246,13 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
             if (!Arrays.equals(preamble,PREAMBLE))
                 return null;    // not a valid preamble
 
-            DataInputStream decoded = new DataInputStream(new UnbufferedBase64InputStream(in));
+            int first = in.readUnsignedByte();
+            if (first == ConsoleNoteCodec.MARKER) {
+                byte[] body = ConsoleNoteCodec.readBody(in);
+                return body == null ? null : ConsoleNoteCodec.decode(body, ConsoleNote::verify);
+            }
+
+            DataInputStream decoded = new DataInputStream(new UnbufferedBase64InputStream(unread(first, in)));
             int macSz = - decoded.readInt();
             byte[] mac;
             int sz;
@@ -246,13 +272,7 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
             if (!Arrays.equals(postamble,POSTAMBLE))
                 return null;    // not a valid postamble
 
-            if (mac == null) {
-                if (!INSECURE) {
-                    throw new IOException("Refusing to deserialize unsigned note from an old log.");
-                }
-            } else if (!MAC.checkMac(buf, mac)) {
-                throw new IOException("MAC mismatch");
-            }
+            verify(buf, mac);
 
             Jenkins jenkins = Jenkins.getInstance();
             try (ObjectInputStream ois = new ObjectInputStreamEx(new GZIPInputStream(new ByteArrayInputStream(buf)),
@@ -267,6 +287,23 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
         }
     }
 
+    private static void verify(byte[] buf, byte[] mac) throws IOException {
+        if (mac == null) {
+            if (!INSECURE) {
+                throw new IOException("Refusing to deserialize unsigned note from an old log.");
+            }
+        } else if (!MAC.checkMac(buf, mac)) {
+            throw new IOException("MAC mismatch");
+        }
+    }
+
+    /**
+     * Puts back the byte read to tell the compact form from the serialized one.
+     */
+    private static InputStream unread(int b, InputStream in) {
+        return new SequenceInputStream(new ByteArrayInputStream(new byte[] {(byte) b}), in);
+    }
+
     /**
      * Skips the encoded console note.
      */
@@ -276,7 +313,13 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
         if (!Arrays.equals(preamble,PREAMBLE))
             return;    // not a valid preamble
 
-        DataInputStream decoded = new DataInputStream(new UnbufferedBase64InputStream(in));
+        int first = in.readUnsignedByte();
+        if (first == ConsoleNoteCodec.MARKER) {
+            ConsoleNoteCodec.readBody(in);
+            return;
+        }
+
+        DataInputStream decoded = new DataInputStream(new UnbufferedBase64InputStream(unread(first, in)));
         int macSz = - decoded.readInt();
         if (macSz > 0) { // new format
             IOUtils.skip(decoded, macSz);
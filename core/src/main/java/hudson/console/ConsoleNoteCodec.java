@@ -0,0 +1,335 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.console;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hudson.tasks._maven.Maven3MojoNote;
+import hudson.tasks._maven.MavenErrorNote;
+import hudson.tasks._maven.MavenMojoNote;
+import hudson.tasks._maven.MavenWarningNote;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact encoding of the {@link ConsoleNote}s of core, used instead of Java serialization.
+ *
+ * <p>
+ * After the usual {@link ConsoleNote#PREAMBLE}, a compact note is {@code ~1}, the Base64 MAC, a {@code :},
+ * a single character identifying the note class, and its fields separated by {@code ;},
+ * followed by the usual {@link ConsoleNote#POSTAMBLE}.
+ * Fields are percent-encoded UTF-8, so the note is plain ASCII without any line separator or escape character:
+ * it survives the line-oriented processing of logs whatever their charset,
+ * and {@link ConsoleNote#removeNotes(String)} still finds its end.
+ * The {@code ~} can never start the Base64 of the serialized form, which is how both forms are told apart.
+ *
+ * <p>
+ * Decoded notes are cached by their encoded form, since a log often repeats the same links many times,
+ * and the same log is rendered again and again. The classes handled here are immutable, so the instances can be shared.
+ */
+final class ConsoleNoteCodec {
+    static final byte MARKER = '~';
+    private static final byte VERSION = '1';
+    private static final byte MAC_END = ':';
+    private static final char SEPARATOR = ';';
+    /**
+     * Sanity limit on the size of a note, so that a missing postamble does not read a whole line of garbage.
+     */
+    private static final int MAX_LENGTH = 1024 * 1024;
+
+    private static final Map<Class<?>, Type<?>> BY_CLASS = new HashMap<>();
+    private static final Map<Character, Type<?>> BY_ID = new HashMap<>();
+
+    private static final Cache<String, ConsoleNote> DECODED = CacheBuilder.newBuilder().maximumSize(1024).build();
+
+    private ConsoleNoteCodec() {}
+
+    /**
+     * How the notes of one class are turned into fields and back.
+     */
+    private static abstract class Type<N extends ConsoleNote> {
+        final char id;
+        final Class<N> type;
+        /**
+         * Number of fields.
+         */
+        final int arity;
+
+        Type(char id, Class<N> type, int arity) {
+            this.id = id;
+            this.type = type;
+            this.arity = arity;
+        }
+
+        abstract String[] fields(N note);
+
+        abstract N create(String[] fields) throws IOException;
+    }
+
+    /**
+     * Notes without any state.
+     */
+    private static final class Stateless<N extends ConsoleNote> extends Type<N> {
+        Stateless(char id, Class<N> type) {
+            super(id, type, 0);
+        }
+
+        @Override String[] fields(N note) {
+            return new String[0];
+        }
+
+        @Override N create(String[] fields) throws IOException {
+            try {
+                return type.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private static void register(Type<?> t) {
+        BY_CLASS.put(t.type, t);
+        BY_ID.put(t.id, t);
+    }
+
+    static {
+        register(new Type<HyperlinkNote>('h', HyperlinkNote.class, 2) {
+            @Override String[] fields(HyperlinkNote note) {
+                return new String[] {note.getUrl(), Integer.toString(note.getLength())};
+            }
+            @Override HyperlinkNote create(String[] fields) throws IOException {
+                return new HyperlinkNote(fields[0], parseInt(fields[1]));
+            }
+        });
+        register(new Type<ModelHyperlinkNote>('m', ModelHyperlinkNote.class, 2) {
+            @Override String[] fields(ModelHyperlinkNote note) {
+                return new String[] {note.getUrl(), Integer.toString(note.getLength())};
+            }
+            @Override ModelHyperlinkNote create(String[] fields) throws IOException {
+                return new ModelHyperlinkNote(fields[0], parseInt(fields[1]));
+            }
+        });
+        register(new Type<ExpandableDetailsNote>('d', ExpandableDetailsNote.class, 2) {
+            @Override String[] fields(ExpandableDetailsNote note) {
+                return new String[] {note.getCaption(), note.getHtml()};
+            }
+            @Override ExpandableDetailsNote create(String[] fields) {
+                return new ExpandableDetailsNote(fields[0], fields[1]);
+            }
+        });
+        register(new Stateless<>('x', HudsonExceptionNote.class));
+        register(new Stateless<>('w', MavenWarningNote.class));
+        register(new Stateless<>('e', MavenErrorNote.class));
+        register(new Stateless<>('M', MavenMojoNote.class));
+        register(new Stateless<>('3', Maven3MojoNote.class));
+    }
+
+    private static int parseInt(String s) throws IOException {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Whether notes of this exact class can be encoded compactly.
+     * Subclasses may have more state, so they are not.
+     */
+    static boolean supports(@Nonnull ConsoleNote note) {
+        return BY_CLASS.containsKey(note.getClass());
+    }
+
+    /**
+     * The text of the note between {@code ~1} and the MAC, which is what gets signed.
+     */
+    @SuppressWarnings("unchecked")
+    static @Nonnull byte[] payload(@Nonnull ConsoleNote note) {
+        Type<ConsoleNote> t = (Type<ConsoleNote>) BY_CLASS.get(note.getClass());
+        StringBuilder b = new StringBuilder().append(t.id);
+        for (String f : t.fields(note)) {
+            b.append(SEPARATOR);
+            escape(f, b);
+        }
+        return b.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes a whole compact note.
+     *
+     * @param mac null when it cannot be signed
+     */
+    static void write(@Nonnull byte[] payload, @CheckForNull byte[] mac, @Nonnull ByteArrayOutputStream out) {
+        out.write(ConsoleNote.PREAMBLE, 0, ConsoleNote.PREAMBLE.length);
+        out.write(MARKER);
+        out.write(VERSION);
+        if (mac != null) {
+            byte[] m = Base64.getEncoder().withoutPadding().encode(mac);
+            out.write(m, 0, m.length);
+        }
+        out.write(MAC_END);
+        out.write(payload, 0, payload.length);
+        out.write(ConsoleNote.POSTAMBLE, 0, ConsoleNote.POSTAMBLE.length);
+    }
+
+    /**
+     * Reads the rest of a compact note, after its {@link #MARKER}, up to and including the postamble.
+     *
+     * @return the note text after the marker, or null if it is malformed
+     */
+    static @CheckForNull byte[] readBody(@Nonnull DataInputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.readUnsignedByte()) != ConsoleNote.POSTAMBLE[0]) {
+            if (buf.size() == MAX_LENGTH) {
+                return null;
+            }
+            buf.write(b);
+        }
+        byte[] postamble = new byte[ConsoleNote.POSTAMBLE.length - 1];
+        in.readFully(postamble);
+        if (!Arrays.equals(postamble, Arrays.copyOfRange(ConsoleNote.POSTAMBLE, 1, ConsoleNote.POSTAMBLE.length))) {
+            return null;
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * Decodes the note read by {@link #readBody}.
+     *
+     * @param verifier checks the MAC of the payload, throwing an exception if it is missing or wrong
+     * @return null if the note is malformed
+     */
+    static @CheckForNull ConsoleNote decode(@Nonnull byte[] body, @Nonnull Verifier verifier) throws IOException {
+        String key = new String(body, StandardCharsets.US_ASCII);
+        ConsoleNote note = DECODED.getIfPresent(key);
+        if (note != null) {
+            return note;
+        }
+        if (body.length == 0 || body[0] != VERSION) {
+            return null;
+        }
+        int sep = key.indexOf(MAC_END);
+        if (sep < 0) {
+            return null;
+        }
+        byte[] mac;
+        try {
+            mac = sep == 1 ? null : Base64.getDecoder().decode(key.substring(1, sep));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        byte[] payload = Arrays.copyOfRange(body, sep + 1, body.length);
+        verifier.verify(payload, mac);
+
+        String text = key.substring(sep + 1);
+        if (text.isEmpty()) {
+            return null;
+        }
+        Type<?> t = BY_ID.get(text.charAt(0));
+        if (t == null) {
+            return null; // from a newer version
+        }
+        List<String> fields = new ArrayList<>();
+        int start = 1;
+        while (start < text.length()) {
+            if (text.charAt(start) != SEPARATOR) {
+                return null;
+            }
+            int end = text.indexOf(SEPARATOR, start + 1);
+            if (end < 0) {
+                end = text.length();
+            }
+            fields.add(unescape(text.substring(start + 1, end)));
+            start = end;
+        }
+        if (fields.size() != t.arity) {
+            return null;
+        }
+        note = t.create(fields.toArray(new String[t.arity]));
+        if (mac != null) {
+            // only signed notes, so that a later change to ConsoleNote.INSECURE is honored
+            DECODED.put(key, note);
+        }
+        return note;
+    }
+
+    interface Verifier {
+        void verify(@Nonnull byte[] payload, @CheckForNull byte[] mac) throws IOException;
+    }
+
+    private static boolean isPlain(int b) {
+        return b >= 0x20 && b < 0x7f && b != '%' && b != SEPARATOR;
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    static void escape(@CheckForNull String s, StringBuilder out) {
+        if (s == null) {
+            return;
+        }
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            if (isPlain(b)) {
+                out.append((char) b);
+            } else {
+                out.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+        }
+    }
+
+    static String unescape(String s) throws IOException {
+        if (s.indexOf('%') < 0) {
+            return s;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= s.length()) {
+                    throw new IOException("Truncated escape in console note");
+                }
+                try {
+                    out.write(Integer.parseInt(s.substring(i + 1, i + 3), 16));
+                } catch (NumberFormatException e) {
+                    throw new IOException(e);
+                }
+                i += 2;
+            } else {
+                out.write(c);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
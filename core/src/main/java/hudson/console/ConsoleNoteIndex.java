@@ -0,0 +1,244 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.console;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Positions of the {@link ConsoleNote}s in a complete log file, so that its plain text,
+ * as {@link PlainTextConsoleOutputStream} would produce it, can be served by copying
+ * the bytes between the notes straight from the file, without decoding every line.
+ *
+ * <p>
+ * The index is built by one pass over the log the first time it is needed,
+ * and kept next to it in {@code <log>.notes} for as long as the log does not change.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ConsoleNoteIndex {
+    private static final int MAGIC = 0x434e4958; // CNIX
+    private static final int VERSION = 1;
+
+    private final long rawLength;
+    /**
+     * Where each note starts in the log, in order.
+     */
+    private final long[] starts;
+    private final int[] lengths;
+    /**
+     * Bytes taken by the notes before each note.
+     */
+    private final long[] removedBefore;
+    private final long plainLength;
+
+    private ConsoleNoteIndex(long rawLength, long[] starts, int[] lengths) {
+        this.rawLength = rawLength;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.removedBefore = new long[starts.length];
+        long removed = 0;
+        for (int i = 0; i < starts.length; i++) {
+            removedBefore[i] = removed;
+            removed += lengths[i];
+        }
+        this.plainLength = rawLength - removed;
+    }
+
+    /**
+     * Length of the log without its notes.
+     */
+    public long getPlainLength() {
+        return plainLength;
+    }
+
+    /**
+     * The parts of the log making up the given range of its plain text.
+     *
+     * @param plainStart offset in the plain text of the first byte, inclusive
+     * @param plainEnd offset in the plain text of the last byte, exclusive
+     * @return the offset in the log and the length of each part, one after the other
+     */
+    public @Nonnull long[] rawSegments(long plainStart, long plainEnd) {
+        plainStart = Math.max(0, plainStart);
+        plainEnd = Math.min(plainLength, plainEnd);
+        if (plainStart >= plainEnd) {
+            return new long[0];
+        }
+        // the first note not entirely before plainStart
+        int lo = 0, hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] - removedBefore[mid] <= plainStart) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int i = lo;
+        long raw = plainStart + (i == 0 ? 0 : removedBefore[i - 1] + lengths[i - 1]);
+        long remaining = plainEnd - plainStart;
+        long[] r = new long[8];
+        int n = 0;
+        while (remaining > 0) {
+            long segmentEnd = i < starts.length ? starts[i] : rawLength;
+            long len = Math.min(remaining, segmentEnd - raw);
+            if (len > 0) {
+                if (n == r.length) {
+                    r = Arrays.copyOf(r, n * 2);
+                }
+                r[n++] = raw;
+                r[n++] = len;
+                remaining -= len;
+            }
+            if (i == starts.length) {
+                break;
+            }
+            raw = starts[i] + lengths[i];
+            i++;
+        }
+        return Arrays.copyOf(r, n);
+    }
+
+    /**
+     * Gets the index of a log that is no longer written to, building it if needed.
+     *
+     * @return null if the log has a malformed note, which only {@link PlainTextConsoleOutputStream} knows how to deal with
+     */
+    public static @CheckForNull ConsoleNoteIndex of(@Nonnull File log) throws IOException {
+        File file = new File(log.getPath() + ".notes");
+        long length = log.length();
+        long lastModified = log.lastModified();
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == length && in.readLong() == lastModified) {
+                    int n = in.readInt();
+                    long[] starts = new long[n];
+                    int[] lengths = new int[n];
+                    for (int i = 0; i < n; i++) {
+                        starts[i] = in.readLong();
+                        lengths[i] = in.readInt();
+                    }
+                    return new ConsoleNoteIndex(length, starts, lengths);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Rebuilding " + file, e);
+            }
+        }
+
+        ConsoleNoteIndex index;
+        try (InputStream in = Files.newInputStream(log.toPath())) {
+            index = build(in);
+        }
+        if (index == null || index.rawLength != length || log.lastModified() != lastModified) {
+            return null; // malformed, or still being written after all
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                out.writeInt(index.starts.length);
+                for (int i = 0; i < index.starts.length; i++) {
+                    out.writeLong(index.starts[i]);
+                    out.writeInt(index.lengths[i]);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not save " + file, e);
+            Files.deleteIfExists(tmp.toPath());
+        }
+        return index;
+    }
+
+    /**
+     * Finds the notes the way {@link PlainTextConsoleOutputStream} does.
+     */
+    static @CheckForNull ConsoleNoteIndex build(@Nonnull InputStream log) throws IOException {
+        Builder b = new Builder();
+        byte[] buf = new byte[8192];
+        int n;
+        try {
+            while ((n = log.read(buf)) >= 0) {
+                b.write(buf, 0, n);
+            }
+            b.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Malformed console note", e);
+            return null;
+        }
+        return new ConsoleNoteIndex(b.offset, Arrays.copyOf(b.starts, b.count), Arrays.copyOf(b.lengths, b.count));
+    }
+
+    private static final class Builder extends LineTransformationOutputStream {
+        private long offset;
+        private long[] starts = new long[16];
+        private int[] lengths = new int[16];
+        private int count;
+
+        @Override
+        protected void eol(byte[] in, int sz) throws IOException {
+            int written = 0;
+            int next = ConsoleNote.findPreamble(in, 0, sz);
+            while (next >= 0) {
+                int rest = sz - next;
+                ByteArrayInputStream b = new ByteArrayInputStream(in, next, rest);
+                ConsoleNote.skip(new DataInputStream(b));
+                int bytesUsed = rest - b.available();
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                }
+                starts[count] = offset + next;
+                lengths[count] = bytesUsed;
+                count++;
+                written = next + bytesUsed;
+                next = ConsoleNote.findPreamble(in, written, sz - written);
+            }
+            offset += sz;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleNoteIndex.class.getName());
+}
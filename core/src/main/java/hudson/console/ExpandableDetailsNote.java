@@ -48,6 +48,14 @@ public class ExpandableDetailsNote extends ConsoleNote {
         this.html = html;
     }
 
+    /*package*/ String getCaption() {
+        return caption;
+    }
+
+    /*package*/ String getHtml() {
+        return html;
+    }
+
     @Override
     public ConsoleAnnotator annotate(Object context, MarkupText text, int charPos) {
         text.addMarkup(charPos,
@@ -53,6 +53,14 @@ public class HyperlinkNote extends ConsoleNote {
         this.length = length;
     }
 
+    /*package*/ String getUrl() {
+        return url;
+    }
+
+    /*package*/ int getLength() {
+        return length;
+    }
+
     @Override
     public ConsoleAnnotator annotate(Object context, MarkupText text, int charPos) {
         String url = this.url;
@@ -84,6 +84,14 @@ public enum InitMilestone implements Milestone {
      */
     EXTENSIONS_AUGMENTED("Augmented all extensions"), // TODO nothing attains() this so when does it actually happen?
 
+    /**
+     * By this milestone, the configuration of all top level items is read from disk,
+     * though the items are not {@linkplain hudson.model.Item#onLoad loaded} yet.
+     * Only meaningful when items are loaded in two phases, see {@link jenkins.model.ParallelItemLoader}.
+     * @since TODO
+     */
+    JOB_CONFIGS_READ("Read all job configurations"),
+
     /**
      * By this milestone, all jobs and their build records are loaded from disk.
      */
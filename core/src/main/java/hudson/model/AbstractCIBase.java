@@ -77,6 +77,10 @@ public abstract class AbstractCIBase extends Node implements ItemGroup<TopLevelI
         l.reset();
     }
 
+    protected void updateLabel(Label l, Node n, boolean present) {
+        l.updateNode(n, present);
+    }
+
     protected void setViewOwner(View v) {
         v.owner = this;
     }
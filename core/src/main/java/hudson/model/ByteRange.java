@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletResponse;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A single range of bytes asked for with an HTTP {@code Range} header.
+ *
+ * @since TODO
+ */
+final class ByteRange {
+    static final ByteRange UNSATISFIABLE = new ByteRange(0, 0);
+
+    /**
+     * Offset of the first byte, inclusive.
+     */
+    final long start;
+    /**
+     * Offset of the last byte, exclusive.
+     */
+    final long end;
+
+    private ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Reads the range asked for by the request.
+     *
+     * @param length length of the content
+     * @return null if the whole content should be sent, which is always a valid response:
+     *      when no range was asked for, when it is not a single byte range,
+     *      or when it is conditional on an {@code If-Range} we do not check.
+     *      {@link #UNSATISFIABLE} if the range is past the end of the content.
+     */
+    static @CheckForNull ByteRange of(StaplerRequest req, long length) {
+        String header = req.getHeader("Range");
+        if (header == null || req.getHeader("If-Range") != null) {
+            return null;
+        }
+        return parse(header, length);
+    }
+
+    static @CheckForNull ByteRange parse(String header, long length) {
+        header = header.trim();
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        try {
+            long start, end;
+            if (first.isEmpty()) {
+                // the last bytes
+                long n = Long.parseLong(last);
+                if (n < 0) {
+                    return null;
+                }
+                start = Math.max(0, length - n);
+                end = n == 0 ? 0 : length;
+            } else {
+                start = Long.parseLong(first);
+                if (start < 0) {
+                    return null;
+                }
+                if (last.isEmpty()) {
+                    end = length;
+                } else {
+                    long lastByte = Long.parseLong(last);
+                    if (lastByte < start) {
+                        return null;
+                    }
+                    end = Math.min(length, lastByte + 1);
+                }
+            }
+            if (start >= end) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the status and headers of a response with this range of the content.
+     */
+    void respond(StaplerResponse rsp, long length) {
+        rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        rsp.setHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+        rsp.setHeader("Content-Length", Long.toString(end - start));
+    }
+
+    static void respondUnsatisfiable(StaplerResponse rsp, long length) throws IOException {
+        rsp.setHeader("Content-Range", "bytes */" + length);
+        rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    /**
+     * Copies part of a file with {@link FileChannel#transferTo}, which spares copying it
+     * through the heap when the platform can.
+     */
+    static void transfer(FileChannel from, long position, long count, OutputStream to) throws IOException {
+        WritableByteChannel target = Channels.newChannel(to);
+        while (count > 0) {
+            long n = from.transferTo(position, count, target);
+            if (n <= 0) {
+                throw new EOFException("File truncated while being sent");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+}
@@ -905,7 +905,8 @@ public /*transient*/ abstract class Computer extends Actionable implements Acces
     }
 
     private void addNewExecutorIfNecessary() {
-        if (Jenkins.getInstanceOrNull() == null) {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j == null) {
             return;
         }
         Set<Integer> availableNumbers  = new HashSet<Integer>();
@@ -915,6 +916,7 @@ public /*transient*/ abstract class Computer extends Actionable implements Acces
         for (Executor executor : executors)
             availableNumbers.remove(executor.getNumber());
 
+        boolean added = false;
         for (Integer number : availableNumbers) {
             /* There may be busy executors with higher index, so only
                fill up until numExecutors is reached.
@@ -923,9 +925,14 @@ public /*transient*/ abstract class Computer extends Actionable implements Acces
             if (executors.size() < numExecutors) {
                 Executor e = new Executor(this, number);
                 executors.add(e);
+                added = true;
             }
         }
 
+        if (added && j.getQueue() != null) {
+            // a new idle executor may be able to take items the queue had already given up on
+            j.getQueue().markDirty();
+        }
     }
 
     /**
@@ -30,6 +30,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -314,13 +315,9 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         if(LOGGER.isLoggable(Level.FINE))
             LOGGER.fine("Serving "+baseFile+" with lastModified=" + lastModified + ", length=" + length);
 
-        InputStream in = baseFile.open();
         if (view) {
             // for binary files, provide the file name for download
             rsp.setHeader("Content-Disposition", "inline; filename=" + baseFile.getName());
-
-            // pseudo file name to let the Stapler set text/plain
-            rsp.serveFile(req, in, lastModified, -1, length, "plain.txt");
         } else {
             String csp = SystemProperties.getString(DirectoryBrowserSupport.class.getName() + ".CSP", DEFAULT_CSP_VALUE);
             if (!csp.trim().equals("")) {
@@ -329,7 +326,53 @@ public final class DirectoryBrowserSupport implements HttpResponse {
                     rsp.setHeader(header, csp);
                 }
             }
-            rsp.serveFile(req, in, lastModified, -1, length, baseFile.getName() );
+        }
+        // pseudo file name to let the Stapler set text/plain
+        String fileName = view ? "plain.txt" : baseFile.getName();
+
+        FileChannel ch = baseFile.openChannel();
+        if (ch != null) {
+            try {
+                serveChannel(req, rsp, ch, lastModified, fileName);
+            } finally {
+                ch.close();
+            }
+            return;
+        }
+        InputStream in = baseFile.open();
+        rsp.serveFile(req, in, lastModified, -1, length, fileName);
+    }
+
+    /**
+     * Sends a local file like {@link StaplerResponse#serveFile} would,
+     * but with {@link FileChannel#transferTo} and honoring a single byte range.
+     */
+    private static void serveChannel(StaplerRequest req, StaplerResponse rsp, FileChannel ch, long lastModified, String fileName) throws IOException {
+        if (req.checkIfModified(lastModified, rsp)) {
+            return;
+        }
+        String mimeType = req.getServletContext().getMimeType(fileName);
+        rsp.setContentType(mimeType != null ? mimeType : "application/octet-stream");
+        rsp.setHeader("Accept-Ranges", "bytes");
+        long length = ch.size();
+        ByteRange range = ByteRange.of(req, length);
+        if (range == ByteRange.UNSATISFIABLE) {
+            ByteRange.respondUnsatisfiable(rsp, length);
+            return;
+        }
+        long start = 0, count = length;
+        if (range != null) {
+            range.respond(rsp, length);
+            start = range.start;
+            count = range.end - range.start;
+        } else {
+            rsp.setHeader("Content-Length", Long.toString(length));
+        }
+        if (req.getMethod().equals("HEAD")) {
+            return;
+        }
+        try (OutputStream os = rsp.getOutputStream()) {
+            ByteRange.transfer(ch, start, count, os);
         }
     }
 
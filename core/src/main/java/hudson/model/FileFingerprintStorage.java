@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import com.google.common.collect.Iterables;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.listeners.SaveableListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The traditional {@link FingerprintStorage}, which keeps each fingerprint in
+ * {@code JENKINS_HOME/fingerprints/xx/yy/zzzz.xml}.
+ *
+ * @since TODO
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class FileFingerprintStorage extends FingerprintStorage {
+
+    /**
+     * Writes the files of {@link #saveAll}, which are independent of each other.
+     */
+    private static final ExecutorService WRITERS;
+
+    static {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(4, 4, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "FileFingerprintStorage writer"));
+        pool.allowCoreThreadTimeOut(true);
+        WRITERS = pool;
+    }
+
+    @Override
+    public void save(@Nonnull Fingerprint fp) throws IOException {
+        File file = Fingerprint.getFingerprintFile(Util.fromHexString(fp.getHashString()));
+        fp.save(file);
+        SaveableListener.fireOnChange(fp, Fingerprint.getConfigFile(file));
+    }
+
+    /**
+     * Writes the files a few at a time, since each is forced to disk separately.
+     */
+    @Override
+    public void saveAll(@Nonnull Collection<Fingerprint> fps) throws IOException {
+        if (fps.size() < 2) {
+            super.saveAll(fps);
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(fps.size());
+        for (Fingerprint fp : fps) {
+            futures.add(WRITERS.submit(() -> {
+                synchronized (fp) {
+                    save(fp);
+                }
+                return null;
+            }));
+        }
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                for (Future<?> f : futures) {
+                    f.cancel(false);
+                }
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while saving fingerprints", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public @CheckForNull Fingerprint load(@Nonnull String id) throws IOException {
+        return Fingerprint.load(Fingerprint.getFingerprintFile(Util.fromHexString(id)));
+    }
+
+    @Override
+    public void delete(@Nonnull String id) throws IOException {
+        File file = Fingerprint.getFingerprintFile(Util.fromHexString(id));
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete " + file);
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return getRootDir().exists();
+    }
+
+    @Override
+    public @Nonnull Iterable<String> getIds() {
+        return listIds(getRootDir());
+    }
+
+    File getRootDir() {
+        return new File(Jenkins.get().getRootDir(), FingerprintCleanupThread.FINGERPRINTS_DIR_NAME);
+    }
+
+    /**
+     * Lists the fingerprints in the given directory tree, reading one leaf directory at a time.
+     */
+    static @Nonnull Iterable<String> listIds(@Nonnull File root) {
+        List<File> dirs = new ArrayList<>();
+        for (File dir1 : listDirs(root)) {
+            dirs.addAll(listDirs(dir1));
+        }
+        return Iterables.concat(Iterables.<File, Iterable<String>>transform(dirs, dir2 -> {
+            File[] files = dir2.listFiles(f -> f.isFile() && FingerprintCleanupThread.FINGERPRINT_FILE_PATTERN.matcher(f.getName()).matches());
+            if (files == null) {
+                return Collections.<String>emptyList();
+            }
+            return Iterables.transform(Arrays.asList(files),
+                    f -> dir2.getParentFile().getName() + dir2.getName() + f.getName().substring(0, 28));
+        }));
+    }
+
+    private static List<File> listDirs(File dir) {
+        File[] dirs = dir.listFiles(f -> f.isDirectory() && f.getName().length() == 2);
+        return dirs == null ? Collections.<File>emptyList() : Arrays.asList(dirs);
+    }
+}
@@ -37,7 +37,6 @@ import hudson.XmlFile;
 import hudson.BulkChange;
 import hudson.Extension;
 import hudson.model.listeners.ItemListener;
-import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
 import hudson.security.ACLContext;
 import hudson.util.AtomicFileWriter;
@@ -46,6 +45,8 @@ import hudson.util.Iterators;
 import hudson.util.PersistedList;
 import hudson.util.RunList;
 import hudson.util.XStream2;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import jenkins.model.FingerprintFacet;
 import jenkins.model.Jenkins;
@@ -57,6 +58,7 @@ import org.kohsuke.stapler.export.ExportedBean;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -877,16 +879,26 @@ public class Fingerprint implements ModelObject, Saveable {
      */
     private transient volatile List<FingerprintFacet> transientFacets = null;
 
+    /**
+     * Numbers the snapshots {@link ShardedFingerprintStorage} takes of this fingerprint, under its monitor,
+     * and the last of them written, under the shard's, so that an older snapshot is never written over a newer one.
+     */
+    /*package*/ transient long snapshotsTaken, snapshotWritten;
+
     public Fingerprint(@CheckForNull Run build, @Nonnull String fileName, @Nonnull byte[] md5sum) throws IOException {
         this(build==null ? null : new BuildPtr(build), fileName, md5sum);
         save();
     }
 
     Fingerprint(@CheckForNull BuildPtr original, @Nonnull String fileName, @Nonnull byte[] md5sum) {
+        this(original, fileName, md5sum, new Date());
+    }
+
+    private Fingerprint(@CheckForNull BuildPtr original, @Nonnull String fileName, @Nonnull byte[] md5sum, @Nonnull Date timestamp) {
         this.original = original;
         this.md5sum = md5sum;
         this.fileName = fileName;
-        this.timestamp = new Date();
+        this.timestamp = timestamp;
     }
 
     /**
@@ -1029,6 +1041,7 @@ public class Fingerprint implements ModelObject, Saveable {
     public synchronized void add(@Nonnull String jobFullName, int n) throws IOException {
         addWithoutSaving(jobFullName, n);
         save();
+        FingerprintUsageIndex.record(jobFullName, n, Collections.singleton(getHashString()));
     }
 
     void addWithoutSaving(@Nonnull String jobFullName, int n) {
@@ -1126,7 +1139,7 @@ public class Fingerprint implements ModelObject, Saveable {
 
         if (modified) {
             if (logger.isLoggable(Level.FINE)) {
-                logger.log(Level.FINE, "Saving trimmed {0}", getFingerprintFile(md5sum));
+                logger.log(Level.FINE, "Saving trimmed {0}", getHashString());
             }
             save();
         }
@@ -1231,7 +1244,7 @@ public class Fingerprint implements ModelObject, Saveable {
     }
 
     /**
-     * Save the settings to a file.
+     * Save the settings to the {@link FingerprintStorage}.
      * @throws IOException Save error
      */
     public synchronized void save() throws IOException {
@@ -1241,12 +1254,10 @@ public class Fingerprint implements ModelObject, Saveable {
         if(logger.isLoggable(Level.FINE))
             start = System.currentTimeMillis();
 
-        File file = getFingerprintFile(md5sum);
-        save(file);
-        SaveableListener.fireOnChange(this, getConfigFile(file));
+        FingerprintStorage.get().save(this);
 
         if(logger.isLoggable(Level.FINE))
-            logger.fine("Saving fingerprint "+file+" took "+(System.currentTimeMillis()-start)+"ms");
+            logger.fine("Saving fingerprint "+getHashString()+" took "+(System.currentTimeMillis()-start)+"ms");
     }
 
     void save(File file) throws IOException {
@@ -1335,27 +1346,33 @@ public class Fingerprint implements ModelObject, Saveable {
     /**
      * The file we save our configuration.
      */
-    private static @Nonnull XmlFile getConfigFile(@Nonnull File file) {
+    /*package*/ static @Nonnull XmlFile getConfigFile(@Nonnull File file) {
         return new XmlFile(XSTREAM,file);
     }
 
     /**
      * Determines the file name from md5sum.
      */
-    private static @Nonnull File getFingerprintFile(@Nonnull byte[] md5sum) {
+    /*package*/ static @Nonnull File getFingerprintFile(@Nonnull byte[] md5sum) {
         assert md5sum.length==16;
         return new File( Jenkins.getInstance().getRootDir(),
             "fingerprints/"+ Util.toHexString(md5sum,0,1)+'/'+Util.toHexString(md5sum,1,1)+'/'+Util.toHexString(md5sum,2,md5sum.length-2)+".xml");
     }
 
     /**
-     * Loads a {@link Fingerprint} from a file in the image.
-     * @return Loaded {@link Fingerprint}. Null if the config file does not exist or
+     * Loads a {@link Fingerprint} from the {@link FingerprintStorage}.
+     * @return Loaded {@link Fingerprint}. Null if there is no such fingerprint, or it is
      * malformed.
      */
     /*package*/ static @CheckForNull Fingerprint load(@Nonnull byte[] md5sum) throws IOException {
-        return load(getFingerprintFile(md5sum));
+        return FingerprintStorage.get().load(Util.toHexString(md5sum));
     }
+
+    /**
+     * Loads a {@link Fingerprint} from a file in the image.
+     * @return Loaded {@link Fingerprint}. Null if the config file does not exist or
+     * malformed.
+     */
     /*package*/ static @CheckForNull Fingerprint load(@Nonnull File file) throws IOException {
         XmlFile configFile = getConfigFile(file);
         if(!configFile.exists())
@@ -1401,6 +1418,81 @@ public class Fingerprint implements ModelObject, Saveable {
             throw e;
         }
     }
+    /**
+     * Writes this fingerprint, except for its hash, in the compact form used by {@link ShardedFingerprintStorage}.
+     * Facets come from plugins, so they are still written as XML.
+     */
+    /*package*/ synchronized void writeTo(@Nonnull DataOutputStream out) throws IOException {
+        out.writeByte(BINARY_VERSION);
+        out.writeLong(timestamp.getTime());
+        out.writeBoolean(original != null);
+        if (original != null) {
+            out.writeUTF(original.getName());
+            out.writeInt(original.getNumber());
+        }
+        out.writeUTF(fileName);
+        out.writeInt(usages.size());
+        for (Map.Entry<String,RangeSet> e : usages.entrySet()) {
+            out.writeUTF(e.getKey());
+            List<Range> ranges = e.getValue().getRanges();
+            out.writeInt(ranges.size());
+            for (Range r : ranges) {
+                out.writeInt(r.start);
+                out.writeInt(r.end);
+            }
+        }
+        List<FingerprintFacet> facets = this.facets.toList();
+        out.writeInt(facets.size());
+        for (FingerprintFacet facet : facets) {
+            byte[] xml = XSTREAM.toXML(facet).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(xml.length);
+            out.write(xml);
+        }
+    }
+
+    /**
+     * Reads a fingerprint written by {@link #writeTo(DataOutputStream)}.
+     */
+    /*package*/ static @Nonnull Fingerprint readFrom(@Nonnull byte[] md5sum, @Nonnull DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != BINARY_VERSION) {
+            throw new IOException("Unsupported fingerprint format version " + version);
+        }
+        Date timestamp = new Date(in.readLong());
+        BuildPtr original = in.readBoolean() ? new BuildPtr(in.readUTF(), in.readInt()) : null;
+        Fingerprint f = new Fingerprint(original, in.readUTF(), md5sum, timestamp);
+        for (int i = in.readInt(); i > 0; i--) {
+            String job = in.readUTF();
+            int n = in.readInt();
+            List<Range> ranges = new ArrayList<Range>(n);
+            for (int j = 0; j < n; j++) {
+                ranges.add(new Range(in.readInt(), in.readInt()));
+            }
+            f.usages.put(job, new RangeSet(ranges));
+        }
+        int n = in.readInt();
+        if (n > 0) {
+            // populate the list before it has an owner, so that this does not save the fingerprint again
+            PersistedList<FingerprintFacet> facets = new PersistedList<FingerprintFacet>(Saveable.NOOP);
+            for (int i = 0; i < n; i++) {
+                byte[] xml = new byte[in.readInt()];
+                in.readFully(xml);
+                try {
+                    Object facet = XSTREAM.fromXML(new String(xml, StandardCharsets.UTF_8));
+                    if (facet instanceof FingerprintFacet) {
+                        ((FingerprintFacet) facet)._setOwner(f);
+                        facets.add((FingerprintFacet) facet);
+                    }
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to load a facet of fingerprint " + Util.toHexString(md5sum), e);
+                }
+            }
+            facets.setOwner(f);
+            f.facets = facets;
+        }
+        return f;
+    }
+
     private static String messageOfParseException(Throwable t) {
         if (t instanceof XmlPullParserException || t instanceof EOFException) {
             return t.getMessage();
@@ -1469,6 +1561,8 @@ public class Fingerprint implements ModelObject, Saveable {
 
     private static final XStream2 XSTREAM = new XStream2();
 
+    private static final int BINARY_VERSION = 1;
+
     /**
      * Provides the XStream instance this class is using for serialization.
      *
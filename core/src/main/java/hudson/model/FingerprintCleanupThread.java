@@ -27,12 +27,15 @@ import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.Functions;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.Symbol;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import javax.annotation.CheckForNull;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -43,6 +46,10 @@ import java.util.regex.Pattern;
  * A {@link Fingerprint} is removed when none of the builds that
  * it point to is available in the records.
  *
+ * <p>
+ * When {@link FingerprintUsageIndex} is enabled, fingerprints are already checked as the builds using them are deleted,
+ * so this only runs every {@link #REPAIR_PERIOD} as a repair, going through at most {@link #REPAIR_RATE} fingerprints a second.
+ *
  * @author Kohsuke Kawaguchi
  */
 @Extension @Symbol("fingerprintCleanup")
@@ -50,14 +57,27 @@ import java.util.regex.Pattern;
 public class FingerprintCleanupThread extends AsyncPeriodicWork {
 
     static final String FINGERPRINTS_DIR_NAME = "fingerprints";
-    private static final Pattern FINGERPRINT_FILE_PATTERN = Pattern.compile("[0-9a-f]{28}\\.xml");
+    static final Pattern FINGERPRINT_FILE_PATTERN = Pattern.compile("[0-9a-f]{28}\\.xml");
+
+    /**
+     * How often to go through all the fingerprints when {@link FingerprintUsageIndex} is enabled, in milliseconds; 0 to never do so.
+     */
+    static final long REPAIR_PERIOD = SystemProperties.getLong(FingerprintCleanupThread.class.getName() + ".repairPeriod", 7 * DAY);
+
+    /**
+     * How many fingerprints to go through each second in a repair; 0 for no limit.
+     */
+    static /* Script Console modifiable */ int REPAIR_RATE = SystemProperties.getInteger(FingerprintCleanupThread.class.getName() + ".repairRate", 100);
+
+    private long pacingStart;
+    private int paced;
 
     public FingerprintCleanupThread() {
         super("Fingerprint cleanup");
     }
 
     public long getRecurrencePeriod() {
-        return DAY;
+        return FingerprintUsageIndex.ENABLED && REPAIR_PERIOD > 0 ? REPAIR_PERIOD : DAY;
     }
 
     public static void invoke() {
@@ -69,16 +89,32 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
     }
 
     public void execute(TaskListener listener) {
+        if (FingerprintUsageIndex.ENABLED && REPAIR_PERIOD <= 0) {
+            listener.getLogger().println("Fingerprints are cleaned up as builds are deleted");
+            return;
+        }
+        pacingStart = System.nanoTime();
+        paced = 0;
+
+        FingerprintStorage storage = getStorage();
+        if (storage != null && !(storage instanceof FileFingerprintStorage)) {
+            execute(storage, listener);
+            return;
+        }
+
         int numFiles = 0;
 
         File root = new File(getRootDir(), FINGERPRINTS_DIR_NAME);
         File[] files1 = root.listFiles(f -> f.isDirectory() && f.getName().length()==2);
         if(files1!=null) {
+            scan:
             for (File file1 : files1) {
                 File[] files2 = file1.listFiles(f -> f.isDirectory() && f.getName().length()==2);
                 for(File file2 : files2) {
                     File[] files3 = file2.listFiles(f -> f.isFile() && FINGERPRINT_FILE_PATTERN.matcher(f.getName()).matches());
                     for(File file3 : files3) {
+                        if(!pace())
+                            break scan; // interrupted
                         if(check(file3, listener))
                             numFiles++;
                     }
@@ -91,6 +127,62 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
         listener.getLogger().println("Cleaned up "+numFiles+" records");
     }
 
+    /**
+     * Cleans up fingerprints kept by a {@link FingerprintStorage} other than the XML files.
+     */
+    private void execute(FingerprintStorage storage, TaskListener listener) {
+        int numFingerprints = 0;
+        try {
+            for (String id : storage.getIds()) {
+                if (!pace()) {
+                    break;
+                }
+                try {
+                    Fingerprint fp = Jenkins.get()._getFingerprint(id);
+                    if (fp == null || !fp.isAlive()) {
+                        listener.getLogger().println("deleting obsolete fingerprint " + id);
+                        storage.delete(id);
+                        numFingerprints++;
+                    } else if (fp.trim()) {
+                        numFingerprints++;
+                    }
+                } catch (IOException e) {
+                    Functions.printStackTrace(e, listener.error("Failed to process fingerprint " + id));
+                }
+            }
+            if (!Thread.currentThread().isInterrupted()) {
+                storage.compact(listener);
+            }
+        } catch (IOException e) {
+            Functions.printStackTrace(e, listener.error("Failed to clean up fingerprints"));
+        }
+
+        listener.getLogger().println("Cleaned up "+numFingerprints+" records");
+    }
+
+    /**
+     * Keeps a repair to {@link #REPAIR_RATE}.
+     *
+     * @return false if interrupted, in which case the scan should stop
+     */
+    private boolean pace() {
+        if (!FingerprintUsageIndex.ENABLED || REPAIR_RATE <= 0 || ++paced < REPAIR_RATE) {
+            return true;
+        }
+        long wait = TimeUnit.SECONDS.toNanos(1) - (System.nanoTime() - pacingStart);
+        try {
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        pacingStart = System.nanoTime();
+        paced = 0;
+        return true;
+    }
+
     /**
      * Deletes a directory if it's empty.
      */
@@ -131,6 +223,13 @@ public class FingerprintCleanupThread extends AsyncPeriodicWork {
         return Jenkins.get()._getFingerprint(fp.getHashString());
     }
 
+    /**
+     * @return null to walk the XML files under {@link #getRootDir()}
+     */
+    protected @CheckForNull FingerprintStorage getStorage() {
+        return Jenkins.getInstanceOrNull() == null ? null : FingerprintStorage.get();
+    }
+
     protected File getRootDir() {
         return Jenkins.get().getRootDir();
     }
@@ -23,13 +23,20 @@
  */
 package hudson.model;
 
+import hudson.BulkChange;
 import hudson.Util;
 import hudson.util.KeyedDataStorage;
 import jenkins.model.Jenkins;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
@@ -50,7 +57,7 @@ public final class FingerprintMap extends KeyedDataStorage<Fingerprint,Fingerpri
      * Returns true if there's some data in the fingerprint database.
      */
     public boolean isReady() {
-        return new File(Jenkins.getInstance().getRootDir(),"fingerprints").exists();
+        return FingerprintStorage.get().isReady();
     }
 
     /**
@@ -72,6 +79,72 @@ public final class FingerprintMap extends KeyedDataStorage<Fingerprint,Fingerpri
         return super.getOrCreate(md5sum, new FingerprintParams(build,fileName));
     }
 
+    /**
+     * Records that a build used a number of files, saving each affected fingerprint once.
+     * Fingerprints which do not exist yet are created without an owner.
+     *
+     * @param md5sums
+     *      MD5 checksums of the files, in hexadecimal, keyed by their path
+     * @return the fingerprints, keyed by path; files with an illegal checksum are left out
+     * @throws IOException loading or saving error
+     * @see #recordAll(Run, Map, Set)
+     * @since TODO
+     */
+    public @Nonnull Map<String,Fingerprint> recordAll(@Nonnull Run build, @Nonnull Map<String,String> md5sums) throws IOException {
+        return recordAll(build, md5sums, Collections.<String>emptySet());
+    }
+
+    /**
+     * Records that a build used a number of files, some of which it produced.
+     *
+     * <p>
+     * This is the equivalent of calling {@link #getOrCreate(Run, String, String)} and {@link Fingerprint#addFor(Run)} for each file,
+     * but the usages are merged in memory first, and the modified fingerprints are then handed to
+     * {@link FingerprintStorage#saveAll} together, so that a build with thousands of files does not save as many times.
+     * They have been saved by the time this returns.
+     *
+     * @param md5sums
+     *      MD5 checksums of the files, in hexadecimal, keyed by their path
+     * @param produced
+     *      paths of the files which the build produced, and so owns if their fingerprints do not exist yet
+     * @return the fingerprints, keyed by path; files with an illegal checksum are left out
+     * @throws IOException loading or saving error
+     * @since TODO
+     */
+    public @Nonnull Map<String,Fingerprint> recordAll(@Nonnull Run build, @Nonnull Map<String,String> md5sums, @Nonnull Set<String> produced) throws IOException {
+        String jobFullName = build.getParent().getFullName();
+        int number = build.getNumber();
+        Map<String,Fingerprint> r = new LinkedHashMap<>();
+        Set<Fingerprint> modified = Collections.newSetFromMap(new IdentityHashMap<Fingerprint,Boolean>());
+        for (Map.Entry<String,String> e : md5sums.entrySet()) {
+            String path = e.getKey();
+            Fingerprint fp = get(e.getValue(), true, new FingerprintParams(produced.contains(path) ? build : null, fileNameOf(path), false));
+            if (fp == null) {
+                continue;
+            }
+            synchronized (fp) { // which Fingerprint.writeTo holds while reading the usages
+                fp.addWithoutSaving(jobFullName, number);
+            }
+            modified.add(fp);
+            r.put(path, fp);
+        }
+        List<String> ids = new ArrayList<>(modified.size());
+        List<Fingerprint> toSave = new ArrayList<>(modified.size());
+        for (Fingerprint fp : modified) {
+            ids.add(fp.getHashString());
+            if (!BulkChange.contains(fp)) { // as Fingerprint.save checks, on this thread
+                toSave.add(fp);
+            }
+        }
+        FingerprintStorage.get().saveAll(toSave);
+        FingerprintUsageIndex.record(jobFullName, number, ids);
+        return r;
+    }
+
+    private static String fileNameOf(String path) {
+        return path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+    }
+
     @Override
     protected Fingerprint get(String md5sum, boolean createIfNotExist, FingerprintParams createParams) throws IOException {
         // sanity check
@@ -90,6 +163,9 @@ public final class FingerprintMap extends KeyedDataStorage<Fingerprint,Fingerpri
     }
 
     protected @Nonnull Fingerprint create(@Nonnull String md5sum, @Nonnull FingerprintParams createParams) throws IOException {
+        if (!createParams.save) {
+            return new Fingerprint(createParams.build == null ? null : new Fingerprint.BuildPtr(createParams.build), createParams.fileName, toByteArray(md5sum));
+        }
         return new Fingerprint(createParams.build, createParams.fileName, toByteArray(md5sum));
     }
 
@@ -103,10 +179,19 @@ static class FingerprintParams {
      */
     final @CheckForNull Run build;
     final String fileName;
+    /**
+     * False if the caller saves the new {@link Fingerprint} itself.
+     */
+    final boolean save;
 
     public FingerprintParams(@CheckForNull Run build, @Nonnull String fileName) {
+        this(build, fileName, true);
+    }
+
+    FingerprintParams(@CheckForNull Run build, @Nonnull String fileName, boolean save) {
         this.build = build;
         this.fileName = fileName;
+        this.save = save;
 
         assert fileName!=null;
     }
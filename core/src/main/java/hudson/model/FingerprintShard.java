@@ -0,0 +1,661 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * One shard of {@link ShardedFingerprintStorage}: records keyed by 16 byte hashes,
+ * appended to a log file and located through a memory-mapped hash table.
+ *
+ * <p>
+ * The log is the source of truth. Each record is the payload length, the key, the payload and a CRC32;
+ * a negative length marks the key as deleted. Writing a record again just appends a newer copy,
+ * and {@link #compact()} later drops the copies that are no longer referenced.
+ *
+ * <p>
+ * The index is an open-addressing table of {@link #SLOT_SIZE} byte slots holding a key and the offset of its latest record.
+ * Its header records whether it was closed cleanly and the length of the log at that point;
+ * otherwise it is rebuilt by scanning the log and checking the CRC of every record.
+ * The index file name carries its capacity, so that growing it never needs to replace a file that is still mapped.
+ *
+ * <p>
+ * Writes are not forced to disk until {@link #close()}, except for those of {@link #putAll}.
+ */
+final class FingerprintShard implements Closeable {
+    static final int KEY_SIZE = 16;
+
+    private static final int LOG_MAGIC = 0x46504c47; // FPLG
+    private static final int INDEX_MAGIC = 0x46504958; // FPIX
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 4 + KEY_SIZE + 4;
+    /**
+     * Sanity limit on the size of a single record, so that a corrupted length does not exhaust the heap.
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    // index header layout
+    private static final int H_MAGIC = 0, H_VERSION = 4, H_CAPACITY = 8, H_USED = 12, H_LIVE = 16, H_CLEAN = 20, H_LOG_LENGTH = 24, H_LIVE_BYTES = 32;
+    private static final int INDEX_HEADER_SIZE = 64;
+    static final int SLOT_SIZE = KEY_SIZE + 8;
+    private static final long EMPTY = 0, DELETED = -1;
+    private static final int MIN_CAPACITY = 1024;
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    private final File dir;
+    private final String name;
+    private final File logFile;
+
+    private FileChannel log;
+    private long logLength;
+
+    private File indexFile;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    /**
+     * Slots holding a key, live or deleted.
+     */
+    private int used;
+    private int live;
+    /**
+     * Total size of the records the index points to; the rest of the log is garbage.
+     */
+    private long liveBytes;
+
+    FingerprintShard(@Nonnull File dir, @Nonnull String name) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.logFile = new File(dir, name + ".log");
+        open();
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(dir.toPath());
+        log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logLength = log.size();
+        if (logLength < LOG_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+            header.putInt(LOG_MAGIC).putInt(VERSION).flip();
+            writeFully(log, header, 0);
+            log.truncate(LOG_HEADER_SIZE);
+            logLength = LOG_HEADER_SIZE;
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+            readFully(log, header, 0);
+            if (header.getInt(0) != LOG_MAGIC || header.getInt(4) != VERSION) {
+                log.close();
+                throw new IOException(logFile + " is not a fingerprint log");
+            }
+        }
+
+        File existing = findIndex();
+        if (existing != null && mapIndex(existing, false)
+                && index.getInt(H_CLEAN) == 1 && index.getLong(H_LOG_LENGTH) == logLength) {
+            used = index.getInt(H_USED);
+            live = index.getInt(H_LIVE);
+            liveBytes = index.getLong(H_LIVE_BYTES);
+        } else {
+            if (existing != null) {
+                LOGGER.log(Level.INFO, "Rebuilding the fingerprint index of {0}", logFile);
+            }
+            rebuildIndex();
+        }
+        index.putInt(H_CLEAN, 0);
+        index.force();
+    }
+
+    /**
+     * Finds the index file with the largest capacity, deleting the others.
+     */
+    private @CheckForNull File findIndex() {
+        File[] files = dir.listFiles((d, n) -> n.startsWith(name + '.') && n.endsWith(".idx"));
+        if (files == null || files.length == 0) {
+            return null;
+        }
+        File best = null;
+        int bestCapacity = -1;
+        for (File f : files) {
+            int c = capacityOf(f);
+            if (c > bestCapacity) {
+                best = f;
+                bestCapacity = c;
+            }
+        }
+        for (File f : files) {
+            if (f != best && !f.delete()) {
+                LOGGER.log(Level.FINE, "Could not delete stale fingerprint index {0}", f);
+            }
+        }
+        return bestCapacity > 0 ? best : null;
+    }
+
+    private int capacityOf(File f) {
+        String n = f.getName();
+        try {
+            return Integer.parseInt(n.substring(name.length() + 1, n.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private File indexFile(int capacity) {
+        return new File(dir, name + '.' + capacity + ".idx");
+    }
+
+    /**
+     * Maps the given index file.
+     *
+     * @param create whether to create a new empty table, or to check the header of an existing one
+     * @return false if an existing file does not look like an index
+     */
+    private boolean mapIndex(File f, boolean create) throws IOException {
+        int c = capacityOf(f);
+        long size = INDEX_HEADER_SIZE + (long) c * SLOT_SIZE;
+        FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (create) {
+            ch.truncate(0);
+        } else if (ch.size() != size) {
+            ch.close();
+            return false;
+        }
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size); // zero filled when created
+        if (create) {
+            buf.putInt(H_MAGIC, INDEX_MAGIC).putInt(H_VERSION, VERSION).putInt(H_CAPACITY, c);
+        } else if (buf.getInt(H_MAGIC) != INDEX_MAGIC || buf.getInt(H_VERSION) != VERSION || buf.getInt(H_CAPACITY) != c) {
+            ch.close();
+            return false;
+        }
+        indexFile = f;
+        indexChannel = ch;
+        index = buf;
+        capacity = c;
+        return true;
+    }
+
+    private void closeIndex() throws IOException {
+        if (indexChannel != null) {
+            indexChannel.close();
+            indexChannel = null;
+            index = null;
+        }
+    }
+
+    /**
+     * Recreates the index from the log, skipping records that fail their CRC
+     * and dropping a torn or corrupted tail of the log.
+     */
+    private void rebuildIndex() throws IOException {
+        // first pass checks the records and counts them to size the table
+        List<long[]> records = new ArrayList<>(); // offset, length
+        long pos = LOG_HEADER_SIZE;
+        long end = pos; // of the last intact record
+        int corrupted = 0;
+        ByteBuffer header = ByteBuffer.allocate(4 + KEY_SIZE);
+        while (pos < logLength) {
+            header.clear();
+            if (!tryRead(log, header, pos)) {
+                break;
+            }
+            int len = header.getInt(0);
+            int size = recordSize(len);
+            if (len > MAX_RECORD_SIZE || len < -1 || pos + size > logLength) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(size);
+            readFully(log, record, pos);
+            if (isIntact(record)) {
+                records.add(new long[] {pos, size});
+                end = pos + size;
+            } else {
+                corrupted++; // so that it cannot hide an older copy of its key
+            }
+            pos += size;
+        }
+        if (corrupted > 0) {
+            LOGGER.log(Level.WARNING, "Skipping {0} corrupted records of {1}", new Object[] {corrupted, logFile});
+        }
+        if (end < logLength) {
+            LOGGER.log(Level.WARNING, "Dropping {0} bytes at the end of {1}", new Object[] {logLength - end, logFile});
+            log.truncate(end);
+            logLength = end;
+        }
+
+        int c = MIN_CAPACITY;
+        while (c < records.size() * 2L) {
+            c *= 2;
+        }
+        resetIndex(c);
+        live = 0;
+        liveBytes = 0;
+        byte[] key = new byte[KEY_SIZE];
+        for (long[] r : records) {
+            header.clear();
+            readFully(log, header, r[0]);
+            header.position(4);
+            header.get(key);
+            apply(key, header.getInt(0) < 0 ? DELETED : r[0], (int) r[1]);
+        }
+        writeHeader();
+    }
+
+    /**
+     * Makes the index an empty table of the given capacity.
+     * A table of a different capacity goes to a new file, since the current one cannot be resized while it is mapped.
+     */
+    private void resetIndex(int c) throws IOException {
+        if (index != null && c == capacity) {
+            for (int p = INDEX_HEADER_SIZE; p < index.capacity(); p += 8) {
+                index.putLong(p, 0);
+            }
+        } else {
+            File old = indexFile;
+            FileChannel oldChannel = indexChannel;
+            indexChannel = null;
+            index = null;
+            mapIndex(indexFile(c), true);
+            if (oldChannel != null) {
+                oldChannel.close();
+                if (!old.delete()) {
+                    LOGGER.log(Level.FINE, "Could not delete stale fingerprint index {0}", old);
+                }
+            }
+        }
+        used = 0;
+    }
+
+    /**
+     * Checks the CRC of a whole record, as written by {@link #encode}.
+     */
+    private static boolean isIntact(ByteBuffer record) {
+        int len = Math.max(record.getInt(0), 0);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, KEY_SIZE + len);
+        return (int) crc.getValue() == record.getInt(4 + KEY_SIZE + len);
+    }
+
+    private static int recordSize(int payloadLength) {
+        return RECORD_OVERHEAD + Math.max(payloadLength, 0);
+    }
+
+    /**
+     * Reads the latest payload recorded for the key.
+     *
+     * @return null if there is none, or it was deleted
+     */
+    synchronized @CheckForNull byte[] get(@Nonnull byte[] key) throws IOException {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        long offset = offsetAt(slot);
+        if (offset == DELETED) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(4 + KEY_SIZE);
+        readFully(log, header, offset);
+        int len = header.getInt(0);
+        if (len < 0 || len > MAX_RECORD_SIZE) {
+            throw new IOException("Corrupted record at " + offset + " in " + logFile);
+        }
+        ByteBuffer body = ByteBuffer.allocate(len + 4);
+        readFully(log, body, offset + 4 + KEY_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(body.array(), 0, len);
+        if ((int) crc.getValue() != body.getInt(len) || !Arrays.equals(key, Arrays.copyOfRange(header.array(), 4, 4 + KEY_SIZE))) {
+            throw new IOException("Corrupted record at " + offset + " in " + logFile);
+        }
+        return Arrays.copyOf(body.array(), len);
+    }
+
+    /**
+     * Records a new payload for the key.
+     */
+    synchronized void put(@Nonnull byte[] key, @Nonnull byte[] payload) throws IOException {
+        long offset = append(key, payload);
+        apply(key, offset, recordSize(payload.length));
+        writeHeader();
+        growIfNeeded();
+    }
+
+    /**
+     * Records new payloads for several keys, appending them to the log in a single write,
+     * and forces them to disk.
+     */
+    synchronized void putAll(@Nonnull List<byte[]> keys, @Nonnull List<byte[]> payloads) throws IOException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        int total = 0;
+        for (byte[] payload : payloads) {
+            total += recordSize(payload.length);
+        }
+        ByteBuffer records = ByteBuffer.allocate(total);
+        for (int i = 0; i < keys.size(); i++) {
+            encode(records, keys.get(i), payloads.get(i));
+        }
+        records.flip();
+        long offset = logLength;
+        logLength = writeFully(log, records, offset);
+        log.force(false);
+        for (int i = 0; i < keys.size(); i++) {
+            int size = recordSize(payloads.get(i).length);
+            apply(keys.get(i), offset, size);
+            offset += size;
+            growIfNeeded();
+        }
+        writeHeader();
+    }
+
+    /**
+     * Marks the key as deleted.
+     *
+     * @return false if there was nothing to delete
+     */
+    synchronized boolean delete(@Nonnull byte[] key) throws IOException {
+        int slot = find(key);
+        if (slot < 0 || offsetAt(slot) == DELETED) {
+            return false;
+        }
+        append(key, null);
+        apply(key, DELETED, 0);
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Lists the keys that are not deleted, in no particular order.
+     */
+    synchronized @Nonnull List<byte[]> keys() {
+        List<byte[]> r = new ArrayList<>(live);
+        for (int slot = 0; slot < capacity; slot++) {
+            long offset = offsetAt(slot);
+            if (offset != EMPTY && offset != DELETED) {
+                r.add(keyAt(slot));
+            }
+        }
+        return r;
+    }
+
+    synchronized int size() {
+        return live;
+    }
+
+    /**
+     * Bytes of the log taken by records that have since been replaced or deleted.
+     */
+    synchronized long getGarbageSize() {
+        return logLength - LOG_HEADER_SIZE - liveBytes;
+    }
+
+    /**
+     * Whether {@link #compact()} would reclaim enough to be worth rewriting the log:
+     * at least {@value #COMPACTION_THRESHOLD} bytes, and more than the live records take.
+     */
+    synchronized boolean needsCompaction() {
+        long garbage = getGarbageSize();
+        return garbage >= COMPACTION_THRESHOLD && garbage > liveBytes;
+    }
+
+    /**
+     * Rewrites the log with only the latest record of each live key, and rebuilds the index for it.
+     */
+    synchronized void compact() throws IOException {
+        File tmp = new File(dir, name + ".log.compact");
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+            header.putInt(LOG_MAGIC).putInt(VERSION).flip();
+            long pos = writeFully(out, header, 0);
+            for (int slot = 0; slot < capacity; slot++) {
+                long offset = offsetAt(slot);
+                if (offset == EMPTY || offset == DELETED) {
+                    continue;
+                }
+                ByteBuffer len = ByteBuffer.allocate(4);
+                readFully(log, len, offset);
+                ByteBuffer record = ByteBuffer.allocate(recordSize(len.getInt(0)));
+                readFully(log, record, offset);
+                record.flip();
+                pos = writeFully(out, record, pos);
+            }
+            out.force(true);
+        }
+        log.close();
+        try {
+            Files.move(tmp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // if the move failed, this is the old log, which the index still describes
+            log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            logLength = log.size();
+        }
+        rebuildIndex();
+    }
+
+    /**
+     * Forces the records written so far to disk.
+     * The index need not be, as it is rebuilt from the log if it was not closed cleanly.
+     */
+    synchronized void force() throws IOException {
+        log.force(false);
+    }
+
+    @Override
+    public String toString() {
+        return logFile.toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (log == null) {
+            return;
+        }
+        log.force(true);
+        writeHeader();
+        index.putInt(H_CLEAN, 1);
+        index.force();
+        closeIndex();
+        log.close();
+        log = null;
+    }
+
+    private long append(byte[] key, @CheckForNull byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(recordSize(payload == null ? -1 : payload.length));
+        encode(record, key, payload);
+        record.flip();
+        long offset = logLength;
+        logLength = writeFully(log, record, offset);
+        return offset;
+    }
+
+    private static void encode(ByteBuffer record, byte[] key, @CheckForNull byte[] payload) {
+        record.putInt(payload == null ? -1 : payload.length).put(key);
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        if (payload != null) {
+            record.put(payload);
+            crc.update(payload);
+        }
+        record.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Points the slot of the key at a new record, or marks it deleted.
+     */
+    private void apply(byte[] key, long offset, int size) throws IOException {
+        int slot = find(key);
+        if (slot < 0) {
+            if (offset == DELETED) {
+                return;
+            }
+            slot = -slot - 1;
+            int p = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+            for (int i = 0; i < KEY_SIZE; i++) {
+                index.put(p + i, key[i]);
+            }
+            used++;
+        } else {
+            long old = offsetAt(slot);
+            if (old != DELETED) {
+                live--;
+                liveBytes -= recordSizeAt(old);
+            }
+        }
+        index.putLong(INDEX_HEADER_SIZE + slot * SLOT_SIZE + KEY_SIZE, offset);
+        if (offset != DELETED) {
+            live++;
+            liveBytes += size;
+        }
+    }
+
+    private int recordSizeAt(long offset) throws IOException {
+        ByteBuffer len = ByteBuffer.allocate(4);
+        readFully(log, len, offset);
+        return recordSize(len.getInt(0));
+    }
+
+    /**
+     * @return the slot of the key, or {@code -(insertion point) - 1} if it is not in the table
+     */
+    private int find(byte[] key) {
+        int mask = capacity - 1;
+        int slot = (int) (ByteBuffer.wrap(key).getLong() & mask);
+        while (true) {
+            int p = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+            if (index.getLong(p + KEY_SIZE) == EMPTY) {
+                return -slot - 1;
+            }
+            if (keyEquals(p, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(int p, byte[] key) {
+        for (int i = 0; i < KEY_SIZE; i++) {
+            if (index.get(p + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long offsetAt(int slot) {
+        return index.getLong(INDEX_HEADER_SIZE + slot * SLOT_SIZE + KEY_SIZE);
+    }
+
+    private byte[] keyAt(int slot) {
+        byte[] key = new byte[KEY_SIZE];
+        int p = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+        for (int i = 0; i < KEY_SIZE; i++) {
+            key[i] = index.get(p + i);
+        }
+        return key;
+    }
+
+    private void writeHeader() {
+        index.putInt(H_USED, used).putInt(H_LIVE, live).putLong(H_LOG_LENGTH, logLength).putLong(H_LIVE_BYTES, liveBytes);
+    }
+
+    /**
+     * Keeps the table at most half full, counting deleted keys, so that probe sequences stay short.
+     */
+    private void growIfNeeded() throws IOException {
+        if (used * 2L <= capacity) {
+            return;
+        }
+        int c = capacity;
+        while (c < live * 4L) { // leaves room to grow; the deleted keys are dropped anyway
+            c *= 2;
+        }
+        List<byte[]> keys = new ArrayList<>(live);
+        long[] offsets = new long[live];
+        for (int slot = 0; slot < capacity; slot++) {
+            long offset = offsetAt(slot);
+            if (offset != EMPTY && offset != DELETED) {
+                offsets[keys.size()] = offset;
+                keys.add(keyAt(slot));
+            }
+        }
+        resetIndex(c);
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            int p = INDEX_HEADER_SIZE + (-find(key) - 1) * SLOT_SIZE;
+            for (int j = 0; j < KEY_SIZE; j++) {
+                index.put(p + j, key[j]);
+            }
+            index.putLong(p + KEY_SIZE, offsets[i]);
+            used++;
+        }
+        writeHeader();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        if (!tryRead(ch, buf, pos)) {
+            throw new EOFException("Unexpected end of file at " + pos);
+        }
+    }
+
+    private static boolean tryRead(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0) {
+                return false;
+            }
+            pos += n;
+        }
+        return true;
+    }
+
+    /**
+     * @return the position after the written bytes
+     */
+    private static long writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+        return pos;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintShard.class.getName());
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Persists {@link Fingerprint}s, which are identified by the hexadecimal form of their MD5 checksum.
+ *
+ * <p>
+ * The first implementation that {@link #isEnabled() is enabled}, in the order of {@link Extension#ordinal()}, is used.
+ * By default that is {@link FileFingerprintStorage}, which keeps one XML file per fingerprint.
+ * {@link FingerprintMap} caches what this loads, so implementations do not need to.
+ *
+ * @since TODO
+ * @see FingerprintCleanupThread
+ */
+public abstract class FingerprintStorage implements ExtensionPoint {
+
+    /**
+     * Saves the fingerprint, replacing any previous state of it.
+     */
+    public abstract void save(@Nonnull Fingerprint fp) throws IOException;
+
+    /**
+     * Saves a number of fingerprints, as {@link FingerprintMap#recordAll} does for all the files of a build.
+     * They must have been written durably by the time this returns.
+     * Implementations may batch or parallelize the writes; by default they are simply {@link #save saved} one after the other.
+     * Other threads may be saving the same fingerprints, as {@link Fingerprint#save} does holding their monitor,
+     * so a state read from a fingerprint must not be written over one saved after it.
+     */
+    public void saveAll(@Nonnull Collection<Fingerprint> fps) throws IOException {
+        for (Fingerprint fp : fps) {
+            synchronized (fp) {
+                save(fp);
+            }
+        }
+    }
+
+    /**
+     * Loads the fingerprint with the given ID.
+     *
+     * @return null if there is no such fingerprint
+     */
+    public abstract @CheckForNull Fingerprint load(@Nonnull String id) throws IOException;
+
+    /**
+     * Deletes the fingerprint with the given ID, if it exists.
+     */
+    public abstract void delete(@Nonnull String id) throws IOException;
+
+    /**
+     * Returns true if there's some data in the fingerprint database.
+     */
+    public abstract boolean isReady();
+
+    /**
+     * Lists the IDs of all the stored fingerprints, for maintenance like {@link FingerprintCleanupThread}.
+     * The list may be computed lazily, and need not reflect changes made while iterating it.
+     */
+    public abstract @Nonnull Iterable<String> getIds() throws IOException;
+
+    /**
+     * Gives the storage a chance to reclaim space, after {@link FingerprintCleanupThread} has deleted obsolete fingerprints.
+     */
+    public void compact(@Nonnull TaskListener listener) throws IOException {
+    }
+
+    /**
+     * Whether this storage should be used.
+     */
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Gets the storage in use.
+     */
+    public static @Nonnull FingerprintStorage get() {
+        for (FingerprintStorage s : ExtensionList.lookup(FingerprintStorage.class)) {
+            if (s.isEnabled()) {
+                return s;
+            }
+        }
+        return ExtensionList.lookupSingleton(FileFingerprintStorage.class);
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers which {@link Fingerprint}s each build was recorded in, so that deleting a build or a job
+ * only checks the fingerprints it used, rather than waiting for {@link FingerprintCleanupThread} to go through all of them.
+ *
+ * <p>
+ * Kept in {@code JENKINS_HOME/fingerprintUsages}, with a directory per job laid out like {@code JENKINS_HOME/jobs}:
+ * the jobs inside a folder are in the {@code jobs} subdirectory of that of the folder, so that a folder is forgotten as a whole.
+ * The directory of a job holds for each build a file named after its number
+ * which lists the 16 byte keys of its fingerprints, appended to as they are recorded.
+ * Fingerprints recorded before this was enabled are only cleaned up by {@link FingerprintCleanupThread}.
+ *
+ * <p>
+ * Opt-in with {@code -Dhudson.model.FingerprintUsageIndex.enabled=true}.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class FingerprintUsageIndex {
+
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(FingerprintUsageIndex.class.getName() + ".enabled");
+
+    /**
+     * How long to wait after a deletion before checking the fingerprints,
+     * since listeners are told about deleted builds and jobs before they are actually gone.
+     */
+    static /* Script Console modifiable */ long DELAY_MILLIS = SystemProperties.getLong(FingerprintUsageIndex.class.getName() + ".delayMillis", 10 * 1000L);
+
+    static final String DIR_NAME = "fingerprintUsages";
+    private static final String JOBS_DIR = "jobs";
+    private static final int KEY_SIZE = 16;
+
+    private static final Object LOCK = new Object();
+
+    /**
+     * IDs of the fingerprints to check once {@link #DELAY_MILLIS} have passed.
+     */
+    private static final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final File root;
+
+    FingerprintUsageIndex(@Nonnull File root) {
+        this.root = root;
+    }
+
+    static @Nonnull FingerprintUsageIndex get() {
+        return new FingerprintUsageIndex(new File(Jenkins.get().getRootDir(), DIR_NAME));
+    }
+
+    /**
+     * Records that a build used some fingerprints, if the index is {@link #ENABLED}.
+     */
+    static void record(@Nonnull String jobFullName, int number, @Nonnull Collection<String> ids) {
+        if (!ENABLED || ids.isEmpty()) {
+            return;
+        }
+        try {
+            get().add(jobFullName, number, ids);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to index the fingerprints of " + jobFullName + " #" + number, e);
+        }
+    }
+
+    void add(@Nonnull String jobFullName, int number, @Nonnull Collection<String> ids) throws IOException {
+        byte[] keys = new byte[ids.size() * KEY_SIZE];
+        int i = 0;
+        for (String id : ids) {
+            System.arraycopy(Util.fromHexString(id), 0, keys, i, KEY_SIZE);
+            i += KEY_SIZE;
+        }
+        synchronized (LOCK) {
+            File dir = dirOf(jobFullName);
+            Files.createDirectories(dir.toPath());
+            try (OutputStream out = new FileOutputStream(new File(dir, Integer.toString(number)), true)) {
+                out.write(keys);
+            }
+        }
+    }
+
+    /**
+     * Forgets a build.
+     *
+     * @return the IDs of the fingerprints it used
+     */
+    @Nonnull Set<String> removeBuild(@Nonnull String jobFullName, int number) throws IOException {
+        Set<String> ids = new TreeSet<>();
+        synchronized (LOCK) {
+            File file = new File(dirOf(jobFullName), Integer.toString(number));
+            readBuild(file, ids);
+            Files.deleteIfExists(file.toPath());
+        }
+        return ids;
+    }
+
+    /**
+     * Forgets a job, as well as all the jobs inside it if it is a folder.
+     *
+     * @return the IDs of the fingerprints their builds used
+     */
+    @Nonnull Set<String> removeJob(@Nonnull String fullName) throws IOException {
+        Set<String> ids = new TreeSet<>();
+        synchronized (LOCK) {
+            File dir = dirOf(fullName);
+            read(dir, ids);
+            Util.deleteRecursive(dir);
+            deleteEmptyParents(dir.getParentFile());
+        }
+        return ids;
+    }
+
+    /**
+     * Moves the builds of a job which was renamed or moved.
+     */
+    void rename(@Nonnull String oldFullName, @Nonnull String newFullName) throws IOException {
+        synchronized (LOCK) {
+            File from = dirOf(oldFullName);
+            if (!from.isDirectory()) {
+                return;
+            }
+            File to = dirOf(newFullName);
+            if (to.exists()) {
+                // not expected, but keep what the job had under either name
+                File[] files = from.listFiles(File::isFile);
+                if (files != null) {
+                    for (File f : files) {
+                        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(to, f.getName()), true))) {
+                            Files.copy(f.toPath(), out);
+                        }
+                    }
+                }
+                Util.deleteRecursive(from);
+            } else {
+                Files.createDirectories(to.getParentFile().toPath());
+                Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            deleteEmptyParents(from.getParentFile());
+        }
+    }
+
+    /**
+     * Gets the directory of a job, inside those of the folders containing it.
+     */
+    private File dirOf(String jobFullName) {
+        File dir = null;
+        for (String name : jobFullName.split("/")) {
+            dir = dir == null ? new File(root, name) : new File(new File(dir, JOBS_DIR), name);
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes the directories of folders left empty once a job was removed from them.
+     */
+    private void deleteEmptyParents(File dir) {
+        while (!dir.equals(root) && dir.delete()) { // which fails unless it is empty
+            dir = dir.getParentFile();
+        }
+    }
+
+    /**
+     * Reads the fingerprints of all the builds of a job, and of the jobs inside it.
+     */
+    private static void read(File dir, Set<String> ids) throws IOException {
+        File[] builds = dir.listFiles(File::isFile);
+        if (builds == null) {
+            return;
+        }
+        for (File build : builds) {
+            readBuild(build, ids);
+        }
+        File[] children = new File(dir, JOBS_DIR).listFiles(File::isDirectory);
+        if (children != null) {
+            for (File child : children) {
+                read(child, ids);
+            }
+        }
+    }
+
+    private static void readBuild(File file, Set<String> ids) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        // a torn last key is ignored
+        for (int i = 0; i + KEY_SIZE <= data.length; i += KEY_SIZE) {
+            ids.add(Util.toHexString(data, i, KEY_SIZE));
+        }
+    }
+
+    /**
+     * Checks the given fingerprints after {@link #DELAY_MILLIS}, deleting those which are no longer used and trimming the others.
+     */
+    static void schedule(@Nonnull Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        pending.addAll(ids);
+        if (scheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(FingerprintUsageIndex::checkPending, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void checkPending() {
+        scheduled.set(false);
+        if (Jenkins.getInstanceOrNull() == null) {
+            return;
+        }
+        FingerprintStorage storage = FingerprintStorage.get();
+        int deleted = 0, trimmed = 0;
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            for (Iterator<String> it = pending.iterator(); it.hasNext(); ) {
+                String id = it.next();
+                it.remove();
+                try {
+                    Fingerprint fp = Jenkins.get()._getFingerprint(id);
+                    if (fp == null) {
+                        continue;
+                    }
+                    if (!fp.isAlive()) {
+                        storage.delete(id);
+                        deleted++;
+                    } else if (fp.trim()) {
+                        trimmed++;
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to clean up fingerprint " + id, e);
+                }
+            }
+            if (deleted > 0) {
+                storage.compact(TaskListener.NULL);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact fingerprints", e);
+        }
+        LOGGER.log(Level.FINE, "Deleted {0} and trimmed {1} fingerprints", new Object[] {deleted, trimmed});
+    }
+
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run> {
+        @Override
+        public void onDeleted(Run r) {
+            if (!ENABLED) {
+                return;
+            }
+            try {
+                schedule(get().removeBuild(r.getParent().getFullName(), r.getNumber()));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to look up the fingerprints of " + r, e);
+            }
+        }
+    }
+
+    @Extension
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (!ENABLED) {
+                return;
+            }
+            try {
+                schedule(get().removeJob(item.getFullName()));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to look up the fingerprints of " + item.getFullName(), e);
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (!ENABLED || !(item instanceof Job)) {
+                return;
+            }
+            try {
+                get().rename(oldFullName, newFullName);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to move the fingerprint index of " + oldFullName + " to " + newFullName, e);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintUsageIndex.class.getName());
+}
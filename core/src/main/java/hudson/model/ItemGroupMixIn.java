@@ -31,6 +31,7 @@ import hudson.util.CopyOnWriteMap;
 import hudson.util.Function1;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
+import jenkins.model.ParallelItemLoader;
 import jenkins.util.xml.XMLUtils;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -47,6 +48,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -108,6 +111,27 @@ public abstract class ItemGroupMixIn {
             }
         });
         CopyOnWriteMap.Tree<K,V> configurations = new CopyOnWriteMap.Tree<K,V>();
+        ParallelItemLoader loader = ParallelItemLoader.current();
+        if (loader != null) {
+            // loading at startup, so load the children along with the rest of the items
+            List<File> dirs = new ArrayList<File>();
+            for (File subdir : subdirs) {
+                if (parent.getItem(subdir.getName()) == null && !Items.getConfigFile(subdir).exists()) {
+                    Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not find file " + Items.getConfigFile(subdir).getFile());
+                    continue;
+                }
+                dirs.add(subdir);
+            }
+            for (Map.Entry<File, Item> e : loader.load(parent, dirs, true).entrySet()) {
+                try {
+                    V item = (V) e.getValue();
+                    configurations.put(key.call(item), item);
+                } catch (Exception x) {
+                    Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not load " + e.getKey(), x);
+                }
+            }
+            return configurations;
+        }
         for (File subdir : subdirs) {
             try {
                 // Try to retain the identity of an existing child object if we can.
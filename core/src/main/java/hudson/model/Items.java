@@ -50,6 +50,7 @@ import java.util.StringTokenizer;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import jenkins.model.DirectlyModifiableTopLevelItemGroup;
+import jenkins.model.ItemConfigSnapshot;
 import jenkins.model.Jenkins;
 import org.acegisecurity.Authentication;
 import org.apache.commons.io.FileUtils;
@@ -368,7 +369,7 @@ public class Items {
      *      The directory that contains the config file, not the config file itself.
      */
     public static Item load(ItemGroup parent, File dir) throws IOException {
-        Item item = (Item)getConfigFile(dir).read();
+        Item item = (Item) ItemConfigSnapshot.read(getConfigFile(dir));
         item.onLoad(parent,dir.getName());
         return item;
     }
@@ -84,12 +84,14 @@ import javax.annotation.Nonnull;
 import javax.servlet.ServletException;
 import jenkins.model.BuildDiscarder;
 import jenkins.model.BuildDiscarderProperty;
+import jenkins.model.ContentAddressedArtifactManager;
 import jenkins.model.DirectlyModifiableTopLevelItemGroup;
 import jenkins.model.Jenkins;
 import jenkins.model.JenkinsLocationConfiguration;
 import jenkins.model.ModelObjectWithChildren;
 import jenkins.model.ProjectNamingStrategy;
 import jenkins.model.RunIdMigrator;
+import jenkins.model.lazy.AbstractLazyLoadRunMap;
 import jenkins.model.lazy.LazyBuildMixIn;
 import jenkins.scm.RunWithSCM;
 import jenkins.security.HexStringConfidentialKey;
@@ -678,6 +680,13 @@ public abstract class Job<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         Util.deleteRecursive(getBuildDir());
     }
 
+    @Override
+    protected void performDelete() throws IOException, InterruptedException {
+        // builds are deleted along with their directory, so release what they keep outside of it first
+        ContentAddressedArtifactManager.deleteAll(getBuildDir());
+        super.performDelete();
+    }
+
     @Restricted(NoExternalUse.class)
     @Extension
     public static class SubItemBuildsLocationImpl extends ItemListener {
@@ -725,8 +734,13 @@ public abstract class Job<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
      */
     @Exported(name="allBuilds",visibility=-2)
     @WithBridgeMethods(List.class)
+    @SuppressWarnings("unchecked")
     public RunList<RunT> getBuilds() {
-        return RunList.<RunT>fromRuns(_getRuns().values());
+        SortedMap<Integer, ? extends RunT> runs = _getRuns();
+        if (runs instanceof AbstractLazyLoadRunMap) {
+            return RunList.fromRunMap((AbstractLazyLoadRunMap<RunT>) runs);
+        }
+        return RunList.<RunT>fromRuns(runs.values());
     }
 
     /**
@@ -38,6 +38,7 @@ import hudson.model.labels.LabelExpression.Paren;
 import hudson.model.labels.LabelExpressionLexer;
 import hudson.model.labels.LabelExpressionParser;
 import hudson.model.labels.LabelOperatorPrecedence;
+import hudson.model.labels.LabelProgram;
 import hudson.model.labels.LabelVisitor;
 import hudson.model.queue.SubTask;
 import hudson.security.ACL;
@@ -56,6 +57,7 @@ import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
+import javax.annotation.Nonnull;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -88,6 +90,7 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
     protected transient final String name;
     private transient volatile Set<Node> nodes;
     private transient volatile Set<Cloud> clouds;
+    private transient volatile LabelProgram program;
     private transient volatile int tiedJobsCount;
 
     @Exported
@@ -176,6 +179,13 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
      * {@link LabelAtom}s.
      */
     public final boolean matches(final Collection<LabelAtom> labels) {
+        LabelProgram p = program;
+        if (p == null) {
+            program = p = LabelProgram.compile(this);
+        }
+        if (p != LabelProgram.UNSUPPORTED) {
+            return p.matches(labels);
+        }
         return matches(new VariableResolver<Boolean>() {
             public Boolean resolve(String name) {
                 for (LabelAtom a : labels)
@@ -462,6 +472,31 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
         tiedJobsCount = -1;
     }
 
+    /**
+     * Updates the cached {@link #getNodes()} after the given node was added, reconfigured or removed,
+     * rather than dropping the cache altogether like {@link #reset()}.
+     *
+     * @param present
+     *      false if the node was removed.
+     */
+    /*package*/ void updateNode(@Nonnull Node node, boolean present) {
+        Set<Node> nodes = this.nodes;
+        if (nodes == null) {
+            return; // will be computed from scratch when needed anyway
+        }
+        boolean matches = present && matches(node);
+        if (matches == nodes.contains(node)) {
+            return;
+        }
+        Set<Node> r = new HashSet<>(nodes);
+        if (matches) {
+            r.add(node);
+        } else {
+            r.remove(node);
+        }
+        this.nodes = Collections.unmodifiableSet(r);
+    }
+
     /**
      * Expose this object to the remote API.
      */
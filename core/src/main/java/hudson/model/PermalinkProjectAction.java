@@ -24,6 +24,7 @@
 package hudson.model;
 
 import jenkins.model.PeepholePermalink;
+import jenkins.model.lazy.BuildIndex;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -119,6 +120,11 @@ public interface PermalinkProjectAction extends Action {
             public boolean apply(Run<?, ?> run) {
                 return !run.isBuilding() && run.getResult()==Result.SUCCESS;
             }
+
+            @Override
+            public Boolean apply(BuildIndex.Entry entry) {
+                return entry.getResult()==Result.SUCCESS;
+            }
         };
         public static final Permalink LAST_SUCCESSFUL_BUILD = new PeepholePermalink() {
             public String getDisplayName() {
@@ -133,6 +139,11 @@ public interface PermalinkProjectAction extends Action {
             public boolean apply(Run<?, ?> run) {
                 return !run.isBuilding() && run.getResult().isBetterOrEqualTo(Result.UNSTABLE);
             }
+
+            @Override
+            public Boolean apply(BuildIndex.Entry entry) {
+                return entry.getResult()!=null && entry.getResult().isBetterOrEqualTo(Result.UNSTABLE);
+            }
         };
         public static final Permalink LAST_FAILED_BUILD = new PeepholePermalink() {
             public String getDisplayName() {
@@ -147,6 +158,11 @@ public interface PermalinkProjectAction extends Action {
             public boolean apply(Run<?, ?> run) {
                 return !run.isBuilding() && run.getResult()==Result.FAILURE;
             }
+
+            @Override
+            public Boolean apply(BuildIndex.Entry entry) {
+                return entry.getResult()==Result.FAILURE;
+            }
         };
 
         public static final Permalink LAST_UNSTABLE_BUILD = new PeepholePermalink() {
@@ -162,6 +178,11 @@ public interface PermalinkProjectAction extends Action {
             public boolean apply(Run<?, ?> run) {
                 return !run.isBuilding() && run.getResult()==Result.UNSTABLE;
             }
+
+            @Override
+            public Boolean apply(BuildIndex.Entry entry) {
+                return entry.getResult()==Result.UNSTABLE;
+            }
         };
 
         public static final Permalink LAST_UNSUCCESSFUL_BUILD = new PeepholePermalink() {
@@ -177,6 +198,11 @@ public interface PermalinkProjectAction extends Action {
             public boolean apply(Run<?, ?> run) {
                 return !run.isBuilding() && run.getResult()!=Result.SUCCESS;
             }
+
+            @Override
+            public Boolean apply(BuildIndex.Entry entry) {
+                return entry.getResult()!=Result.SUCCESS;
+            }
         };
         public static final Permalink LAST_COMPLETED_BUILD = new Permalink() {
             public String getDisplayName() {
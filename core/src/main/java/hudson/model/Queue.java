@@ -44,10 +44,13 @@ import hudson.model.queue.AbstractQueueTask;
 import hudson.model.queue.Executables;
 import hudson.model.queue.QueueListener;
 import hudson.model.queue.QueueTaskFuture;
+import hudson.model.queue.ScheduleRequest;
 import hudson.model.queue.ScheduleResult;
 import hudson.model.queue.ScheduleResult.Created;
 import hudson.model.queue.SubTask;
 import hudson.model.queue.FutureImpl;
+import hudson.model.queue.LabelIndex;
+import hudson.model.queue.QueueJournal;
 import hudson.model.queue.MappingWorksheet;
 import hudson.model.queue.MappingWorksheet.Mapping;
 import hudson.model.queue.QueueSorter;
@@ -65,6 +68,8 @@ import hudson.model.queue.CauseOfBlockage.BecauseNodeIsBusy;
 import hudson.model.queue.WorkUnitContext;
 import hudson.security.ACL;
 import hudson.security.AccessControlled;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
 import java.nio.file.Files;
 
 import hudson.util.Futures;
@@ -91,10 +96,10 @@ import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
@@ -108,6 +113,7 @@ import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import jenkins.model.Jenkins;
 import jenkins.security.QueueItemAuthenticator;
@@ -133,6 +139,8 @@ import javax.annotation.Nonnegative;
 import jenkins.model.queue.AsynchronousExecution;
 import jenkins.model.queue.CompositeCauseOfBlockage;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 
 /**
@@ -207,7 +215,25 @@ public class Queue extends ResourceController implements Saveable {
      */
     private final ItemList<BuildableItem> pendings = new ItemList<BuildableItem>();
 
-    private transient volatile Snapshot snapshot = new Snapshot(waitingList, blockedProjects, buildables, pendings);
+    private transient volatile Snapshot snapshot = new Snapshot(0, waitingList, blockedProjects, buildables, pendings);
+
+    /**
+     * Set when something that shows up in {@link #getItems()} changed without any item moving,
+     * so that the next {@link #updateSnapshot()} bumps {@link Snapshot#version} anyway.
+     */
+    @GuardedBy("lock")
+    private transient boolean snapshotContentChanged;
+
+    /**
+     * Created on first use, see {@link #getJournal()}.
+     */
+    private transient volatile QueueJournal journal;
+
+    /**
+     * Set while {@link #load()} re-enters the persisted items, which are already on the disk.
+     */
+    @GuardedBy("lock")
+    private transient boolean loading;
 
     /**
      * Items that left queue would stay here for a while to enable tracking via {@link Item#getId()}.
@@ -335,6 +361,22 @@ public class Queue extends ResourceController implements Saveable {
 
     private transient final Condition condition = lock.newCondition();
 
+    /**
+     * Incremented whenever something outside of the individual items changes in a way that can affect
+     * the decisions made by {@link #maintain()}, such as executors becoming idle, nodes coming and going,
+     * items leaving the queue, or a {@link QueueTaskDispatcher} asking for a re-evaluation.
+     *
+     * @see #INCREMENTAL_MAINTENANCE
+     * @see #markDirty()
+     */
+    private transient final AtomicLong maintenanceEpoch = new AtomicLong(1);
+
+    /**
+     * When did {@link #maintain()} last look at every item regardless of {@link #maintenanceEpoch}?
+     */
+    @GuardedBy("lock")
+    private transient long lastFullMaintenance;
+
     public Queue(@Nonnull LoadBalancer loadBalancer) {
         this.loadBalancer =  loadBalancer.sanitize();
         // if all the executors are busy doing something, then the queue won't be maintained in
@@ -373,6 +415,12 @@ public class Queue extends ResourceController implements Saveable {
     public void load() {
         lock.lock();
         try { try {
+            loading = true;
+            QueueJournal journal = this.journal;
+            if (journal != null) {
+                // if we are reloading, whatever happened since the last flush needs to be on the disk
+                journal.flush();
+            }
             // Clear items, for the benefit of reloading.
             waitingList.clear();
             blockedProjects.clear();
@@ -393,24 +441,34 @@ public class Queue extends ResourceController implements Saveable {
                 queueFile.delete();
             } else {
                 queueFile = getXMLQueueFile();
-                if (queueFile.exists()) {
-                    Object unmarshaledObj = new XmlFile(XSTREAM, queueFile).read();
-                    List items;
-
-                    if (unmarshaledObj instanceof State) {
-                        State state = (State) unmarshaledObj;
-                        items = state.items;
-                        WaitingItem.COUNTER.set(state.counter);
-                    } else {
-                        // backward compatibility - it's an old List queue.xml
-                        items = (List) unmarshaledObj;
-                        long maxId = 0;
-                        for (Object o : items) {
-                            if (o instanceof Item) {
-                                maxId = Math.max(maxId, ((Item)o).id);
+                File journalFile = getQueueJournalFile();
+                if (queueFile.exists() || journalFile.exists()) {
+                    List items = new ArrayList();
+
+                    if (queueFile.exists()) {
+                        Object unmarshaledObj = new XmlFile(XSTREAM, queueFile).read();
+                        if (unmarshaledObj instanceof State) {
+                            State state = (State) unmarshaledObj;
+                            items = state.items;
+                            WaitingItem.COUNTER.set(state.counter);
+                        } else {
+                            // backward compatibility - it's an old List queue.xml
+                            items = (List) unmarshaledObj;
+                            long maxId = 0;
+                            for (Object o : items) {
+                                if (o instanceof Item) {
+                                    maxId = Math.max(maxId, ((Item)o).id);
+                                }
                             }
+                            WaitingItem.COUNTER.set(maxId);
                         }
-                        WaitingItem.COUNTER.set(maxId);
+                    }
+
+                    if (journalFile.exists()) {
+                        // whatever entered or left the queue since queue.xml was written
+                        items = new ArrayList(items);
+                        long maxId = QueueJournal.replay(journalFile, items);
+                        WaitingItem.COUNTER.set(Math.max(WaitingItem.COUNTER.get(), maxId));
                     }
 
                     for (Object o : items) {
@@ -443,13 +501,23 @@ public class Queue extends ResourceController implements Saveable {
                     // when it happens again, save the old queue file for introspection.
                     File bk = new File(queueFile.getPath() + ".bak");
                     bk.delete();
-                    queueFile.renameTo(bk);
-                    queueFile.delete();
+                    if (Saver.JOURNAL) {
+                        // queue.xml and the journal still describe the queue, so keep adding to them
+                        if (queueFile.exists()) {
+                            Files.copy(queueFile.toPath(), bk.toPath());
+                        }
+                    } else {
+                        queueFile.renameTo(bk);
+                        queueFile.delete();
+                        File journalBk = new File(journalFile.getPath() + ".bak");
+                        journalBk.delete();
+                        journalFile.renameTo(journalBk);
+                    }
                 }
             }
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Failed to load the queue file " + getXMLQueueFile(), e);
-        } finally { updateSnapshot(); } } finally {
+        } finally { loading = false; updateSnapshot(); } } finally {
             lock.unlock();
         }
     }
@@ -478,6 +546,11 @@ public class Queue extends ResourceController implements Saveable {
 
             try {
                 queueFile.write(state);
+                QueueJournal journal = this.journal;
+                if (journal != null) {
+                    // everything up to now is in queue.xml
+                    journal.reset();
+                }
             } catch (IOException e) {
                 LOGGER.log(Level.WARNING, "Failed to write out the queue file " + getXMLQueueFile(), e);
             }
@@ -514,6 +587,26 @@ public class Queue extends ResourceController implements Saveable {
         return new File(Jenkins.get().getRootDir(), "queue.xml");
     }
 
+    /*package*/ File getQueueJournalFile() {
+        return new File(Jenkins.get().getRootDir(), "queue.journal");
+    }
+
+    /**
+     * Journal of the changes since the last {@link #save()}, used when {@link Saver#JOURNAL} is on.
+     */
+    /*package*/ @Nonnull QueueJournal getJournal() {
+        QueueJournal j = journal;
+        if (j == null) {
+            synchronized (this) {
+                j = journal;
+                if (j == null) {
+                    journal = j = new QueueJournal(getQueueJournalFile());
+                }
+            }
+        }
+        return j;
+    }
+
     /**
      * @deprecated as of 1.311
      *      Use {@link #schedule(AbstractProject)}
@@ -586,10 +679,6 @@ public class Queue extends ResourceController implements Saveable {
 
         lock.lock();
         try { try {
-            for (QueueDecisionHandler h : QueueDecisionHandler.all())
-                if (!h.shouldSchedule(p, actions))
-                    return ScheduleResult.refused();    // veto
-
             return scheduleInternal(p, quietPeriod, actions);
         } finally { updateSnapshot(); } } finally {
             lock.unlock();
@@ -597,7 +686,34 @@ public class Queue extends ResourceController implements Saveable {
     }
 
     /**
-     * Schedules an execution of a task.
+     * Schedules executions of many tasks at once.
+     *
+     * <p>
+     * This behaves like calling {@link #schedule2(Task, int, List)} for each request in turn,
+     * except that the {@link Queue} lock is acquired only once and the snapshot used by readers
+     * is updated only once, which is considerably cheaper when triggering many downstream jobs.
+     *
+     * @return
+     *      results in the same order as the requests.
+     * @since TODO
+     */
+    public @Nonnull List<ScheduleResult> scheduleAll(@Nonnull Collection<ScheduleRequest> requests) {
+        List<ScheduleResult> results = new ArrayList<>(requests.size());
+        lock.lock();
+        try { try {
+            for (ScheduleRequest r : requests) {
+                // QueueDecisionHandler is allowed to mutate the list
+                results.add(scheduleInternal(r.getTask(), r.getQuietPeriod(), new ArrayList<>(r.getActions())));
+            }
+            return results;
+        } finally { updateSnapshot(); } } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Schedules an execution of a task, unless a {@link QueueDecisionHandler} vetoes it.
+     * The caller must hold the {@link Queue} lock and update the snapshot afterwards.
      *
      * @since 1.311
      * @return
@@ -609,71 +725,73 @@ public class Queue extends ResourceController implements Saveable {
      *
      *      That said, one can still look at {@link WaitingItem#future}, {@link WaitingItem#getId()}, etc.
      */
+    @GuardedBy("lock")
     private @Nonnull ScheduleResult scheduleInternal(Task p, int quietPeriod, List<Action> actions) {
-        lock.lock();
-        try { try {
-            Calendar due = new GregorianCalendar();
-            due.add(Calendar.SECOND, quietPeriod);
-
-            // Do we already have this task in the queue? Because if so, we won't schedule a new one.
-            List<Item> duplicatesInQueue = new ArrayList<Item>();
-            for (Item item : liveGetItems(p)) {
-                boolean shouldScheduleItem = false;
-                for (QueueAction action : item.getActions(QueueAction.class)) {
-                    shouldScheduleItem |= action.shouldSchedule(actions);
-                }
-                for (QueueAction action : Util.filter(actions, QueueAction.class)) {
-                    shouldScheduleItem |= action.shouldSchedule((new ArrayList<Action>(item.getAllActions())));
-                }
-                if (!shouldScheduleItem) {
-                    duplicatesInQueue.add(item);
-                }
+        for (QueueDecisionHandler h : QueueDecisionHandler.all())
+            if (!h.shouldSchedule(p, actions))
+                return ScheduleResult.refused();    // veto
+
+        Calendar due = new GregorianCalendar();
+        due.add(Calendar.SECOND, quietPeriod);
+
+        // Do we already have this task in the queue? Because if so, we won't schedule a new one.
+        List<Item> duplicatesInQueue = new ArrayList<Item>();
+        for (Item item : liveGetItems(p)) {
+            boolean shouldScheduleItem = false;
+            for (QueueAction action : item.getActions(QueueAction.class)) {
+                shouldScheduleItem |= action.shouldSchedule(actions);
             }
-            if (duplicatesInQueue.isEmpty()) {
-                LOGGER.log(Level.FINE, "{0} added to queue", p);
-
-                // put the item in the queue
-                WaitingItem added = new WaitingItem(due, p, actions);
-                added.enter(this);
-                scheduleMaintenance();   // let an executor know that a new item is in the queue.
-                return ScheduleResult.created(added);
+            for (QueueAction action : Util.filter(actions, QueueAction.class)) {
+                shouldScheduleItem |= action.shouldSchedule((new ArrayList<Action>(item.getAllActions())));
+            }
+            if (!shouldScheduleItem) {
+                duplicatesInQueue.add(item);
             }
+        }
+        if (duplicatesInQueue.isEmpty()) {
+            LOGGER.log(Level.FINE, "{0} added to queue", p);
 
-            LOGGER.log(Level.FINE, "{0} is already in the queue", p);
+            // put the item in the queue
+            WaitingItem added = new WaitingItem(due, p, actions);
+            added.enter(this);
+            // let an executor know that a new item is in the queue.
+            // waiting items are always looked at, so there is no need to invalidate the rest of the queue.
+            maintainerThread.submit();
+            return ScheduleResult.created(added);
+        }
 
-            // but let the actions affect the existing stuff.
-            for (Item item : duplicatesInQueue) {
-                for (FoldableAction a : Util.filter(actions, FoldableAction.class)) {
-                    a.foldIntoExisting(item, p, actions);
-                    if (LOGGER.isLoggable(Level.FINE)) {
-                        LOGGER.log(Level.FINE, "after folding {0}, {1} includes {2}", new Object[] {a, item, item.getAllActions()});
-                    }
+        LOGGER.log(Level.FINE, "{0} is already in the queue", p);
+
+        // but let the actions affect the existing stuff.
+        for (Item item : duplicatesInQueue) {
+            for (FoldableAction a : Util.filter(actions, FoldableAction.class)) {
+                a.foldIntoExisting(item, p, actions);
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "after folding {0}, {1} includes {2}", new Object[] {a, item, item.getAllActions()});
                 }
             }
+        }
 
-            boolean queueUpdated = false;
-            for (WaitingItem wi : Util.filter(duplicatesInQueue, WaitingItem.class)) {
-                // make sure to always use the shorter of the available due times
-                if (wi.timestamp.before(due))
-                    continue;
+        boolean queueUpdated = false;
+        for (WaitingItem wi : Util.filter(duplicatesInQueue, WaitingItem.class)) {
+            // make sure to always use the shorter of the available due times
+            if (wi.timestamp.before(due))
+                continue;
 
-                // waitingList is sorted, so when we change a timestamp we need to maintain order
-                wi.leave(this);
-                wi.timestamp = due;
-                wi.enter(this);
-                queueUpdated = true;
-            }
+            // waitingList is sorted, so when we change a timestamp we need to maintain order
+            wi.leave(this);
+            wi.timestamp = due;
+            wi.enter(this);
+            queueUpdated = true;
+        }
 
-            if (queueUpdated) scheduleMaintenance();
+        if (queueUpdated) maintainerThread.submit();
 
-            // REVISIT: when there are multiple existing items in the queue that matches the incoming one,
-            // whether the new one should affect all existing ones or not is debatable. I for myself
-            // thought this would only affect one, so the code was bit of surprise, but I'm keeping the current
-            // behaviour.
-            return ScheduleResult.existing(duplicatesInQueue.get(0));
-        } finally { updateSnapshot(); } } finally {
-            lock.unlock();
-        }
+        // REVISIT: when there are multiple existing items in the queue that matches the incoming one,
+        // whether the new one should affect all existing ones or not is debatable. I for myself
+        // thought this would only affect one, so the code was bit of surprise, but I'm keeping the current
+        // behaviour.
+        return ScheduleResult.existing(duplicatesInQueue.get(0));
     }
 
 
@@ -736,13 +854,35 @@ public class Queue extends ResourceController implements Saveable {
     }
 
     private void updateSnapshot() {
-        Snapshot revised = new Snapshot(waitingList, blockedProjects, buildables, pendings);
+        Snapshot revised = snapshot.revise(waitingList, blockedProjects, buildables, pendings, snapshotContentChanged);
+        snapshotContentChanged = false;
+        if (revised == snapshot) {
+            return; // nothing changed
+        }
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.log(Level.FINEST, "{0} → {1}; leftItems={2}", new Object[] {snapshot, revised, leftItems.asMap()});
         }
         snapshot = revised;
     }
 
+    /**
+     * Gets the version of the current snapshot of the queue.
+     *
+     * <p>
+     * The version changes whenever items enter, move within, or leave the queue,
+     * or the reason an item is blocked changes, so that clients can tell whether {@link #getItems()}
+     * could have changed since they last looked. What depends on the time alone,
+     * such as how much of the quiet period is left or whether an item is stuck, does not change it.
+     *
+     * <p>
+     * This method does not require the {@link Queue} lock.
+     *
+     * @since TODO
+     */
+    public long getVersion() {
+        return snapshot.version;
+    }
+
     public boolean cancel(Item item) {
         LOGGER.log(Level.FINE, "Cancelling {0} item#{1}", new Object[] {item.task, item.id});
         lock.lock();
@@ -1174,9 +1314,41 @@ public class Queue extends ResourceController implements Saveable {
     @WithBridgeMethods(void.class)
     public Future<?> scheduleMaintenance() {
         // LOGGER.info("Scheduling maintenance");
+        // the caller is telling us that conditions changed, so nothing computed so far can be trusted
+        markDirty();
         return maintainerThread.submit();
     }
 
+    /**
+     * Tells the queue that something that affects the scheduling of all the items has changed,
+     * so that the next {@link #maintain()} re-evaluates every blocked and buildable item
+     * even when {@link #INCREMENTAL_MAINTENANCE} is enabled.
+     *
+     * <p>
+     * Unlike {@link #scheduleMaintenance()}, this does not trigger the maintenance by itself.
+     * This method does not require the {@link Queue} lock.
+     *
+     * @since TODO
+     */
+    public void markDirty() {
+        maintenanceEpoch.incrementAndGet();
+    }
+
+    /**
+     * Tells the queue that something that affects the scheduling of the given item has changed,
+     * and schedules the maintenance to pick that up.
+     *
+     * <p>
+     * This is a cheaper alternative to {@link #scheduleMaintenance()} for {@link QueueTaskDispatcher}s
+     * and the like that know exactly which item they had been blocking.
+     *
+     * @since TODO
+     */
+    public void markDirty(@Nonnull Item item) {
+        item.maintainedEpoch = 0;
+        maintainerThread.submit();
+    }
+
     /**
      * Checks if the given item should be prevented from entering into the {@link #buildables} state
      * and instead stay in the {@link #blockedProjects} state.
@@ -1451,6 +1623,12 @@ public class Queue extends ResourceController implements Saveable {
      * Jenkins internally invokes this method by itself whenever there's a change that can affect
      * the scheduling (such as new node becoming online, # of executors change, a task completes execution, etc.),
      * and it also gets invoked periodically (see {@link Queue.MaintainTask}.)
+     *
+     * <p>
+     * When {@link #INCREMENTAL_MAINTENANCE} is enabled, blocked and buildable items that were already looked at
+     * are skipped unless the queue was {@linkplain #markDirty() marked dirty} since then. Every
+     * {@link #FULL_MAINTENANCE_INTERVAL} milliseconds all the items are looked at anyway,
+     * to catch changes nobody told us about.
      */
     public void maintain() {
         Jenkins jenkins = Jenkins.getInstanceOrNull();
@@ -1462,6 +1640,14 @@ public class Queue extends ResourceController implements Saveable {
 
             LOGGER.log(Level.FINE, "Queue maintenance started on {0} with {1}", new Object[] {this, snapshot});
 
+            // anything that changes from now on bumps the epoch again, so it will be picked up next time
+            final long epoch = maintenanceEpoch.get();
+            final long now = System.currentTimeMillis();
+            final boolean fullScan = !INCREMENTAL_MAINTENANCE || now - lastFullMaintenance >= FULL_MAINTENANCE_INTERVAL;
+            if (fullScan) {
+                lastFullMaintenance = now;
+            }
+
             // The executors that are currently waiting for a job to run.
             Map<Executor, JobOffer> parked = new HashMap<Executor, JobOffer>();
 
@@ -1514,6 +1700,9 @@ public class Queue extends ResourceController implements Saveable {
                     Collections.sort(blockedItems, QueueSorter.DEFAULT_BLOCKED_ITEM_COMPARATOR);
                 }
                 for (BlockedItem p : blockedItems) {
+                    if (!fullScan && p.maintainedEpoch == epoch) {
+                        continue;   // nothing changed since we last found it blocked
+                    }
                     String taskDisplayName = LOGGER.isLoggable(Level.FINEST) ? p.task.getFullDisplayName() : null;
                     LOGGER.log(Level.FINEST, "Current blocked item: {0}", taskDisplayName);
                     CauseOfBlockage causeOfBlockage = getCauseOfBlockageForItem(p);
@@ -1534,6 +1723,7 @@ public class Queue extends ResourceController implements Saveable {
                         }
                     } else {
                         p.setCauseOfBlockage(causeOfBlockage);
+                        p.maintainedEpoch = epoch;
                     }
                 }
             }
@@ -1572,16 +1762,25 @@ public class Queue extends ResourceController implements Saveable {
             
             // Ensure that identification of blocked tasks is using the live state: JENKINS-27708 & JENKINS-27871
             updateSnapshot();
-            
+
+            // lets us skip the executors on nodes that do not have the right labels without asking each of them.
+            // created lazily, as most of the time there are either no buildable items or no parked executors.
+            LabelIndex<JobOffer> parkedByLabel = null;
+
             // allocate buildable jobs to executors
             for (BuildableItem p : new ArrayList<BuildableItem>(
                     buildables)) {// copy as we'll mutate the list in the loop
+                if (!fullScan && p.maintainedEpoch == epoch) {
+                    continue;   // no executor has become available for it since we last tried
+                }
                 // one last check to make sure this build is not blocked.
                 CauseOfBlockage causeOfBlockage = getCauseOfBlockageForItem(p);
                 if (causeOfBlockage != null) {
                     p.leave(this);
                     new BlockedItem(p, causeOfBlockage).enter(this);
                     LOGGER.log(Level.FINE, "Catching that {0} is blocked in the last minute", p);
+                    // leaving buildables may unblock others
+                    markDirty();
                     // JENKINS-28926 we have moved an unblocked task into the blocked state, update snapshot
                     // so that other buildables which might have been blocked by this can see the state change
                     updateSnapshot();
@@ -1600,9 +1799,19 @@ public class Queue extends ResourceController implements Saveable {
                     }
                 } else {
 
-                    List<JobOffer> candidates = new ArrayList<>(parked.size());
-                    List<CauseOfBlockage> reasons = new ArrayList<>(parked.size());
-                    for (JobOffer j : parked.values()) {
+                    Label label = p.getAssignedLabel();
+                    List<JobOffer> labelCandidates;
+                    if (LabelIndex.isIndexable(label)) {
+                        if (parkedByLabel == null) {
+                            parkedByLabel = LabelIndex.of(parked.values());
+                        }
+                        labelCandidates = parkedByLabel.candidates(label);
+                    } else {
+                        labelCandidates = new ArrayList<>(parked.values());
+                    }
+                    List<JobOffer> candidates = new ArrayList<>(labelCandidates.size());
+                    Map<JobOffer, CauseOfBlockage> rejected = new HashMap<>();
+                    for (JobOffer j : labelCandidates) {
                         CauseOfBlockage reason = j.getCauseOfBlockage(p);
                         if (reason == null) {
                             LOGGER.log(Level.FINEST,
@@ -1611,7 +1820,7 @@ public class Queue extends ResourceController implements Saveable {
                             candidates.add(j);
                         } else {
                             LOGGER.log(Level.FINEST, "{0} rejected {1}: {2}", new Object[] {j, taskDisplayName, reason});
-                            reasons.add(reason);
+                            rejected.put(j, reason);
                         }
                     }
 
@@ -1623,7 +1832,19 @@ public class Queue extends ResourceController implements Saveable {
                         // check if we can execute other projects
                         LOGGER.log(Level.FINER, "Failed to map {0} to executors. candidates={1} parked={2}",
                                 new Object[]{p, candidates, parked.values()});
+                        List<CauseOfBlockage> reasons = new ArrayList<>();
+                        for (JobOffer j : labelCandidates) {
+                            CauseOfBlockage reason = rejected.get(j);
+                            if (reason != null) {
+                                reasons.add(reason);
+                            }
+                        }
+                        if (labelCandidates.size() < parked.size()) {
+                            // the rest were left out by the index for lacking the label, which one reason says for all of them
+                            reasons.add(CauseOfBlockage.fromMessage(Messages._Queue_OtherNodesLackLabel(label)));
+                        }
                         p.transientCausesOfBlockage = reasons.isEmpty() ? null : reasons;
+                        p.maintainedEpoch = epoch;
                         continue;
                     }
 
@@ -1653,6 +1874,7 @@ public class Queue extends ResourceController implements Saveable {
                     updateSnapshot();
                 }
             }
+
         } finally { updateSnapshot(); } } finally {
             lock.unlock();
         }
@@ -1784,7 +2006,72 @@ public class Queue extends ResourceController implements Saveable {
     }
 
     public Api getApi() {
-        return new Api(this);
+        return new VersionedApi(this);
+    }
+
+    /**
+     * {@link Api} for the queue which tags responses with an {@code ETag} derived from {@link #getVersion()},
+     * and answers {@code 304 Not Modified} to {@code If-None-Match} requests if the queue did not change since.
+     *
+     * <p>
+     * The tag also covers the requesting user and the query string,
+     * as those affect which items and properties are served,
+     * and the current period of {@link #TIME_BUCKET_MILLIS}, so that what only depends on the time,
+     * like the quiet period left, is not served for longer than that.
+     */
+    @Restricted(NoExternalUse.class)
+    public static final class VersionedApi extends Api {
+        @VisibleForTesting
+        /*package*/ static /*final*/ long TIME_BUCKET_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+        VersionedApi(Queue queue) {
+            super(queue);
+        }
+
+        @Override
+        public void doXml(StaplerRequest req, StaplerResponse rsp, @QueryParameter String xpath, @QueryParameter String wrapper, @QueryParameter String tree, @QueryParameter int depth) throws IOException, ServletException {
+            if (notModified(req, rsp)) {
+                return;
+            }
+            super.doXml(req, rsp, xpath, wrapper, tree, depth);
+        }
+
+        @Override
+        public void doJson(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+            if (notModified(req, rsp)) {
+                return;
+            }
+            super.doJson(req, rsp);
+        }
+
+        @Override
+        public void doPython(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+            if (notModified(req, rsp)) {
+                return;
+            }
+            super.doPython(req, rsp);
+        }
+
+        /**
+         * Sets the {@code ETag} header, or sends 304 if the client already has this version.
+         * The version is read before the response is rendered, so at worst the client gets a stale tag
+         * for a newer content, and fetches the same content again next time.
+         */
+        private boolean notModified(StaplerRequest req, StaplerResponse rsp) {
+            // items are filtered by Item.READ, so the same version looks different to different users
+            String etag = "\"" + ((Queue) bean).getVersion() + '-' + System.currentTimeMillis() / TIME_BUCKET_MILLIS + '-'
+                    + Util.getDigestOf(Jenkins.getAuthentication().getName() + '\n' + req.getQueryString())
+                    + "\"";
+            // keep shared caches from serving one user's response to another
+            rsp.setHeader("Vary", "Authorization, Cookie");
+            if (etag.equals(req.getHeader("If-None-Match"))) {
+                setHeaders(rsp);
+                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+            rsp.setHeader("ETag", etag);
+            return false;
+        }
     }
 
     /**
@@ -2074,6 +2361,12 @@ public class Queue extends ResourceController implements Saveable {
 
         private final long inQueueSince;
 
+        /**
+         * Value of {@link Queue#maintenanceEpoch} when {@link Queue#maintain()} last looked at this item
+         * without being able to move it forward, or 0 if it has to be looked at again.
+         */
+        private transient volatile long maintainedEpoch;
+
         /**
          * Build is blocked because another build is in progress,
          * required {@link Resource}s are not available, or otherwise blocked
@@ -2547,7 +2840,12 @@ public class Queue extends ResourceController implements Saveable {
         }
 
         void setCauseOfBlockage(CauseOfBlockage causeOfBlockage) {
+            CauseOfBlockage old = this.causeOfBlockage;
             this.causeOfBlockage = causeOfBlockage;
+            if (old == null || causeOfBlockage == null || !Objects.equals(old.getShortDescription(), causeOfBlockage.getShortDescription())) {
+                // the reason is part of what getItems() shows
+                snapshotContentChanged = true;
+            }
         }
 
         public CauseOfBlockage getCauseOfBlockage() {
@@ -2766,6 +3064,22 @@ public class Queue extends ResourceController implements Saveable {
 
     private static final Logger LOGGER = Logger.getLogger(Queue.class.getName());
 
+    /**
+     * If true, {@link #maintain()} only re-evaluates the items that could have been affected by changes
+     * since the previous maintenance, instead of walking the whole queue every time.
+     */
+    @Restricted(NoExternalUse.class)
+    public static /* Script Console modifiable */ boolean INCREMENTAL_MAINTENANCE =
+            SystemProperties.getBoolean(Queue.class.getName() + ".incrementalMaintenance");
+
+    /**
+     * With {@link #INCREMENTAL_MAINTENANCE}, how often (in milliseconds) {@link #maintain()} should still walk
+     * the whole queue as a consistency check.
+     */
+    @Restricted(NoExternalUse.class)
+    public static /* Script Console modifiable */ long FULL_MAINTENANCE_INTERVAL =
+            SystemProperties.getLong(Queue.class.getName() + ".fullMaintenanceInterval", TimeUnit.MINUTES.toMillis(1));
+
     /**
      * This {@link XStream} instance is used to persist {@link Task}s.
      */
@@ -2932,23 +3246,77 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    /**
+     * Immutable view of the queue as of some point in time, readable without the {@link Queue} lock.
+     *
+     * <p>
+     * The lists that did not change between two snapshots are shared rather than copied,
+     * so bumping the version after moving one item around only copies the lists that item moved between.
+     */
     private static class Snapshot {
-        private final Set<WaitingItem> waitingList;
+        private final long version;
+        private final List<WaitingItem> waitingList;
         private final List<BlockedItem> blockedProjects;
         private final List<BuildableItem> buildables;
         private final List<BuildableItem> pendings;
 
-        public Snapshot(Set<WaitingItem> waitingList, List<BlockedItem> blockedProjects, List<BuildableItem> buildables,
+        public Snapshot(long version, Collection<WaitingItem> waitingList, List<BlockedItem> blockedProjects, List<BuildableItem> buildables,
                         List<BuildableItem> pendings) {
-            this.waitingList = new LinkedHashSet<WaitingItem>(waitingList);
-            this.blockedProjects = new ArrayList<BlockedItem>(blockedProjects);
-            this.buildables = new ArrayList<BuildableItem>(buildables);
-            this.pendings = new ArrayList<BuildableItem>(pendings);
+            this(version, copy(waitingList), copy(blockedProjects), copy(buildables), copy(pendings));
+        }
+
+        private Snapshot(long version, List<WaitingItem> waitingList, List<BlockedItem> blockedProjects, List<BuildableItem> buildables,
+                         List<BuildableItem> pendings) {
+            this.version = version;
+            this.waitingList = waitingList;
+            this.blockedProjects = blockedProjects;
+            this.buildables = buildables;
+            this.pendings = pendings;
+        }
+
+        /**
+         * Creates the next snapshot, reusing the lists of this one where the live state has not changed.
+         *
+         * @param force
+         *      whether to bump the version even if no item moved.
+         * @return this object if nothing changed
+         */
+        Snapshot revise(Collection<WaitingItem> waitingList, List<BlockedItem> blockedProjects, List<BuildableItem> buildables,
+                        List<BuildableItem> pendings, boolean force) {
+            List<WaitingItem> w = reuse(this.waitingList, waitingList);
+            List<BlockedItem> bl = reuse(this.blockedProjects, blockedProjects);
+            List<BuildableItem> bu = reuse(this.buildables, buildables);
+            List<BuildableItem> p = reuse(this.pendings, pendings);
+            if (!force && w == this.waitingList && bl == this.blockedProjects && bu == this.buildables && p == this.pendings) {
+                return this;
+            }
+            return new Snapshot(version + 1, w, bl, bu, p);
+        }
+
+        private static <T extends Item> List<T> reuse(List<T> previous, Collection<T> live) {
+            if (previous.size() == live.size()) {
+                Iterator<T> itr = previous.iterator();
+                boolean same = true;
+                for (T t : live) {
+                    if (itr.next() != t) {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same) {
+                    return previous;
+                }
+            }
+            return copy(live);
+        }
+
+        private static <T extends Item> List<T> copy(Collection<T> live) {
+            return Collections.unmodifiableList(new ArrayList<T>(live));
         }
 
         @Override
         public String toString() {
-            return "Queue.Snapshot{waitingList=" + waitingList + ";blockedProjects=" + blockedProjects + ";buildables=" + buildables + ";pendings=" + pendings + "}";
+            return "Queue.Snapshot{version=" + version + ";waitingList=" + waitingList + ";blockedProjects=" + blockedProjects + ";buildables=" + buildables + ";pendings=" + pendings + "}";
         }
     }
     
@@ -3024,6 +3392,58 @@ public class Queue extends ResourceController implements Saveable {
         h.getQueue().load();
     }
 
+    /**
+     * Marks the queue dirty for {@link #INCREMENTAL_MAINTENANCE} when an item leaves the queue,
+     * as it can no longer block other items nor occupy an executor slot.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class MaintenanceInvalidator extends QueueListener {
+        @Override
+        public void onLeft(LeftItem li) {
+            markQueueDirty();
+        }
+    }
+
+    /**
+     * Marks the queue dirty for {@link #INCREMENTAL_MAINTENANCE} when nodes and their executors change.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class ComputerMaintenanceInvalidator extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            markQueueDirty();
+        }
+
+        @Override
+        public void onOffline(@Nonnull Computer c, @CheckForNull OfflineCause cause) {
+            markQueueDirty();
+        }
+
+        @Override
+        public void onTemporarilyOnline(Computer c) {
+            markQueueDirty();
+        }
+
+        @Override
+        public void onTemporarilyOffline(Computer c, OfflineCause cause) {
+            markQueueDirty();
+        }
+
+        @Override
+        public void onConfigurationChange() {
+            markQueueDirty();
+        }
+    }
+
+    private static void markQueueDirty() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j != null) {
+            j.getQueue().markDirty();
+        }
+    }
+
     /**
      * Schedule <tt>Queue.save()</tt> call for near future once items change. Ignore all changes until the time the save
      * takes place.
@@ -3035,6 +3455,9 @@ public class Queue extends ResourceController implements Saveable {
      * on load. The problem is avoided by delaying the actual save for the time long enough for queue to load so the save
      * operations will collapse into one. Also, items are persisted as buildable or blocked in vast majority of cases and
      * those stages does not trigger the save here.
+     *
+     * With {@link #JOURNAL} on, items entering and leaving are instead recorded in a {@link QueueJournal}, flushed to the disk
+     * shortly after, and the whole queue is only written out once the journal has grown past {@link #COMPACTION_THRESHOLD} records.
      */
     @Extension
     @Restricted(NoExternalUse.class)
@@ -3046,18 +3469,97 @@ public class Queue extends ResourceController implements Saveable {
         @VisibleForTesting
         /*package*/ static /*final*/ int DELAY_SECONDS = SystemProperties.getInteger("hudson.model.Queue.Saver.DELAY_SECONDS", 60);
 
+        /**
+         * Whether to persist changes through {@link QueueJournal} rather than by rewriting {@code queue.xml} each time.
+         */
+        @VisibleForTesting
+        /*package*/ static /*final*/ boolean JOURNAL = SystemProperties.getBoolean("hudson.model.Queue.Saver.JOURNAL");
+
+        /**
+         * How long to collect journal records before appending them to the disk.
+         */
+        @VisibleForTesting
+        /*package*/ static /*final*/ int JOURNAL_DELAY_MILLIS = SystemProperties.getInteger("hudson.model.Queue.Saver.JOURNAL_DELAY_MILLIS", 1000);
+
+        /**
+         * Number of journal records after which the whole queue is saved and the journal discarded.
+         */
+        @VisibleForTesting
+        /*package*/ static /*final*/ int COMPACTION_THRESHOLD = SystemProperties.getInteger("hudson.model.Queue.Saver.COMPACTION_THRESHOLD", 1000);
+
         private final Object lock = new Object();
         @GuardedBy("lock")
         private Future<?> nextSave;
+        @GuardedBy("lock")
+        private Future<?> nextFlush;
 
         @Override
         public void onEnterWaiting(WaitingItem wi) {
-            push();
+            if (JOURNAL) {
+                Queue q = getQueue();
+                // listeners are called with the queue lock held, which the journal needs while serializing the item
+                if (q != null && !q.loading) {
+                    q.getJournal().entered(wi);
+                    pushJournal();
+                }
+            } else {
+                push();
+            }
         }
 
         @Override
         public void onLeft(Queue.LeftItem li) {
-            push();
+            if (JOURNAL) {
+                Queue q = getQueue();
+                if (q != null && !q.loading) {
+                    q.getJournal().left(li.getId());
+                    pushJournal();
+                }
+            } else {
+                push();
+            }
+        }
+
+        private static @CheckForNull Queue getQueue() {
+            Jenkins j = Jenkins.getInstanceOrNull();
+            return j == null ? null : j.getQueue();
+        }
+
+        private void pushJournal() {
+            synchronized (lock) {
+                if (nextFlush != null && !(nextFlush.isDone() || nextFlush.isCancelled())) return;
+                nextFlush = Timer.get().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, JOURNAL_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Appends the pending journal records, and compacts the journal into {@code queue.xml} if it got too long.
+         */
+        private void flush() {
+            try {
+                Queue q = getQueue();
+                if (q != null) {
+                    QueueJournal journal = q.getJournal();
+                    try {
+                        journal.flush();
+                        // an item the journal failed to record is only persisted by writing out the whole queue
+                        if (journal.isIncomplete() || journal.size() >= COMPACTION_THRESHOLD) {
+                            q.save();
+                        }
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to write out the queue journal " + journal.getFile(), e);
+                    }
+                }
+            } finally {
+                synchronized (lock) {
+                    nextFlush = null;
+                }
+            }
         }
 
         private void push() {
@@ -3093,5 +3595,15 @@ public class Queue extends ResourceController implements Saveable {
                 ;
             }
         }
+
+        @VisibleForTesting @Restricted(NoExternalUse.class)
+        /*package*/ @Nonnull Future<?> getNextFlush() {
+            synchronized (lock) {
+                return nextFlush == null
+                        ? Futures.precomputed(null)
+                        : nextFlush
+                ;
+            }
+        }
     }
 }
@@ -39,6 +39,7 @@ import hudson.Functions;
 import hudson.console.AnnotatedLargeText;
 import hudson.console.ConsoleLogFilter;
 import hudson.console.ConsoleNote;
+import hudson.console.ConsoleNoteIndex;
 import hudson.console.ModelHyperlinkNote;
 import hudson.console.PlainTextConsoleOutputStream;
 import java.nio.file.Files;
@@ -64,19 +65,22 @@ import hudson.util.LogTaskListener;
 import hudson.util.ProcessTree;
 import hudson.util.XStream2;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -86,6 +90,7 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -107,17 +112,20 @@ import jenkins.model.JenkinsLocationConfiguration;
 import jenkins.model.PeepholePermalink;
 import jenkins.model.RunAction2;
 import jenkins.model.StandardArtifactManager;
+import jenkins.model.lazy.BuildIndex;
 import jenkins.model.lazy.BuildReference;
 import jenkins.model.lazy.LazyBuildMixIn;
 import jenkins.security.MasterToSlaveCallable;
 import jenkins.util.VirtualFile;
+import jenkins.util.io.BlockCompressedFile;
+import jenkins.util.io.BlockCompressedOutputStream;
 import jenkins.util.io.OnMaster;
+import jenkins.util.io.ReverseLinesStream;
 import net.sf.json.JSONObject;
 import org.acegisecurity.AccessDeniedException;
 import org.acegisecurity.Authentication;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.jelly.XMLOutput;
-import org.apache.commons.lang.ArrayUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.HttpResponse;
@@ -1170,6 +1178,16 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         return n;
     }
 
+    /**
+     * Whether new builds write their log as a {@link BlockCompressedFile}, {@code log.blk},
+     * which takes a fraction of the space and can still be read from any offset or line.
+     * Plugins reading {@link #getLogFile()} directly rather than through {@link #getLogInputStream()}
+     * or {@link #getLogText()} cannot read such logs.
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public static /* Script Console modifiable */ boolean BLOCK_COMPRESSED_LOGS = SystemProperties.getBoolean(Run.class.getName() + ".blockCompressedLogs");
+
     /**
      * Maximum number of artifacts to list before using switching to the tree view.
      */
@@ -1403,7 +1421,8 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
 
     /**
      * Returns the log file.
-     * @return The file may reference both uncompressed or compressed logs
+     * @return The file may reference both uncompressed or compressed logs,
+     *   including a {@link BlockCompressedFile} named {@code log.blk}
      */  
     public @Nonnull File getLogFile() {
         File rawF = new File(getRootDir(), "log");
@@ -1414,8 +1433,16 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         if (gzF.isFile()) {
             return gzF;
         }
-        //If both fail, return the standard, uncompressed log file
-        return rawF;
+        File blockF = new File(getRootDir(), "log.blk");
+        if (blockF.isFile()) {
+            return blockF;
+        }
+        //If all fail, return the file a new log should be written to
+        return BLOCK_COMPRESSED_LOGS ? blockF : rawF;
+    }
+
+    private static boolean isBlockCompressed(File logFile) {
+        return logFile.getName().endsWith(".blk");
     }
 
     /**
@@ -1433,6 +1460,9 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
     	if (logFile.exists() ) {
     	    // Checking if a ".gz" file was return
             try {
+                if (isBlockCompressed(logFile)) {
+                    return new BlockCompressedFile(logFile).open(0);
+                }
                 InputStream fis = Files.newInputStream(logFile.toPath());
                 if (logFile.getName().endsWith(".gz")) {
                     return new GZIPInputStream(fis);
@@ -1499,7 +1529,11 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
      * @return A {@link Run} log with annotations
      */   
     public @Nonnull AnnotatedLargeText getLogText() {
-        return new AnnotatedLargeText(getLogFile(),getCharset(),!isLogUpdated(),this);
+        File logFile = getLogFile();
+        if (isBlockCompressed(logFile)) {
+            return new AnnotatedLargeText(new BlockCompressedFile(logFile),getCharset(),!isLogUpdated(),this);
+        }
+        return new AnnotatedLargeText(logFile,getCharset(),!isLogUpdated(),this);
     }
 
     @Override
@@ -1880,7 +1914,11 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         // gets reflected to the file immediately, which can then be
         // served to the browser immediately
         try {
-            return Files.newOutputStream(getLogFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            File logFile = getLogFile();
+            if (isBlockCompressed(logFile)) {
+                return new BlockCompressedOutputStream(logFile);
+            }
+            return Files.newOutputStream(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
         } catch (InvalidPathException e) {
             throw new IOException(e);
         }
@@ -1989,10 +2027,15 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
     /**
      * Save the settings to a file.
      */
+    @SuppressWarnings("unchecked")
     public synchronized void save() throws IOException {
         if(BulkChange.contains(this))   return;
-        getDataFile().write(this);
-        SaveableListener.fireOnChange(this, getDataFile());
+        XmlFile dataFile = getDataFile();
+        dataFile.write(this);
+        if (BuildIndex.ENABLED && project instanceof LazyBuildMixIn.LazyLoadingJob) {
+            ((LazyBuildMixIn.LazyLoadingJob) project).getLazyBuildMixIn()._getRuns().recordSaved(this, dataFile.getFile().lastModified());
+        }
+        SaveableListener.fireOnChange(this, dataFile);
     }
 
     private @Nonnull XmlFile getDataFile() {
@@ -2021,7 +2064,13 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
      */
     @Deprecated
     public @Nonnull String getLog() throws IOException {
-        return Util.loadFile(getLogFile(),getCharset());
+        File logFile = getLogFile();
+        if (isBlockCompressed(logFile)) {
+            try (InputStream in = getLogInputStream()) {
+                return IOUtils.toString(in, getCharset());
+            }
+        }
+        return Util.loadFile(logFile,getCharset());
     }
 
     /**
@@ -2038,52 +2087,74 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
             return Collections.emptyList();
         }
 
-        int lines = 0;
-        long filePointer;
+        File logFile = getLogFile();
         final List<String> lastLines = new ArrayList<>(Math.min(maxLines, 128));
-        final List<Byte> bytes = new ArrayList<>();
-
-        try (RandomAccessFile fileHandler = new RandomAccessFile(getLogFile(), "r")) {
-            long fileLength = fileHandler.length() - 1;
-
-            for (filePointer = fileLength; filePointer != -1 && maxLines != lines; filePointer--) {
-                fileHandler.seek(filePointer);
-                byte readByte = fileHandler.readByte();
-
-                if (readByte == 0x0A) {
-                    if (filePointer < fileLength) {
-                        lines = lines + 1;
-                        lastLines.add(convertBytesToString(bytes));
-                        bytes.clear();
+        long start = 0; // where the oldest line kept starts
+        boolean truncated;
+
+        if (logFile.getName().endsWith(".gz")) {
+            // cannot be read backwards, so keep the last lines seen while reading it through
+            ArrayDeque<String> lines = new ArrayDeque<>();
+            ArrayDeque<Long> starts = new ArrayDeque<>();
+            try (InputStream in = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(logFile.toPath())))) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                long offset = 0;
+                long lineStart = 0;
+                while (true) {
+                    int b = in.read();
+                    if (b == -1 || b == 0x0A) {
+                        if (b == -1 && offset > 0 && offset == lineStart) {
+                            break; // a newline ending the file does not start another line
+                        }
+                        if (lines.size() > maxLines) {
+                            lines.removeFirst();
+                            starts.removeFirst();
+                        }
+                        lines.addLast(new String(line.toByteArray(), getCharset()));
+                        starts.addLast(lineStart);
+                        if (b == -1) {
+                            break;
+                        }
+                        line.reset();
+                        lineStart = offset + 1;
+                    } else if (b != 0xD) {
+                        line.write(b);
                     }
-                } else if (readByte != 0xD) {
-                    bytes.add(readByte);
+                    offset++;
                 }
             }
+            truncated = lines.size() > maxLines;
+            if (truncated) {
+                lines.removeFirst();
+                starts.removeFirst();
+                start = starts.getFirst();
+            }
+            lastLines.addAll(lines);
+        } else {
+            try (ReverseLinesStream stream = isBlockCompressed(logFile)
+                    ? new ReverseLinesStream(new BlockCompressedFile(logFile), getCharset())
+                    : new ReverseLinesStream(logFile.toPath(), getCharset())) {
+                Iterator<String> it = stream.iterator();
+                while (lastLines.size() < maxLines && it.hasNext()) {
+                    lastLines.add(it.next());
+                    start = stream.getPosition();
+                }
+                truncated = it.hasNext();
+            }
+            Collections.reverse(lastLines);
         }
 
-        if (lines != maxLines) {
-            lastLines.add(convertBytesToString(bytes));
-        }
-
-        Collections.reverse(lastLines);
-
         // If the log has been truncated, include that information.
         // Use set (replaces the first element) rather than add so that
         // the list doesn't grow beyond the specified maximum number of lines.
-        if (lines == maxLines) {
-            lastLines.set(0, "[...truncated " + Functions.humanReadableByteSize(filePointer)+ "...]");
+        if (truncated) {
+            // leaves out the line separator before the oldest line
+            lastLines.set(0, "[...truncated " + Functions.humanReadableByteSize(start - 2) + "...]");
         }
 
         return ConsoleNote.removeNotes(lastLines);
     }
 
-    private String convertBytesToString(List<Byte> bytes) {
-        Collections.reverse(bytes);
-        Byte[] byteArray = bytes.toArray(new Byte[bytes.size()]);
-        return new String(ArrayUtils.toPrimitive(byteArray), getCharset());
-    }
-
     public void doBuildStatus( StaplerRequest req, StaplerResponse rsp ) throws IOException {
         rsp.sendRedirect2(req.getContextPath()+"/images/48x48/"+getBuildStatusUrl());
     }
@@ -2212,6 +2283,14 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
      */
     public void doConsoleText(StaplerRequest req, StaplerResponse rsp) throws IOException {
         rsp.setContentType("text/plain;charset=UTF-8");
+        File logFile = getLogFile();
+        if (!isLogUpdated() && logFile.getName().equals("log") && logFile.isFile()) {
+            ConsoleNoteIndex notes = ConsoleNoteIndex.of(logFile);
+            if (notes != null) {
+                writePlainText(logFile, notes, req, rsp);
+                return;
+            }
+        }
         try (InputStream input = getLogInputStream();
              OutputStream os = rsp.getCompressedOutputStream(req);
              PlainTextConsoleOutputStream out = new PlainTextConsoleOutputStream(os)) {
@@ -2219,6 +2298,42 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         }
     }
 
+    /**
+     * Sends the plain text of a complete log by copying the bytes between its notes straight from the file,
+     * honoring a single byte range as clients resuming a download ask for.
+     */
+    private void writePlainText(File logFile, ConsoleNoteIndex notes, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        long length = notes.getPlainLength();
+        rsp.setHeader("Accept-Ranges", "bytes");
+        ByteRange range = ByteRange.of(req, length);
+        if (range == ByteRange.UNSATISFIABLE) {
+            ByteRange.respondUnsatisfiable(rsp, length);
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            long[] segments;
+            OutputStream os;
+            if (range != null) {
+                range.respond(rsp, length);
+                segments = notes.rawSegments(range.start, range.end);
+                os = rsp.getOutputStream();
+            } else {
+                segments = notes.rawSegments(0, length);
+                os = rsp.getCompressedOutputStream(req);
+                if (!rsp.containsHeader("Content-Encoding")) {
+                    rsp.setHeader("Content-Length", Long.toString(length));
+                }
+            }
+            try {
+                for (int i = 0; i < segments.length; i += 2) {
+                    ByteRange.transfer(ch, segments[i], segments[i + 1], os);
+                }
+            } finally {
+                os.close();
+            }
+        }
+    }
+
     /**
      * Handles incremental log output.
      * @deprecated as of 1.352
@@ -38,6 +38,7 @@ import java.util.logging.Logger;
 import jenkins.model.RunIdMigrator;
 import jenkins.model.lazy.AbstractLazyLoadRunMap;
 import static jenkins.model.lazy.AbstractLazyLoadRunMap.Direction.*;
+import jenkins.model.lazy.BuildIndex;
 import jenkins.model.lazy.BuildReference;
 import jenkins.model.lazy.LazyBuildMixIn;
 import org.apache.commons.collections.comparators.ReverseComparator;
@@ -205,6 +206,11 @@ public final class RunMap<R extends Run<?,R>> extends AbstractLazyLoadRunMap<R>
         return getByNumber(n);
     }
 
+    @Override
+    protected BuildIndex.Entry indexEntryOf(R r) {
+        return BuildIndex.Entry.of(r);
+    }
+
     /**
      * Reuses the same reference as much as we can.
      * <p>
@@ -0,0 +1,449 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import com.google.common.collect.Iterables;
+import hudson.Extension;
+import hudson.Functions;
+import hudson.Util;
+import hudson.init.Terminator;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link FingerprintStorage} that keeps fingerprints in a compact binary form in
+ * {@code JENKINS_HOME/fingerprints.db}, split over {@value #SHARDS} {@link FingerprintShard}s by the first digit of their ID.
+ * This avoids the cost of creating, parsing and rewriting one small XML file per fingerprint
+ * once there are millions of them.
+ *
+ * <p>
+ * Opt-in with {@code -Dhudson.model.ShardedFingerprintStorage.enabled=true}.
+ * Fingerprints still in the XML layout of {@link FileFingerprintStorage} are moved over when they are first loaded,
+ * and {@link Migration} moves all the others in the background.
+ *
+ * @since TODO
+ */
+@Extension(ordinal = 100)
+@Restricted(NoExternalUse.class)
+public class ShardedFingerprintStorage extends FingerprintStorage {
+
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(ShardedFingerprintStorage.class.getName() + ".enabled");
+
+    static final String DIR_NAME = "fingerprints.db";
+    static final int SHARDS = 16;
+
+    /**
+     * Number of fingerprints {@link #migrateAll} moves between two forces of each shard.
+     */
+    private static final int MIGRATION_BATCH = 1000;
+
+    @GuardedBy("this")
+    private FingerprintShard[] shards;
+
+    /**
+     * Held while moving a fingerprint from the XML layout, so that the background migration
+     * cannot overwrite a copy that was migrated on load and modified since.
+     */
+    private final Object migrationLock = new Object();
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public void save(@Nonnull Fingerprint fp) throws IOException {
+        Snapshot s = new Snapshot(fp);
+        FingerprintShard shard = shardOf(s.key);
+        synchronized (shard) {
+            if (s.isLatest()) {
+                shard.put(s.key, s.payload);
+                s.written();
+            }
+        }
+    }
+
+    /**
+     * Appends the fingerprints of each shard in a single write, forced to disk.
+     * Each is serialized under its monitor, as {@link Fingerprint#save} does, and written under the lock of its shard
+     * unless a later snapshot of it has been written meanwhile.
+     */
+    @Override
+    public void saveAll(@Nonnull Collection<Fingerprint> fps) throws IOException {
+        List<List<Snapshot>> batches = new ArrayList<>(SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (Fingerprint fp : fps) {
+            Snapshot s = new Snapshot(fp);
+            batches.get(shardIndexOf(s.key)).add(s);
+        }
+        FingerprintShard[] shards = shards();
+        for (int i = 0; i < SHARDS; i++) {
+            synchronized (shards[i]) {
+                List<Snapshot> batch = batches.get(i), latest = new ArrayList<>(batch.size());
+                List<byte[]> keys = new ArrayList<>(batch.size()), payloads = new ArrayList<>(batch.size());
+                for (Snapshot s : batch) {
+                    if (s.isLatest()) {
+                        latest.add(s);
+                        keys.add(s.key);
+                        payloads.add(s.payload);
+                    }
+                }
+                shards[i].putAll(keys, payloads);
+                for (Snapshot s : latest) {
+                    s.written();
+                }
+            }
+        }
+    }
+
+    /**
+     * The serialized state of a fingerprint at some point, numbered among the other snapshots of it.
+     */
+    private static final class Snapshot {
+        final Fingerprint fp;
+        final byte[] key;
+        final byte[] payload;
+        final long number;
+
+        Snapshot(Fingerprint fp) throws IOException {
+            this.fp = fp;
+            this.key = Util.fromHexString(fp.getHashString());
+            synchronized (fp) {
+                payload = serialize(fp);
+                number = ++fp.snapshotsTaken;
+            }
+        }
+
+        /**
+         * Whether no later snapshot has been written; called holding the lock of the shard.
+         */
+        boolean isLatest() {
+            return number > fp.snapshotWritten;
+        }
+
+        void written() {
+            fp.snapshotWritten = number;
+        }
+    }
+
+    private static byte[] serialize(Fingerprint fp) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buf)) {
+            fp.writeTo(out);
+        }
+        return buf.toByteArray();
+    }
+
+    @Override
+    public @CheckForNull Fingerprint load(@Nonnull String id) throws IOException {
+        byte[] key = Util.fromHexString(id);
+        Fingerprint fp = read(key);
+        if (fp != null) {
+            return fp;
+        }
+        synchronized (migrationLock) {
+            fp = read(key); // in case it was just migrated
+            if (fp == null) {
+                fp = migrate(key, Fingerprint.getFingerprintFile(key));
+            }
+            return fp;
+        }
+    }
+
+    private @CheckForNull Fingerprint read(byte[] key) throws IOException {
+        byte[] data = shardOf(key).get(key);
+        if (data == null) {
+            return null;
+        }
+        return Fingerprint.readFrom(key, new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * Moves a fingerprint from the XML layout, unless it has already been moved.
+     * The record is forced to disk before the XML file is deleted, so a crash cannot lose the fingerprint.
+     */
+    @GuardedBy("migrationLock")
+    private @CheckForNull Fingerprint migrate(byte[] key, File file) throws IOException {
+        Fingerprint fp = null;
+        FingerprintShard shard = shardOf(key);
+        if (shard.get(key) == null) {
+            fp = Fingerprint.load(file);
+            if (fp == null) {
+                return null;
+            }
+            shard.putAll(Collections.singletonList(key), Collections.singletonList(serialize(fp)));
+        } else {
+            shard.force();
+        }
+        if (file.exists() && !file.delete()) {
+            LOGGER.log(Level.WARNING, "Failed to delete migrated fingerprint {0}", file);
+        }
+        return fp;
+    }
+
+    @Override
+    public void delete(@Nonnull String id) throws IOException {
+        byte[] key = Util.fromHexString(id);
+        shardOf(key).delete(key);
+        File legacy = Fingerprint.getFingerprintFile(key);
+        if (legacy.exists() && !legacy.delete()) {
+            throw new IOException("Failed to delete " + legacy);
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return getDir().exists() || getLegacyDir().exists();
+    }
+
+    @Override
+    public @Nonnull Iterable<String> getIds() throws IOException {
+        // list one shard at a time
+        return Iterables.concat(Iterables.<FingerprintShard, Iterable<String>>transform(Arrays.asList(shards()),
+                shard -> Iterables.transform(shard.keys(), Util::toHexString)));
+    }
+
+    @Override
+    public void compact(@Nonnull TaskListener listener) throws IOException {
+        for (FingerprintShard shard : shards()) {
+            if (shard.needsCompaction()) {
+                long garbage = shard.getGarbageSize();
+                shard.compact();
+                listener.getLogger().println("Compacted " + shard + ", reclaiming " + Functions.humanReadableByteSize(garbage));
+            }
+        }
+    }
+
+    private FingerprintShard shardOf(byte[] key) throws IOException {
+        return shards()[shardIndexOf(key)];
+    }
+
+    private static int shardIndexOf(byte[] key) {
+        return (key[0] >> 4) & 0xf;
+    }
+
+    private synchronized FingerprintShard[] shards() throws IOException {
+        if (shards == null) {
+            File dir = getDir();
+            FingerprintShard[] r = new FingerprintShard[SHARDS];
+            try {
+                for (int i = 0; i < SHARDS; i++) {
+                    r[i] = new FingerprintShard(dir, Integer.toHexString(i));
+                }
+            } catch (IOException e) {
+                close(r);
+                throw e;
+            }
+            shards = r;
+        }
+        return shards;
+    }
+
+    File getDir() {
+        return new File(Jenkins.get().getRootDir(), DIR_NAME);
+    }
+
+    File getLegacyDir() {
+        return new File(Jenkins.get().getRootDir(), FingerprintCleanupThread.FINGERPRINTS_DIR_NAME);
+    }
+
+    /**
+     * Moves all the fingerprints left in the XML layout, {@value #MIGRATION_BATCH} at a time.
+     *
+     * @return the number of fingerprints moved
+     */
+    int migrateAll(@Nonnull TaskListener listener) {
+        File root = getLegacyDir();
+        int count = 0;
+        List<String> batch = new ArrayList<>(MIGRATION_BATCH);
+        for (String id : FileFingerprintStorage.listIds(root)) {
+            batch.add(id);
+            if (batch.size() == MIGRATION_BATCH) {
+                count += migrate(batch, listener);
+                batch.clear();
+            }
+        }
+        count += migrate(batch, listener);
+        deleteEmptyDirs(root);
+        return count;
+    }
+
+    /**
+     * Moves a batch of fingerprints like {@link #migrate(byte[], File)},
+     * but appends the records of each shard in one write, forced to disk once before the XML files of that shard are deleted.
+     *
+     * @return the number of fingerprints moved
+     */
+    private int migrate(List<String> ids, TaskListener listener) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        synchronized (migrationLock) {
+            FingerprintShard[] shards;
+            try {
+                shards = shards();
+            } catch (IOException e) {
+                Functions.printStackTrace(e, listener.error("Failed to open " + getDir()));
+                return 0;
+            }
+            List<List<byte[]>> keys = new ArrayList<>(SHARDS), payloads = new ArrayList<>(SHARDS);
+            List<List<File>> files = new ArrayList<>(SHARDS);
+            for (int i = 0; i < SHARDS; i++) {
+                keys.add(new ArrayList<>());
+                payloads.add(new ArrayList<>());
+                files.add(new ArrayList<>());
+            }
+            for (String id : ids) {
+                byte[] key = Util.fromHexString(id);
+                int i = shardIndexOf(key);
+                File file = Fingerprint.getFingerprintFile(key);
+                try {
+                    if (shards[i].get(key) == null) {
+                        Fingerprint fp = Fingerprint.load(file);
+                        if (fp == null) {
+                            continue;
+                        }
+                        keys.get(i).add(key);
+                        payloads.get(i).add(serialize(fp));
+                    }
+                    files.get(i).add(file);
+                } catch (IOException e) {
+                    Functions.printStackTrace(e, listener.error("Failed to migrate " + file));
+                }
+            }
+            for (int i = 0; i < SHARDS; i++) {
+                if (files.get(i).isEmpty()) {
+                    continue;
+                }
+                try {
+                    if (keys.get(i).isEmpty()) {
+                        shards[i].force(); // all migrated already, though maybe not forced yet
+                    } else {
+                        shards[i].putAll(keys.get(i), payloads.get(i));
+                    }
+                } catch (IOException e) {
+                    Functions.printStackTrace(e, listener.error("Failed to migrate fingerprints into " + shards[i]));
+                    continue;
+                }
+                count += keys.get(i).size();
+                for (File file : files.get(i)) {
+                    if (file.exists() && !file.delete()) {
+                        LOGGER.log(Level.WARNING, "Failed to delete migrated fingerprint {0}", file);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void deleteEmptyDirs(File dir) {
+        File[] children = dir.listFiles(File::isDirectory);
+        if (children != null) {
+            for (File child : children) {
+                deleteEmptyDirs(child);
+            }
+        }
+        String[] left = dir.list();
+        if (left != null && left.length == 0 && !dir.delete()) {
+            LOGGER.log(Level.FINE, "Could not delete {0}", dir);
+        }
+    }
+
+    @Terminator
+    public synchronized void close() {
+        if (shards != null) {
+            close(shards);
+            shards = null;
+        }
+    }
+
+    private static void close(FingerprintShard[] shards) {
+        for (FingerprintShard shard : shards) {
+            if (shard != null) {
+                try {
+                    shard.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to close " + shard, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the fingerprints from the XML layout of {@link FileFingerprintStorage} shortly after startup,
+     * and again every day in case some were left behind.
+     */
+    @Extension @Symbol("fingerprintMigration")
+    @Restricted(NoExternalUse.class)
+    public static final class Migration extends AsyncPeriodicWork {
+        public Migration() {
+            super("Fingerprint migration");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        public long getInitialDelay() {
+            return MIN;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException, InterruptedException {
+            FingerprintStorage storage = FingerprintStorage.get();
+            if (!(storage instanceof ShardedFingerprintStorage) || !((ShardedFingerprintStorage) storage).getLegacyDir().exists()) {
+                return;
+            }
+            int count = ((ShardedFingerprintStorage) storage).migrateAll(listener);
+            listener.getLogger().println("Migrated " + count + " fingerprints");
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ShardedFingerprintStorage.class.getName());
+}
@@ -73,10 +73,23 @@ public class LabelAtom extends Label implements Saveable {
 
     private String description;
 
+    /**
+     * ID of this atom in {@link LabelProgram}s, or null if not yet looked up.
+     */
+    private transient volatile LabelProgram.AtomId id;
+
     public LabelAtom(String name) {
         super(name);
     }
 
+    /*package*/ LabelProgram.AtomId getAtomId() {
+        LabelProgram.AtomId i = id;
+        if (i == null) {
+            id = i = LabelProgram.idOf(name);
+        }
+        return i;
+    }
+
     /**
      * If the label contains 'unsafe' chars, escape them.
      */
@@ -0,0 +1,310 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.labels;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Label;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Label} expression compiled into a flat program in postfix notation,
+ * which evaluates against the set of {@link LabelAtom}s of a node without walking the expression tree,
+ * and without looking up the atoms by name.
+ *
+ * <p>
+ * Every atom name is given a small integer ID, shared by all the {@link LabelAtom} instances with that name,
+ * so that the atoms of a node can be represented as a {@link BitSet}.
+ * Since label names come from users, an ID is only kept while some {@link LabelAtom} or program uses it,
+ * and is then recycled for another name.
+ * Non-negative instructions push whether the atom with that ID is present,
+ * negative ones pop their operands and push the result of the operator.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class LabelProgram {
+    private static final int NOT = -1;
+    private static final int AND = -2;
+    private static final int OR = -3;
+    private static final int IFF = -4;
+    private static final int IMPLIES = -5;
+
+    /**
+     * Returned by {@link #compile(Label)} for labels that are not made of the core label types,
+     * which may evaluate in ways a program cannot express.
+     */
+    public static final LabelProgram UNSUPPORTED = new LabelProgram(new int[0], 0, Collections.<AtomId>emptyList());
+
+    @GuardedBy("IDS")
+    private static final Map<String,IdRef> IDS = new HashMap<>();
+    /**
+     * IDs whose {@link AtomId} got collected, to be given to new names.
+     */
+    @GuardedBy("IDS")
+    private static final BitSet FREE_IDS = new BitSet();
+    @GuardedBy("IDS")
+    private static int nextId;
+    private static final ReferenceQueue<AtomId> COLLECTED = new ReferenceQueue<>();
+
+    private final int[] code;
+    /**
+     * Maximum size of the stack while running {@link #code}.
+     */
+    private final int depth;
+    /**
+     * Keeps the IDs used by {@link #code} from being recycled.
+     */
+    @SuppressFBWarnings(value = "URF_UNREAD_FIELD", justification = "only held to keep the IDs reachable")
+    private final List<AtomId> atoms;
+
+    private LabelProgram(int[] code, int depth, List<AtomId> atoms) {
+        this.code = code;
+        this.depth = depth;
+        this.atoms = atoms;
+    }
+
+    /**
+     * ID of an atom name, valid as long as this object is reachable.
+     */
+    /*package*/ static final class AtomId {
+        final int value;
+
+        private AtomId(int value) {
+            this.value = value;
+        }
+    }
+
+    private static final class IdRef extends WeakReference<AtomId> {
+        private final String name;
+        private final int value;
+
+        IdRef(String name, AtomId id) {
+            super(id, COLLECTED);
+            this.name = name;
+            this.value = id.value;
+        }
+    }
+
+    /**
+     * Gets the ID of the atom with the given name, allocating it if no one holds it at the moment.
+     */
+    /*package*/ static @Nonnull AtomId idOf(@Nonnull String atomName) {
+        synchronized (IDS) {
+            Reference<? extends AtomId> r;
+            while ((r = COLLECTED.poll()) != null) {
+                IdRef ref = (IdRef) r;
+                if (IDS.get(ref.name) == ref) {
+                    IDS.remove(ref.name);
+                }
+                FREE_IDS.set(ref.value);
+            }
+            IdRef ref = IDS.get(atomName);
+            AtomId id = ref != null ? ref.get() : null;
+            if (id == null) {
+                int value = FREE_IDS.nextSetBit(0);
+                if (value >= 0) {
+                    FREE_IDS.clear(value);
+                } else {
+                    value = nextId++;
+                }
+                id = new AtomId(value);
+                IDS.put(atomName, new IdRef(atomName, id));
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Converts the atoms of a node into the form {@link #matches(BitSet)} takes.
+     */
+    public static @Nonnull BitSet idsOf(@Nonnull Collection<LabelAtom> atoms) {
+        BitSet ids = new BitSet();
+        for (LabelAtom a : atoms) {
+            ids.set(a.getAtomId().value);
+        }
+        return ids;
+    }
+
+    /**
+     * Compiles the given label.
+     *
+     * @return {@link #UNSUPPORTED} if the label contains types of labels other than the ones defined in core.
+     */
+    public static @Nonnull LabelProgram compile(@Nonnull Label label) {
+        Compiler c = new Compiler();
+        try {
+            label.accept(c, null);
+        } catch (UnsupportedOperationException e) {
+            return UNSUPPORTED;
+        }
+        return new LabelProgram(Arrays.copyOf(c.code, c.size), c.depth, c.atoms);
+    }
+
+    public boolean matches(@Nonnull Collection<LabelAtom> atoms) {
+        return matches(idsOf(atoms));
+    }
+
+    /**
+     * @param ids
+     *      IDs of the atoms of a node, as computed by {@link #idsOf(Collection)}.
+     */
+    public boolean matches(@Nonnull BitSet ids) {
+        if (this == UNSUPPORTED) {
+            throw new IllegalStateException("cannot evaluate an unsupported label");
+        }
+        boolean[] stack = new boolean[depth];
+        int sp = 0;
+        for (int op : code) {
+            if (op >= 0) {
+                stack[sp++] = ids.get(op);
+                continue;
+            }
+            if (op == NOT) {
+                stack[sp - 1] = !stack[sp - 1];
+                continue;
+            }
+            boolean rhs = stack[--sp];
+            boolean lhs = stack[sp - 1];
+            switch (op) {
+            case AND:
+                stack[sp - 1] = lhs && rhs;
+                break;
+            case OR:
+                stack[sp - 1] = lhs || rhs;
+                break;
+            case IFF:
+                stack[sp - 1] = lhs == rhs;
+                break;
+            case IMPLIES:
+                stack[sp - 1] = !lhs || rhs;
+                break;
+            default:
+                throw new AssertionError(op);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Emits the program in postfix order, keeping track of the stack depth it needs.
+     * Only the exact core types are accepted, as subclasses may override {@link Label#matches(hudson.util.VariableResolver)}.
+     */
+    private static final class Compiler extends LabelVisitor<Void,Void> {
+        private int[] code = new int[8];
+        private int size;
+        private int sp;
+        private int depth;
+        private final List<AtomId> atoms = new ArrayList<>();
+
+        private void emit(int op, int stackEffect) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+            }
+            code[size++] = op;
+            sp += stackEffect;
+            depth = Math.max(depth, sp);
+        }
+
+        private static void check(Label l, Class<?> type) {
+            if (l.getClass() != type) {
+                throw new UnsupportedOperationException(l.getClass().getName());
+            }
+        }
+
+        private void binary(LabelExpression.Binary p, Class<?> type, int op) {
+            check(p, type);
+            p.lhs.accept(this, null);
+            p.rhs.accept(this, null);
+            emit(op, -1);
+        }
+
+        @Override
+        public Void onAtom(LabelAtom a, Void param) {
+            check(a, LabelAtom.class);
+            AtomId id = a.getAtomId();
+            atoms.add(id);
+            emit(id.value, 1);
+            return null;
+        }
+
+        @Override
+        public Void onParen(LabelExpression.Paren p, Void param) {
+            check(p, LabelExpression.Paren.class);
+            p.base.accept(this, null);
+            return null;
+        }
+
+        @Override
+        public Void onNot(LabelExpression.Not p, Void param) {
+            check(p, LabelExpression.Not.class);
+            p.base.accept(this, null);
+            emit(NOT, 0);
+            return null;
+        }
+
+        @Override
+        public Void onAnd(LabelExpression.And p, Void param) {
+            binary(p, LabelExpression.And.class, AND);
+            return null;
+        }
+
+        @Override
+        public Void onOr(LabelExpression.Or p, Void param) {
+            binary(p, LabelExpression.Or.class, OR);
+            return null;
+        }
+
+        @Override
+        public Void onIff(LabelExpression.Iff p, Void param) {
+            binary(p, LabelExpression.Iff.class, IFF);
+            return null;
+        }
+
+        @Override
+        public Void onImplies(LabelExpression.Implies p, Void param) {
+            binary(p, LabelExpression.Implies.class, IMPLIES);
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LabelProgram" + Arrays.toString(code);
+    }
+}
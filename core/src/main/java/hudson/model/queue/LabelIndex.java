@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.Util;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.labels.LabelAtom;
+import hudson.model.labels.LabelExpression;
+import hudson.model.labels.LabelVisitor;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index from {@link LabelAtom} to the set of executor slots whose node carries that label,
+ * so that a {@link Label} expression can be matched against many slots at once
+ * with bit set operations, instead of calling {@link Label#contains(Node)} one node at a time.
+ *
+ * <p>
+ * {@link hudson.model.Queue#maintain()} builds one of these over the parked executors on every pass
+ * (it has to walk all the executors to find them anyway), and then only asks the candidates it returns
+ * for the full {@link hudson.model.Queue.JobOffer#getCauseOfBlockage(hudson.model.Queue.BuildableItem)} check.
+ * Results are memoized per {@link Label}, as buildable items tend to share a handful of labels.
+ *
+ * <p>
+ * This only reproduces {@link Label#contains(Node)} for the core {@link LabelAtom} and {@link LabelExpression}s
+ * over {@link Node#getAssignedLabels()}, so callers should check {@link #isIndexable(Label)} first.
+ * Slots whose node has disappeared, or whose node overrides {@link Node#canTake(Queue.BuildableItem)}
+ * and so may accept a label it does not carry, are always returned as candidates,
+ * so that the caller can let them decide and report the proper reason for not using them.
+ *
+ * @param <T> type of the executor slot
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class LabelIndex<T> {
+    private final List<T> slots = new ArrayList<>();
+    /**
+     * Every slot with a known node.
+     */
+    private final BitSet all = new BitSet();
+    /**
+     * Slots whose node has been removed, or decides for itself.
+     */
+    private final BitSet unindexed = new BitSet();
+    private final Map<LabelAtom,BitSet> atoms = new HashMap<>();
+    private final Map<Label,BitSet> results = new HashMap<>();
+
+    /**
+     * Indexes the given executor slots by the labels of their nodes.
+     */
+    public static <S extends MappingWorksheet.ExecutorSlot> LabelIndex<S> of(Collection<? extends S> slots) {
+        LabelIndex<S> index = new LabelIndex<>();
+        // computing the labels of a node is not free, and nodes usually have several executors
+        Map<Node,Set<LabelAtom>> labels = new HashMap<>();
+        Map<Class<?>,Boolean> decidesItself = new HashMap<>();
+        for (S s : slots) {
+            Node n = s.getExecutor().getOwner().getNode();
+            if (n == null) {
+                index.add(s, null);
+                continue;
+            }
+            Boolean custom = decidesItself.get(n.getClass());
+            if (custom == null) {
+                decidesItself.put(n.getClass(), custom = Util.isOverridden(Node.class, n.getClass(), "canTake", Queue.BuildableItem.class));
+            }
+            if (custom) {
+                index.add(s, null);
+                continue;
+            }
+            Set<LabelAtom> l = labels.get(n);
+            if (l == null) {
+                labels.put(n, l = n.getAssignedLabels());
+            }
+            index.add(s, l);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a slot to the index.
+     *
+     * @param labels
+     *      labels of the node of this slot, or null if the node is gone or the slot should always be a candidate.
+     */
+    public void add(@Nonnull T slot, @CheckForNull Set<LabelAtom> labels) {
+        int i = slots.size();
+        slots.add(slot);
+        results.clear();
+        if (labels == null) {
+            unindexed.set(i);
+            return;
+        }
+        all.set(i);
+        for (LabelAtom a : labels) {
+            BitSet bits = atoms.get(a);
+            if (bits == null) {
+                atoms.put(a, bits = new BitSet());
+            }
+            bits.set(i);
+        }
+    }
+
+    /**
+     * Returns the slots that can possibly satisfy the given label, in the order they were added.
+     *
+     * @param label
+     *      null to return all the slots.
+     */
+    public @Nonnull List<T> candidates(@CheckForNull Label label) {
+        if (label == null) {
+            return new ArrayList<>(slots);
+        }
+        BitSet bits = (BitSet) evaluate(label).clone();
+        bits.or(unindexed);
+        List<T> r = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            r.add(slots.get(i));
+        }
+        return r;
+    }
+
+    /**
+     * Whether {@link #candidates(Label)} is exact for the given label:
+     * it is made of {@link LabelAtom}s and {@link LabelExpression}s of core, rather than of subclasses
+     * that may match nodes differently.
+     *
+     * @param label
+     *      null for no label, which is always indexable.
+     */
+    public static boolean isIndexable(@CheckForNull Label label) {
+        if (label == null) {
+            return true;
+        }
+        Class<?> c = label.getClass();
+        if (c == LabelAtom.class) {
+            return true;
+        }
+        if (c == LabelExpression.Not.class) {
+            return isIndexable(((LabelExpression.Not) label).base);
+        }
+        if (c == LabelExpression.Paren.class) {
+            return isIndexable(((LabelExpression.Paren) label).base);
+        }
+        if (c == LabelExpression.And.class || c == LabelExpression.Or.class
+                || c == LabelExpression.Iff.class || c == LabelExpression.Implies.class) {
+            LabelExpression.Binary b = (LabelExpression.Binary) label;
+            return isIndexable(b.lhs) && isIndexable(b.rhs);
+        }
+        return false;
+    }
+
+    /**
+     * Set of the slots with a known node that match the given label. Do not modify the result.
+     */
+    /*package*/ @Nonnull BitSet evaluate(@Nonnull Label label) {
+        BitSet r = results.get(label);
+        if (r == null) {
+            results.put(label, r = label.accept(EVALUATOR, this));
+        }
+        return r;
+    }
+
+    private BitSet atom(LabelAtom a) {
+        BitSet bits = atoms.get(a);
+        return bits == null ? new BitSet() : (BitSet) bits.clone();
+    }
+
+    private BitSet not(BitSet bits) {
+        BitSet r = (BitSet) all.clone();
+        r.andNot(bits);
+        return r;
+    }
+
+    /**
+     * Evaluates {@link LabelExpression}s into newly allocated {@link BitSet}s that the caller can modify.
+     */
+    private static final LabelVisitor<BitSet,LabelIndex<?>> EVALUATOR = new LabelVisitor<BitSet,LabelIndex<?>>() {
+        @Override
+        public BitSet onAtom(LabelAtom a, LabelIndex<?> index) {
+            return index.atom(a);
+        }
+
+        @Override
+        public BitSet onParen(LabelExpression.Paren p, LabelIndex<?> index) {
+            return p.base.accept(this, index);
+        }
+
+        @Override
+        public BitSet onNot(LabelExpression.Not p, LabelIndex<?> index) {
+            return index.not(p.base.accept(this, index));
+        }
+
+        @Override
+        public BitSet onAnd(LabelExpression.And p, LabelIndex<?> index) {
+            BitSet r = p.lhs.accept(this, index);
+            r.and(p.rhs.accept(this, index));
+            return r;
+        }
+
+        @Override
+        public BitSet onOr(LabelExpression.Or p, LabelIndex<?> index) {
+            BitSet r = p.lhs.accept(this, index);
+            r.or(p.rhs.accept(this, index));
+            return r;
+        }
+
+        @Override
+        public BitSet onIff(LabelExpression.Iff p, LabelIndex<?> index) {
+            // a <=> b is !(a ^ b)
+            BitSet r = p.lhs.accept(this, index);
+            r.xor(p.rhs.accept(this, index));
+            return index.not(r);
+        }
+
+        @Override
+        public BitSet onImplies(LabelExpression.Implies p, LabelIndex<?> index) {
+            // a => b is !a | b
+            BitSet r = index.not(p.lhs.accept(this, index));
+            r.or(p.rhs.accept(this, index));
+            return r;
+        }
+    };
+}
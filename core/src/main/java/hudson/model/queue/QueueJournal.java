@@ -0,0 +1,355 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model.queue;
+
+import hudson.model.Queue;
+import hudson.model.Queue.Item;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only log of the items entering and leaving the {@link Queue}
+ * since it was last written out in full to {@code queue.xml}.
+ *
+ * <p>
+ * Recording an event only serializes the item into memory, as it happens with the queue lock held;
+ * {@link #flush()} later appends everything recorded since the previous flush in one write,
+ * so that a burst of scheduling costs one small disk write instead of a rewrite of the whole queue.
+ * If an item cannot be serialized, the journal is {@linkplain #isIncomplete() incomplete} until the next compaction.
+ * {@link Queue#save()} compacts the journal by writing the whole queue and then calling {@link #reset()},
+ * and {@link Queue#load()} {@link #replay(File, List) replays} it on top of {@code queue.xml}.
+ *
+ * <p>
+ * Each record is a type byte, the item ID, and for entering items the length-prefixed XML of the item.
+ * A record torn by a crash can only be the last one, and is ignored on replay.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class QueueJournal {
+    private static final byte ENTERED = 'E';
+    private static final byte LEFT = 'L';
+    /**
+     * Sanity limit on the size of a single item, so that a corrupted length does not exhaust the heap.
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+
+    /**
+     * Held while writing to the file, so that {@link #reset()} cannot interleave with a {@link #flush()}.
+     */
+    private final Object fileLock = new Object();
+
+    /**
+     * Number of records in {@link #file}.
+     */
+    @GuardedBy("fileLock")
+    private int written;
+
+    @GuardedBy("this")
+    private List<Record> pending = new ArrayList<>();
+
+    /**
+     * Whether an item could not be recorded since the last {@link #reset()}.
+     */
+    @GuardedBy("this")
+    private boolean incomplete;
+
+    public QueueJournal(@Nonnull File file) {
+        this.file = file;
+        this.written = -1; // unknown until first used
+    }
+
+    public @Nonnull File getFile() {
+        return file;
+    }
+
+    /**
+     * Records that the item has entered the queue.
+     * Must be called with the queue lock held: the item is serialized right away,
+     * so later changes to it will only be persisted by the next compaction.
+     */
+    public void entered(@Nonnull Item item) {
+        byte[] xml;
+        try {
+            xml = Queue.XSTREAM.toXML(item).getBytes(StandardCharsets.UTF_8);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to serialize queue item " + item.getId() + " into the journal", e);
+            synchronized (this) {
+                incomplete = true;
+            }
+            return;
+        }
+        add(new Record(ENTERED, item.getId(), xml));
+    }
+
+    /**
+     * Records that the item with the given ID has left the queue, for whatever reason.
+     */
+    public void left(long id) {
+        add(new Record(LEFT, id, null));
+    }
+
+    private synchronized void add(Record r) {
+        pending.add(r);
+    }
+
+    /**
+     * Whether an item could not be recorded, so that the whole queue needs to be written out.
+     */
+    public synchronized boolean isIncomplete() {
+        return incomplete;
+    }
+
+    private synchronized List<Record> takePending() {
+        List<Record> r = pending;
+        pending = new ArrayList<>();
+        return r;
+    }
+
+    /**
+     * Appends all the records made so far to the file.
+     */
+    public void flush() throws IOException {
+        synchronized (fileLock) {
+            List<Record> records = takePending();
+            if (records.isEmpty()) {
+                return;
+            }
+            countWritten();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                for (Record r : records) {
+                    r.write(out);
+                    written++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of records in the journal, flushed or not.
+     * Used to decide when it is time to compact.
+     */
+    public int size() throws IOException {
+        synchronized (fileLock) {
+            countWritten();
+            synchronized (this) {
+                return written + pending.size();
+            }
+        }
+    }
+
+    /**
+     * Discards the journal, after the whole queue has been written out.
+     * Must be called with the queue lock held, so that no record made after the queue was written is lost.
+     */
+    public void reset() throws IOException {
+        synchronized (fileLock) {
+            synchronized (this) {
+                pending = new ArrayList<>();
+                incomplete = false;
+            }
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Failed to delete " + file);
+            }
+            written = 0;
+        }
+    }
+
+    /**
+     * Counts the records left by a previous run, and drops a torn last record
+     * so that new records are not appended after it.
+     */
+    @GuardedBy("fileLock")
+    private void countWritten() throws IOException {
+        if (written >= 0) {
+            return;
+        }
+        written = 0;
+        if (file.exists()) {
+            Replay r = new Replay(null);
+            read(file, r);
+            if (r.length < file.length()) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(r.length);
+                }
+            }
+            written = r.count;
+        }
+    }
+
+    /**
+     * Applies the journal to the items loaded from {@code queue.xml}.
+     *
+     * @param items
+     *      items read from {@code queue.xml}, in the order they should be entered into the queue.
+     *      Items that entered are appended, items that left are removed.
+     *      Items of the journal that can no longer be deserialized are skipped.
+     * @return
+     *      the largest item ID seen in the journal, or 0.
+     */
+    public static long replay(@Nonnull File file, @Nonnull List<Object> items) throws IOException {
+        Replay r = new Replay(items);
+        read(file, r);
+        return r.maxId;
+    }
+
+    /**
+     * Reads all the complete records of the file.
+     */
+    private static void read(File file, Replay replay) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                Record r;
+                try {
+                    r = Record.read(in);
+                } catch (EOFException e) {
+                    return; // end of the file, or a record torn by a crash
+                }
+                if (r == null) {
+                    LOGGER.log(Level.WARNING, "Ignoring corrupted end of the queue journal {0} after {1} records", new Object[] {file, replay.count});
+                    return;
+                }
+                replay.apply(r);
+            }
+        }
+    }
+
+    private static final class Replay {
+        /**
+         * Null when only counting the records.
+         */
+        private final @CheckForNull List<Object> items;
+        private long maxId;
+        private int count;
+        /**
+         * Length of the complete records read so far.
+         */
+        private long length;
+
+        Replay(@CheckForNull List<Object> items) {
+            this.items = items;
+        }
+
+        void apply(Record r) {
+            count++;
+            length += r.size();
+            maxId = Math.max(maxId, r.id);
+            if (items == null) {
+                return;
+            }
+            // an item may already be there if we crashed between writing queue.xml and resetting the journal
+            remove(r.id);
+            if (r.type == ENTERED) {
+                try {
+                    Object o = Queue.XSTREAM.fromXML(new String(r.xml, StandardCharsets.UTF_8));
+                    if (o instanceof Item) {
+                        items.add(o);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to restore queue item " + r.id + " from the journal", e);
+                }
+            }
+        }
+
+        private void remove(long id) {
+            for (Iterator<Object> itr = items.iterator(); itr.hasNext();) {
+                Object o = itr.next();
+                if (o instanceof Item && ((Item) o).getId() == id) {
+                    itr.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class Record {
+        final byte type;
+        final long id;
+        final byte[] xml;
+
+        Record(byte type, long id, byte[] xml) {
+            this.type = type;
+            this.id = id;
+            this.xml = xml;
+        }
+
+        int size() {
+            return 1 + 8 + (type == ENTERED ? 4 + xml.length : 0);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(type);
+            out.writeLong(id);
+            if (type == ENTERED) {
+                out.writeInt(xml.length);
+                out.write(xml);
+            }
+        }
+
+        /**
+         * @return null if the record is not one we know
+         */
+        static @CheckForNull Record read(DataInputStream in) throws IOException {
+            byte type = in.readByte();
+            long id = in.readLong();
+            if (type == LEFT) {
+                return new Record(LEFT, id, null);
+            }
+            if (type != ENTERED) {
+                return null;
+            }
+            int len = in.readInt();
+            if (len < 0 || len > MAX_RECORD_SIZE) {
+                return null;
+            }
+            byte[] xml = new byte[len];
+            in.readFully(xml);
+            return new Record(ENTERED, id, xml);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(QueueJournal.class.getName());
+}
@@ -122,7 +122,8 @@ public abstract class QueueTaskDispatcher implements ExtensionPoint {
      * If a {@link QueueTaskDispatcher} returns non-null from this method, the task is placed into
      * the 'blocked' state, and generally speaking it stays in this state for a few seconds before
      * its state gets re-evaluated. If a {@link QueueTaskDispatcher} wants the blockage condition
-     * to be re-evaluated earlier, call {@link Queue#scheduleMaintenance()} to initiate that process.
+     * to be re-evaluated earlier, call {@link Queue#scheduleMaintenance()} to initiate that process,
+     * or {@link Queue#markDirty(Queue.Item)} if only a specific item is affected.
      *
      * @return
      *      null to indicate that the item is ready to proceed to the buildable state as far as this
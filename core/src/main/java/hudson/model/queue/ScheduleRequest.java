@@ -0,0 +1,67 @@
+package hudson.model.queue;
+
+import hudson.model.Action;
+import hudson.model.Queue;
+import hudson.model.Queue.Task;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Request to schedule a {@link Task}, submitted in bulk through {@link Queue#scheduleAll(Collection)}.
+ *
+ * <p>
+ * Holds the same arguments as {@link Queue#schedule2(Task, int, List)}.
+ *
+ * @since TODO
+ * @see ScheduleResult
+ */
+public final class ScheduleRequest {
+    private final Task task;
+    private final int quietPeriod;
+    private final List<Action> actions;
+
+    /**
+     * @param actions
+     *      For the convenience of the caller, this collection can contain null, and those will be silently ignored.
+     */
+    public ScheduleRequest(@Nonnull Task task, int quietPeriod, @Nonnull Collection<? extends Action> actions) {
+        this.task = task;
+        this.quietPeriod = quietPeriod;
+        List<Action> l = new ArrayList<>(actions.size());
+        for (Action a : actions) {
+            if (a != null) {
+                l.add(a);
+            }
+        }
+        this.actions = Collections.unmodifiableList(l);
+    }
+
+    public ScheduleRequest(@Nonnull Task task, int quietPeriod, Action... actions) {
+        this(task, quietPeriod, Arrays.asList(actions));
+    }
+
+    public @Nonnull Task getTask() {
+        return task;
+    }
+
+    public int getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * Actions to be associated with the scheduled item, without nulls.
+     */
+    public @Nonnull List<Action> getActions() {
+        return actions;
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduleRequest[" + task + ", quietPeriod=" + quietPeriod + ", actions=" + actions + "]";
+    }
+}
@@ -26,6 +26,15 @@ package hudson.scheduler;
 import antlr.ANTLRException;
 
 import java.io.StringReader;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.GregorianCalendar;
@@ -435,6 +444,284 @@ public final class CronTab {
         }
     }
 
+    /**
+     * Computes the start of the earliest minute at or after the given time that matches this cron tab.
+     * <p>
+     * Unlike {@link #ceil(long)}, this honors the time zone of this cron tab (or else uses the default one),
+     * and works on the bit masks directly instead of adjusting a {@link Calendar} field by field,
+     * so it only allocates a few objects per daylight saving time change it walks over.
+     * A local time skipped by a daylight saving time change never matches,
+     * and a local time repeated by one matches twice, the same way {@link #check(Calendar)} sees them.
+     *
+     * @throws RareOrImpossibleDateException if this cron tab does not match in the next 2 years
+     * @since TODO
+     */
+    public long nextFireTime(long timeInMillis) {
+        return nextFireTime(timeInMillis, zone());
+    }
+
+    /**
+     * Computes the start of the latest minute at or before the given time that matches this cron tab.
+     * This is the counterpart of {@link #nextFireTime(long)}.
+     *
+     * @throws RareOrImpossibleDateException if this cron tab did not match in the past 2 years
+     * @since TODO
+     */
+    public long previousFireTime(long timeInMillis) {
+        return previousFireTime(timeInMillis, zone());
+    }
+
+    /**
+     * Computes the next {@code count} fire times at or after the given time, in increasing order.
+     *
+     * @return
+     *      fewer than {@code count} times if this cron tab matches too rarely to find them all.
+     * @see #nextFireTime(long)
+     * @since TODO
+     */
+    public long[] nextFireTimes(long timeInMillis, int count) {
+        ZoneId zone = zone();
+        long[] r = new long[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                r[i] = nextFireTime(timeInMillis, zone);
+            } catch (RareOrImpossibleDateException e) {
+                return Arrays.copyOf(r, i);
+            }
+            timeInMillis = r[i] + MINUTE_MILLIS;
+        }
+        return r;
+    }
+
+    private ZoneId zone() {
+        return specTimezone != null && !specTimezone.isEmpty() ? TimeZone.getTimeZone(specTimezone).toZoneId() : ZoneId.systemDefault();
+    }
+
+    /**
+     * Walks forward one stretch of constant UTC offset at a time, so that local times repeated or skipped
+     * at the transitions are seen exactly as often as the clock shows them.
+     */
+    private long nextFireTime(long timeInMillis, ZoneId zone) {
+        ZoneRules rules = zone.getRules();
+        long from = Math.floorDiv(timeInMillis, MINUTE_MILLIS) * MINUTE_MILLIS;
+        long limit = from + TWO_YEARS_MILLIS;
+        while (from <= limit) {
+            Instant instant = Instant.ofEpochMilli(from);
+            int offset = rules.getOffset(instant).getTotalSeconds();
+            ZoneOffsetTransition transition = rules.nextTransition(instant);
+            long end = transition == null ? Long.MAX_VALUE : transition.toEpochSecond() * 1000;
+            long local = nextLocalTime(from / 1000 + offset, Math.floorDiv(Math.min(limit, end - 1), 1000) + offset);
+            if (local != NONE) {
+                return (local - offset) * 1000;
+            }
+            from = end;
+        }
+        throw new RareOrImpossibleDateException();
+    }
+
+    /**
+     * Counterpart of {@link #nextFireTime(long, ZoneId)}.
+     */
+    private long previousFireTime(long timeInMillis, ZoneId zone) {
+        ZoneRules rules = zone.getRules();
+        long from = Math.floorDiv(timeInMillis, MINUTE_MILLIS) * MINUTE_MILLIS;
+        long limit = from - TWO_YEARS_MILLIS;
+        while (from >= limit) {
+            int offset = rules.getOffset(Instant.ofEpochMilli(from)).getTotalSeconds();
+            // the transition at or before 'from'
+            ZoneOffsetTransition transition = rules.previousTransition(Instant.ofEpochSecond(Math.floorDiv(from, 1000) + 1));
+            long start = transition == null ? Long.MIN_VALUE : transition.toEpochSecond() * 1000;
+            long local = previousLocalTime(Math.floorDiv(from, 1000) + offset, Math.floorDiv(Math.max(limit, start), 1000) + offset);
+            if (local != NONE) {
+                return (local - offset) * 1000;
+            }
+            if (transition == null) {
+                break;
+            }
+            from = start - MINUTE_MILLIS;
+        }
+        throw new RareOrImpossibleDateException();
+    }
+
+    /**
+     * Finds the earliest matching minute at or after {@code start} and no later than {@code limit},
+     * both in seconds of local time since the epoch.
+     *
+     * @return {@link #NONE} if there is none
+     */
+    private long nextLocalTime(long start, long limit) {
+        LocalDateTime t = LocalDateTime.ofEpochSecond(start, 0, ZoneOffset.UTC);
+        int year = t.getYear(), month = t.getMonthValue(), day = t.getDayOfMonth(), hour = t.getHour(), minute = t.getMinute();
+        while (localSeconds(year, month, 1, 0, 0) <= limit) {
+            int m = nextBit(bits[3], month, 12);
+            if (m < 0) {
+                year++; month = 1; day = 1; hour = 0; minute = 0;
+                continue;
+            }
+            if (m != month) {
+                month = m; day = 1; hour = 0; minute = 0;
+            }
+            int d = nextDay(year, month, day);
+            if (d < 0) {
+                month++; day = 1; hour = 0; minute = 0;
+                continue; // month 13 is handled by nextBit
+            }
+            if (d != day) {
+                day = d; hour = 0; minute = 0;
+            }
+            int h = nextBit(bits[1], hour, 23);
+            if (h < 0) {
+                day++; hour = 0; minute = 0;
+                continue;
+            }
+            if (h != hour) {
+                hour = h; minute = 0;
+            }
+            int mi = nextBit(bits[0], minute, 59);
+            if (mi < 0) {
+                hour++; minute = 0;
+                continue;
+            }
+            long r = localSeconds(year, month, day, hour, mi);
+            return r <= limit ? r : NONE;
+        }
+        return NONE;
+    }
+
+    /**
+     * Finds the latest matching minute at or before {@code start} and no earlier than {@code limit},
+     * both in seconds of local time since the epoch.
+     *
+     * @return {@link #NONE} if there is none
+     */
+    private long previousLocalTime(long start, long limit) {
+        LocalDateTime t = LocalDateTime.ofEpochSecond(start, 0, ZoneOffset.UTC);
+        int year = t.getYear(), month = t.getMonthValue(), day = t.getDayOfMonth(), hour = t.getHour(), minute = t.getMinute();
+        while (localSeconds(year, month, 31, 23, 59) >= limit) {
+            int m = previousBit(bits[3], month, 1);
+            if (m < 0) {
+                year--; month = 12; day = 31; hour = 23; minute = 59;
+                continue;
+            }
+            if (m != month) {
+                month = m; day = 31; hour = 23; minute = 59;
+            }
+            int d = previousDay(year, month, day);
+            if (d < 0) {
+                month--; day = 31; hour = 23; minute = 59;
+                continue; // month 0 is handled by previousBit
+            }
+            if (d != day) {
+                day = d; hour = 23; minute = 59;
+            }
+            int h = previousBit(bits[1], hour, 0);
+            if (h < 0) {
+                day--; hour = 23; minute = 59;
+                continue;
+            }
+            if (h != hour) {
+                hour = h; minute = 59;
+            }
+            int mi = previousBit(bits[0], minute, 0);
+            if (mi < 0) {
+                hour--; minute = 59;
+                continue;
+            }
+            long r = localSeconds(year, month, day, hour, mi);
+            return r >= limit ? r : NONE;
+        }
+        return NONE;
+    }
+
+    /**
+     * Finds the first day of the month at or after the given one that matches both the day of month and the day of week.
+     */
+    private int nextDay(int year, int month, int day) {
+        int length = Month.of(month).length(Year.isLeap(year));
+        int dow = dayOfWeek(year, month, day);
+        for (int d = day; d <= length; d++, dow = (dow + 1) % 7) {
+            if (checkBits(bits[2], d) && checkBits(dayOfWeek, dow)) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last day of the month at or before the given one that matches both the day of month and the day of week.
+     */
+    private int previousDay(int year, int month, int day) {
+        day = Math.min(day, Month.of(month).length(Year.isLeap(year)));
+        int dow = dayOfWeek(year, month, day);
+        for (int d = day; d >= 1; d--, dow = (dow + 6) % 7) {
+            if (checkBits(bits[2], d) && checkBits(dayOfWeek, dow)) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Smallest bit at or above {@code from} and no greater than {@code max}, or -1.
+     */
+    private static int nextBit(long bits, int from, int max) {
+        if (from > max) {
+            return -1;
+        }
+        long m = bits & (-1L << from);
+        if (m == 0) {
+            return -1;
+        }
+        int r = Long.numberOfTrailingZeros(m);
+        return r <= max ? r : -1;
+    }
+
+    /**
+     * Largest bit at or below {@code from} and no less than {@code min}, or -1.
+     */
+    private static int previousBit(long bits, int from, int min) {
+        if (from < min) {
+            return -1;
+        }
+        long m = from >= 63 ? bits : bits & ((1L << (from + 1)) - 1);
+        if (m == 0) {
+            return -1;
+        }
+        int r = 63 - Long.numberOfLeadingZeros(m);
+        return r >= min ? r : -1;
+    }
+
+    /**
+     * Day of week with Sunday as 0, as in crontab.
+     */
+    static int dayOfWeek(int year, int month, int day) {
+        return (int) Math.floorMod(epochDay(year, month, day) + 4, 7); // 1970-01-01 was a Thursday
+    }
+
+    /**
+     * Same as {@code LocalDate.of(year, month, day).toEpochDay()}, but also accepts out of range days and months
+     * such as the 32nd or the 13th month, which is how the walks above step past the end of a month or year.
+     */
+    static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        int yearOfEra = (int) (y - era * 400);
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Seconds since the epoch of a local time, as if it were UTC.
+     */
+    private static long localSeconds(int year, int month, int day, int hour, int minute) {
+        return epochDay(year, month, day) * 86400 + hour * 3600 + minute * 60;
+    }
+
+    private static final long NONE = Long.MIN_VALUE;
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final long TWO_YEARS_MILLIS = 731L * 24 * 60 * 60 * 1000;
+
     void set(String format, Hash hash) throws ANTLRException {
         set(format,1,hash);
     }
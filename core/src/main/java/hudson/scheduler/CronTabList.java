@@ -24,6 +24,7 @@
 package hudson.scheduler;
 
 import antlr.ANTLRException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.Collection;
@@ -127,11 +128,42 @@ public final class CronTabList {
         return new CronTabList(r);
     }
 
+    /**
+     * Computes the next fire times of all the tabs together.
+     *
+     * @return
+     *      the first {@code count} distinct times at or after the given one that match any of the tabs, in increasing order,
+     *      or fewer if the tabs match too rarely to find them all.
+     * @see CronTab#nextFireTimes(long, int)
+     * @since TODO
+     */
+    public synchronized long[] nextFireTimes(long timeInMillis, int count) {
+        if (tabs.size() == 1) {
+            return tabs.get(0).nextFireTimes(timeInMillis, count);
+        }
+        long[] all = new long[0];
+        for (CronTab tab : tabs) {
+            long[] times = tab.nextFireTimes(timeInMillis, count);
+            int n = all.length;
+            all = Arrays.copyOf(all, n + times.length);
+            System.arraycopy(times, 0, all, n, times.length);
+        }
+        Arrays.sort(all);
+        int n = 0;
+        for (int i = 0; i < all.length && n < count; i++) {
+            if (n == 0 || all[i] != all[n - 1]) {
+                all[n++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, n);
+    }
+
     @Restricted(NoExternalUse.class) // just for form validation
     public @CheckForNull Calendar previous() {
+        long now = System.currentTimeMillis();
         Calendar nearest = null;
         for (CronTab tab : tabs) {
-            Calendar scheduled = tab.floor(tab.getTimeZone() == null ? Calendar.getInstance() : Calendar.getInstance(tab.getTimeZone()));
+            Calendar scheduled = toCalendar(tab, tab.previousFireTime(now));
             if (nearest == null || nearest.before(scheduled)) {
                 nearest = scheduled;
             }
@@ -141,15 +173,22 @@ public final class CronTabList {
 
     @Restricted(NoExternalUse.class) // just for form validation
     public @CheckForNull Calendar next() {
+        long now = System.currentTimeMillis();
         Calendar nearest = null;
         for (CronTab tab : tabs) {
-            Calendar scheduled = tab.ceil(tab.getTimeZone() == null ? Calendar.getInstance() : Calendar.getInstance(tab.getTimeZone()));
+            Calendar scheduled = toCalendar(tab, tab.nextFireTime(now));
             if (nearest == null || nearest.after(scheduled)) {
                 nearest = scheduled;
             }
         }
         return nearest;
     }
+
+    private static Calendar toCalendar(CronTab tab, long timeInMillis) {
+        Calendar cal = tab.getTimeZone() == null ? Calendar.getInstance() : Calendar.getInstance(tab.getTimeZone());
+        cal.setTimeInMillis(timeInMillis);
+        return cal;
+    }
     
     private static final Logger LOGGER = Logger.getLogger(CronTabList.class.getName());
 }
@@ -32,6 +32,8 @@ import hudson.model.AbstractProject;
 import hudson.model.Action;
 import hudson.model.AutoCompletionCandidates;
 import hudson.model.BuildListener;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
 import hudson.model.Cause.UpstreamCause;
 import hudson.model.DependencyGraph;
 import hudson.model.DependencyGraph.Dependency;
@@ -44,6 +46,8 @@ import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.ItemListener;
+import hudson.model.queue.ScheduleRequest;
+import hudson.model.queue.ScheduleResult;
 import hudson.model.queue.Tasks;
 import hudson.security.ACL;
 import hudson.security.ACLContext;
@@ -199,6 +203,9 @@ public class BuildTrigger extends Recorder implements DependencyDeclarer {
         }
         if (!jobs.isEmpty() && build.getResult().isBetterOrEqualTo(threshold)) {
             PrintStream logger = listener.getLogger();
+            // schedule all the downstream jobs at once, then report
+            List<Job<?, ?>> triggered = new ArrayList<>();
+            List<ScheduleRequest> requests = new ArrayList<>();
             for (Job<?, ?> downstream : jobs) {
                 if (Jenkins.getInstance().getItemByFullName(downstream.getFullName()) != downstream) {
                     LOGGER.log(Level.WARNING, "Running as {0} cannot even see {1} for trigger from {2}", new Object[] {Jenkins.getAuthentication().getName(), downstream, build.getParent()});
@@ -221,20 +228,70 @@ public class BuildTrigger extends Recorder implements DependencyDeclarer {
                     logger.println(Messages.BuildTrigger_NotBuildable(ModelHyperlinkNote.encodeTo(downstream)));
                     continue;
                 }
-                boolean scheduled = pj.scheduleBuild(pj.getQuietPeriod(), new UpstreamCause((Run) build));
-                if (Jenkins.getInstance().getItemByFullName(downstream.getFullName()) == downstream) {
-                    String name = ModelHyperlinkNote.encodeTo(downstream);
-                    if (scheduled) {
-                        logger.println(Messages.BuildTrigger_Triggering(name));
-                    } else {
-                        logger.println(Messages.BuildTrigger_InQueue(name));
-                    }
+                if (customizesScheduling(downstream)) {
+                    report(logger, downstream, pj.scheduleBuild(pj.getQuietPeriod(), new UpstreamCause((Run) build)));
+                    continue;
                 }
+                ScheduleRequest request = pj.getParameterizedJobMixIn().scheduleRequest(pj.getQuietPeriod(), new CauseAction(new UpstreamCause((Run) build)));
+                if (request == null) { // became unbuildable since the check above
+                    logger.println(Messages.BuildTrigger_NotBuildable(ModelHyperlinkNote.encodeTo(downstream)));
+                    continue;
+                }
+                triggered.add(downstream);
+                requests.add(request);
+            }
+            List<ScheduleResult> results = Jenkins.getInstance().getQueue().scheduleAll(requests);
+            for (int i = 0; i < triggered.size(); i++) {
+                report(logger, triggered.get(i), results.get(i).isAccepted());
             }
         }
         return true;
     }
 
+    private static void report(PrintStream logger, Job<?, ?> downstream, boolean scheduled) {
+        if (Jenkins.getInstance().getItemByFullName(downstream.getFullName()) == downstream) {
+            String name = ModelHyperlinkNote.encodeTo(downstream);
+            if (scheduled) {
+                logger.println(Messages.BuildTrigger_Triggering(name));
+            } else {
+                logger.println(Messages.BuildTrigger_InQueue(name));
+            }
+        } // otherwise upstream users should not know that it happened
+    }
+
+    /**
+     * Whether the job overrides the methods through which it would normally be scheduled,
+     * in which case it must still be triggered through them rather than in a batch.
+     */
+    private static boolean customizesScheduling(Job<?, ?> job) {
+        Class<?> c = job.getClass();
+        if (job instanceof AbstractProject) {
+            return declares(c, AbstractProject.class, "scheduleBuild", int.class, Cause.class, Action[].class)
+                    || declares(c, AbstractProject.class, "scheduleBuild2", int.class, Cause.class, Action[].class)
+                    || declares(c, AbstractProject.class, "scheduleBuild2", int.class, Cause.class, Collection.class)
+                    || declares(c, AbstractProject.class, "scheduleBuild2", int.class, Action[].class);
+        }
+        return declares(c, Job.class, "scheduleBuild", int.class, Cause.class)
+                || declares(c, Job.class, "scheduleBuild2", int.class, Action[].class);
+    }
+
+    /**
+     * Whether a class between {@code c} (inclusive) and {@code base} (exclusive) declares the method.
+     * Unlike {@link Util#isOverridden} this does not require {@code base} to declare it,
+     * as these methods may be interface defaults.
+     */
+    private static boolean declares(Class<?> c, Class<?> base, String name, Class<?>... types) {
+        for (; c != null && c != base; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, types);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // keep looking in the superclass
+            }
+        }
+        return false;
+    }
+
     /**
      * @deprecated since 1.341; use {@link #execute(AbstractBuild,BuildListener)}
      */
@@ -266,6 +323,9 @@ public class BuildTrigger extends Recorder implements DependencyDeclarer {
             }
         });
 
+        // decide what to trigger first, then schedule everything under a single queue lock
+        List<AbstractProject> triggered = new ArrayList<>();
+        List<ScheduleRequest> requests = new ArrayList<>();
         for (Dependency dep : downstreamProjects) {
             List<Action> buildActions = new ArrayList<Action>();
             if (dep.shouldTriggerBuild(build, listener, buildActions)) {
@@ -275,18 +335,27 @@ public class BuildTrigger extends Recorder implements DependencyDeclarer {
                     logger.println(Messages.BuildTrigger_Disabled(ModelHyperlinkNote.encodeTo(p)));
                     continue;
                 }
-                boolean scheduled = p.scheduleBuild(p.getQuietPeriod(), new UpstreamCause((Run)build), buildActions.toArray(new Action[buildActions.size()]));
-                if (Jenkins.getInstance().getItemByFullName(p.getFullName()) == p) {
-                    String name = ModelHyperlinkNote.encodeTo(p);
-                    if (scheduled) {
-                        logger.println(Messages.BuildTrigger_Triggering(name));
-                    } else {
-                        logger.println(Messages.BuildTrigger_InQueue(name));
-                    }
-                } // otherwise upstream users should not know that it happened
+                // same as AbstractProject.scheduleBuild(int, Cause, Action...)
+                if (customizesScheduling(p)) {
+                    report(logger, p, p.scheduleBuild(p.getQuietPeriod(), new UpstreamCause((Run) build), buildActions.toArray(new Action[buildActions.size()])));
+                    continue;
+                }
+                buildActions.add(new CauseAction(new UpstreamCause((Run) build)));
+                ScheduleRequest request = p.getParameterizedJobMixIn().scheduleRequest(p.getQuietPeriod(), buildActions.toArray(new Action[buildActions.size()]));
+                if (request == null) { // not buildable
+                    report(logger, p, false);
+                    continue;
+                }
+                triggered.add(p);
+                requests.add(request);
             }
         }
 
+        List<ScheduleResult> results = Jenkins.getInstance().getQueue().scheduleAll(requests);
+        for (int i = 0; i < triggered.size(); i++) {
+            report(logger, triggered.get(i), results.get(i).isAccepted());
+        }
+
         return true;
     }
 
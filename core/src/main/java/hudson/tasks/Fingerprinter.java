@@ -35,19 +35,23 @@ import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
+import hudson.model.Computer;
 import jenkins.model.DependencyDeclarer;
 import hudson.model.DependencyGraph;
 import hudson.model.DependencyGraph.Dependency;
 import hudson.model.Fingerprint;
 import hudson.model.Fingerprint.BuildPtr;
-import hudson.model.FingerprintMap;
 import hudson.model.Job;
+import hudson.model.Node;
 import jenkins.model.Jenkins;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.DigestCache;
 import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
 import hudson.util.PackedMap;
 import hudson.util.RunList;
 import net.sf.json.JSONObject;
@@ -67,6 +71,7 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -74,10 +79,16 @@ import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.RunAction2;
 import jenkins.tasks.SimpleBuildStep;
+import javax.annotation.CheckForNull;
 
 /**
  * Records fingerprints of the specified files.
@@ -202,11 +213,6 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
             this.md5sum = md5sum;
         }
 
-        Fingerprint addRecord(Run build) throws IOException {
-            FingerprintMap map = Jenkins.getInstance().getFingerprintMap();
-            return map.getOrCreate(produced?build:null, fileName, md5sum);
-        }
-
         private static final long serialVersionUID = 1L;
     }
 
@@ -214,50 +220,129 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
 
         private final String targets;
         private final long buildTimestamp;
+        /**
+         * Whether to use a {@link DigestCache}.
+         */
+        private final boolean cached;
+        /**
+         * Where to keep the {@link DigestCache}, if anywhere: the root directory of the node.
+         */
+        private final @CheckForNull String cacheDir;
+
+        /**
+         * How many files to hash at once on the agent.
+         */
+        private static final int DIGEST_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        private static final Logger LOGGER = Logger.getLogger(FindRecords.class.getName());
 
         FindRecords(String targets, long buildTimestamp) {
+            this(targets, buildTimestamp, false, null);
+        }
+
+        FindRecords(String targets, long buildTimestamp, boolean cached, @CheckForNull String cacheDir) {
             this.targets = targets;
             this.buildTimestamp = buildTimestamp;
+            this.cached = cached;
+            this.cacheDir = cacheDir;
         }
 
         @Override
-        public List<Record> invoke(File baseDir, VirtualChannel channel) throws IOException {
-            List<Record> results = new ArrayList<Record>();
-
+        public List<Record> invoke(final File baseDir, VirtualChannel channel) throws IOException {
             FileSet src = Util.createFileSet(baseDir,targets);
 
             DirectoryScanner ds = src.getDirectoryScanner();
-            for( String f : ds.getIncludedFiles() ) {
-                File file = new File(baseDir,f);
-
-                // consider the file to be produced by this build only if the timestamp
-                // is newer than when the build has started.
-                // 2000ms is an error margin since since VFAT only retains timestamp at 2sec precision
-                boolean produced = buildTimestamp <= file.lastModified()+2000;
-
+            String[] files = ds.getIncludedFiles();
+            final DigestCache cache = cached ? DigestCache.forDirectory(cacheDir != null ? new File(cacheDir) : null) : null;
+            List<Record> results;
+            if (files.length < 2) {
+                results = new ArrayList<Record>();
+                for (String f : files) {
+                    results.add(record(baseDir, f, cache));
+                }
+            } else {
+                // digests are mostly bound by reading the files, so read several at once
+                ExecutorService executor = Executors.newFixedThreadPool(Math.min(files.length, DIGEST_THREADS),
+                        new NamingThreadFactory(new DaemonThreadFactory(), "Fingerprinter.FindRecords"));
                 try {
-                    results.add(new Record(produced,f,file.getName(),new FilePath(file).digest()));
-                } catch (IOException e) {
-                    throw new IOException(Messages.Fingerprinter_DigestFailed(file),e);
+                    List<Future<Record>> futures = new ArrayList<>();
+                    for (final String f : files) {
+                        futures.add(executor.submit(new Callable<Record>() {
+                            @Override public Record call() throws IOException {
+                                return record(baseDir, f, cache);
+                            }
+                        }));
+                    }
+                    results = new ArrayList<Record>();
+                    for (Future<Record> future : futures) {
+                        results.add(future.get());
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
                 } catch (InterruptedException e) {
                     throw new IOException(Messages.Fingerprinter_Aborted(),e);
+                } finally {
+                    executor.shutdownNow();
                 }
             }
 
+            if (cache != null) {
+                try {
+                    cache.save();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to save " + cache, e);
+                }
+                LOGGER.log(Level.FINE, "Recorded {0} fingerprints with {1}", new Object[] {results.size(), cache});
+            }
             return results;
         }
 
+        private Record record(File baseDir, String f, @CheckForNull DigestCache cache) throws IOException {
+            File file = new File(baseDir,f);
+
+            // consider the file to be produced by this build only if the timestamp
+            // is newer than when the build has started.
+            // 2000ms is an error margin since since VFAT only retains timestamp at 2sec precision
+            boolean produced = buildTimestamp <= file.lastModified()+2000;
+
+            try {
+                return new Record(produced,f,file.getName(),cache != null ? cache.digest(file) : new FilePath(file).digest());
+            } catch (IOException e) {
+                throw new IOException(Messages.Fingerprinter_DigestFailed(file),e);
+            } catch (InterruptedException e) {
+                throw new IOException(Messages.Fingerprinter_Aborted(),e);
+            }
+        }
+
     }
 
     private void record(Run<?,?> build, FilePath ws, TaskListener listener, Map<String,String> record, final String targets) throws IOException, InterruptedException {
-        for (Record r : ws.act(new FindRecords(targets, build.getTimeInMillis()))) {
-            Fingerprint fp = r.addRecord(build);
+        String cacheDir = null;
+        if (DigestCache.ENABLED) {
+            Computer c = ws.toComputer();
+            Node n = c != null ? c.getNode() : null;
+            FilePath root = n != null ? n.getRootPath() : null;
+            if (root != null) {
+                cacheDir = root.getRemote();
+            }
+        }
+        Map<String,String> md5sums = new LinkedHashMap<String,String>();
+        Set<String> produced = new HashSet<String>();
+        for (Record r : ws.act(new FindRecords(targets, build.getTimeInMillis(), DigestCache.ENABLED, cacheDir))) {
+            md5sums.put(r.relativePath, r.md5sum);
+            if (r.produced) {
+                produced.add(r.relativePath);
+            }
+        }
+        // one save per fingerprint, rather than one for creating it and another for adding this build
+        Map<String,Fingerprint> fingerprints = Jenkins.getInstance().getFingerprintMap().recordAll(build, md5sums, produced);
+        for (String relativePath : md5sums.keySet()) {
+            Fingerprint fp = fingerprints.get(relativePath);
             if(fp==null) {
-                listener.error(Messages.Fingerprinter_FailedFor(r.relativePath));
+                listener.error(Messages.Fingerprinter_FailedFor(relativePath));
                 continue;
             }
-            fp.addFor(build);
-            record.put(r.relativePath,fp.getHashString());
+            record.put(relativePath,fp.getHashString());
         }
     }
 
@@ -53,6 +53,7 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -63,7 +64,10 @@ import javax.annotation.Nonnull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.model.Items;
 import jenkins.model.ParameterizedJobMixIn;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Triggers a {@link Build}.
@@ -100,6 +104,9 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
             // so if it fails, use whatever 'tabs' that we already have.
             LOGGER.log(Level.WARNING, String.format("Failed to parse crontab spec %s in job %s", spec, project.getFullName()), e);
         }
+        if (Cron.SCHEDULED && project instanceof ParameterizedJobMixIn.ParameterizedJob) {
+            SCHEDULE.schedule(this, currentMinute());
+        }
     }
 
     /**
@@ -121,7 +128,9 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
      * When the configuration is changed for a project, all triggers
      * are removed once and then added back.
      */
-    public void stop() {}
+    public void stop() {
+        SCHEDULE.unschedule(this);
+    }
 
     /**
      * Returns an action object if this {@link Trigger} has an action
@@ -199,12 +208,39 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
     }
 
 
+    /**
+     * Next fire times of the started triggers, used when {@link Cron#SCHEDULED} is on.
+     */
+    static final TriggerSchedule SCHEDULE = new TriggerSchedule();
+
+    private static long currentMinute() {
+        long now = System.currentTimeMillis();
+        return now - now % TimeUnit.MINUTES.toMillis(1);
+    }
+
     /**
      * Runs every minute to check {@link TimerTrigger} and schedules build.
+     *
+     * <p>
+     * With {@link #SCHEDULED} on, only the triggers whose next fire time has come are checked,
+     * rather than every trigger of every job.
      */
     @Extension @Symbol("cron")
     public static class Cron extends PeriodicWork {
+        /**
+         * Whether to keep the triggers in a {@link TriggerSchedule} instead of checking all of them every minute.
+         */
+        @Restricted(NoExternalUse.class)
+        public static /* Script Console modifiable */ boolean SCHEDULED = SystemProperties.getBoolean(Trigger.class.getName() + ".Cron.SCHEDULED");
+
+        /**
+         * How often to look for started triggers missing from the schedule, in case some job type does not call {@link Trigger#start}.
+         */
+        @Restricted(NoExternalUse.class)
+        public static /* Script Console modifiable */ long RECONCILE_INTERVAL = SystemProperties.getLong(Trigger.class.getName() + ".Cron.RECONCILE_INTERVAL", TimeUnit.HOURS.toMillis(1));
+
         private final Calendar cal = new GregorianCalendar();
+        private long lastReconciled;
 
         public Cron() {
             cal.set(Calendar.SECOND, 0);
@@ -223,7 +259,17 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
             while(new Date().getTime() >= cal.getTimeInMillis()) {
                 LOGGER.log(Level.FINE, "cron checking {0}", cal.getTime());
                 try {
-                    checkTriggers(cal);
+                    if (SCHEDULED) {
+                        long now = System.currentTimeMillis();
+                        if (now - lastReconciled >= RECONCILE_INTERVAL) {
+                            reconcileSchedule(cal.getTimeInMillis());
+                            lastReconciled = now;
+                        }
+                        checkScheduledTriggers(cal);
+                    } else {
+                        lastReconciled = 0; // so that turning it on adds the triggers right away
+                        checkTriggers(cal);
+                    }
                 } catch (Throwable e) {
                     LOGGER.log(Level.WARNING,"Cron thread throw an exception",e);
                     // SafeTimerTask.run would also catch this, but be sure to increment cal too.
@@ -241,6 +287,80 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
 
         // Are we using synchronous polling?
         SCMTrigger.DescriptorImpl scmd = inst.getDescriptorByType(SCMTrigger.DescriptorImpl.class);
+        pollSynchronously(scmd);
+
+        // Process all triggers, except SCMTriggers when synchronousPolling is set
+        for (ParameterizedJobMixIn.ParameterizedJob<?, ?> p : inst.allItems(ParameterizedJobMixIn.ParameterizedJob.class)) {
+            for (Trigger t : p.getTriggers().values()) {
+                if (!(t instanceof SCMTrigger && scmd.synchronousPolling)) {
+                    if (t !=null && t.spec != null && t.tabs != null) {
+                        LOGGER.log(Level.FINE, "cron checking {0} with spec ‘{1}’", new Object[]{p, t.spec.trim()});
+                        runIfMatches(p, t, cal);
+                    } else {
+                        LOGGER.log(Level.WARNING, "The job {0} has a syntactically incorrect config and is missing the cron spec for a trigger", p.getFullName());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Like {@link #checkTriggers(Calendar)}, but only looks at the triggers that {@link #SCHEDULE} says are due.
+     */
+    private static void checkScheduledTriggers(final Calendar cal) {
+        Jenkins inst = Jenkins.getInstance();
+        SCMTrigger.DescriptorImpl scmd = inst.getDescriptorByType(SCMTrigger.DescriptorImpl.class);
+        pollSynchronously(scmd);
+
+        long next = cal.getTimeInMillis() + TimeUnit.MINUTES.toMillis(1);
+        for (Trigger<?> t : SCHEDULE.due(cal.getTimeInMillis())) {
+            Item job = t.job;
+            if (!(job instanceof ParameterizedJobMixIn.ParameterizedJob)
+                    || !((ParameterizedJobMixIn.ParameterizedJob<?, ?>) job).getTriggers().containsValue(t)
+                    || inst.getItemByFullName(job.getFullName()) != job) {
+                // replaced or removed without stop() being called; forget about it
+                LOGGER.log(Level.FINER, "dropping stale trigger {0} of {1}", new Object[] {t, job});
+                continue;
+            }
+            if (!(t instanceof SCMTrigger && scmd.synchronousPolling)) {
+                runIfMatches((ParameterizedJobMixIn.ParameterizedJob<?, ?>) job, t, cal);
+            }
+            SCHEDULE.schedule(t, next);
+        }
+    }
+
+    /**
+     * Adds the triggers of all jobs that are missing from {@link #SCHEDULE}.
+     */
+    private static void reconcileSchedule(long fromMillis) {
+        int added = 0;
+        for (ParameterizedJobMixIn.ParameterizedJob<?, ?> p : Jenkins.getInstance().allItems(ParameterizedJobMixIn.ParameterizedJob.class)) {
+            for (Trigger<?> t : p.getTriggers().values()) {
+                if (t != null && t.tabs != null && t.job == p && !SCHEDULE.contains(t)) {
+                    SCHEDULE.schedule(t, fromMillis);
+                    added++;
+                }
+            }
+        }
+        LOGGER.log(Level.FINE, "added {0} triggers to the cron schedule, which now has {1}", new Object[] {added, SCHEDULE.size()});
+    }
+
+    private static void runIfMatches(ParameterizedJobMixIn.ParameterizedJob<?, ?> p, Trigger<?> t, Calendar cal) {
+        if (t.tabs.check(cal)) {
+            LOGGER.log(Level.CONFIG, "cron triggered {0}", p);
+            try {
+                t.run();
+            } catch (Throwable e) {
+                // t.run() is a plugin, and some of them throw RuntimeException and other things.
+                // don't let that cancel the polling activity. report and move on.
+                LOGGER.log(Level.WARNING, t.getClass().getName() + ".run() failed for " + p, e);
+            }
+        } else {
+            LOGGER.log(Level.FINER, "did not trigger {0}", p);
+        }
+    }
+
+    private static void pollSynchronously(SCMTrigger.DescriptorImpl scmd) {
         if (scmd.synchronousPolling) {
             LOGGER.fine("using synchronous polling");
 
@@ -264,32 +384,6 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
                 LOGGER.fine("synchronous polling has detected unfinished jobs, will not trigger additional jobs.");
             }
         }
-
-        // Process all triggers, except SCMTriggers when synchronousPolling is set
-        for (ParameterizedJobMixIn.ParameterizedJob<?, ?> p : inst.allItems(ParameterizedJobMixIn.ParameterizedJob.class)) {
-            for (Trigger t : p.getTriggers().values()) {
-                if (!(t instanceof SCMTrigger && scmd.synchronousPolling)) {
-                    if (t !=null && t.spec != null && t.tabs != null) {
-                        LOGGER.log(Level.FINE, "cron checking {0} with spec ‘{1}’", new Object[]{p, t.spec.trim()});
-
-                        if (t.tabs.check(cal)) {
-                            LOGGER.log(Level.CONFIG, "cron triggered {0}", p);
-                            try {
-                                t.run();
-                            } catch (Throwable e) {
-                                // t.run() is a plugin, and some of them throw RuntimeException and other things.
-                                // don't let that cancel the polling activity. report and move on.
-                                LOGGER.log(Level.WARNING, t.getClass().getName() + ".run() failed for " + p, e);
-                            }
-                        } else {
-                            LOGGER.log(Level.FINER, "did not trigger {0}", p);
-                        }
-                    } else {
-                        LOGGER.log(Level.WARNING, "The job {0} has a syntactically incorrect config and is missing the cron spec for a trigger", p.getFullName());
-                    }
-                }
-            }
-        }
     }
 
     private static final Logger LOGGER = Logger.getLogger(Trigger.class.getName());
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.triggers;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Next fire time of every started {@link Trigger} that has a cron spec, ordered by time,
+ * so that {@link Trigger.Cron} only needs to look at the triggers that are due instead of all of them every minute.
+ *
+ * <p>
+ * Fire times are computed with {@link hudson.scheduler.CronTabList#nextFireTimes(long, int)} and are only a hint:
+ * the caller still confirms with {@link hudson.scheduler.CronTabList#check(java.util.Calendar)} before running a trigger,
+ * and reschedules it from the following minute either way.
+ */
+final class TriggerSchedule {
+    private final TreeSet<Entry> queue = new TreeSet<>();
+    private final Map<Trigger<?>,Entry> entries = new IdentityHashMap<>();
+    private long sequence;
+
+    /**
+     * (Re)schedules the trigger at the first minute its spec matches at or after the given time,
+     * or removes it if it never matches.
+     */
+    synchronized void schedule(@Nonnull Trigger<?> t, long fromMillis) {
+        unschedule(t);
+        if (t.tabs == null) {
+            return;
+        }
+        long[] next = t.tabs.nextFireTimes(fromMillis, 1);
+        if (next.length == 0) {
+            return;
+        }
+        Entry e = new Entry(t, next[0], sequence++);
+        queue.add(e);
+        entries.put(t, e);
+    }
+
+    synchronized void unschedule(@Nonnull Trigger<?> t) {
+        Entry e = entries.remove(t);
+        if (e != null) {
+            queue.remove(e);
+        }
+    }
+
+    synchronized boolean contains(@Nonnull Trigger<?> t) {
+        return entries.containsKey(t);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes and returns the triggers scheduled at or before the given time, earliest first.
+     * The caller is expected to {@link #schedule} them again.
+     */
+    synchronized @Nonnull List<Trigger<?>> due(long timeInMillis) {
+        List<Trigger<?>> r = new ArrayList<>();
+        while (!queue.isEmpty() && queue.first().time <= timeInMillis) {
+            Entry e = queue.pollFirst();
+            entries.remove(e.trigger);
+            r.add(e.trigger);
+        }
+        return r;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final Trigger<?> trigger;
+        final long time;
+        /**
+         * Breaks ties between triggers due at the same minute, in the order they were scheduled.
+         */
+        final long sequence;
+
+        Entry(Trigger<?> trigger, long time, long sequence) {
+            this.trigger = trigger;
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            if (time != o.time) {
+                return time < o.time ? -1 : 1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
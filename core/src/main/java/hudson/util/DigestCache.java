@@ -0,0 +1,285 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import hudson.Util;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the MD5 digests of files, as computed by {@link Util#getDigestOf(File)},
+ * so that files which have not changed since are not read again.
+ *
+ * <p>
+ * A digest is reused as long as the file has the same path, size, modification time and
+ * {@link BasicFileAttributes#fileKey() file key} (the inode, where there is one).
+ * Files modified in the last {@link #RACY_MILLIS} are not remembered,
+ * since they could still change without their modification time changing.
+ * A cache may be kept in a file, typically in the root directory of the node, so that it outlives the agent process;
+ * it then keeps the {@link #MAX_ENTRIES} most recently used digests.
+ *
+ * <p>
+ * Used on whichever node has the files, so this only relies on what is available to agents.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class DigestCache {
+
+    /**
+     * Whether {@link hudson.tasks.Fingerprinter} and {@link hudson.FilePath#digest} use digest caches.
+     * Only read on the Jenkins side, and passed along to agents.
+     */
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(DigestCache.class.getName() + ".enabled");
+
+    /**
+     * Name of the file keeping the cache in the root directory of a node.
+     */
+    public static final String FILE_NAME = "digests.cache";
+
+    /**
+     * Number of digests kept in a file.
+     */
+    public static /* Script Console modifiable */ int MAX_ENTRIES = 100000;
+
+    static final long RACY_MILLIS = 2000;
+
+    private static final int VERSION = 1;
+
+    @GuardedBy("DigestCache.class")
+    private static final Map<File, DigestCache> caches = new HashMap<>();
+    private static final DigestCache MEMORY = new DigestCache(null);
+
+    private final @CheckForNull File file;
+
+    /**
+     * By absolute path, least recently used first.
+     */
+    @GuardedBy("this")
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    @GuardedBy("this")
+    private boolean loaded;
+    @GuardedBy("this")
+    private boolean dirty;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesHashed = new LongAdder();
+
+    private static final class Entry {
+        final long size;
+        final long lastModified;
+        final String fileKey;
+        final String digest;
+
+        Entry(long size, long lastModified, String fileKey, String digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.digest = digest;
+        }
+
+        boolean matches(Entry e) {
+            return size == e.size && lastModified == e.lastModified && fileKey.equals(e.fileKey);
+        }
+    }
+
+    private DigestCache(@CheckForNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * The cache kept in the given directory of this machine, or only in the memory of this process.
+     */
+    public static @Nonnull DigestCache forDirectory(@CheckForNull File dir) {
+        if (dir == null) {
+            return MEMORY;
+        }
+        File f = new File(dir, FILE_NAME).getAbsoluteFile();
+        synchronized (DigestCache.class) {
+            DigestCache c = caches.get(f);
+            if (c == null) {
+                caches.put(f, c = new DigestCache(f));
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Forgets caches loaded from files, so they are read again; for tests.
+     */
+    static void unload() {
+        synchronized (DigestCache.class) {
+            caches.clear();
+        }
+    }
+
+    /**
+     * Computes the MD5 digest of a file, unless known already.
+     * @return as {@link Util#getDigestOf(File)}
+     */
+    public @Nonnull String digest(@Nonnull File f) throws IOException {
+        Path p = f.toPath();
+        String key = f.getAbsolutePath();
+        Entry current = stat(p, null);
+        synchronized (this) {
+            load();
+            Entry e = entries.get(key);
+            if (e != null && e.matches(current)) {
+                hits.increment();
+                return e.digest;
+            }
+        }
+        misses.increment();
+        String digest = Util.getDigestOf(f);
+        bytesHashed.add(current.size);
+        if (System.currentTimeMillis() - current.lastModified > RACY_MILLIS) {
+            Entry after = stat(p, digest);
+            if (after.matches(current)) { // not modified while we were reading it
+                synchronized (this) {
+                    entries.put(key, after);
+                    dirty = true;
+                }
+            }
+        }
+        return digest;
+    }
+
+    private static Entry stat(Path p, String digest) throws IOException {
+        BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+        return new Entry(a.size(), a.lastModifiedTime().toMillis(), String.valueOf(a.fileKey()), digest);
+    }
+
+    @GuardedBy("this")
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file == null) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                entries.put(path, new Entry(in.readLong(), in.readLong(), in.readUTF(), in.readUTF()));
+            }
+        } catch (NoSuchFileException e) {
+            // nothing cached yet
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Ignoring unreadable " + file, e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Writes out the digests computed since the cache was last saved, if it is kept in a file.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !dirty) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry v = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(v.size);
+                out.writeLong(v.lastModified);
+                out.writeUTF(v.fileKey);
+                out.writeUTF(v.digest);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Share of the digests which did not need to be computed, between 0 and 1.
+     */
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Bytes read to compute digests which were not cached.
+     */
+    public long getBytesHashed() {
+        return bytesHashed.sum();
+    }
+
+    public synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    @Override public String toString() {
+        return "DigestCache[" + (file != null ? file : "memory") + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + String.format(", ratio=%.2f", getHitRatio()) + ", bytesHashed=" + getBytesHashed() + "]";
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(DigestCache.class.getName());
+}
@@ -51,6 +51,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import static java.util.logging.Level.FINE;
@@ -87,6 +89,14 @@ public class RobustReflectionConverter implements Converter {
     @GuardedBy("criticalFieldsLock")
     private final Map<String, Set<String>> criticalFields = new HashMap<String, Set<String>>();
 
+    /**
+     * What {@link #doUnmarshal} looks up for each element name of each class, which only changes when
+     * aliases, converters or critical fields are added, so that it need not be looked up for every element of every file.
+     * Discarded along with the other {@link XStream2#invalidateCaches caches}.
+     */
+    private transient volatile ConcurrentMap<Class<?>, ConcurrentMap<String, FieldPlan>> plans;
+    private transient volatile int plansGeneration;
+
     public RobustReflectionConverter(Mapper mapper, ReflectionProvider reflectionProvider) {
         this(mapper, reflectionProvider, new XStream2().new PluginClassOwnership());
     }
@@ -113,6 +123,69 @@ public class RobustReflectionConverter implements Converter {
             // Unlock
             criticalFieldsLock.writeLock().unlock();
         }
+        clearPlans();
+    }
+
+    void clearPlans() {
+        plans = null;
+    }
+
+    /**
+     * How an element of a given name is read into an instance of a given class, unless the element says otherwise
+     * with a {@code defined-in} attribute.
+     */
+    private static final class FieldPlan {
+        final String fieldName;
+        final boolean critical;
+        /**
+         * Null unless the element is for a field of the class, rather than an implicit collection or an unknown field.
+         */
+        final Field field;
+        /**
+         * The type to read into the field when the element does not specify one.
+         */
+        final Class defaultType;
+
+        FieldPlan(String fieldName, boolean critical, Field field, Class defaultType) {
+            this.fieldName = fieldName;
+            this.critical = critical;
+            this.field = field;
+            this.defaultType = defaultType;
+        }
+    }
+
+    private FieldPlan plan(Class<?> clazz, String nodeName) {
+        int generation = XStream2.getCacheGeneration();
+        ConcurrentMap<Class<?>, ConcurrentMap<String, FieldPlan>> all = plans;
+        if (all == null || plansGeneration != generation) {
+            plans = all = new ConcurrentHashMap<>();
+            plansGeneration = generation;
+        }
+        ConcurrentMap<String, FieldPlan> forClass = all.get(clazz);
+        if (forClass == null) {
+            forClass = new ConcurrentHashMap<>();
+            ConcurrentMap<String, FieldPlan> existing = all.putIfAbsent(clazz, forClass);
+            if (existing != null) {
+                forClass = existing;
+            }
+        }
+        FieldPlan plan = forClass.get(nodeName);
+        if (plan == null) {
+            String fieldName = mapper.realMember(clazz, nodeName);
+            boolean critical = false;
+            for (Class<?> concrete = clazz; concrete != null; concrete = concrete.getSuperclass()) {
+                // Not quite right since a subclass could shadow a field, but probably suffices:
+                if (hasCriticalField(concrete, fieldName)) {
+                    critical = true;
+                    break;
+                }
+            }
+            boolean implicitCollectionHasSameName = mapper.getImplicitCollectionDefForFieldName(clazz, nodeName) != null;
+            Field field = implicitCollectionHasSameName ? null : reflectionProvider.getFieldOrNull(clazz, fieldName);
+            plan = new FieldPlan(fieldName, critical, field, field != null ? mapper.defaultImplementationOf(field.getType()) : null);
+            forClass.put(nodeName, plan);
+        }
+        return plan;
     }
     
     private boolean hasCriticalField(Class<?> clazz, String field) {
@@ -311,26 +384,22 @@ public class RobustReflectionConverter implements Converter {
 
             boolean critical = false;
             try {
-                String fieldName = mapper.realMember(result.getClass(), reader.getNodeName());
-                for (Class<?> concrete = result.getClass(); concrete != null; concrete = concrete.getSuperclass()) {
-                    // Not quite right since a subclass could shadow a field, but probably suffices:
-                    if (hasCriticalField(concrete, fieldName)) {
-                        critical = true;
-                        break;
-                    }
-                }
-                boolean implicitCollectionHasSameName = mapper.getImplicitCollectionDefForFieldName(result.getClass(), reader.getNodeName()) != null;
+                FieldPlan plan = plan(result.getClass(), reader.getNodeName());
+                String fieldName = plan.fieldName;
+                critical = plan.critical;
 
                 Class classDefiningField = determineWhichClassDefinesField(reader);
-                boolean fieldExistsInClass = !implicitCollectionHasSameName && fieldDefinedInClass(result,fieldName);
+                boolean fieldExistsInClass = plan.field != null;
 
-                Class type = determineType(reader, fieldExistsInClass, result, fieldName, classDefiningField);
+                Class type = classDefiningField == null && fieldExistsInClass
+                        ? determineType(reader, plan)
+                        : determineType(reader, fieldExistsInClass, result, fieldName, classDefiningField);
                 final Object value;
                 if (fieldExistsInClass) {
-                    Field field = reflectionProvider.getField(result.getClass(),fieldName);
+                    Field field = plan.field;
                     value = unmarshalField(context, result, type, field);
                     // TODO the reflection provider should have returned the proper field in first place ....
-                    Class definedType = reflectionProvider.getFieldType(result, fieldName, classDefiningField);
+                    Class definedType = classDefiningField == null ? field.getType() : reflectionProvider.getFieldType(result, fieldName, classDefiningField);
                     if (!definedType.isPrimitive()) {
                         type = definedType;
                     }
@@ -454,6 +523,20 @@ public class RobustReflectionConverter implements Converter {
 
     }
 
+    /**
+     * {@link #determineType(HierarchicalStreamReader, boolean, Object, String, Class)} for a field of the class
+     * not qualified by {@code defined-in}.
+     */
+    private Class determineType(HierarchicalStreamReader reader, FieldPlan plan) {
+        String classAttribute = reader.getAttribute(mapper.aliasForAttribute("class"));
+        if (classAttribute != null) {
+            Class specifiedType = mapper.realClass(classAttribute);
+            if (plan.field.getType().isAssignableFrom(specifiedType))
+                return specifiedType;
+        }
+        return plan.defaultType;
+    }
+
     private Class determineType(HierarchicalStreamReader reader, boolean validField, Object result, String fieldName, Class definedInCls) {
         String classAttribute = reader.getAttribute(mapper.aliasForAttribute("class"));
         Class fieldType = reflectionProvider.getFieldType(result, fieldName, definedInCls);
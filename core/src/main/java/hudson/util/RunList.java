@@ -23,7 +23,9 @@
  */
 package hudson.util;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import hudson.model.AbstractBuild;
@@ -34,6 +36,12 @@ import hudson.model.Run;
 import hudson.model.TopLevelItem;
 import hudson.model.View;
 import hudson.util.Iterators.CountingPredicate;
+import jenkins.model.lazy.AbstractLazyLoadRunMap;
+import jenkins.model.lazy.BuildIndex;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
 
 import java.util.*;
 
@@ -48,32 +56,41 @@ public class RunList<R extends Run> extends AbstractList<R> {
 
     private R first;
     private Integer size;
+    /**
+     * While not null, {@link #base} is the builds of this map accepted by {@link #indexFilter},
+     * so that more filters which only need the {@link BuildIndex} can be added to it.
+     */
+    private @CheckForNull AbstractLazyLoadRunMap<R> runMap;
+    private Predicate<BuildIndex.Entry> indexFilter = Predicates.alwaysTrue();
+    private Predicate<BuildIndex.Entry> indexStop = Predicates.alwaysFalse();
+
+    /**
+     * While not null, {@link #base} is the merge of the builds of these lists, one per job,
+     * so that filters can be applied to each of them before merging.
+     */
+    private @CheckForNull List<RunList<R>> sources;
 
     public RunList() {
         base = Collections.emptyList();
     }
 
     public RunList(Job j) {
-        base = j.getBuilds();
+        RunList<R> builds = j.getBuilds();
+        base = builds.base;
+        runMap = builds.runMap;
+        indexFilter = builds.indexFilter;
+        indexStop = builds.indexStop;
     }
 
     public RunList(View view) {// this is a type unsafe operation
         Set<Job> jobs = new HashSet<Job>();
         for (TopLevelItem item : view.getItems())
             jobs.addAll(item.getAllJobs());
-
-        List<Iterable<R>> runLists = new ArrayList<Iterable<R>>();
-        for (Job job : jobs) {
-            runLists.add(job.getBuilds());
-        }
-        this.base = combine(runLists);
+        mergeBuildsOf(jobs);
     }
 
     public RunList(Collection<? extends Job> jobs) {
-        List<Iterable<R>> runLists = new ArrayList<Iterable<R>>();
-        for (Job j : jobs)
-            runLists.add(j.getBuilds());
-        this.base = combine(runLists);
+        mergeBuildsOf(jobs);
     }
 
     /**
@@ -86,28 +103,52 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * @since 2.37
      */
     public static <J extends Job<J,R>, R extends Run<J,R>> RunList<R> fromJobs(Iterable<? extends J> jobs) {
-        List<Iterable<R>> runLists = new ArrayList<>();
+        RunList<R> r = new RunList<>();
+        r.mergeBuildsOf(jobs);
+        return r;
+    }
+
+    private void mergeBuildsOf(Iterable<? extends Job> jobs) {
+        List<RunList<R>> runLists = new ArrayList<RunList<R>>();
         for (Job j : jobs)
             runLists.add(j.getBuilds());
-        return new RunList<>(combine(runLists));
+        sources = runLists;
+        base = new MergedRuns<R>(runLists);
     }
 
-    private static <R extends Run> Iterable<R> combine(Iterable<Iterable<R>> runLists) {
-        return Iterables.mergeSorted(runLists, new Comparator<R>() {
-            public int compare(R o1, R o2) {
-                long lhs = o1.getTimeInMillis();
-                long rhs = o2.getTimeInMillis();
-                if (lhs > rhs) return -1;
-                if (lhs < rhs) return 1;
-                return 0;
-            }
-        });
+    /**
+     * Applies an operation to the list of each job, if this list merges them.
+     *
+     * @return false if the caller has to apply it to this list itself
+     */
+    private boolean pushDown(Function<RunList<R>, RunList<R>> op) {
+        if (sources == null) {
+            return false;
+        }
+        for (RunList<R> s : sources) {
+            op.apply(s);
+        }
+        size = null;
+        first = null;
+        base = new MergedRuns<R>(sources);
+        return true;
     }
 
     private RunList(Iterable<R> c) {
         base = c;
     }
 
+    /**
+     * The builds of a job, which can be filtered through its {@link BuildIndex} rather than by loading them.
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public static <R extends Run> RunList<R> fromRunMap(AbstractLazyLoadRunMap<R> runs) {
+        RunList<R> r = new RunList<R>(runs.values());
+        r.runMap = runs;
+        return r;
+    }
+
     @Override
     public Iterator<R> iterator() {
         return base.iterator();
@@ -207,13 +248,45 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * <em>Warning:</em> this method mutates the original list and then returns it.
      * @since 1.544
      */
-    public RunList<R> filter(Predicate<R> predicate) {
+    public RunList<R> filter(final Predicate<R> predicate) {
+        if (pushDown(new Function<RunList<R>, RunList<R>>() {
+            public RunList<R> apply(RunList<R> s) {
+                return s.filter(predicate);
+            }
+        })) {
+            return this;
+        }
         size = null;
         first = null;
+        runMap = null;
         base = Iterables.filter(base,predicate);
         return this;
     }
 
+    /**
+     * Adds a filter that only looks at the {@link BuildIndex}, if there is one to use.
+     *
+     * @param stop ends the list at the first build it accepts
+     * @return false if the caller has to filter the builds themselves
+     */
+    private boolean filterIndexed(Predicate<BuildIndex.Entry> filter, Predicate<BuildIndex.Entry> stop) {
+        if (runMap == null) {
+            return false;
+        }
+        Predicate<BuildIndex.Entry> f = Predicates.and(indexFilter, filter);
+        Predicate<BuildIndex.Entry> s = Predicates.or(indexStop, stop);
+        Iterable<R> selected = runMap.select(Integer.MAX_VALUE, f, s);
+        if (selected == null) {
+            return false;
+        }
+        size = null;
+        first = null;
+        indexFilter = f;
+        indexStop = s;
+        base = selected;
+        return true;
+    }
+
     /**
      * Returns the first streak of the elements that satisfy the given predicate.
      *
@@ -222,6 +295,8 @@ public class RunList<R extends Run> extends AbstractList<R> {
     private RunList<R> limit(final CountingPredicate<R> predicate) {
         size = null;
         first = null;
+        runMap = null;
+        sources = null;
         final Iterable<R> nested = base;
         base = new Iterable<R>() {
             public Iterator<R> iterator() {
@@ -256,6 +331,20 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * <em>Warning:</em> this method mutates the original list and then returns it.
      */
     public RunList<R> failureOnly() {
+        if (pushDown(new Function<RunList<R>, RunList<R>>() {
+            public RunList<R> apply(RunList<R> s) {
+                return s.failureOnly();
+            }
+        })) {
+            return this;
+        }
+        if (filterIndexed(new Predicate<BuildIndex.Entry>() {
+            public boolean apply(BuildIndex.Entry e) {
+                return e.getResult()!=Result.SUCCESS;
+            }
+        }, Predicates.<BuildIndex.Entry>alwaysFalse())) {
+            return this;
+        }
         return filter(new Predicate<R>() {
             public boolean apply(R r) {
                 return r.getResult()!=Result.SUCCESS;
@@ -282,6 +371,20 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * @since 1.561
      */
     public RunList<R> completedOnly() {
+        if (pushDown(new Function<RunList<R>, RunList<R>>() {
+            public RunList<R> apply(RunList<R> s) {
+                return s.completedOnly();
+            }
+        })) {
+            return this;
+        }
+        if (filterIndexed(new Predicate<BuildIndex.Entry>() {
+            public boolean apply(BuildIndex.Entry e) {
+                return !e.isBuilding();
+            }
+        }, Predicates.<BuildIndex.Entry>alwaysFalse())) {
+            return this;
+        }
         return filter(new Predicate<R>() {
             public boolean apply(R r) {
                 return !r.isBuilding();
@@ -294,6 +397,22 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * <em>Warning:</em> this method mutates the original list and then returns it.
      */
     public RunList<R> node(final Node node) {
+        if (pushDown(new Function<RunList<R>, RunList<R>>() {
+            public RunList<R> apply(RunList<R> s) {
+                return s.node(node);
+            }
+        })) {
+            return this;
+        }
+        if (node != null) {
+            final String name = node.getNodeName();
+            // only load the builds which ran on that node, or which may have
+            filterIndexed(new Predicate<BuildIndex.Entry>() {
+                public boolean apply(BuildIndex.Entry e) {
+                    return e.getBuiltOn()==null || e.getBuiltOn().equals(name);
+                }
+            }, Predicates.<BuildIndex.Entry>alwaysFalse());
+        }
         return filter(new Predicate<R>() {
             public boolean apply(R r) {
                 return (r instanceof AbstractBuild) && ((AbstractBuild)r).getBuiltOn()==node;
@@ -320,6 +439,24 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * <em>Warning:</em> this method mutates the original list and then returns it.
      */
     public RunList<R> byTimestamp(final long start, final long end) {
+        if (pushDown(new Function<RunList<R>, RunList<R>>() {
+            public RunList<R> apply(RunList<R> s) {
+                return s.byTimestamp(start, end);
+            }
+        })) {
+            return this;
+        }
+        if (filterIndexed(new Predicate<BuildIndex.Entry>() {
+            public boolean apply(BuildIndex.Entry e) {
+                return e.getTimestamp()<end;
+            }
+        }, new Predicate<BuildIndex.Entry>() {
+            public boolean apply(BuildIndex.Entry e) {
+                return e.getTimestamp()<start;
+            }
+        })) {
+            return this;
+        }
         return
         limit(new CountingPredicate<R>() {
             public boolean apply(int index, R r) {
@@ -356,4 +493,150 @@ public class RunList<R extends Run> extends AbstractList<R> {
             }
         });
     }
+
+    /**
+     * Merges the builds of several lists by timestamp, newest first.
+     * The timestamps are taken from the {@link BuildIndex} of each job where there is one,
+     * so that builds are only loaded when they are reached.
+     * Builds which cannot be loaded, for example because they were deleted since they were indexed, are left out;
+     * so counting or skipping builds still loads them, to agree with what iterating returns.
+     * Like {@link Iterables#mergeSorted}, this expects the builds of each list to be sorted already.
+     */
+    private static final class MergedRuns<R extends Run> implements Iterable<R> {
+        private final List<RunList<R>> sources;
+
+        MergedRuns(List<RunList<R>> sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public Merge<R> iterator() {
+            return new Merge<R>(sources);
+        }
+
+        @Override
+        public String toString() {
+            return Iterables.toString(this);
+        }
+
+        private static final class Merge<R extends Run> implements Iterator<R> {
+            private final PriorityQueue<Cursor<R>> heads;
+            /**
+             * Build loaded by {@link #hasNext()} and not returned yet.
+             */
+            private R next;
+
+            Merge(List<RunList<R>> sources) {
+                heads = new PriorityQueue<Cursor<R>>(Math.max(1, sources.size()), new Comparator<Cursor<R>>() {
+                    public int compare(Cursor<R> o1, Cursor<R> o2) {
+                        return Long.compare(o2.timestamp, o1.timestamp);
+                    }
+                });
+                for (RunList<R> s : sources) {
+                    Cursor<R> c = s.cursor();
+                    if (c.advance()) {
+                        heads.add(c);
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !heads.isEmpty()) {
+                    Cursor<R> c = heads.poll();
+                    next = c.load();
+                    if (c.advance()) {
+                        heads.add(c);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public R next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                R r = next;
+                next = null;
+                return r;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+
+    /**
+     * Position in the builds of a list, which only loads them if they are not in the {@link BuildIndex}.
+     */
+    private static final class Cursor<R extends Run> {
+        private final @CheckForNull AbstractLazyLoadRunMap<R> runMap;
+        private final @CheckForNull Iterator<BuildIndex.Entry> entries;
+        private final @CheckForNull Iterator<R> runs;
+        private BuildIndex.Entry entry;
+        private R run;
+        long timestamp;
+
+        Cursor(AbstractLazyLoadRunMap<R> runMap, Iterator<BuildIndex.Entry> entries) {
+            this.runMap = runMap;
+            this.entries = entries;
+            this.runs = null;
+        }
+
+        Cursor(Iterator<R> runs) {
+            this.runMap = null;
+            this.entries = null;
+            this.runs = runs;
+        }
+
+        /**
+         * Moves to the next build.
+         *
+         * @return false at the end
+         */
+        boolean advance() {
+            if (entries != null) {
+                if (!entries.hasNext()) {
+                    return false;
+                }
+                entry = entries.next();
+                timestamp = entry.getTimestamp();
+                return true;
+            }
+            if (runs == null || !runs.hasNext()) {
+                return false;
+            }
+            run = runs.next();
+            timestamp = run.getTimeInMillis();
+            return true;
+        }
+
+        /**
+         * Gets the current build.
+         *
+         * @return null if it is gone since it was indexed
+         */
+        @CheckForNull R load() {
+            if (run == null && entry != null && runMap != null) {
+                return runMap.getByNumber(entry.getNumber());
+            }
+            return run;
+        }
+    }
+
+    /**
+     * Starts going through the builds of this list.
+     */
+    private Cursor<R> cursor() {
+        if (runMap != null) {
+            Iterable<BuildIndex.Entry> entries = runMap.selectEntries(Integer.MAX_VALUE, indexFilter, indexStop);
+            if (entries != null) {
+                return new Cursor<R>(runMap, entries.iterator());
+            }
+        }
+        return new Cursor<R>(base.iterator());
+    }
 }
@@ -74,11 +74,14 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * {@link XStream} enhanced for additional Java5 support and improved robustness.
@@ -88,6 +91,13 @@ public class XStream2 extends XStream {
 
     private static final Logger LOGGER = Logger.getLogger(XStream2.class.getName());
 
+    /**
+     * Incremented whenever classes, aliases or converters may have been added,
+     * to discard what was looked up for them so far.
+     * @see #invalidateCaches
+     */
+    private static final AtomicInteger cacheGeneration = new AtomicInteger();
+
     private RobustReflectionConverter reflectionConverter;
     private final ThreadLocal<Boolean> oldData = new ThreadLocal<Boolean>();
     private final @CheckForNull ClassOwnership classOwnership;
@@ -227,6 +237,46 @@ public class XStream2 extends XStream {
         reflectionConverter.addCriticalField(clazz, field);
     }
 
+    @Override
+    public void aliasField(String alias, Class definedIn, String fieldName) {
+        super.aliasField(alias, definedIn, fieldName);
+        clearPlans();
+    }
+
+    @Override
+    public void addImplicitCollection(Class ownerType, String fieldName, String itemFieldName, Class itemType) {
+        super.addImplicitCollection(ownerType, fieldName, itemFieldName, itemType);
+        clearPlans();
+    }
+
+    @Override
+    public void addDefaultImplementation(Class defaultImplementation, Class ofType) {
+        super.addDefaultImplementation(defaultImplementation, ofType);
+        clearPlans();
+    }
+
+    private void clearPlans() {
+        if (reflectionConverter != null) { // aliases are also set up by the XStream constructor
+            reflectionConverter.clearPlans();
+        }
+    }
+
+    /**
+     * Discards what every {@link XStream2} has looked up about classes so far,
+     * such as field mappings and the plugins owning them.
+     * Called as Jenkins goes through its initialization milestones and when a plugin is loaded,
+     * since plugins register aliases and converters while they initialize.
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public static void invalidateCaches() {
+        cacheGeneration.incrementAndGet();
+    }
+
+    static int getCacheGeneration() {
+        return cacheGeneration.get();
+    }
+
     static String trimVersion(String version) {
         // TODO seems like there should be some trick with VersionNumber to do this
         return version.replaceFirst(" .+$", "");
@@ -322,6 +372,7 @@ public class XStream2 extends XStream {
      */
     public void setMapper(Mapper m) {
         mapperInjectionPoint.setDelegate(m);
+        clearPlans();
     }
 
     final class MapperInjectionPoint extends MapperDelegate {
@@ -516,6 +567,13 @@ public class XStream2 extends XStream {
 
         private PluginManager pm;
 
+        /**
+         * {@link #ownerOf} by class, with {@code ""} for none, as {@link PluginManager#whichPlugin} looks through all plugins.
+         * Only kept once the plugin manager is known, and for one {@link #getCacheGeneration}.
+         */
+        private final Map<Class<?>, String> owners = new ConcurrentHashMap<>();
+        private volatile int ownersGeneration;
+
         @SuppressFBWarnings("NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE") // classOwnership checked for null so why does FB complain?
         @Override public String ownerOf(Class<?> clazz) {
             if (classOwnership != null) {
@@ -530,9 +588,19 @@ public class XStream2 extends XStream {
             if (pm == null) {
                 return null;
             }
-            // TODO: possibly recursively scan super class to discover dependencies
-            PluginWrapper p = pm.whichPlugin(clazz);
-            return p != null ? p.getShortName() + '@' + trimVersion(p.getVersion()) : null;
+            int generation = getCacheGeneration();
+            if (ownersGeneration != generation) {
+                owners.clear();
+                ownersGeneration = generation;
+            }
+            String owner = owners.get(clazz);
+            if (owner == null) {
+                // TODO: possibly recursively scan super class to discover dependencies
+                PluginWrapper p = pm.whichPlugin(clazz);
+                owner = p != null ? p.getShortName() + '@' + trimVersion(p.getVersion()) : "";
+                owners.put(clazz, owner);
+            }
+            return owner.isEmpty() ? null : owner;
         }
 
     }
@@ -63,6 +63,8 @@ public class InitReactorRunner {
         List<ReactorListener> r = Lists.newArrayList(ServiceLoader.load(InitReactorListener.class, Thread.currentThread().getContextClassLoader()));
         r.add(new ReactorListener() {
             final Level level = Level.parse( Configuration.getStringConfigParameter("initLogLevel", "FINE") );
+            /** When the previous {@link InitMilestone} was attained. */
+            long lastMilestone = System.nanoTime();
             public void onTaskStarted(Task t) {
                 LOGGER.log(level, "Started {0}", getDisplayName(t));
             }
@@ -81,7 +83,11 @@ public class InitReactorRunner {
                 if (milestone instanceof InitMilestone) {
                     lv = Level.INFO; // noteworthy milestones --- at least while we debug problems further
                     onInitMilestoneAttained((InitMilestone) milestone);
-                    s = milestone.toString();
+                    synchronized (this) {
+                        long now = System.nanoTime();
+                        s = milestone.toString() + " (" + TimeUnit.NANOSECONDS.toMillis(now - lastMilestone) + " ms)";
+                        lastMilestone = now;
+                    }
                 }
                 LOGGER.log(lv,s);
             }
@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Files archived by {@link ContentAddressedArtifactManager}, stored once per content under {@code JENKINS_HOME/artifactBlobs}.
+ *
+ * <p>
+ * Each blob is named by the SHA-256 of its content, in a subdirectory named by the first two digits,
+ * and counts the {@link ArtifactManifest manifests} referring to it in a {@code .refs} file next to it,
+ * so that it is deleted along with the last build archiving it.
+ * References are always added before a manifest is written and removed after it is deleted,
+ * so that a crash in between can only leave a blob behind, never delete one still in use.
+ * Blobs and counts are forced to disk before being moved into place, for the same reason.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ArtifactBlobStore {
+
+    private static volatile ArtifactBlobStore instance;
+
+    private final File dir;
+
+    /**
+     * Striped by digest, so that reference counts are updated atomically without serializing all builds.
+     */
+    private final Object[] locks = new Object[64];
+
+    ArtifactBlobStore(@Nonnull File dir) {
+        this.dir = dir;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * The store of this Jenkins.
+     */
+    public static @Nonnull ArtifactBlobStore get() {
+        File dir = new File(Jenkins.get().getRootDir(), "artifactBlobs");
+        ArtifactBlobStore s = instance;
+        if (s == null || !s.dir.equals(dir)) {
+            instance = s = new ArtifactBlobStore(dir);
+        }
+        return s;
+    }
+
+    /**
+     * The file holding the content of the given digest, whether or not it is stored.
+     */
+    public @Nonnull File blob(@Nonnull String digest) {
+        if (!isDigest(digest)) {
+            throw new IllegalArgumentException("Not a SHA-256 digest: " + digest);
+        }
+        return new File(new File(dir, digest.substring(0, 2)), digest);
+    }
+
+    private File refs(String digest) {
+        return new File(blob(digest).getPath() + ".refs");
+    }
+
+    private Object lock(String digest) {
+        return locks[(digest.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    /**
+     * Adds a reference to a blob, if it is stored.
+     * @return false if there is no such blob, in which case its content must be {@link #add added}
+     */
+    public boolean acquire(@Nonnull String digest) throws IOException {
+        synchronized (lock(digest)) {
+            if (!blob(digest).isFile()) {
+                return false;
+            }
+            writeRefs(digest, readRefs(digest) + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Stores a file under its digest, with one reference, or adds a reference if the same content is already stored.
+     * @param file a file of the same file system, which is moved into the store or deleted
+     * @return the digest of the file
+     */
+    public @Nonnull String add(@Nonnull File file) throws IOException {
+        String digest = digest(file);
+        synchronized (lock(digest)) {
+            File blob = blob(digest);
+            if (blob.isFile()) {
+                Files.delete(file.toPath());
+            } else {
+                Files.createDirectories(blob.getParentFile().toPath());
+                try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    ch.force(true);
+                }
+                Files.move(file.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            writeRefs(digest, readRefs(digest) + 1);
+        }
+        return digest;
+    }
+
+    /**
+     * Removes a reference to a blob, deleting it when it was the last one.
+     */
+    public void release(@Nonnull String digest) throws IOException {
+        synchronized (lock(digest)) {
+            int refs = readRefs(digest) - 1;
+            if (refs > 0) {
+                writeRefs(digest, refs);
+                return;
+            }
+            Files.deleteIfExists(blob(digest).toPath());
+            Files.deleteIfExists(refs(digest).toPath());
+        }
+    }
+
+    /**
+     * Number of references to a blob, 0 if it is not stored.
+     */
+    public int getReferences(@Nonnull String digest) throws IOException {
+        synchronized (lock(digest)) {
+            return blob(digest).isFile() ? readRefs(digest) : 0;
+        }
+    }
+
+    /**
+     * A directory to receive files before they are {@link #add added}.
+     */
+    public @Nonnull File newStagingDir() throws IOException {
+        File tmp = new File(dir, "tmp");
+        Files.createDirectories(tmp.toPath());
+        return Files.createTempDirectory(tmp.toPath(), "archive").toFile();
+    }
+
+    private int readRefs(String digest) throws IOException {
+        try {
+            return Integer.parseInt(new String(Files.readAllBytes(refs(digest).toPath()), StandardCharsets.US_ASCII).trim());
+        } catch (NoSuchFileException e) {
+            // a blob left without its count by a crash: it will be deleted when no longer referenced
+            return 0;
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Corrupted reference count of " + digest + "; keeping the blob", e);
+            return Integer.MAX_VALUE / 2;
+        }
+    }
+
+    private void writeRefs(String digest, int refs) throws IOException {
+        File f = refs(digest);
+        File tmp = new File(f.getPath() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(Integer.toString(refs).getBytes(StandardCharsets.US_ASCII));
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static boolean isDigest(String s) {
+        if (s.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The SHA-256 of the content of a file, in lowercase hexadecimal.
+     */
+    static @Nonnull String digest(@Nonnull File f) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(f.toPath()), md)) {
+            byte[] buf = new byte[8192];
+            while (in.read(buf) >= 0) {
+                // digesting
+            }
+        }
+        StringBuilder b = new StringBuilder(64);
+        for (byte x : md.digest()) {
+            b.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+        }
+        return b.toString();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactBlobStore.class.getName());
+}
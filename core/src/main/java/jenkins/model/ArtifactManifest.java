@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Lists the artifacts of a build archived by {@link ContentAddressedArtifactManager}, with the digest of their content.
+ *
+ * <p>
+ * Written next to {@code build.xml} as a small binary file: a version, then for each artifact its {@code /}-separated path,
+ * its digest in the {@link ArtifactBlobStore}, its length and its modification time.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ArtifactManifest implements Serializable {
+
+    private static final long serialVersionUID = 1;
+
+    private static final int VERSION = 1;
+
+    /**
+     * By path, so that the entries of a directory are next to each other.
+     */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    public static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String path;
+        private final String digest;
+        private final long length;
+        private final long lastModified;
+
+        public Entry(@Nonnull String path, @Nonnull String digest, long length, long lastModified) {
+            this.path = path;
+            this.digest = digest;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        public @Nonnull String getPath() {
+            return path;
+        }
+
+        public @Nonnull String getDigest() {
+            return digest;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    public void add(@Nonnull Entry e) {
+        entries.put(e.path, e);
+    }
+
+    public @Nonnull Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public @CheckForNull Entry get(@Nonnull String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Whether some artifact is under this {@code /}-separated directory; the empty string is the root.
+     */
+    public boolean isDirectory(@Nonnull String path) {
+        return path.isEmpty() ? !entries.isEmpty() : !under(path).isEmpty();
+    }
+
+    /**
+     * The names of the files and directories directly inside a directory.
+     */
+    public @Nonnull List<String> list(@Nonnull String path) {
+        Set<String> names = new LinkedHashSet<>();
+        int start = path.isEmpty() ? 0 : path.length() + 1;
+        for (String p : (path.isEmpty() ? entries : under(path)).keySet()) {
+            int slash = p.indexOf('/', start);
+            names.add(slash < 0 ? p.substring(start) : p.substring(start, slash));
+        }
+        return new ArrayList<>(names);
+    }
+
+    private SortedMap<String, Entry> under(String path) {
+        // '0' follows '/', so this is everything starting with path + '/'
+        return entries.subMap(path + '/', path + '0');
+    }
+
+    public static @Nonnull ArtifactManifest read(@Nonnull File f) throws IOException {
+        ArtifactManifest m = new ArtifactManifest();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(f.toPath())))) {
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of " + f);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                m.add(new Entry(in.readUTF(), in.readUTF(), in.readLong(), in.readLong()));
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Writes the manifest, replacing any previous one at once, after forcing it to disk.
+     */
+    public void write(@Nonnull File f) throws IOException {
+        File tmp = new File(f.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry v = e.getValue();
+                out.writeUTF(v.path);
+                out.writeUTF(v.digest);
+                out.writeLong(v.length);
+                out.writeLong(v.lastModified);
+            }
+            out.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.VirtualFile;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Artifact manager which stores each distinct file only once, in the {@link ArtifactBlobStore},
+ * and lists the artifacts of each build in an {@link ArtifactManifest}.
+ *
+ * <p>
+ * To archive, the agent first sends the digests of the files, and only the files whose content is not stored yet are transferred.
+ * Artifacts are served straight from the store, and their content is deleted with the last build referring to it,
+ * whether the build is deleted or only its artifacts, as by a {@link jenkins.model.BuildDiscarder},
+ * or the whole job.
+ *
+ * @see ContentAddressedArtifactManagerFactory
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public class ContentAddressedArtifactManager extends ArtifactManager {
+
+    private static final Logger LOGGER = Logger.getLogger(ContentAddressedArtifactManager.class.getName());
+
+    static final String MANIFEST = "archive.manifest";
+
+    private transient Run<?,?> build;
+
+    /**
+     * Read lazily, since listing artifacts is frequent.
+     */
+    private transient volatile ArtifactManifest manifest;
+
+    public ContentAddressedArtifactManager(Run<?,?> build) {
+        onLoad(build);
+    }
+
+    @Override public final void onLoad(Run<?,?> build) {
+        this.build = build;
+    }
+
+    private File manifestFile() {
+        return new File(build.getRootDir(), MANIFEST);
+    }
+
+    @Override public void archive(FilePath workspace, Launcher launcher, BuildListener listener, Map<String,String> artifacts) throws IOException, InterruptedException {
+        Map<String, ArtifactManifest.Entry> hashed = workspace.act(new Hash(artifacts));
+        ArtifactBlobStore store = ArtifactBlobStore.get();
+        File f = manifestFile();
+        ArtifactManifest m = f.exists() ? ArtifactManifest.read(f) : new ArtifactManifest();
+
+        List<String> acquired = new ArrayList<>();
+        List<String> replaced = new ArrayList<>();
+        // content not in the store yet, by digest as computed on the agent, to the path in the workspace
+        Map<String, String> missing = new LinkedHashMap<>();
+        List<ArtifactManifest.Entry> pending = new ArrayList<>();
+        try {
+            for (ArtifactManifest.Entry e : hashed.values()) {
+                if (store.acquire(e.getDigest())) {
+                    acquired.add(e.getDigest());
+                    put(m, e, replaced);
+                } else {
+                    missing.putIfAbsent(e.getDigest(), artifacts.get(e.getPath()));
+                    pending.add(e);
+                }
+            }
+            if (!missing.isEmpty()) {
+                File staging = store.newStagingDir();
+                try {
+                    workspace.copyRecursiveTo(new FilePath.ExplicitlySpecifiedDirScanner(missing), new FilePath(staging),
+                            "transfer of " + missing.size() + " files");
+                    // the file may have changed since it was hashed, so go by what was actually transferred
+                    Map<String, ArtifactManifest.Entry> stored = new HashMap<>();
+                    for (String digest : missing.keySet()) {
+                        File s = new File(staging, digest);
+                        long length = s.length();
+                        long lastModified = s.lastModified();
+                        String actual = store.add(s);
+                        acquired.add(actual);
+                        stored.put(digest, new ArtifactManifest.Entry("", actual, length, lastModified));
+                    }
+                    Set<String> referenced = new HashSet<>();
+                    for (ArtifactManifest.Entry e : pending) {
+                        ArtifactManifest.Entry s = stored.get(e.getDigest());
+                        if (!referenced.add(e.getDigest())) { // another artifact with the same content, stored just above
+                            if (!store.acquire(s.getDigest())) {
+                                throw new IOException("Lost " + s.getDigest() + " while archiving " + e.getPath());
+                            }
+                            acquired.add(s.getDigest());
+                        }
+                        put(m, new ArtifactManifest.Entry(e.getPath(), s.getDigest(), s.getLength(), e.getLastModified()), replaced);
+                    }
+                } finally {
+                    Util.deleteRecursive(staging);
+                }
+            }
+            m.write(f);
+            manifest = m;
+        } catch (IOException | InterruptedException | RuntimeException x) {
+            release(store, acquired, build);
+            throw x;
+        }
+        release(store, replaced, build);
+        LOGGER.log(Level.FINE, "Archived {0} files for {1}, of which {2} were not stored yet", new Object[] {hashed.size(), build, missing.size()});
+    }
+
+    /**
+     * Adds an entry, remembering what it replaces, as when archiving a file of the same name again.
+     */
+    private static void put(ArtifactManifest m, ArtifactManifest.Entry e, List<String> replaced) {
+        ArtifactManifest.Entry old = m.get(e.getPath());
+        if (old != null) {
+            replaced.add(old.getDigest());
+        }
+        m.add(e);
+    }
+
+    private static void release(ArtifactBlobStore store, List<String> digests, Object owner) {
+        for (String digest : digests) {
+            try {
+                store.release(digest);
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to release " + digest + " for " + owner, x);
+            }
+        }
+    }
+
+    @Override public final boolean delete() throws IOException, InterruptedException {
+        if (!delete(manifestFile(), build)) {
+            return false;
+        }
+        manifest = new ArtifactManifest();
+        return true;
+    }
+
+    /**
+     * Releases the artifacts of all the builds of a job about to be deleted.
+     * Its build directory is then deleted as a whole, without going through {@link #delete} for each build.
+     */
+    public static void deleteAll(@Nonnull File buildDir) throws IOException {
+        File[] builds = buildDir.listFiles();
+        if (builds == null) {
+            return;
+        }
+        for (File dir : builds) {
+            if (Files.isDirectory(dir.toPath(), LinkOption.NOFOLLOW_LINKS)) { // not the symlinks to builds
+                delete(new File(dir, MANIFEST), dir);
+            }
+        }
+    }
+
+    /**
+     * Deletes a manifest and releases the content it lists.
+     *
+     * @return false if there was no manifest
+     */
+    private static boolean delete(File f, Object owner) throws IOException {
+        ArtifactManifest m;
+        try {
+            m = ArtifactManifest.read(f);
+        } catch (NoSuchFileException | FileNotFoundException x) {
+            LOGGER.log(Level.FINE, "no artifacts to delete for {0}", owner);
+            return false;
+        }
+        // the manifest goes first: if we stop half way, some content is kept for nothing, rather than lost or released twice
+        Files.delete(f.toPath());
+        List<String> digests = new ArrayList<>();
+        for (ArtifactManifest.Entry e : m.getEntries()) {
+            digests.add(e.getDigest());
+        }
+        release(ArtifactBlobStore.get(), digests, owner);
+        LOGGER.log(Level.FINE, "deleted {0} artifacts of {1}", new Object[] {m.getEntries().size(), owner});
+        return true;
+    }
+
+    @Override public VirtualFile root() {
+        ArtifactManifest m = manifest;
+        if (m == null) {
+            File f = manifestFile();
+            try {
+                m = f.exists() ? ArtifactManifest.read(f) : new ArtifactManifest();
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to read the artifacts of " + build, x);
+                m = new ArtifactManifest();
+            }
+            manifest = m;
+        }
+        return new ManifestVirtualFile(m, new File(build.getRootDir(), "archive"), "");
+    }
+
+    /**
+     * Digests the files to archive, on the agent.
+     */
+    private static final class Hash extends MasterToSlaveFileCallable<Map<String, ArtifactManifest.Entry>> {
+        private static final long serialVersionUID = 1;
+        private final Map<String, String> artifacts;
+
+        Hash(Map<String, String> artifacts) {
+            this.artifacts = new HashMap<>(artifacts);
+        }
+
+        @Override public Map<String, ArtifactManifest.Entry> invoke(File ws, VirtualChannel channel) throws IOException, InterruptedException {
+            Map<String, ArtifactManifest.Entry> r = new LinkedHashMap<>();
+            for (Map.Entry<String, String> a : artifacts.entrySet()) {
+                File f = new File(ws, a.getValue());
+                if (!f.isFile()) {
+                    continue; // as FilePath.ExplicitlySpecifiedDirScanner does
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                r.put(a.getKey(), new ArtifactManifest.Entry(a.getKey(), ArtifactBlobStore.digest(f), f.length(), f.lastModified()));
+            }
+            return r;
+        }
+    }
+
+    /**
+     * A file or directory of an {@link ArtifactManifest}, read from the {@link ArtifactBlobStore}.
+     */
+    private static final class ManifestVirtualFile extends VirtualFile {
+        private static final long serialVersionUID = 1;
+
+        private final ArtifactManifest manifest;
+        /**
+         * Where the artifacts would be for {@link StandardArtifactManager}, only used to name them.
+         */
+        private final File archiveDir;
+        /**
+         * {@code /}-separated, empty for the root.
+         */
+        private final String path;
+
+        ManifestVirtualFile(ArtifactManifest manifest, File archiveDir, String path) {
+            this.manifest = manifest;
+            this.archiveDir = archiveDir;
+            this.path = path;
+        }
+
+        private @CheckForNull ArtifactManifest.Entry entry() {
+            return path.isEmpty() ? null : manifest.get(path);
+        }
+
+        @Override public @Nonnull String getName() {
+            return path.isEmpty() ? archiveDir.getName() : path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @Override public @Nonnull URI toURI() {
+            return path.isEmpty() ? archiveDir.toURI() : new File(archiveDir, path).toURI();
+        }
+
+        @Override public VirtualFile getParent() {
+            if (path.isEmpty()) {
+                return VirtualFile.forFile(archiveDir.getParentFile());
+            }
+            int slash = path.lastIndexOf('/');
+            return new ManifestVirtualFile(manifest, archiveDir, slash < 0 ? "" : path.substring(0, slash));
+        }
+
+        @Override public boolean isDirectory() throws IOException {
+            return manifest.isDirectory(path);
+        }
+
+        @Override public boolean isFile() throws IOException {
+            return entry() != null;
+        }
+
+        @Override public boolean exists() throws IOException {
+            return isFile() || isDirectory();
+        }
+
+        @Override public @Nonnull VirtualFile[] list() throws IOException {
+            List<VirtualFile> r = new ArrayList<>();
+            for (String name : manifest.list(path)) {
+                r.add(child(name));
+            }
+            return r.toArray(new VirtualFile[r.size()]);
+        }
+
+        @Override public @Nonnull VirtualFile child(@Nonnull String name) {
+            return new ManifestVirtualFile(manifest, archiveDir, path.isEmpty() ? name : path + '/' + name);
+        }
+
+        @Override public long length() throws IOException {
+            ArtifactManifest.Entry e = entry();
+            return e != null ? e.getLength() : 0;
+        }
+
+        @Override public long lastModified() throws IOException {
+            ArtifactManifest.Entry e = entry();
+            return e != null ? e.getLastModified() : 0;
+        }
+
+        @Override public boolean canRead() throws IOException {
+            return exists();
+        }
+
+        private File blob() throws IOException {
+            ArtifactManifest.Entry e = entry();
+            if (e == null) {
+                throw new FileNotFoundException(toURI().toString());
+            }
+            return ArtifactBlobStore.get().blob(e.getDigest());
+        }
+
+        @Override public InputStream open() throws IOException {
+            return Files.newInputStream(blob().toPath());
+        }
+
+        @Override public FileChannel openChannel() throws IOException {
+            return FileChannel.open(blob().toPath(), StandardOpenOption.READ);
+        }
+    }
+}
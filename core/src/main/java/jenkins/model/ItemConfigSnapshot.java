@@ -0,0 +1,467 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import hudson.Extension;
+import hudson.PluginWrapper;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.util.XStream2;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshot of the item configurations read at the previous startup, so that the next one can skip parsing their XML.
+ *
+ * <p>
+ * Each {@code config.xml} read while loading items is kept in the compact token format of XStream's {@link BinaryStreamWriter},
+ * with its modification time and size.
+ * At the next startup, a configuration whose file still has the same modification time and size is deserialized
+ * from those tokens rather than parsed again; the XML files remain the reference, and anything else is read from them.
+ * The whole snapshot is ignored once Jenkins or any plugin is installed, upgraded or removed, and the files
+ * {@link SaveableListener saved} since it was written are recorded in a side file so that they are not taken from it.
+ * When a startup begins making the next snapshot, that side file is set aside for the current one,
+ * so that files saved while the next snapshot is being made are not taken from it either.
+ *
+ * <p>
+ * The file has the tokens of each configuration, followed by the index of where they are and a trailer pointing to the index,
+ * so that it can be written out as items are loaded.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ItemConfigSnapshot {
+    /**
+     * Whether item configurations are read through a snapshot at startup.
+     */
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(ItemConfigSnapshot.class.getName() + ".enabled");
+
+    static final String FILE_NAME = "itemConfigs.snapshot";
+    static final String INVALID_FILE_NAME = FILE_NAME + ".invalid";
+    /**
+     * Files saved before the snapshot in progress was started, which only apply to the previous one.
+     */
+    static final String PREVIOUS_INVALID_FILE_NAME = INVALID_FILE_NAME + ".previous";
+
+    private static final int MAGIC = 0x49435350; // ICSP
+    private static final int VERSION = 1;
+
+    /**
+     * The snapshot used by the startup in progress.
+     */
+    private static volatile ItemConfigSnapshot active;
+
+    private final File root;
+    private final File file;
+    private final String plugins;
+
+    /**
+     * Entries of the previous snapshot which may still be used, by path relative to {@link #root}.
+     */
+    private final Map<String, Entry> previous;
+    private final @CheckForNull FileChannel previousData;
+
+    /**
+     * The next snapshot, made of the configurations read by this startup.
+     */
+    @GuardedBy("this")
+    private final DataOutputStream next;
+    @GuardedBy("this")
+    private final List<Entry> nextIndex = new ArrayList<>();
+    @GuardedBy("this")
+    private long nextOffset;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static final class Entry {
+        final String path;
+        final long lastModified;
+        final long size;
+        final long offset;
+        final int length;
+
+        Entry(String path, long lastModified, long size, long offset, int length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private ItemConfigSnapshot(File root, String plugins) throws IOException {
+        this.root = root;
+        this.file = new File(root, FILE_NAME);
+        this.plugins = plugins;
+        Map<String, Entry> entries = new HashMap<>();
+        FileChannel data = null;
+        List<String> invalid;
+        synchronized (ItemConfigSnapshot.class) {
+            invalid = startInvalid(root);
+        }
+        if (file.isFile()) {
+            try {
+                data = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                readIndex(data, entries);
+                for (String path : invalid) {
+                    entries.remove(path);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Ignoring unreadable " + file, e);
+                entries.clear();
+            }
+            if (entries.isEmpty() && data != null) {
+                data.close();
+                data = null;
+            }
+        }
+        this.previous = entries;
+        this.previousData = data;
+        this.next = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile())));
+    }
+
+    /**
+     * Moves the files saved so far to {@link #PREVIOUS_INVALID_FILE_NAME}, which is kept until the next snapshot replaces the current one,
+     * so that {@link #INVALID_FILE_NAME} only gets those saved from now on.
+     *
+     * @return all the files saved since the current snapshot was written
+     */
+    @GuardedBy("ItemConfigSnapshot.class")
+    private static List<String> startInvalid(File root) throws IOException {
+        File invalid = new File(root, INVALID_FILE_NAME);
+        File previous = new File(root, PREVIOUS_INVALID_FILE_NAME);
+        List<String> paths = new ArrayList<>(readInvalid(previous));
+        List<String> recent = readInvalid(invalid);
+        if (!recent.isEmpty()) {
+            paths.addAll(recent);
+            // a previous startup may have stopped before replacing the snapshot
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(previous, true), StandardCharsets.UTF_8)) {
+                for (String path : recent) {
+                    w.write(path);
+                    w.write('\n');
+                }
+            }
+        }
+        Files.deleteIfExists(invalid.toPath());
+        return paths;
+    }
+
+    private File tmpFile() {
+        return new File(root, FILE_NAME + ".tmp");
+    }
+
+    /**
+     * Starts using a snapshot for the items about to be loaded.
+     *
+     * @param root {@code JENKINS_HOME}
+     */
+    static void open(@Nonnull File root, @Nonnull Iterable<PluginWrapper> plugins) {
+        close();
+        try {
+            active = new ItemConfigSnapshot(root, hash(plugins));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Not using a snapshot of the item configurations", e);
+        }
+    }
+
+    /**
+     * Writes out the snapshot of the configurations read since {@link #open}, and stops using it.
+     */
+    static void close() {
+        ItemConfigSnapshot s = active;
+        active = null;
+        if (s != null) {
+            try {
+                s.finish();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write " + s.file, e);
+            }
+        }
+    }
+
+    /**
+     * Reads an item configuration, from the snapshot if it is up to date and one is being used.
+     *
+     * @see XmlFile#read()
+     */
+    public static Object read(@Nonnull XmlFile xml) throws IOException {
+        ItemConfigSnapshot s = active;
+        return s != null ? s.doRead(xml) : xml.read();
+    }
+
+    private Object doRead(XmlFile xml) throws IOException {
+        File f = xml.getFile();
+        String path = pathOf(f);
+        long lastModified = f.lastModified();
+        long size = f.length();
+        if (path == null) {
+            return xml.read();
+        }
+
+        Entry e = previous.get(path);
+        if (e != null && e.lastModified == lastModified && e.size == size) {
+            byte[] tokens = new byte[e.length];
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(tokens);
+                while (buf.hasRemaining()) {
+                    if (previousData.read(buf, e.offset + buf.position()) < 0) {
+                        throw new IOException("Truncated " + file);
+                    }
+                }
+                Object o = xml.getXStream().unmarshal(new BinaryStreamReader(new ByteArrayInputStream(tokens)));
+                hits.increment();
+                record(path, lastModified, size, tokens);
+                return o;
+            } catch (IOException | RuntimeException | Error x) {
+                LOGGER.log(Level.FINE, "Reading " + f + " from XML rather than from " + file, x);
+            }
+        }
+
+        misses.increment();
+        byte[] tokens;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(f.toPath()))) {
+            HierarchicalStreamReader r = XStream2.getDefaultDriver().createReader(in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(size, 1 << 20));
+            BinaryStreamWriter w = new BinaryStreamWriter(out);
+            new HierarchicalStreamCopier().copy(r, w);
+            w.close();
+            tokens = out.toByteArray();
+        } catch (RuntimeException | Error x) {
+            throw new IOException("Unable to read " + f, x);
+        }
+        try {
+            Object o = xml.getXStream().unmarshal(new BinaryStreamReader(new ByteArrayInputStream(tokens)));
+            record(path, lastModified, size, tokens);
+            return o;
+        } catch (RuntimeException | Error x) {
+            throw new IOException("Unable to read " + f, x);
+        }
+    }
+
+    /**
+     * @return the path relative to {@code JENKINS_HOME}, or null if it is elsewhere
+     */
+    private @CheckForNull String pathOf(File f) {
+        String r = root.getPath() + File.separator;
+        String p = f.getPath();
+        return p.startsWith(r) ? p.substring(r.length()) : null;
+    }
+
+    private synchronized void record(String path, long lastModified, long size, byte[] tokens) {
+        try {
+            next.write(tokens);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to write " + tmpFile(), e);
+            return;
+        }
+        nextIndex.add(new Entry(path, lastModified, size, nextOffset, tokens.length));
+        nextOffset += tokens.length;
+    }
+
+    private synchronized void finish() throws IOException {
+        try {
+            next.writeInt(MAGIC);
+            next.writeInt(VERSION);
+            next.writeUTF(plugins);
+            next.writeInt(nextIndex.size());
+            for (Entry e : nextIndex) {
+                next.writeUTF(e.path);
+                next.writeLong(e.lastModified);
+                next.writeLong(e.size);
+                next.writeLong(e.offset);
+                next.writeInt(e.length);
+            }
+            next.writeLong(nextOffset); // trailer: where the index starts
+        } finally {
+            next.close();
+            if (previousData != null) {
+                previousData.close();
+            }
+        }
+        synchronized (ItemConfigSnapshot.class) {
+            Files.move(tmpFile().toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // what was saved while this snapshot was made stays in INVALID_FILE_NAME
+            Files.deleteIfExists(new File(root, PREVIOUS_INVALID_FILE_NAME).toPath());
+        }
+        LOGGER.log(Level.INFO, "Read {0} item configurations from {1}, and parsed {2}", new Object[] {hits.sum(), file, misses.sum()});
+    }
+
+    private void readIndex(FileChannel data, Map<String, Entry> entries) throws IOException {
+        long length = data.size();
+        if (length < 8) {
+            throw new IOException("Truncated");
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        while (trailer.hasRemaining()) {
+            data.read(trailer, length - 8 + trailer.position());
+        }
+        trailer.flip();
+        long indexOffset = trailer.getLong();
+        if (indexOffset < 0 || indexOffset > length - 8) {
+            throw new IOException("Corrupted trailer");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(data.position(indexOffset))));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a snapshot of this version");
+        }
+        if (!plugins.equals(in.readUTF())) {
+            LOGGER.log(Level.FINE, "Plugins changed since {0} was written", file);
+            return;
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Entry e = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readInt());
+            if (e.offset < 0 || e.length < 0 || e.offset + e.length > indexOffset) {
+                throw new IOException("Corrupted entry for " + e.path);
+            }
+            entries.put(e.path, e);
+        }
+    }
+
+    private static List<String> readInvalid(File f) throws IOException {
+        try (BufferedReader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+            List<String> paths = new ArrayList<>();
+            String line;
+            while ((line = r.readLine()) != null) {
+                paths.add(line);
+            }
+            return paths;
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Identifies the versions of Jenkins and of the plugins, since any of them may change how configurations are read.
+     */
+    static String hash(Iterable<PluginWrapper> plugins) {
+        List<String> names = new ArrayList<>();
+        for (PluginWrapper p : plugins) {
+            names.add(p.getShortName() + ':' + p.getVersion() + (p.isActive() ? "" : "-"));
+        }
+        Collections.sort(names);
+        names.add(0, "jenkins:" + Jenkins.VERSION);
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String n : names) {
+                md.update(n.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) '\n');
+            }
+            StringBuilder b = new StringBuilder();
+            for (byte x : md.digest()) {
+                b.append(String.format("%02x", x));
+            }
+            return b.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Records that a configuration file was saved, so that it is read from XML rather than from a snapshot.
+     * This is done even before there is a snapshot file, as the first one may be in the making.
+     */
+    static void invalidate(@Nonnull File root, @Nonnull File file) {
+        String r = root.getPath() + File.separator;
+        String p = file.getPath();
+        if (!p.startsWith(r)) {
+            return;
+        }
+        synchronized (ItemConfigSnapshot.class) {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(new File(root, INVALID_FILE_NAME), true), StandardCharsets.UTF_8)) {
+                w.write(p.substring(r.length()));
+                w.write('\n');
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to record the change of " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Records the configuration files saved since the snapshot was written, so that they are read from XML.
+     */
+    @Extension
+    public static final class Invalidator extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (!file.getFile().getName().equals("config.xml")) {
+                return;
+            }
+            Jenkins j = Jenkins.getInstanceOrNull();
+            if (j == null) {
+                return;
+            }
+            File root = j.getRootDir();
+            if (!ENABLED && active == null && !new File(root, FILE_NAME).exists()) {
+                return; // no snapshot, and none in the making
+            }
+            invalidate(root, file.getFile());
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ItemConfigSnapshot.class.getName());
+}
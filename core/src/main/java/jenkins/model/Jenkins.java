@@ -1093,6 +1093,8 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
             @Override
             protected void onInitMilestoneAttained(InitMilestone milestone) {
                 initLevel = milestone;
+                // plugins may have registered aliases or converters on the way
+                XStream2.invalidateCaches();
                 if (milestone==PLUGINS_PREPARED) {
                     // set up Guice to enable injection as early as possible
                     // before this milestone, ExtensionList.ensureLoaded() won't actually try to locate instances
@@ -2106,6 +2108,25 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         }
     }
 
+    /**
+     * Updates the labels after the given nodes were added, reconfigured or removed, and removes invalid ones.
+     *
+     * Unlike {@link #trimLabels()}, the nodes of each label are only re-evaluated for the given nodes,
+     * so the cost does not grow with the number of nodes.
+     */
+    /*package*/ void trimLabels(Node... nodes) {
+        for (Iterator<Label> itr = labels.values().iterator(); itr.hasNext();) {
+            Label l = itr.next();
+            for (Node n : nodes) {
+                if (n != null) {
+                    updateLabel(l, n, n == this || getNode(n.getNodeName()) == n);
+                }
+            }
+            if(l.isEmpty())
+                itr.remove();
+        }
+    }
+
     /**
      * Binds {@link AdministrativeMonitor}s to URL.
      */
@@ -2982,6 +3003,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
     public void setLabelString(String label) throws IOException {
         this.label = label;
         save();
+        trimLabels(this);
     }
 
     @Override
@@ -3113,22 +3135,60 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                 }
 
                 clouds.setOwner(Jenkins.this);
+
+                if (ItemConfigSnapshot.ENABLED) {
+                    ItemConfigSnapshot.open(root, pluginManager.getPlugins());
+                }
             }
         });
 
         List<Handle> loadJobs = new ArrayList<>();
-        for (final File subdir : subdirs) {
-            loadJobs.add(g.requires(loadJenkins).attains(JOB_LOADED).notFatal().add("Loading item " + subdir.getName(), new Executable() {
+        if (ParallelItemLoader.ENABLED) {
+            final ParallelItemLoader loader = new ParallelItemLoader();
+            final List<ParallelItemLoader.Batch> batch = new ArrayList<>(1);
+            Handle readJobs = g.requires(loadJenkins).attains(JOB_CONFIGS_READ).notFatal().add("Reading item configurations", new Executable() {
                 public void run(Reactor session) throws Exception {
-                    if(!Items.getConfigFile(subdir).exists()) {
+                    List<File> dirs = new ArrayList<>();
+                    for (File subdir : subdirs) {
                         //Does not have job config file, so it is not a jenkins job hence skip it
-                        return;
+                        if (Items.getConfigFile(subdir).exists()) {
+                            dirs.add(subdir);
+                        }
+                    }
+                    batch.add(loader.read(Jenkins.this, dirs, false));
+                }
+            });
+            loadJobs.add(g.requires(readJobs).attains(JOB_LOADED).notFatal().add("Loading items", new Executable() {
+                public void run(Reactor session) throws Exception {
+                    ParallelItemLoader.Batch b = batch.get(0);
+                    try {
+                        loader.onLoad(b);
+                        loader.report();
+                    } finally {
+                        // even if the batch was cut short, so that the items which did load are not removed below
+                        for (Item i : b.getLoaded().values()) {
+                            TopLevelItem item = (TopLevelItem) i;
+                            items.put(item.getName(), item);
+                            loadedNames.add(item.getName());
+                        }
+                        loader.close();
                     }
-                    TopLevelItem item = (TopLevelItem) Items.load(Jenkins.this, subdir);
-                    items.put(item.getName(), item);
-                    loadedNames.add(item.getName());
                 }
             }));
+        } else {
+            for (final File subdir : subdirs) {
+                loadJobs.add(g.requires(loadJenkins).attains(JOB_LOADED).notFatal().add("Loading item " + subdir.getName(), new Executable() {
+                    public void run(Reactor session) throws Exception {
+                        if(!Items.getConfigFile(subdir).exists()) {
+                            //Does not have job config file, so it is not a jenkins job hence skip it
+                            return;
+                        }
+                        TopLevelItem item = (TopLevelItem) Items.load(Jenkins.this, subdir);
+                        items.put(item.getName(), item);
+                        loadedNames.add(item.getName());
+                    }
+                }));
+            }
         }
 
         g.requires(loadJobs.toArray(new Handle[loadJobs.size()])).attains(JOB_LOADED).add("Cleaning up obsolete items deleted from the disk", new Executable() {
@@ -3143,6 +3203,8 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                     if (!loadedNames.contains(name))
                         items.remove(name);
                 }
+
+                ItemConfigSnapshot.close();
             }
         });
 
@@ -0,0 +1,351 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model;
+
+import hudson.init.InitMilestone;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.ItemGroupMixIn;
+import hudson.model.Items;
+import hudson.security.ACL;
+import jenkins.util.SystemProperties;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads items at startup on a bounded fork-join pool, in two phases:
+ * first the {@code config.xml} of every item of a group is {@link Items#getConfigFile read}, then {@link Item#onLoad} is called on each.
+ *
+ * <p>
+ * The top level items are read before {@link InitMilestone#JOB_CONFIGS_READ} and loaded before {@link InitMilestone#JOB_LOADED}.
+ * Groups which load their children with {@link ItemGroupMixIn#loadChildren} from {@link Item#onLoad}, like folders,
+ * do so on the same pool, so that the whole tree is loaded in parallel rather than one group at a time.
+ *
+ * <p>
+ * The time spent in each phase is added up, and the items which took the longest are reported once done.
+ * The time of a group does not include the loading of its children, which are reported on their own.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ParallelItemLoader {
+    /**
+     * Whether items are loaded this way, rather than one task per top level item.
+     */
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(ParallelItemLoader.class.getName() + ".enabled");
+
+    private static final int PARALLELISM = SystemProperties.getInteger(ParallelItemLoader.class.getName() + ".parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * How many of the slowest items to report.
+     */
+    private static final int SLOWEST = 10;
+
+    /**
+     * Time spent loading the children of the item being loaded by the current thread.
+     */
+    private static final ThreadLocal<long[]> NESTED = new ThreadLocal<>();
+
+    private final ForkJoinPool pool;
+    private final ClassLoader contextClassLoader;
+    private final long start = System.nanoTime();
+
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder onLoadNanos = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    /**
+     * Fastest first, so that the head is the one to drop.
+     */
+    @GuardedBy("slowest")
+    private final PriorityQueue<Timing> slowest = new PriorityQueue<>();
+
+    public ParallelItemLoader() {
+        final AtomicInteger threads = new AtomicInteger();
+        pool = new ForkJoinPool(PARALLELISM, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                Worker t = new Worker(pool, ParallelItemLoader.this);
+                t.setName("Loading items #" + threads.incrementAndGet());
+                return t;
+            }
+        }, null, false);
+        contextClassLoader = Thread.currentThread().getContextClassLoader();
+    }
+
+    /**
+     * Gets the loader running the current thread, if any,
+     * so that groups loaded at startup load their own children with it.
+     */
+    public static @CheckForNull ParallelItemLoader current() {
+        Thread t = Thread.currentThread();
+        return t instanceof Worker ? ((Worker) t).loader : null;
+    }
+
+    private static final class Worker extends ForkJoinWorkerThread {
+        final ParallelItemLoader loader;
+
+        Worker(ForkJoinPool pool, ParallelItemLoader loader) {
+            super(pool);
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * Items of a group which were read but not loaded yet.
+     */
+    public static final class Batch {
+        private final ItemGroup parent;
+        private final List<File> dirs;
+        private final Item[] items;
+        /**
+         * Time spent reading each item, or -1 for items which already existed.
+         */
+        private final long[] readTimes;
+        /**
+         * Whether {@link Item#onLoad} completed for each item.
+         */
+        private final boolean[] loaded;
+
+        Batch(ItemGroup parent, List<File> dirs) {
+            this.parent = parent;
+            this.dirs = dirs;
+            this.items = new Item[dirs.size()];
+            this.readTimes = new long[dirs.size()];
+            this.loaded = new boolean[dirs.size()];
+        }
+
+        /**
+         * Gets the items loaded, keyed by their directory, leaving out those which failed to load.
+         * If {@link #onLoad} was cut short, these are the items it got through.
+         */
+        public @Nonnull Map<File, Item> getLoaded() {
+            Map<File, Item> r = new LinkedHashMap<>();
+            for (int i = 0; i < items.length; i++) {
+                if (loaded[i] && items[i] != null) {
+                    r.put(dirs.get(i), items[i]);
+                }
+            }
+            return r;
+        }
+    }
+
+    /**
+     * Reads the configuration of the items of a group, in parallel.
+     *
+     * @param dirs the directories of the items, each with a {@code config.xml} unless the item exists already
+     * @param retainExisting whether to keep the existing items of the group, rather than reading them again
+     */
+    public @Nonnull Batch read(@Nonnull final ItemGroup parent, @Nonnull List<File> dirs, final boolean retainExisting) {
+        final Batch b = new Batch(parent, dirs);
+        forEach(dirs.size(), new Body() {
+            @Override
+            public void run(int i) throws Exception {
+                File dir = b.dirs.get(i);
+                Item existing = retainExisting ? parent.getItem(dir.getName()) : null;
+                if (existing != null) {
+                    b.items[i] = existing;
+                    b.readTimes[i] = -1;
+                    return;
+                }
+                long t = System.nanoTime();
+                b.items[i] = (Item) ItemConfigSnapshot.read(Items.getConfigFile(dir));
+                b.readTimes[i] = System.nanoTime() - t;
+                readNanos.add(b.readTimes[i]);
+            }
+        }, b);
+        return b;
+    }
+
+    /**
+     * Calls {@link Item#onLoad} on the items read, in parallel.
+     *
+     * @return the items loaded, keyed by their directory, leaving out those which failed to load
+     */
+    public @Nonnull Map<File, Item> onLoad(@Nonnull final Batch b) {
+        forEach(b.dirs.size(), new Body() {
+            @Override
+            public void run(int i) throws Exception {
+                Item item = b.items[i];
+                if (item == null) {
+                    return; // could not be read
+                }
+                File dir = b.dirs.get(i);
+                long[] outer = NESTED.get();
+                long[] nested = new long[1];
+                NESTED.set(nested);
+                long t = System.nanoTime();
+                try {
+                    item.onLoad(b.parent, dir.getName());
+                } finally {
+                    NESTED.set(outer);
+                }
+                b.loaded[i] = true;
+                long self = System.nanoTime() - t - nested[0];
+                onLoadNanos.add(self);
+                loaded.increment();
+                record(item.getFullName(), Math.max(0, b.readTimes[i]) + self);
+            }
+        }, b);
+        return b.getLoaded();
+    }
+
+    /**
+     * Reads and then loads the items of a group.
+     * Called from the {@link Item#onLoad} of a group, the time spent here is not counted as the group's.
+     */
+    public @Nonnull Map<File, Item> load(@Nonnull ItemGroup parent, @Nonnull List<File> dirs, boolean retainExisting) {
+        long t = System.nanoTime();
+        try {
+            return onLoad(read(parent, dirs, retainExisting));
+        } finally {
+            long[] enclosing = NESTED.get();
+            if (enclosing != null) {
+                enclosing[0] += System.nanoTime() - t;
+            }
+        }
+    }
+
+    private interface Body {
+        void run(int i) throws Exception;
+    }
+
+    /**
+     * Runs the body for each index on the pool, and waits for all of them.
+     * Failures are logged, and leave the item out; only those of the JVM itself abort the batch.
+     */
+    private void forEach(int n, final Body body, final Batch b) {
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            tasks.add(ForkJoinTask.adapt(new Runnable() {
+                @Override
+                public void run() {
+                    Thread t = Thread.currentThread();
+                    ClassLoader orig = t.getContextClassLoader();
+                    t.setContextClassLoader(contextClassLoader);
+                    SecurityContext context = ACL.impersonate(ACL.SYSTEM);
+                    try {
+                        body.run(index);
+                    } catch (ThreadDeath | VirtualMachineError e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        LOGGER.log(Level.WARNING, "could not load " + b.dirs.get(index), e);
+                        b.items[index] = null;
+                        failed.increment();
+                    } finally {
+                        SecurityContextHolder.setContext(context);
+                        t.setContextClassLoader(orig);
+                    }
+                }
+            }));
+        }
+        if (current() == this) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(new Runnable() {
+                @Override
+                public void run() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            }));
+        }
+    }
+
+    private void record(String fullName, long nanos) {
+        synchronized (slowest) {
+            if (slowest.size() < SLOWEST) {
+                slowest.add(new Timing(fullName, nanos));
+            } else if (slowest.peek().nanos < nanos) {
+                slowest.poll();
+                slowest.add(new Timing(fullName, nanos));
+            }
+        }
+    }
+
+    private static final class Timing implements Comparable<Timing> {
+        final String fullName;
+        final long nanos;
+
+        Timing(String fullName, long nanos) {
+            this.fullName = fullName;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public int compareTo(Timing o) {
+            return Long.compare(nanos, o.nanos);
+        }
+
+        @Override
+        public String toString() {
+            return fullName + " (" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms)";
+        }
+    }
+
+    /**
+     * Logs how long loading took, and which items were the slowest.
+     */
+    public void report() {
+        List<Timing> top;
+        synchronized (slowest) {
+            top = new ArrayList<>(slowest);
+        }
+        Collections.sort(top, Collections.reverseOrder());
+        LOGGER.log(Level.INFO, "Loaded {0} items in {1} ms on {2} threads, spending {3} ms reading their configuration and {4} ms in onLoad; {5} failed. Slowest: {6}",
+                new Object[] {loaded.sum(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), PARALLELISM,
+                        TimeUnit.NANOSECONDS.toMillis(readNanos.sum()), TimeUnit.NANOSECONDS.toMillis(onLoadNanos.sum()), failed.sum(), top});
+    }
+
+    /**
+     * Stops the threads.
+     */
+    public void close() {
+        pool.shutdown();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ParallelItemLoader.class.getName());
+}
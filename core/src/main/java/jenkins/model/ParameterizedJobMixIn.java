@@ -43,6 +43,7 @@ import hudson.model.Queue;
 import hudson.model.Run;
 import hudson.model.listeners.ItemListener;
 import hudson.model.queue.QueueTaskFuture;
+import hudson.model.queue.ScheduleRequest;
 import hudson.search.SearchIndexBuilder;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
@@ -144,7 +145,35 @@ public abstract class ParameterizedJobMixIn<JobT extends Job<JobT, RunT> & Param
         }.scheduleBuild2(quietPeriod == -1 ? ((ParameterizedJob) job).getQuietPeriod() : quietPeriod, Arrays.asList(actions));
     }
 
-    @CheckForNull Queue.Item scheduleBuild2(int quietPeriod, List<Action> actions) {
+    /**
+     * Prepares the scheduling of a build like {@link #scheduleBuild2(Job, int, Action...)} does,
+     * so that builds of many jobs can be scheduled at once through {@link Queue#scheduleAll}.
+     * @param job a job which might be schedulable
+     * @param quietPeriod seconds to wait before starting; use {@code -1} to use the job’s default settings
+     * @param actions various actions to associate with the scheduling, such as {@link ParametersAction} or {@link CauseAction}
+     * @return a request to pass to {@link Queue#scheduleAll}; null if {@code job} is not a {@link ParameterizedJob} or it is not {@link Job#isBuildable})
+     * @since TODO
+     */
+    public static @CheckForNull ScheduleRequest scheduleRequest(final Job<?,?> job, int quietPeriod, Action... actions) {
+        if (!(job instanceof ParameterizedJob)) {
+            return null;
+        }
+        // the job's own helper, in case it customizes how builds are requested
+        return ((ParameterizedJob<?, ?>) job).getParameterizedJobMixIn()
+                .scheduleRequest(quietPeriod == -1 ? ((ParameterizedJob) job).getQuietPeriod() : quietPeriod, Arrays.asList(actions));
+    }
+
+    /**
+     * Prepares the scheduling of a build like {@link #scheduleBuild2(int, Action...)} does,
+     * so that builds of many jobs can be scheduled at once through {@link Queue#scheduleAll}.
+     * @return a request to pass to {@link Queue#scheduleAll}; null if the job is not {@link Job#isBuildable}
+     * @since TODO
+     */
+    public final @CheckForNull ScheduleRequest scheduleRequest(int quietPeriod, Action... actions) {
+        return scheduleRequest(quietPeriod, Arrays.asList(actions));
+    }
+
+    @CheckForNull ScheduleRequest scheduleRequest(int quietPeriod, List<Action> actions) {
         if (!asJob().isBuildable())
             return null;
 
@@ -152,7 +181,15 @@ public abstract class ParameterizedJobMixIn<JobT extends Job<JobT, RunT> & Param
         if (isParameterized() && Util.filter(queueActions, ParametersAction.class).isEmpty()) {
             queueActions.add(new ParametersAction(getDefaultParametersValues()));
         }
-        return Jenkins.getInstance().getQueue().schedule2(asJob(), quietPeriod, queueActions).getItem();
+        return new ScheduleRequest(asJob(), quietPeriod, queueActions);
+    }
+
+    @CheckForNull Queue.Item scheduleBuild2(int quietPeriod, List<Action> actions) {
+        ScheduleRequest request = scheduleRequest(quietPeriod, actions);
+        if (request == null)
+            return null;
+
+        return Jenkins.getInstance().getQueue().schedule2(request.getTask(), request.getQuietPeriod(), request.getActions()).getItem();
     }
 
     private List<ParameterValue> getDefaultParametersValues() {
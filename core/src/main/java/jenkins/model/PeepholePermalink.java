@@ -1,6 +1,7 @@
 package jenkins.model;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.Job;
@@ -10,6 +11,8 @@ import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
 import hudson.util.AtomicFileWriter;
 import hudson.util.StreamTaskListener;
+import jenkins.model.lazy.BuildIndex;
+import jenkins.model.lazy.LazyBuildMixIn;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
@@ -18,9 +21,12 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.apache.commons.io.FileUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Convenient base implementation for {@link Permalink}s that satisfy
@@ -71,6 +77,18 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
      */
     public abstract boolean apply(Run<?,?> run);
 
+    /**
+     * Checks if the given completed build satisfies the peep-hole criteria from its {@link BuildIndex} entry alone,
+     * so that the builds which do not need not be loaded.
+     *
+     * @return null if this cannot tell without the build itself, which is then given to {@link #apply(Run)}
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull Boolean apply(@Nonnull BuildIndex.Entry entry) {
+        return null;
+    }
+
     /**
      * The file in which the permalink target gets recorded.
      */
@@ -117,7 +135,7 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         }
 
         // start from the build 'b' and locate the build that matches the criteria going back in time
-        b = find(b);
+        b = find(job, b);
 
         updateCache(job,b);
         return b;
@@ -132,6 +150,31 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         return b;
     }
 
+    /**
+     * Like {@link #find(Run)}, but skips the builds the {@link BuildIndex} of the job rules out without loading them.
+     */
+    @SuppressWarnings("unchecked")
+    private Run<?,?> find(Job<?,?> job, Run<?,?> b) {
+        if (b != null && job instanceof LazyBuildMixIn.LazyLoadingJob) {
+            Iterable<Run<?,?>> candidates = ((LazyBuildMixIn.LazyLoadingJob) job).getLazyBuildMixIn()._getRuns().select(b.getNumber(), new Predicate<BuildIndex.Entry>() {
+                @Override
+                public boolean apply(BuildIndex.Entry e) {
+                    Boolean applies = e.isBuilding() ? null : PeepholePermalink.this.apply(e);
+                    return applies == null || applies;
+                }
+            }, Predicates.<BuildIndex.Entry>alwaysFalse());
+            if (candidates != null) {
+                for (Run<?,?> r : candidates) {
+                    if (apply(r)) {
+                        return r;
+                    }
+                }
+                return null;
+            }
+        }
+        return find(b);
+    }
+
     /**
      * Remembers the value 'n' in the cache for future {@link #resolve(Job)}.
      */
@@ -163,6 +206,29 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         return kids != null && Arrays.asList(kids).contains(link);
     }
 
+    /**
+     * Checks if the build is the target of one of the {@link Permalink#BUILTIN built-in} permalinks of its job,
+     * as far as can be told from the targets last read or written, without touching the disk.
+     *
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public static boolean isKnownTarget(@Nonnull Run<?,?> run) {
+        Job<?,?> job = run.getParent();
+        String target = String.valueOf(run.getNumber());
+        for (Permalink p : BUILTIN) {
+            if (p instanceof PeepholePermalink) {
+                File cache = ((PeepholePermalink) p).getPermalinkFile(job);
+                synchronized (symlinks) {
+                    if (target.equals(symlinks.get(cache))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     static String readSymlink(File cache) throws IOException, InterruptedException {
         synchronized (symlinks) {
             String target = symlinks.get(cache);
@@ -214,7 +280,7 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
             Job<?, ?> j = run.getParent();
             for (PeepholePermalink pp : Util.filter(j.getPermalinks(), PeepholePermalink.class)) {
                 if (pp.resolve(j)==run) {
-                    Run<?,?> r = pp.find(run.getPreviousBuild());
+                    Run<?,?> r = pp.find(j, run.getPreviousBuild());
                     if (LOGGER.isLoggable(Level.FINE))
                         LOGGER.fine("Updating "+pp.getPermalinkFile(j).getName()+" permalink from deleted "+run.getNumber()+" to "+(r == null ? -1 : r.getNumber()));
                     pp.updateCache(j,r);
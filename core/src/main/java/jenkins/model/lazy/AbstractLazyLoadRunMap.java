@@ -23,6 +23,11 @@
  */
 package jenkins.model.lazy;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.RunMap;
@@ -31,6 +36,7 @@ import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -132,6 +138,11 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer,R> i
     // copy on write
     private volatile SortedIntList numberOnDisk = new SortedIntList(0);
 
+    /**
+     * Opened on first use, if {@link BuildIndex#ENABLED}.
+     */
+    private volatile BuildIndex buildIndex;
+
     /**
      * Base directory for data.
      * In effect this is treated as a final field, but can't mark it final
@@ -169,6 +180,7 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer,R> i
      */
     public final void updateBaseDir(File dir) {
         this.dir = dir;
+        this.buildIndex = null;
     }
     
     /**
@@ -202,6 +214,156 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer,R> i
         numberOnDisk = list;
     }
 
+    /**
+     * Gets the summary of the builds, brought up to date with the disk the first time.
+     *
+     * @return null unless {@link BuildIndex#ENABLED}
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull BuildIndex getBuildIndex() {
+        if (!BuildIndex.ENABLED || dir == null) {
+            return null;
+        }
+        BuildIndex i = buildIndex;
+        if (i == null) {
+            synchronized (this) {
+                i = buildIndex;
+                if (i == null) {
+                    buildIndex = i = new BuildIndex(dir);
+                }
+            }
+        }
+        i.load(numberOnDisk);
+        return i;
+    }
+
+    /**
+     * Updates the {@link BuildIndex} after a build was saved.
+     * Does nothing until the index has been loaded, which checks every build anyway,
+     * as this is called with the lock of the build held.
+     *
+     * @param lastModified of the saved build record
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public final void recordSaved(R r, long lastModified) {
+        BuildIndex i = buildIndex;
+        if (i == null) {
+            return;
+        }
+        BuildIndex.Entry e = indexEntryOf(r);
+        if (e == null) {
+            return;
+        }
+        try {
+            i.put(e, lastModified);
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "Failed to update the build index of " + dir, x);
+        }
+    }
+
+    /**
+     * Subtype to describe a build in the {@link BuildIndex} so that this class doesn't have to depend on {@link Run}.
+     *
+     * @return null if builds of this kind cannot be indexed
+     */
+    protected @CheckForNull BuildIndex.Entry indexEntryOf(R r) {
+        return null;
+    }
+
+    /**
+     * Iterates over the builds from the given number down, loading only those the {@link BuildIndex} says may match.
+     * Builds missing from the index or still running are loaded and described afresh.
+     *
+     * @param from the number of the newest build to consider
+     * @param filter which builds to return
+     * @param stop ends the iteration at the first build it accepts, which is not returned
+     * @return null if there is no index to use
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull Iterable<R> select(int from, Predicate<BuildIndex.Entry> filter, Predicate<BuildIndex.Entry> stop) {
+        Iterable<BuildIndex.Entry> entries = selectEntries(from, filter, stop);
+        if (entries == null) {
+            return null;
+        }
+        return Iterables.filter(Iterables.transform(entries, new Function<BuildIndex.Entry, R>() {
+            @Override
+            public R apply(BuildIndex.Entry e) {
+                return getByNumber(e.getNumber());
+            }
+        }), Predicates.notNull());
+    }
+
+    /**
+     * Like {@link #select}, but only gives the entries of the builds, so that they can be looked at before the builds are loaded
+     * with {@link #getByNumber}.
+     *
+     * @return null if there is no index to use
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull Iterable<BuildIndex.Entry> selectEntries(final int from, final Predicate<BuildIndex.Entry> filter, final Predicate<BuildIndex.Entry> stop) {
+        final BuildIndex i = getBuildIndex();
+        if (i == null) {
+            return null;
+        }
+        return new Iterable<BuildIndex.Entry>() {
+            @Override
+            public Iterator<BuildIndex.Entry> iterator() {
+                final SortedIntList numbers = numberOnDisk;
+                return new AbstractIterator<BuildIndex.Entry>() {
+                    int pos = numbers.floor(from);
+
+                    @Override
+                    protected BuildIndex.Entry computeNext() {
+                        for (; pos >= 0; pos--) {
+                            int n = numbers.get(pos);
+                            BuildIndex.Entry e = i.get(n);
+                            if (e == null || e.isBuilding()) {
+                                R r = getByNumber(n);
+                                e = r != null ? indexEntryOf(r) : null;
+                                if (e == null) {
+                                    continue;
+                                }
+                            }
+                            if (stop.apply(e)) {
+                                break;
+                            }
+                            if (filter.apply(e)) {
+                                pos--;
+                                return e;
+                            }
+                        }
+                        pos = -1;
+                        return endOfData();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Counts the builds from the {@link BuildIndex} rather than by loading them.
+     *
+     * @return null if there is no index to use
+     */
+    /*package*/ @CheckForNull Integer indexedSize() {
+        BuildIndex i = getBuildIndex();
+        if (i == null) {
+            return null;
+        }
+        Index snapshot = index;
+        int count = 0;
+        for (int n : numberOnDisk) {
+            if (snapshot.byNumber.containsKey(n) ? snapshot.byNumber.get(n) != null : i.get(n) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     public Comparator<? super Integer> comparator() {
         return Collections.reverseOrder();
     }
@@ -496,7 +658,9 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer,R> i
     private R load(File dataDir, Index editInPlace) {
         assert Thread.holdsLock(this);
         try {
+            long start = System.nanoTime();
             R r = retrieve(dataDir);
+            BuildCache.get().loaded(System.nanoTime() - start);
             if (r==null)    return null;
 
             Index copy = editInPlace!=null ? editInPlace : new Index(index);
@@ -548,6 +712,14 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer,R> i
     public synchronized boolean removeValue(R run) {
         Index copy = copy();
         int n = getNumberOf(run);
+        BuildIndex i = buildIndex;
+        if (i != null) {
+            try {
+                i.remove(n);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to update the build index of " + dir, e);
+            }
+        }
         BuildReference<R> old = copy.byNumber.remove(n);
         SortedIntList a = new SortedIntList(numberOnDisk);
         a.removeValue(n);
@@ -0,0 +1,312 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model.lazy;
+
+import hudson.model.Run;
+import jenkins.model.PeepholePermalink;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps loaded builds in memory up to a budget of heap, evicting the least recently used ones first,
+ * rather than leaving it to the garbage collector as {@link java.lang.ref.SoftReference}s do.
+ * Used by {@link BuildReference.DefaultHolderFactory} in the {@code bounded} mode.
+ *
+ * <p>
+ * Recency is tracked with the CLOCK approximation of LRU, so that getting a build only sets a flag:
+ * when over budget, builds are taken in the order they were admitted, and those used since they were
+ * last looked at get a second chance.
+ * Builds which are running or the target of a permalink of their job are pinned and never evicted.
+ *
+ * <p>
+ * The size of a build can only be estimated: it is taken as a fixed overhead plus a multiple of the size of its {@code build.xml}.
+ * An evicted build which is still referenced from elsewhere, such as a running build holding on to its previous build,
+ * is not loaded again but taken back in, so that there is never more than one copy of a build in memory.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public class BuildCache {
+    /**
+     * Budget in megabytes; by default a tenth of the maximum heap.
+     */
+    static final String BUDGET_PROPERTY = BuildCache.class.getName() + ".maxMegabytes";
+
+    /**
+     * Estimated size of a build with an empty {@code build.xml}: the object itself, its actions, lists and so on.
+     */
+    static final long BASE_WEIGHT = 16 * 1024;
+    /**
+     * Estimated ratio of the size of a build in memory to the size of its {@code build.xml}.
+     */
+    static final int XML_WEIGHT = 3;
+    /**
+     * Most builds looked at for eviction at a time, so that admitting a build stays cheap when the cache is full of pinned builds.
+     */
+    static final int MAX_SWEEP = 256;
+
+    private static final BuildCache INSTANCE = new BuildCache(
+            SystemProperties.getLong(BUDGET_PROPERTY, Runtime.getRuntime().maxMemory() / 10 / (1024 * 1024)) * 1024 * 1024);
+
+    public static @Nonnull BuildCache get() {
+        return INSTANCE;
+    }
+
+    private volatile long budget;
+
+    /**
+     * Builds in the order they will be looked at for eviction.
+     * May also hold holders which were released since, which are dropped when reached.
+     */
+    @GuardedBy("this")
+    private final ArrayDeque<CachedHolder<?>> clock = new ArrayDeque<>();
+    @GuardedBy("this")
+    private long weight;
+    @GuardedBy("this")
+    private int size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    BuildCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Creates the holder of a build which was just loaded or created, and makes room for it.
+     */
+    <R> BuildReference.Holder<R> make(@Nonnull R referent) {
+        CachedHolder<R> h = new CachedHolder<>(referent, weigh(referent));
+        admit(h, referent);
+        return h;
+    }
+
+    /**
+     * Estimates how much heap a build takes.
+     */
+    long weigh(@Nonnull Object referent) {
+        if (referent instanceof Run) {
+            return BASE_WEIGHT + XML_WEIGHT * new File(((Run<?,?>) referent).getRootDir(), "build.xml").length();
+        }
+        return BASE_WEIGHT;
+    }
+
+    /**
+     * Whether a build must be kept in memory regardless of the budget.
+     */
+    boolean isPinned(@Nonnull Object referent) {
+        if (referent instanceof Run) {
+            Run<?,?> r = (Run<?,?>) referent;
+            return r.isBuilding() || PeepholePermalink.isKnownTarget(r);
+        }
+        return false;
+    }
+
+    private synchronized <R> void admit(CachedHolder<R> h, R referent) {
+        if (h.resident) {
+            return;
+        }
+        h.strong = referent;
+        h.resident = true;
+        weight += h.weight;
+        size++;
+        if (!h.queued) {
+            h.queued = true;
+            clock.addLast(h);
+        }
+        evictIfNeeded();
+    }
+
+    private synchronized void release(CachedHolder<?> h) {
+        if (h.resident) {
+            h.resident = false;
+            h.strong = null;
+            weight -= h.weight;
+            size--;
+        }
+    }
+
+    /**
+     * Evicts builds until the cache fits in the budget, or the builds looked at were all pinned or recently used.
+     */
+    @GuardedBy("this")
+    private void evictIfNeeded() {
+        for (int sweep = Math.min(2 * clock.size(), MAX_SWEEP); weight > budget && sweep > 0; sweep--) {
+            CachedHolder<?> h = clock.pollFirst();
+            if (!h.resident) {
+                h.queued = false;
+                continue;
+            }
+            Object referent = h.strong;
+            if (h.referenced || referent != null && isPinned(referent)) {
+                h.referenced = false;
+                clock.addLast(h);
+                continue;
+            }
+            h.queued = false;
+            release(h);
+            evictions.increment();
+            LOGGER.log(Level.FINER, "evicted {0}", referent);
+        }
+    }
+
+    /**
+     * Records that a build had to be loaded from disk.
+     */
+    void loaded(long nanos) {
+        misses.increment();
+        loadNanos.add(nanos);
+    }
+
+    /**
+     * Estimated heap the builds in the cache should fit in, in bytes.
+     * Pinned builds count towards it, but can take the cache over it.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Changes the budget, evicting builds right away if it shrinks.
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evictIfNeeded();
+    }
+
+    /**
+     * Estimated heap taken by the builds in the cache, in bytes.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Number of builds in the cache.
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Number of times a build was found in memory.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of times a build had to be loaded from disk.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Total time spent loading builds from disk, in milliseconds.
+     */
+    public long getLoadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(loadNanos.sum());
+    }
+
+    /**
+     * Number of builds evicted to stay within the budget.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        long h = getHitCount(), m = getMissCount();
+        return String.format("BuildCache[%d builds, %d of %d MB, %d hits, %d misses (%.1f%% hit rate), %d ms loading, %d evictions]",
+                getSize(), getWeight() >> 20, budget >> 20, h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m), getLoadTime(), getEvictionCount());
+    }
+
+    /**
+     * Holds a build strongly while in the cache, and weakly once evicted.
+     */
+    final class CachedHolder<R> implements BuildReference.Holder<R> {
+        private final WeakReference<R> weak;
+        private final long weight;
+        /**
+         * Set while in the cache.
+         */
+        private volatile R strong;
+        /**
+         * Whether the build was used since it was last looked at for eviction.
+         */
+        private volatile boolean referenced;
+        @GuardedBy("BuildCache.this")
+        private boolean resident;
+        @GuardedBy("BuildCache.this")
+        private boolean queued;
+
+        CachedHolder(R referent, long weight) {
+            this.weak = new WeakReference<>(referent);
+            this.weight = weight;
+        }
+
+        @Override
+        public @CheckForNull R get() {
+            R r = strong;
+            if (r != null) {
+                referenced = true;
+                hits.increment();
+                return r;
+            }
+            r = weak.get();
+            if (r != null) {
+                // evicted, but still in use elsewhere, so take it back rather than let it be loaded twice
+                hits.increment();
+                admit(this, r);
+            }
+            return r;
+        }
+
+        /**
+         * Drops the build from the cache, as when it is deleted.
+         */
+        void release() {
+            weak.clear();
+            BuildCache.this.release(this);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BuildCache.class.getName());
+}
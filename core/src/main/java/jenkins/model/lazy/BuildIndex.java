@@ -0,0 +1,552 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model.lazy;
+
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Summary of every build of a job, kept in the {@code buildIndex} file of its builds directory,
+ * so that builds can be searched by number, timestamp, result and so on without loading them.
+ *
+ * <p>
+ * The file is an append-only log of records, written each time a build is saved or deleted,
+ * and compacted when most of it is obsolete.
+ * It is checked against the {@code build.xml} files the first time it is used, and the builds which are
+ * missing from it or changed behind its back are read again, in parallel, with a light parse of their {@code build.xml}.
+ *
+ * <p>
+ * The entries of builds which were still running when saved may be stale, so users of the index
+ * should look at the build itself for those.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class BuildIndex {
+    /**
+     * Whether jobs keep a build index.
+     */
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(BuildIndex.class.getName() + ".enabled");
+
+    static final String FILE_NAME = "buildIndex";
+
+    private static final int MAGIC = 0x42494458; // BIDX
+    private static final int VERSION = 2;
+    private static final byte PUT = 'P';
+    private static final byte REMOVE = 'R';
+
+    /**
+     * Shared by all the jobs, which are few to be rebuilt at the same time.
+     */
+    private static final ExecutorService POOL;
+
+    static {
+        int n = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(n, n, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "BuildIndex rebuild"));
+        pool.allowCoreThreadTimeOut(true);
+        POOL = pool;
+    }
+
+    private final File file;
+
+    /**
+     * Newest first.
+     */
+    private final ConcurrentSkipListMap<Integer, Entry> entries = new ConcurrentSkipListMap<>(Collections.reverseOrder());
+
+    /**
+     * Number of records in {@link #file}, live or not; -1 until it is read.
+     */
+    @GuardedBy("this")
+    private int records = -1;
+
+    /**
+     * Whether {@link #load} has started, and finished.
+     * Lets {@link #put} return without waiting for a load in progress.
+     */
+    @GuardedBy("saved")
+    private volatile boolean loading, loaded;
+
+    /**
+     * Builds saved while loading, applied once it is done.
+     */
+    @GuardedBy("saved")
+    private final Map<Integer, Entry> saved = new HashMap<>();
+
+    BuildIndex(@Nonnull File buildDir) {
+        this.file = new File(buildDir, FILE_NAME);
+    }
+
+    /**
+     * What is known about one build.
+     */
+    public static final class Entry {
+        private final int number;
+        private final String id;
+        private final long timestamp;
+        private final long duration;
+        private final @CheckForNull Result result;
+        private final boolean building;
+        private final @CheckForNull String displayName;
+        private final @CheckForNull String builtOn;
+        /**
+         * Of the {@code build.xml} this was read from, or 0 if not known.
+         */
+        private final long lastModified;
+
+        Entry(int number, @Nonnull String id, long timestamp, long duration, @CheckForNull Result result, boolean building,
+              @CheckForNull String displayName, @CheckForNull String builtOn, long lastModified) {
+            this.number = number;
+            this.id = id;
+            this.timestamp = timestamp;
+            this.duration = duration;
+            this.result = result;
+            this.building = building;
+            this.displayName = displayName;
+            this.builtOn = builtOn;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Describes a build as it is now.
+         */
+        public static @Nonnull Entry of(@Nonnull Run<?,?> r) {
+            return new Entry(r.getNumber(), r.getId(), r.getTimeInMillis(), r.getDuration(), r.getResult(), r.isBuilding(),
+                    r.hasCustomDisplayName() ? r.getDisplayName() : null,
+                    r instanceof AbstractBuild ? Util.fixNull(((AbstractBuild<?,?>) r).getBuiltOnStr()) : null, 0);
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public @Nonnull String getId() {
+            return id;
+        }
+
+        /**
+         * @see Run#getTimeInMillis()
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public @CheckForNull Result getResult() {
+            return result;
+        }
+
+        /**
+         * Whether the build was running when this was recorded, in which case the other fields may have changed since.
+         */
+        public boolean isBuilding() {
+            return building;
+        }
+
+        /**
+         * @see Run#getDisplayName()
+         */
+        public @Nonnull String getDisplayName() {
+            return displayName != null ? displayName : "#" + number;
+        }
+
+        /**
+         * Name of the node the build ran on, "" for the master.
+         *
+         * @return null if not known, for example if this is not an {@link AbstractBuild}
+         * @see AbstractBuild#getBuiltOnStr()
+         */
+        public @CheckForNull String getBuiltOn() {
+            return builtOn;
+        }
+
+        private Entry withLastModified(long lastModified) {
+            return new Entry(number, id, timestamp, duration, result, building, displayName, builtOn, lastModified);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(PUT);
+            out.writeInt(number);
+            out.writeUTF(id);
+            out.writeLong(timestamp);
+            out.writeLong(duration);
+            out.writeUTF(result != null ? result.toString() : "");
+            out.writeBoolean(building);
+            out.writeBoolean(displayName != null);
+            if (displayName != null) {
+                out.writeUTF(displayName);
+            }
+            out.writeBoolean(builtOn != null);
+            if (builtOn != null) {
+                out.writeUTF(builtOn);
+            }
+            out.writeLong(lastModified);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            int number = in.readInt();
+            String id = in.readUTF();
+            long timestamp = in.readLong();
+            long duration = in.readLong();
+            String result = in.readUTF();
+            boolean building = in.readBoolean();
+            String displayName = in.readBoolean() ? in.readUTF() : null;
+            String builtOn = in.readBoolean() ? in.readUTF() : null;
+            long lastModified = in.readLong();
+            return new Entry(number, id, timestamp, duration, result.isEmpty() ? null : Result.fromString(result), building, displayName, builtOn, lastModified);
+        }
+
+        @Override
+        public String toString() {
+            return "#" + number + " " + result + (building ? " building" : "") + " at " + timestamp;
+        }
+    }
+
+    /**
+     * The entry of a build.
+     *
+     * @return null if it is not in the index, for example if it has not been saved yet
+     */
+    public @CheckForNull Entry get(int number) {
+        return entries.get(number);
+    }
+
+    /**
+     * All the entries, newest first.
+     */
+    public @Nonnull Iterable<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Records a build which was just saved.
+     *
+     * @param lastModified of its {@code build.xml}
+     */
+    void put(@Nonnull Entry e, long lastModified) throws IOException {
+        e = e.withLastModified(lastModified);
+        if (!loaded) {
+            synchronized (saved) {
+                if (!loading) {
+                    return; // not loaded yet; the build will be checked when it is
+                }
+                if (!loaded) {
+                    saved.put(e.number, e);
+                    return;
+                }
+            }
+        }
+        synchronized (this) {
+            entries.put(e.number, e);
+            append(e);
+        }
+    }
+
+    /**
+     * Records a build which was deleted.
+     */
+    synchronized void remove(int number) throws IOException {
+        if (records < 0 || entries.remove(number) == null) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            out.writeByte(REMOVE);
+            out.writeInt(number);
+        }
+        records++;
+        compactIfNeeded();
+    }
+
+    @GuardedBy("this")
+    private void append(Entry e) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if (records == 0 && file.length() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            e.write(out);
+        }
+        records++;
+        compactIfNeeded();
+    }
+
+    @GuardedBy("this")
+    private void compactIfNeeded() throws IOException {
+        if (records > 2 * entries.size() + 64) {
+            compact();
+        }
+    }
+
+    @GuardedBy("this")
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Entry e : entries.values()) {
+                e.write(out);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = entries.size();
+    }
+
+    /**
+     * Reads the index, and brings it up to date with the builds on disk.
+     *
+     * @param numbers the numbers of the builds on disk
+     */
+    synchronized void load(@Nonnull Iterable<Integer> numbers) {
+        if (records >= 0) {
+            return;
+        }
+        synchronized (saved) {
+            loading = true;
+        }
+        entries.clear();
+        records = 0;
+        boolean rewrite = false;
+        if (file.exists()) {
+            try {
+                rewrite = !read();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Rebuilding the unreadable " + file, e);
+                entries.clear();
+                rewrite = true;
+            }
+        }
+
+        File dir = file.getParentFile();
+        List<Integer> onDisk = new ArrayList<>();
+        List<Future<Entry>> checks = new ArrayList<>();
+        for (int n : numbers) {
+            Entry known = entries.get(n);
+            onDisk.add(n);
+            checks.add(POOL.submit(() -> check(new File(dir, Integer.toString(n)), n, known)));
+        }
+        Set<Integer> live = new HashSet<>(onDisk);
+        int stale = entries.size();
+        entries.keySet().retainAll(live);
+        stale -= entries.size();
+        for (int i = 0; i < checks.size(); i++) {
+            try {
+                Entry e = checks.get(i).get();
+                if (e == null ? entries.remove(onDisk.get(i)) != null : entries.put(e.number, e) != e) {
+                    stale++;
+                }
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.WARNING, "Failed to index a build of " + dir, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        synchronized (saved) {
+            for (Entry e : saved.values()) {
+                if (live.contains(e.number) && entries.put(e.number, e) != e) {
+                    stale++;
+                }
+            }
+            saved.clear();
+            loaded = true;
+        }
+
+        try {
+            if (rewrite || stale > 0) {
+                LOGGER.log(Level.FINE, "Updated {0} entries of {1}", new Object[] {stale, file});
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+        }
+    }
+
+    /**
+     * Replays the records of {@link #file} into {@link #entries}.
+     *
+     * @return false if the end of the file was torn or corrupted
+     */
+    @GuardedBy("this")
+    private boolean read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    return true;
+                }
+                if (type == PUT) {
+                    Entry e = Entry.read(in);
+                    entries.put(e.number, e);
+                } else if (type == REMOVE) {
+                    entries.remove(in.readInt());
+                } else {
+                    return false;
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks the entry of one build against its {@code build.xml}.
+     *
+     * @return the entry, read again if it was out of date, or null if there is no {@code build.xml}
+     */
+    private static @CheckForNull Entry check(File buildDir, int number, @CheckForNull Entry known) {
+        File xml = new File(buildDir, "build.xml");
+        long lastModified = xml.lastModified();
+        if (lastModified == 0) {
+            return null;
+        }
+        if (known != null && known.lastModified == lastModified) {
+            return known;
+        }
+        try {
+            return parse(xml, number).withLastModified(lastModified);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Could not index " + xml, e);
+            // recorded as running so that users look at the build itself
+            return new Entry(number, Integer.toString(number), 0, 0, null, true, null, null, lastModified);
+        }
+    }
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Picks the fields of the index among the top level elements of a {@code build.xml}.
+     * A build without a result is recorded as running, since it may well be.
+     */
+    static @Nonnull Entry parse(@Nonnull File xml, int number) throws IOException, XMLStreamException {
+        String id = null, result = null, displayName = null, builtOn = null;
+        long timestamp = 0, duration = 0;
+        try (InputStream is = new BufferedInputStream(new FileInputStream(xml))) {
+            XMLStreamReader r = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                r.nextTag(); // the root element
+                while (r.nextTag() == XMLStreamReader.START_ELEMENT) {
+                    switch (r.getLocalName()) {
+                    case "id":
+                        id = r.getElementText();
+                        break;
+                    case "timestamp":
+                        timestamp = Long.parseLong(r.getElementText().trim());
+                        break;
+                    case "duration":
+                        duration = Long.parseLong(r.getElementText().trim());
+                        break;
+                    case "result":
+                        result = r.getElementText().trim();
+                        break;
+                    case "displayName":
+                        displayName = r.getElementText();
+                        break;
+                    case "builtOn":
+                        builtOn = r.getElementText();
+                        break;
+                    default:
+                        skipElement(r);
+                    }
+                }
+            } finally {
+                r.close();
+            }
+        }
+        return new Entry(number, id != null ? id : Integer.toString(number), timestamp, duration,
+                result != null ? Result.fromString(result) : null, result == null, displayName, builtOn, 0);
+    }
+
+    private static void skipElement(XMLStreamReader r) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = r.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BuildIndex.class.getName());
+}
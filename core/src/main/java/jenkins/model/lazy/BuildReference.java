@@ -59,7 +59,11 @@ public final class BuildReference<R> {
      * @see RunMixIn#dropLinks()
      */
     /*package*/ void clear() {
+        Holder<R> h = holder;
         holder = null;
+        if (h instanceof BuildCache.CachedHolder) {
+            ((BuildCache.CachedHolder) h).release();
+        }
     }
 
     @Override
@@ -137,6 +141,9 @@ public final class BuildReference<R> {
      * <dd>Use {@link WeakReference}s. Builds will be kept only until the next full garbage collection cycle.
      * <dt><code>strong</code>
      * <dd>Use strong references. Builds will still be loaded lazily, but once loaded, will not be released.
+     * <dt><code>bounded</code>
+     * <dd>Keep the most recently used builds up to a budget of heap, see {@link BuildCache}.
+     * Running builds and the targets of permalinks are always kept.
      * <dt><code>none</code>
      * <dd>Do not hold onto builds at all. Mainly offered as an option for the purpose of reproducing lazy-loading bugs.
      * </dl>
@@ -154,6 +161,8 @@ public final class BuildReference<R> {
                 return new WeakHolder<R>(referent);
             } else if (mode.equals("strong")) {
                 return new StrongHolder<R>(referent);
+            } else if (mode.equals("bounded")) {
+                return BuildCache.get().make(referent);
             } else if (mode.equals("none")) {
                 return new NoHolder<R>();
             } else {
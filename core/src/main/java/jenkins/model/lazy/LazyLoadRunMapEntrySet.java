@@ -38,6 +38,10 @@ class LazyLoadRunMapEntrySet<R> extends AbstractSet<Entry<Integer,R>> {
 
     @Override
     public int size() {
+        Integer indexed = owner.indexedSize();
+        if (indexed != null) {
+            return indexed;
+        }
         return all().size();
     }
 
@@ -42,9 +42,11 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.LinkOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -64,6 +66,7 @@ import org.apache.tools.ant.types.selectors.TokenizedPath;
 import org.apache.tools.ant.types.selectors.TokenizedPattern;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Abstraction over {@link File}, {@link FilePath}, or other items such as network resources or ZIP entries.
@@ -353,6 +356,18 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
         return null;
     }
 
+    /**
+     * Opens the file for random access when it is on the local disk,
+     * so that callers may send it with {@link FileChannel#transferTo} rather than copying it through {@link #open}.
+     * @return an open channel the caller must close, or null if this kind of file does not support it
+     * @throws IOException if it is a local file which cannot be opened
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull FileChannel openChannel() throws IOException {
+        return null;
+    }
+
     /**
      * Creates a virtual file wrapper for a local file.
      * @param f a disk file (need not exist)
@@ -459,6 +474,16 @@ public abstract class VirtualFile implements Comparable<VirtualFile>, Serializab
                     throw new IOException(e);
                 }
             }
+            @Override public FileChannel openChannel() throws IOException {
+                if (isIllegalSymlink()) {
+                    throw new FileNotFoundException(f.getPath());
+                }
+                try {
+                    return FileChannel.open(f.toPath(), StandardOpenOption.READ);
+                } catch (InvalidPathException e) {
+                    throw new IOException(e);
+                }
+            }
         private boolean isIllegalSymlink() { // TODO JENKINS-26838
             try {
                 String myPath = f.toPath().toRealPath(new LinkOption[0]).toString();
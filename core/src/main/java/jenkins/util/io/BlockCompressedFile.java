@@ -0,0 +1,442 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.util.io;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a text file written by {@link BlockCompressedOutputStream}.
+ *
+ * <p>
+ * The file is a sequence of blocks, each of them an independent raw deflate stream
+ * of at most {@value #BLOCK_SIZE} bytes of text. A sidecar index, {@code <file>.idx},
+ * records where each block starts in the compressed file and in the text, and how many lines precede it,
+ * followed by a last entry for the end of the text once the writer is closed.
+ * So seeking to an offset or to a line only takes a binary search of the index
+ * and the decompression of one block, however large the file is.
+ *
+ * <p>
+ * The file can be read while it is still being written.
+ * The writer makes what it has written readable at least every second,
+ * and readers decompress the last block as far as it goes.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class BlockCompressedFile {
+    /**
+     * Maximum number of bytes of text in a block.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    static final int INDEX_MAGIC = 0x424c4b49; // BLKI
+    static final int VERSION = 1;
+    static final int INDEX_HEADER_SIZE = 8;
+    /**
+     * Offset of the block in the compressed file, offset of the block in the text, and number of lines before it.
+     */
+    static final int ENTRY_SIZE = 24;
+
+    private final File file;
+    private final File indexFile;
+
+    public BlockCompressedFile(@Nonnull File file) {
+        this.file = file;
+        this.indexFile = indexFileOf(file);
+    }
+
+    public static @Nonnull File indexFileOf(@Nonnull File file) {
+        return new File(file.getPath() + ".idx");
+    }
+
+    public @Nonnull File getFile() {
+        return file;
+    }
+
+    public boolean exists() {
+        return file.exists() && indexFile.exists();
+    }
+
+    /**
+     * Length of the text, as far as it has been written.
+     */
+    public long length() throws IOException {
+        return end()[0];
+    }
+
+    /**
+     * Number of newlines in the text, as far as it has been written.
+     */
+    public long lineCount() throws IOException {
+        return end()[1];
+    }
+
+    /**
+     * @return the length of the text and the number of newlines in it
+     */
+    long[] end() throws IOException {
+        Index index = new Index();
+        int last = index.size() - 1;
+        if (last < 0) {
+            index.close();
+            return new long[2];
+        }
+        try (BlockInputStream in = openBlock(index, last)) {
+            long length = index.textStart(last);
+            long lines = index.linesBefore(last);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf, 0, buf.length)) >= 0) {
+                length += n;
+                lines += countNewlines(buf, 0, n);
+            }
+            return new long[] {length, lines};
+        }
+    }
+
+    /**
+     * Opens the text at the given offset.
+     * If the offset is past the end of the text, the stream is empty.
+     */
+    public @Nonnull InputStream open(long offset) throws IOException {
+        Index index = new Index();
+        int block;
+        try {
+            block = index.blockAt(offset);
+        } catch (IOException e) {
+            index.close();
+            throw e;
+        }
+        if (block < 0) {
+            index.close();
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        BlockInputStream in = openBlock(index, block);
+        try {
+            skipFully(in, offset - index.textStart(block));
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * Offset in the text of the start of the block holding the given offset.
+     * Reading backwards, the block before it ends there.
+     */
+    public long blockStart(long offset) throws IOException {
+        try (Index index = new Index()) {
+            int block = index.blockAt(offset);
+            return block < 0 ? 0 : index.textStart(block);
+        }
+    }
+
+    /**
+     * Offset in the text at which the given line starts, counting from 0.
+     *
+     * @return the length of the text if it has fewer lines
+     */
+    public long offsetOfLine(long line) throws IOException {
+        if (line <= 0) {
+            return 0;
+        }
+        Index index = new Index();
+        if (index.size() == 0) {
+            index.close();
+            return 0;
+        }
+        int block;
+        try {
+            // the block holding the newline that ends the previous line
+            block = index.blockBeforeLine(line);
+        } catch (IOException e) {
+            index.close();
+            throw e;
+        }
+        try (BlockInputStream in = openBlock(index, block)) {
+            long offset = index.textStart(block);
+            long lines = index.linesBefore(block);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf, 0, buf.length)) >= 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] == '\n' && ++lines == line) {
+                        return offset + i + 1;
+                    }
+                }
+                offset += n;
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Opens a block, closing the index if that fails.
+     */
+    private static BlockInputStream openBlock(Index index, int block) throws IOException {
+        try {
+            return new BlockInputStream(index, block);
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw e;
+        }
+    }
+
+    static int countNewlines(byte[] buf, int off, int len) {
+        int r = 0;
+        for (int i = off; i < off + len; i++) {
+            if (buf[i] == '\n') {
+                r++;
+            }
+        }
+        return r;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        byte[] buf = new byte[(int) Math.min(n, 8192)];
+        while (n > 0) {
+            int r = in.read(buf, 0, (int) Math.min(n, buf.length));
+            if (r < 0) {
+                return; // past the end of the text
+            }
+            n -= r;
+        }
+    }
+
+    static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Open handles on the compressed file and its index.
+     */
+    private final class Index implements Closeable {
+        private final FileChannel index;
+        private final FileChannel data;
+        private int size;
+        private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        private int entryNumber = -1;
+
+        Index() throws IOException {
+            index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+                readFully(index, header, 0);
+                if (header.getInt(0) != INDEX_MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException(indexFile + " is not a block index");
+                }
+                data = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            } catch (IOException e) {
+                index.close();
+                throw e;
+            }
+            refresh();
+        }
+
+        /**
+         * Picks up the blocks the writer has started since.
+         */
+        void refresh() throws IOException {
+            size = (int) ((index.size() - INDEX_HEADER_SIZE) / ENTRY_SIZE);
+        }
+
+        int size() {
+            return size;
+        }
+
+        private ByteBuffer entry(int i) throws IOException {
+            if (entryNumber != i) {
+                entry.clear();
+                readFully(index, entry, INDEX_HEADER_SIZE + (long) i * ENTRY_SIZE);
+                entryNumber = i;
+            }
+            return entry;
+        }
+
+        long compressedStart(int i) throws IOException {
+            return entry(i).getLong(0);
+        }
+
+        /**
+         * @return -1 for the last block, which extends to the end of the file
+         */
+        long compressedEnd(int i) throws IOException {
+            return i + 1 < size ? compressedStart(i + 1) : -1;
+        }
+
+        long textStart(int i) throws IOException {
+            return entry(i).getLong(8);
+        }
+
+        long linesBefore(int i) throws IOException {
+            return entry(i).getLong(16);
+        }
+
+        /**
+         * @return the last block starting at or before the given offset of the text, or -1 if there are no blocks
+         */
+        int blockAt(long offset) throws IOException {
+            int lo = 0, hi = size - 1, r = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (textStart(mid) <= offset) {
+                    r = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return r;
+        }
+
+        /**
+         * @return the last block with fewer than the given number of lines before it
+         */
+        int blockBeforeLine(long line) throws IOException {
+            int lo = 0, hi = size - 1, r = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (linesBefore(mid) < line) {
+                    r = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return r;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                index.close();
+            } finally {
+                if (data != null) {
+                    data.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Decompresses the text from the start of a block to the end of the file.
+     */
+    private static final class BlockInputStream extends InputStream {
+        private final Index index;
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] input = new byte[8192];
+        private int block;
+        /**
+         * Position in the compressed file of the input not given to the inflater yet.
+         */
+        private long pos;
+        /**
+         * Where the current block ends in the compressed file, or -1 if it extends to the end.
+         */
+        private long limit;
+        private boolean eof;
+
+        BlockInputStream(Index index, int block) throws IOException {
+            this.index = index;
+            seek(block);
+        }
+
+        private void seek(int block) throws IOException {
+            this.block = block;
+            this.pos = index.compressedStart(block);
+            this.limit = index.compressedEnd(block);
+            inflater.reset();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!eof) {
+                int n;
+                try {
+                    n = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupted block " + block + " of " + index.data, e);
+                }
+                if (n > 0) {
+                    return n;
+                }
+                if (inflater.finished() || inflater.needsDictionary() || (limit >= 0 && pos >= limit && inflater.needsInput())) {
+                    // done with this block; an unfinished one was cut short by a crash
+                    if (block + 1 >= index.size()) {
+                        index.refresh();
+                    }
+                    if (block + 1 >= index.size()) {
+                        eof = true;
+                        break;
+                    }
+                    seek(block + 1);
+                } else if (inflater.needsInput()) {
+                    int max = limit >= 0 ? (int) Math.min(input.length, limit - pos) : input.length;
+                    int r = index.data.read(ByteBuffer.wrap(input, 0, max), pos);
+                    if (r <= 0) {
+                        eof = true; // the writer has not got further yet
+                        break;
+                    }
+                    pos += r;
+                    inflater.setInput(input, 0, r);
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            index.close();
+        }
+    }
+}
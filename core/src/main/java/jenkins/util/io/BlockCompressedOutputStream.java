@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.util.io;
+
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+import static jenkins.util.io.BlockCompressedFile.*;
+
+/**
+ * Writes text in the format read by {@link BlockCompressedFile}.
+ *
+ * <p>
+ * What is written becomes readable when the stream is flushed, and at the latest
+ * {@value #FLUSH_INTERVAL} milliseconds later, so that the stream can be used for a log
+ * that is followed as it grows. Flushing too often would hurt compression, so {@link #flush()}
+ * is the only way to make it readable sooner.
+ * If a file already exists, the text is appended to it.
+ * If it cannot be read, for example because its index is missing or damaged,
+ * it is moved aside with the suffix {@value #CORRUPT_SUFFIX} and a new file is started.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class BlockCompressedOutputStream extends OutputStream {
+    static final long FLUSH_INTERVAL = 1000;
+    static final String CORRUPT_SUFFIX = ".corrupt";
+
+    private final File file;
+    private final FileChannel data;
+    private final FileChannel index;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] buf = new byte[8192];
+
+    /**
+     * Length of {@link #data}.
+     */
+    private long compressed;
+    private long length;
+    private long lines;
+    /**
+     * Bytes of text in the current block.
+     */
+    private int blockLength;
+    /**
+     * Value of {@link #compressed} recorded in the last index entry, or -1.
+     */
+    private long lastEntry = -1;
+    /**
+     * Whether some text has not been made readable yet.
+     */
+    private boolean dirty;
+    private long lastFlush = System.currentTimeMillis();
+    @GuardedBy("this")
+    private @CheckForNull ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    public BlockCompressedOutputStream(@Nonnull File file) throws IOException {
+        this.file = file;
+        File indexFile = indexFileOf(file);
+        BlockCompressedFile existing = new BlockCompressedFile(file);
+        long[] end = null;
+        if (existing.exists()) {
+            try {
+                end = existing.end();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot append to unreadable " + file, e);
+            }
+        }
+        if (end == null && file.length() > 0) {
+            // keep whatever text there is, e.g. after a crash or a partial copy
+            moveAside(file);
+            moveAside(indexFile);
+        }
+        data = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            index = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        if (end != null) {
+            compressed = data.size();
+            length = end[0];
+            lines = end[1];
+            // drop an entry torn by a crash
+            long entries = (index.size() - INDEX_HEADER_SIZE) / ENTRY_SIZE;
+            index.truncate(INDEX_HEADER_SIZE + entries * ENTRY_SIZE);
+            if (entries > 0) {
+                ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+                readFully(index, entry, INDEX_HEADER_SIZE + (entries - 1) * ENTRY_SIZE);
+                if (entry.getLong(0) == compressed) {
+                    lastEntry = compressed; // closed cleanly, so the next block starts there already
+                }
+            }
+        } else {
+            data.truncate(0);
+            index.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+            header.putInt(INDEX_MAGIC).putInt(VERSION).flip();
+            writeFully(index, header, 0);
+        }
+    }
+
+    private static void moveAside(File f) throws IOException {
+        if (f.exists()) {
+            File corrupt = new File(f.getPath() + CORRUPT_SUFFIX);
+            LOGGER.log(Level.WARNING, "Moving {0} to {1}", new Object[] {f, corrupt});
+            Files.move(f.toPath(), corrupt.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException(file + " is closed");
+        }
+        while (len > 0) {
+            if (blockLength == 0 && lastEntry != compressed) {
+                writeEntry(); // starting a block
+            }
+            int n = Math.min(len, BLOCK_SIZE - blockLength);
+            deflater.setInput(b, off, n);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+            length += n;
+            lines += countNewlines(b, off, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            dirty = true;
+            if (blockLength == BLOCK_SIZE) {
+                finishBlock();
+            }
+        }
+        if (dirty) {
+            if (System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL) {
+                flush();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = Timer.get().schedule(this::scheduledFlush, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private synchronized void scheduledFlush() {
+        scheduledFlush = null;
+        if (!closed) {
+            try {
+                flush();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to flush " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Makes everything written so far readable.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (dirty) {
+            int n;
+            do {
+                n = deflate(Deflater.SYNC_FLUSH);
+            } while (n == buf.length);
+            dirty = false;
+        }
+        lastFlush = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        try {
+            if (blockLength > 0) {
+                finishBlock();
+            }
+            if (lastEntry != compressed) {
+                writeEntry(); // where the text ends
+            }
+        } finally {
+            deflater.end();
+            try {
+                data.close();
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    private void finishBlock() throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(Deflater.NO_FLUSH);
+        }
+        deflater.reset();
+        blockLength = 0;
+        dirty = false;
+    }
+
+    private int deflate(int flush) throws IOException {
+        int n = deflater.deflate(buf, 0, buf.length, flush);
+        if (n > 0) {
+            compressed = writeFully(data, ByteBuffer.wrap(buf, 0, n), compressed);
+        }
+        return n;
+    }
+
+    private void writeEntry() throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(compressed).putLong(length).putLong(lines).flip();
+        writeFully(index, entry, index.size());
+        lastEntry = compressed;
+    }
+
+    private static long writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+        return pos;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BlockCompressedOutputStream.class.getName());
+}
@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.util.io;
+
+import com.google.common.collect.AbstractIterator;
+
+import edu.umd.cs.findbugs.annotations.CleanupObligation;
+import edu.umd.cs.findbugs.annotations.DischargesObligation;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Represents a stream over the lines of a text file, from the last line to the first.
+ * <p>
+ * The file is read backwards a block at a time, so reading the last few lines
+ * costs in proportion to the size of those lines, however large the file is.
+ * This also works for a {@link BlockCompressedFile}, a compressed block at a time.
+ * Lines are separated by {@code \n}; carriage returns are dropped, and a single
+ * newline at the very end of the file does not start an empty last line.
+ * An empty file has one empty line.
+ * <p>
+ * Like {@link LinesStream}, it is intended to be used to initialize a resource in a
+ * try-with-resources statement and then iterated, and supports creating at most one {@link Iterator}.
+ *
+ * @since TODO
+ */
+@CleanupObligation
+public class ReverseLinesStream implements Closeable, Iterable<String> {
+
+    private static final int BLOCK_SIZE = 8192;
+
+    private final @Nullable FileChannel channel;
+    private final @Nullable BlockCompressedFile compressed;
+    private final @Nonnull Charset charset;
+    private transient @Nullable Iterator<String> iterator;
+
+    private byte[] block = new byte[BLOCK_SIZE];
+    /**
+     * File offset of {@code block[0]}.
+     */
+    private long blockStart;
+    /**
+     * Bytes of {@link #block} not read yet, which are those before this index.
+     */
+    private int blockEnd;
+    /**
+     * The line being read, filled from its end.
+     */
+    private byte[] line = new byte[256];
+    /**
+     * File offset at which the last line read starts.
+     */
+    private long position;
+
+    /**
+     * Opens the text file at <code>path</code> for reading backwards.
+     * @param path Path to the file to open for reading.
+     * @param charset Charset the file is encoded in.
+     * @throws IOException if the file at <code>path</code> cannot be opened for reading.
+     */
+    public ReverseLinesStream(@Nonnull Path path, @Nonnull Charset charset) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.compressed = null;
+        this.charset = charset;
+        this.blockStart = this.position = channel.size();
+    }
+
+    /**
+     * Opens the text of a block compressed file for reading backwards.
+     * @param file File to read.
+     * @param charset Charset the text is encoded in.
+     * @throws IOException if the file cannot be read.
+     */
+    public ReverseLinesStream(@Nonnull BlockCompressedFile file, @Nonnull Charset charset) throws IOException {
+        this.channel = null;
+        this.compressed = file;
+        this.charset = charset;
+        this.blockStart = this.position = file.length();
+    }
+
+    /**
+     * The offset in the file at which the line last returned by the iterator starts,
+     * which is also the number of bytes not read yet.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @DischargesObligation
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        if (iterator!=null)
+            throw new IllegalStateException("Only one Iterator can be created.");
+
+        iterator = new AbstractIterator<String>() {
+            private boolean started;
+
+            @Override
+            protected String computeNext() {
+                try {
+                    if (!started) {
+                        started = true;
+                        // a newline ending the file does not start another line
+                        if (blockStart > 0 && fill() && block[blockEnd - 1] == '\n') {
+                            blockEnd--;
+                        }
+                    } else if (position == 0) {
+                        close();
+                        return endOfData();
+                    }
+                    return readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+
+        return iterator;
+    }
+
+    private String readLine() throws IOException {
+        int len = 0;
+        while (true) {
+            if (blockEnd == 0 && !fill()) {
+                position = 0;
+                break;
+            }
+            byte b = block[--blockEnd];
+            if (b == '\n') {
+                position = blockStart + blockEnd + 1;
+                break;
+            }
+            if (b != '\r') {
+                if (len == line.length) {
+                    byte[] bigger = new byte[line.length * 2];
+                    System.arraycopy(line, 0, bigger, len, len);
+                    line = bigger;
+                }
+                line[line.length - ++len] = b;
+            }
+        }
+        return new String(line, line.length - len, len, charset);
+    }
+
+    /**
+     * Reads the block before the current one.
+     * @return false at the start of the file
+     */
+    private boolean fill() throws IOException {
+        if (blockStart == 0) {
+            return false;
+        }
+        int n;
+        if (compressed != null) {
+            long start = compressed.blockStart(blockStart - 1);
+            n = (int) (blockStart - start);
+            if (block.length < n) {
+                block = new byte[n];
+            }
+            try (InputStream in = compressed.open(start)) {
+                for (int r = 0; r < n; ) {
+                    int k = in.read(block, r, n - r);
+                    if (k < 0) {
+                        throw new EOFException("File truncated while being read");
+                    }
+                    r += k;
+                }
+            }
+            blockStart = start;
+        } else {
+            n = (int) Math.min(BLOCK_SIZE, blockStart);
+            blockStart -= n;
+            ByteBuffer buf = ByteBuffer.wrap(block, 0, n);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, blockStart + buf.position()) < 0) {
+                    throw new EOFException("File truncated while being read");
+                }
+            }
+        }
+        blockEnd = n;
+        return true;
+    }
+}
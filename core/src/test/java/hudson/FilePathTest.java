@@ -27,6 +27,7 @@ import hudson.FilePath.TarCompression;
 import hudson.model.TaskListener;
 import hudson.os.PosixAPI;
 import hudson.remoting.VirtualChannel;
+import hudson.util.DirScanner;
 import hudson.util.NullStream;
 import hudson.util.StreamTaskListener;
 import java.io.ByteArrayInputStream;
@@ -50,6 +51,7 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -222,6 +224,40 @@ public class FilePathTest {
             assertEquals(1, fp.copyRecursiveTo(new FilePath(dst)));
     }
 
+    @Test public void parallelCopyRecursiveTo() throws Exception {
+        File src = temp.newFolder("src");
+        File dst = temp.newFolder("dst");
+        File back = temp.newFolder("back");
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            byte[] data = new byte[100 * 1024];
+            if (i % 4 == 0) {
+                random.nextBytes(data);
+                FileUtils.writeByteArrayToFile(new File(src, "lib/dep" + i + ".jar"), data);
+            } else {
+                Arrays.fill(data, (byte) ('a' + i));
+                FileUtils.writeByteArrayToFile(new File(src, "text/sub" + (i % 3) + "/file" + i + ".txt"), data);
+            }
+        }
+        int streams = FilePath.PARALLEL_COPY_STREAMS;
+        FilePath.PARALLEL_COPY_STREAMS = 4;
+        try {
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            TaskListener listener = new StreamTaskListener(log);
+            FilePath remote = new FilePath(channels.british, dst.getAbsolutePath());
+            assertEquals(20, new FilePath(src).copyRecursiveTo(new DirScanner.Glob("**", null), remote, "files", listener));
+            assertTrue(log.toString(), log.toString().contains("over 4 streams"));
+            assertEquals(20, remote.copyRecursiveTo(new DirScanner.Glob("**", null), new FilePath(back), "files", listener));
+            for (File f : FileUtils.listFiles(src, null, true)) {
+                String relative = src.toPath().relativize(f.toPath()).toString();
+                assertTrue(relative, FileUtils.contentEquals(f, new File(dst, relative)));
+                assertTrue(relative, FileUtils.contentEquals(f, new File(back, relative)));
+            }
+        } finally {
+            FilePath.PARALLEL_COPY_STREAMS = streams;
+        }
+    }
+
     @Issue("JENKINS-9540")
     @Test public void errorMessageInRemoteCopyRecursive() throws Exception {
         File src = temp.newFolder("src");
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.console;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConsoleNoteCodecTest {
+
+    @Before
+    public void compact() {
+        ConsoleNote.COMPACT = true;
+        // notes written without Jenkins are not signed
+        ConsoleNote.INSECURE = true;
+    }
+
+    @After
+    public void reset() {
+        ConsoleNote.COMPACT = false;
+        ConsoleNote.INSECURE = false;
+    }
+
+    private static ConsoleNote read(String encoded) throws Exception {
+        return ConsoleNote.readFrom(new DataInputStream(new ByteArrayInputStream(encoded.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static String plain(String line) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (PlainTextConsoleOutputStream out = new PlainTextConsoleOutputStream(baos)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return baos.toString("UTF-8");
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        String url = "/job/a;b%c/ü\n";
+        String encoded = new HyperlinkNote(url, 5).encode();
+        assertTrue(encoded, encoded.startsWith(ConsoleNote.PREAMBLE_STR + "~1"));
+        for (char c : encoded.substring(ConsoleNote.PREAMBLE_STR.length(), encoded.length() - ConsoleNote.POSTAMBLE_STR.length()).toCharArray()) {
+            assertTrue(encoded, c >= 0x20 && c < 0x7f);
+        }
+        HyperlinkNote note = (HyperlinkNote) read(encoded);
+        assertEquals(HyperlinkNote.class, note.getClass());
+        assertEquals(url, note.getUrl());
+        assertEquals(5, note.getLength());
+
+        ExpandableDetailsNote details = (ExpandableDetailsNote) read(new ExpandableDetailsNote("more", "<pre>\u001b</pre>").encode());
+        assertEquals("more", details.getCaption());
+        assertEquals("<pre>\u001b</pre>", details.getHtml());
+        assertEquals(HudsonExceptionNote.class, read(new HudsonExceptionNote().encode()).getClass());
+    }
+
+    @Test
+    public void removedLikeSerializedNotes() throws Exception {
+        String line = "see " + ModelHyperlinkNote.encodeTo("/job/p/", "p") + " and " + HyperlinkNote.encodeTo("/x/", "x") + "\n";
+        assertEquals("see p and x\n", plain(line));
+        assertEquals("see p and x\n", ConsoleNote.removeNotes(line));
+    }
+
+    @Test
+    public void subclassesAreSerialized() throws Exception {
+        String encoded = new Sub("/x/", 1).encode();
+        assertFalse(encoded, encoded.startsWith(ConsoleNote.PREAMBLE_STR + "~"));
+    }
+
+    private static class Sub extends HyperlinkNote {
+        Sub(String url, int length) {
+            super(url, length);
+        }
+        private static final long serialVersionUID = 1L;
+    }
+
+    @Test
+    public void readsSerializedNotes() throws Exception {
+        ConsoleNote.COMPACT = false;
+        String encoded = new HyperlinkNote("/old/", 3).encode();
+        ConsoleNote.COMPACT = true;
+        assertEquals("/old/", ((HyperlinkNote) read(encoded)).getUrl());
+        assertEquals("old\n", plain(encoded + "old\n"));
+    }
+
+    @Test
+    public void unsignedNotesRefused() throws Exception {
+        String encoded = new HyperlinkNote("/x/", 1).encode();
+        ConsoleNote.INSECURE = false;
+        try {
+            read(encoded);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void malformed() throws Exception {
+        assertNull(read(ConsoleNote.PREAMBLE_STR + "~1:Z;1" + ConsoleNote.POSTAMBLE_STR));
+        assertNull(read(ConsoleNote.PREAMBLE_STR + "~1:h;/x/" + ConsoleNote.POSTAMBLE_STR));
+        assertNull(read(ConsoleNote.PREAMBLE_STR + "~9:h;/x/;1" + ConsoleNote.POSTAMBLE_STR));
+    }
+}
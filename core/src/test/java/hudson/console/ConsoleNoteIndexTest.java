@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.console;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ConsoleNoteIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] log() throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            b.append("line ").append(i);
+            if (i % 7 == 0) {
+                b.append(' ').append(HyperlinkNote.encodeTo("/job/p" + i + "/", "p" + i));
+            }
+            if (i % 11 == 0) {
+                b.append(HyperlinkNote.encodeTo("/a/", "a")).append(HyperlinkNote.encodeTo("/b/", "b"));
+            }
+            b.append(i % 5 == 0 ? "\r\n" : "\n");
+        }
+        b.append("no newline ").append(HyperlinkNote.encodeTo("/end/", "end"));
+        return b.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] plain(byte[] log) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (PlainTextConsoleOutputStream out = new PlainTextConsoleOutputStream(baos)) {
+            out.write(log);
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] read(byte[] log, long[] segments) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < segments.length; i += 2) {
+            baos.write(log, (int) segments[i], (int) segments[i + 1]);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void sameAsPlainText() throws Exception {
+        byte[] log = log();
+        byte[] plain = plain(log);
+        ConsoleNoteIndex index = ConsoleNoteIndex.build(new ByteArrayInputStream(log));
+        assertNotNull(index);
+        assertEquals(plain.length, index.getPlainLength());
+        assertArrayEquals(plain, read(log, index.rawSegments(0, plain.length)));
+        for (int start = 0; start < plain.length; start += 97) {
+            for (int end : new int[] {start + 1, start + 50, start + 1000, plain.length, plain.length + 10}) {
+                assertArrayEquals(start + "-" + end, Arrays.copyOfRange(plain, start, Math.min(end, plain.length)), read(log, index.rawSegments(start, end)));
+            }
+        }
+        assertEquals(0, index.rawSegments(plain.length, plain.length + 1).length);
+    }
+
+    @Test
+    public void savedNextToLog() throws Exception {
+        byte[] log = log();
+        File file = tmp.newFile("log");
+        FileUtils.writeByteArrayToFile(file, log);
+        ConsoleNoteIndex index = ConsoleNoteIndex.of(file);
+        assertNotNull(index);
+        File notes = new File(tmp.getRoot(), "log.notes");
+        assertEquals(true, notes.isFile());
+        ConsoleNoteIndex reloaded = ConsoleNoteIndex.of(file);
+        assertNotNull(reloaded);
+        assertEquals(index.getPlainLength(), reloaded.getPlainLength());
+        assertArrayEquals(index.rawSegments(0, index.getPlainLength()), reloaded.rawSegments(0, reloaded.getPlainLength()));
+
+        // a log that changed gets a new index
+        FileUtils.writeByteArrayToFile(file, "plain\n".getBytes(StandardCharsets.UTF_8), true);
+        file.setLastModified(file.lastModified() + 2000);
+        assertEquals(index.getPlainLength() + 6, ConsoleNoteIndex.of(file).getPlainLength());
+    }
+
+    @Test
+    public void malformedNote() throws Exception {
+        byte[] log = ("ok\n" + ConsoleNote.PREAMBLE_STR + "\n").getBytes(StandardCharsets.UTF_8);
+        assertNull(ConsoleNoteIndex.build(new ByteArrayInputStream(log)));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ByteRangeTest {
+
+    private static void assertRange(long start, long end, String header, long length) {
+        ByteRange r = ByteRange.parse(header, length);
+        assertEquals(header, start, r.start);
+        assertEquals(header, end, r.end);
+    }
+
+    @Test
+    public void parse() {
+        assertRange(0, 100, "bytes=0-99", 1000);
+        assertRange(500, 1000, "bytes=500-", 1000);
+        assertRange(900, 1000, "bytes=-100", 1000);
+        assertRange(0, 1000, "bytes=-5000", 1000);
+        assertRange(990, 1000, "bytes=990-5000", 1000);
+        assertRange(7, 8, " bytes=7-7 ", 1000);
+    }
+
+    @Test
+    public void wholeContent() {
+        assertNull(ByteRange.parse("items=0-5", 1000));
+        assertNull(ByteRange.parse("bytes=0-5,10-20", 1000));
+        assertNull(ByteRange.parse("bytes=5-1", 1000));
+        assertNull(ByteRange.parse("bytes=x-", 1000));
+        assertNull(ByteRange.parse("bytes=", 1000));
+    }
+
+    @Test
+    public void unsatisfiable() {
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", 1000));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 1000));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=0-", 0));
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintShardTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] key(int i) {
+        byte[] k = new byte[FingerprintShard.KEY_SIZE];
+        new Random(i).nextBytes(k);
+        return k;
+    }
+
+    private static byte[] value(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void putOverwriteDelete() throws Exception {
+        File dir = tmp.getRoot();
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            assertNull(s.get(key(1)));
+            s.put(key(1), value("one"));
+            s.put(key(2), value("two"));
+            s.put(key(1), value("uno"));
+            assertArrayEquals(value("uno"), s.get(key(1)));
+            assertArrayEquals(value("two"), s.get(key(2)));
+            assertEquals(2, s.size());
+
+            assertTrue(s.delete(key(2)));
+            assertFalse(s.delete(key(2)));
+            assertNull(s.get(key(2)));
+            assertEquals(1, s.size());
+            assertEquals(1, s.keys().size());
+            assertArrayEquals(key(1), s.keys().get(0));
+            assertTrue(s.getGarbageSize() > 0);
+        }
+    }
+
+    @Test
+    public void putAll() throws Exception {
+        File dir = tmp.getRoot();
+        int n = 3000;
+        List<byte[]> keys = new ArrayList<>(), values = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add(key(i));
+            values.add(value("v" + i));
+        }
+        keys.add(key(0));
+        values.add(value("again"));
+        FingerprintShard crashed = new FingerprintShard(dir, "0");
+        crashed.putAll(keys, values);
+        assertEquals(n, crashed.size());
+        assertArrayEquals(value("again"), crashed.get(key(0)));
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            assertEquals(n, s.size());
+            assertArrayEquals(value("again"), s.get(key(0)));
+            for (int i = 1; i < n; i++) {
+                assertArrayEquals(value("v" + i), s.get(key(i)));
+            }
+        }
+    }
+
+    @Test
+    public void reopenAndGrow() throws Exception {
+        File dir = tmp.getRoot();
+        int n = 5000;
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            fill(s, n);
+        }
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            verify(s, n);
+        }
+    }
+
+    @Test
+    public void recoverWithoutClose() throws Exception {
+        File dir = tmp.getRoot();
+        int n = 2000;
+        FingerprintShard crashed = new FingerprintShard(dir, "0");
+        fill(crashed, n);
+        // never closed, as if the process died; the index is rebuilt from the log
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            verify(s, n);
+        }
+    }
+
+    @Test
+    public void compact() throws Exception {
+        File dir = tmp.getRoot();
+        int n = 2000;
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            fill(s, n);
+            long before = new File(dir, "0.log").length();
+            s.compact();
+            assertEquals(0, s.getGarbageSize());
+            assertTrue(new File(dir, "0.log").length() < before);
+            verify(s, n);
+            s.put(key(n), value("after"));
+        }
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            verify(s, n);
+            assertArrayEquals(value("after"), s.get(key(n)));
+        }
+    }
+
+    @Test
+    public void tornTail() throws Exception {
+        File dir = tmp.getRoot();
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            s.put(key(1), value("one"));
+            s.put(key(2), value("two"));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "0.log"), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            assertArrayEquals(value("one"), s.get(key(1)));
+            assertNull(s.get(key(2)));
+            s.put(key(3), value("three"));
+        }
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            assertArrayEquals(value("one"), s.get(key(1)));
+            assertArrayEquals(value("three"), s.get(key(3)));
+            assertEquals(2, s.size());
+        }
+    }
+
+    @Test
+    public void corruptedRecordIsSkipped() throws Exception {
+        File dir = tmp.getRoot();
+        FingerprintShard crashed = new FingerprintShard(dir, "0");
+        crashed.put(key(1), value("one"));
+        crashed.put(key(1), value("uno"));
+        crashed.put(key(2), value("two"));
+        crashed.force();
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "0.log"), "rw")) {
+            long uno = raf.length() - 2 * (4 + FingerprintShard.KEY_SIZE + 4) - 3 - 3 + 4 + FingerprintShard.KEY_SIZE;
+            raf.seek(uno);
+            raf.write('U');
+        }
+        // never closed, so the index is rebuilt from the log, and must not point at the bad copy
+        try (FingerprintShard s = new FingerprintShard(dir, "0")) {
+            assertArrayEquals(value("one"), s.get(key(1)));
+            assertArrayEquals(value("two"), s.get(key(2)));
+            assertEquals(2, s.size());
+        }
+    }
+
+    /**
+     * Writes every key, rewrites the even ones, and deletes every third one.
+     */
+    private static void fill(FingerprintShard s, int n) throws Exception {
+        for (int i = 0; i < n; i++) {
+            s.put(key(i), value("v" + i));
+        }
+        for (int i = 0; i < n; i += 2) {
+            s.put(key(i), value("w" + i));
+        }
+        for (int i = 0; i < n; i += 3) {
+            s.delete(key(i));
+        }
+    }
+
+    private static void verify(FingerprintShard s, int n) throws Exception {
+        int live = 0;
+        for (int i = 0; i < n; i++) {
+            byte[] v = s.get(key(i));
+            if (i % 3 == 0) {
+                assertNull(v);
+            } else {
+                assertArrayEquals(value((i % 2 == 0 ? "w" : "v") + i), v);
+                live++;
+            }
+        }
+        assertEquals(live, s.size());
+    }
+}
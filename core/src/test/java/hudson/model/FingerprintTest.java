@@ -25,6 +25,10 @@ package hudson.model;
 
 import hudson.Util;
 import hudson.model.Fingerprint.RangeSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import jenkins.model.FingerprintFacet;
 
@@ -244,6 +248,24 @@ public class FingerprintTest {
         TestFacet facet = (TestFacet) f2.facets.get(0);
         assertEquals(f2, facet.getFingerprint());
     }
+
+    @Test public void binaryRoundTrip() throws Exception {
+        Fingerprint f = new Fingerprint(new Fingerprint.BuildPtr("foo", 13), "stuff&more.jar", SOME_MD5);
+        f.addWithoutSaving("some", 1);
+        f.addWithoutSaving("some", 2);
+        f.addWithoutSaving("some", 10);
+        f.addWithoutSaving("other", 6);
+        f.facets.setOwner(Saveable.NOOP);
+        f.facets.add(new TestFacet(f, 123, "val"));
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        f.writeTo(new DataOutputStream(buf));
+        Fingerprint f2 = Fingerprint.readFrom(SOME_MD5, new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        assertEquals(f.toString(), f2.toString());
+        assertEquals("[1,3),[10,11)", f2.getRangeSet("some").toString());
+        assertEquals(1, f2.facets.size());
+        assertEquals(f2, f2.facets.get(0).getFingerprint());
+    }
+
     private static byte[] toByteArray(String md5sum) {
         byte[] data = new byte[16];
         for( int i=0; i<md5sum.length(); i+=2 )
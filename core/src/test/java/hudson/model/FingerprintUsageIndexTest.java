@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class FingerprintUsageIndexTest {
+
+    private static final String A = "0123456789abcdef0123456789abcdef", B = "fedcba9876543210fedcba9876543210", C = "00000000000000000000000000000001";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void removeBuild() throws Exception {
+        FingerprintUsageIndex index = new FingerprintUsageIndex(tmp.getRoot());
+        index.add("job", 1, Arrays.asList(A, B));
+        index.add("job", 1, Collections.singleton(A));
+        index.add("job", 2, Collections.singleton(C));
+        index.add("other", 1, Collections.singleton(C));
+        assertThat(index.removeBuild("job", 1), contains(A, B));
+        assertThat(index.removeBuild("job", 1), empty());
+        assertThat(index.removeBuild("job", 3), empty());
+        assertThat(index.removeBuild("job", 2), contains(C));
+        assertThat(index.removeBuild("other", 1), contains(C));
+    }
+
+    @Test
+    public void removeJob() throws Exception {
+        FingerprintUsageIndex index = new FingerprintUsageIndex(tmp.getRoot());
+        index.add("folder/job", 1, Collections.singleton(A));
+        index.add("folder/sub/job", 7, Collections.singleton(B));
+        index.add("folder2/job", 1, Collections.singleton(C));
+        index.add("folder", 1, Collections.singleton(C)); // not expected, but only a prefix up to a slash counts
+        assertThat(index.removeJob("folder"), contains(C, A, B));
+        assertThat(index.removeJob("folder/job"), empty());
+        assertThat(index.removeJob("folder2/job"), contains(C));
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void rename() throws Exception {
+        FingerprintUsageIndex index = new FingerprintUsageIndex(tmp.getRoot());
+        index.add("old", 1, Collections.singleton(A));
+        index.add("old", 2, Collections.singleton(B));
+        index.rename("old", "new");
+        assertThat(index.removeBuild("old", 1), empty());
+        assertThat(index.removeBuild("new", 1), contains(A));
+
+        index.add("other", 2, Collections.singleton(C));
+        index.rename("new", "other");
+        assertThat(index.removeJob("other"), contains(C, B));
+        assertThat(index.removeJob("new"), empty());
+        assertFalse(new File(tmp.getRoot(), "name").exists());
+    }
+
+    @Test
+    public void moveToAnotherFolder() throws Exception {
+        FingerprintUsageIndex index = new FingerprintUsageIndex(tmp.getRoot());
+        index.add("a/job", 1, Collections.singleton(A));
+        index.add("a/other", 1, Collections.singleton(B));
+        index.rename("a/job", "b/c/job");
+        assertThat(index.removeJob("b"), contains(A));
+        assertThat(index.removeJob("a"), contains(B));
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+
+}
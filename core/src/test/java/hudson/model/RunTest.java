@@ -24,9 +24,16 @@
 
 package hudson.model;
 
+import hudson.Functions;
 import java.io.IOException;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -35,6 +42,11 @@ import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import jenkins.util.io.BlockCompressedOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 
 import static org.junit.Assert.*;
 import org.junit.Rule;
@@ -214,6 +226,63 @@ public class RunTest {
         assertEquals("c3", logLines.get(3));
     }
 
+    @Test
+    public void getLogReadsLongLinesAcrossBlocks() throws Exception {
+        Job j = Mockito.mock(Job.class);
+        File tempBuildDir = tmp.newFolder();
+        Mockito.when(j.getBuildDir()).thenReturn(tempBuildDir);
+        Run<? extends Job<?, ?>, ? extends Run<?, ?>> r = new Run(j, 0) {};
+        File f = r.getLogFile();
+        f.getParentFile().mkdirs();
+        String longLine = StringUtils.repeat("0123456789", 2000);
+        PrintWriter w = new PrintWriter(f, "utf-8");
+        for (int i = 0; i < 5; i++) {
+            w.print(i + longLine + "\r\n");
+        }
+        w.close();
+        List<String> logLines = r.getLog(3);
+        assertEquals(3, logLines.size());
+        assertEquals("[...truncated " + Functions.humanReadableByteSize(2 * (longLine.length() + 3) - 2) + "...]", logLines.get(0));
+        assertEquals(3 + longLine, logLines.get(1));
+        assertEquals(4 + longLine, logLines.get(2));
+    }
+
+    @Test
+    public void getLogOfCompressedLog() throws Exception {
+        Job j = Mockito.mock(Job.class);
+        File tempBuildDir = tmp.newFolder();
+        Mockito.when(j.getBuildDir()).thenReturn(tempBuildDir);
+        Run<? extends Job<?, ?>, ? extends Run<?, ?>> r = new Run(j, 0) {};
+        File f = new File(r.getRootDir(), "log.gz");
+        f.getParentFile().mkdirs();
+        try (PrintWriter w = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(f)), StandardCharsets.UTF_8))) {
+            w.print("a1\nb2\n\nc3\n");
+        }
+        assertEquals(f, r.getLogFile());
+        assertEquals(Arrays.asList("a1", "b2", "", "c3"), r.getLog(10));
+        assertEquals(Arrays.asList("[...truncated 1 B...]", "", "c3"), r.getLog(3));
+    }
+
+    @Test
+    public void getLogOfBlockCompressedLog() throws Exception {
+        Job j = Mockito.mock(Job.class);
+        File tempBuildDir = tmp.newFolder();
+        Mockito.when(j.getBuildDir()).thenReturn(tempBuildDir);
+        Run<? extends Job<?, ?>, ? extends Run<?, ?>> r = new Run(j, 0) {};
+        File f = new File(r.getRootDir(), "log.blk");
+        f.getParentFile().mkdirs();
+        try (OutputStream out = new BlockCompressedOutputStream(f)) {
+            out.write("a1\nb2\n\nc3\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(f, r.getLogFile());
+        assertEquals(Arrays.asList("a1", "b2", "", "c3"), r.getLog(10));
+        assertEquals(Arrays.asList("[...truncated 1 B...]", "", "c3"), r.getLog(3));
+        try (InputStream in = r.getLogInputStream()) {
+            assertEquals("a1\nb2\n\nc3\n", IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+        assertEquals(10, r.getLogText().length());
+    }
+
     @Test
     public void compareRunsFromSameJobWithDifferentNumbers() throws Exception {
         final ItemGroup group = Mockito.mock(ItemGroup.class);
@@ -0,0 +1,90 @@
+package hudson.model.labels;
+
+import hudson.model.Label;
+import hudson.util.VariableResolver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class LabelProgramTest {
+
+    private final LabelAtom a = new LabelAtom("a");
+    private final LabelAtom b = new LabelAtom("b");
+    private final LabelAtom c = new LabelAtom("c");
+
+    /**
+     * Every subset of {a, b, c}.
+     */
+    private List<List<LabelAtom>> assignments() {
+        List<List<LabelAtom>> r = new ArrayList<>();
+        List<LabelAtom> atoms = Arrays.asList(a, b, c);
+        for (int mask = 0; mask < 8; mask++) {
+            List<LabelAtom> l = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    l.add(atoms.get(i));
+                }
+            }
+            r.add(l);
+        }
+        return r;
+    }
+
+    private static boolean interpret(Label l, final List<LabelAtom> atoms) {
+        return l.matches(new VariableResolver<Boolean>() {
+            @Override
+            public Boolean resolve(String name) {
+                for (LabelAtom a : atoms) {
+                    if (a.getName().equals(name)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+    }
+
+    @Test
+    public void agreesWithInterpreter() {
+        List<Label> labels = Arrays.<Label>asList(a,
+                new LabelExpression.Not(a),
+                new LabelExpression.And(a, new LabelExpression.Or(b, c)),
+                new LabelExpression.Or(new LabelExpression.Paren(new LabelExpression.And(a, b)), new LabelExpression.Not(c)),
+                new LabelExpression.Iff(a, new LabelExpression.Implies(b, c)),
+                new LabelExpression.Implies(new LabelExpression.Iff(a, b), new LabelExpression.Not(new LabelExpression.Not(c))));
+        for (Label l : labels) {
+            LabelProgram p = LabelProgram.compile(l);
+            assertNotSame(LabelProgram.UNSUPPORTED, p);
+            for (List<LabelAtom> atoms : assignments()) {
+                assertEquals(l.getExpression() + " on " + atoms, interpret(l, atoms), p.matches(atoms));
+                assertEquals(l.getExpression() + " on " + atoms, interpret(l, atoms), l.matches(atoms));
+            }
+        }
+    }
+
+    @Test
+    public void atomsAreIdentifiedByName() {
+        LabelProgram p = LabelProgram.compile(new LabelExpression.And(a, new LabelAtom("b")));
+        assertEquals(true, p.matches(Arrays.asList(new LabelAtom("a"), b)));
+        assertEquals(false, p.matches(Collections.singletonList(new LabelAtom("a"))));
+    }
+
+    @Test
+    public void unknownLabelTypesAreNotCompiled() {
+        Label custom = new LabelAtom("custom") {
+            @Override
+            public boolean matches(VariableResolver<Boolean> resolver) {
+                return true;
+            }
+        };
+        assertSame(LabelProgram.UNSUPPORTED, LabelProgram.compile(new LabelExpression.Or(a, custom)));
+        assertEquals(true, new LabelExpression.Or(a, custom).matches(Collections.<LabelAtom>emptyList()));
+    }
+}
@@ -0,0 +1,100 @@
+package hudson.model.queue;
+
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.labels.LabelAtom;
+import hudson.model.labels.LabelExpression;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LabelIndexTest {
+
+    private final LabelAtom linux = new LabelAtom("linux");
+    private final LabelAtom docker = new LabelAtom("docker");
+    private final LabelAtom arm = new LabelAtom("arm");
+
+    private LabelIndex<String> index() {
+        LabelIndex<String> index = new LabelIndex<>();
+        index.add("a", new HashSet<>(Arrays.asList(linux, docker)));
+        index.add("b", new HashSet<>(Arrays.asList(linux, docker, arm)));
+        index.add("c", new HashSet<>(Collections.singletonList(linux)));
+        index.add("d", Collections.<LabelAtom>emptySet());
+        return index;
+    }
+
+    @Test
+    public void atoms() {
+        LabelIndex<String> index = index();
+        assertEquals(Arrays.asList("a", "b", "c", "d"), index.candidates(null));
+        assertEquals(Arrays.asList("a", "b", "c"), index.candidates(linux));
+        assertEquals(Collections.singletonList("b"), index.candidates(arm));
+        assertEquals(Collections.emptyList(), index.candidates(new LabelAtom("windows")));
+    }
+
+    @Test
+    public void expressions() {
+        LabelIndex<String> index = index();
+        Label notArm = new LabelExpression.Not(arm);
+        assertEquals(Collections.singletonList("a"),
+                index.candidates(new LabelExpression.And(new LabelExpression.And(linux, docker), notArm)));
+        assertEquals(Arrays.asList("a", "b", "d"),
+                index.candidates(new LabelExpression.Or(docker, new LabelExpression.Paren(new LabelExpression.Not(linux)))));
+        // docker => arm
+        assertEquals(Arrays.asList("b", "c", "d"), index.candidates(new LabelExpression.Implies(docker, arm)));
+        // docker <=> arm
+        assertEquals(Arrays.asList("b", "c", "d"), index.candidates(new LabelExpression.Iff(docker, arm)));
+    }
+
+    @Test
+    public void agreesWithMatches() {
+        LabelIndex<String> index = index();
+        List<Label> labels = Arrays.<Label>asList(linux, new LabelExpression.Not(docker),
+                new LabelExpression.Or(arm, new LabelExpression.Not(linux)),
+                new LabelExpression.Iff(linux, new LabelExpression.Not(arm)));
+        List<List<LabelAtom>> nodes = Arrays.asList(Arrays.asList(linux, docker), Arrays.asList(linux, docker, arm),
+                Collections.singletonList(linux), Collections.<LabelAtom>emptyList());
+        for (Label l : labels) {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < nodes.size(); i++) {
+                if (l.matches(nodes.get(i))) {
+                    expected.append((char) ('a' + i));
+                }
+            }
+            StringBuilder actual = new StringBuilder();
+            for (String s : index.candidates(l)) {
+                actual.append(s);
+            }
+            assertEquals(l.getExpression(), expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void nodelessSlotsAreAlwaysCandidates() {
+        LabelIndex<String> index = index();
+        index.add("gone", null);
+        assertEquals(Arrays.asList("b", "gone"), index.candidates(arm));
+        assertEquals(Arrays.asList("d", "gone"), index.candidates(new LabelExpression.Not(linux)));
+    }
+
+    @Test
+    public void onlyCoreLabelsAreIndexable() {
+        assertTrue(LabelIndex.isIndexable(null));
+        assertTrue(LabelIndex.isIndexable(new LabelExpression.And(linux, new LabelExpression.Paren(new LabelExpression.Not(arm)))));
+        Label custom = new LabelAtom("custom") {
+            @Override
+            public boolean contains(Node node) {
+                return true;
+            }
+        };
+        assertFalse(LabelIndex.isIndexable(custom));
+        assertFalse(LabelIndex.isIndexable(new LabelExpression.Or(linux, new LabelExpression.Not(custom))));
+    }
+}
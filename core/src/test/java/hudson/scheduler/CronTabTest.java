@@ -29,6 +29,8 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
 
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -314,4 +316,59 @@ public class CronTabTest {
         assertEquals("[35, 56]", times.toString());
     }
 
+    @Test public void fireTimesAreAdjacentMatches() throws Exception {
+        String[] specs = {"H/15 * * * *", "0 0 * * *", "30 2 1 * *", "0 9 * * 1-5", "H H * * 0", "0 0 28 2 *", "*/7 3-5 10-20 * 2,4", "0 0 13 * 5"};
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        Random r = new Random(42);
+        for (String spec : specs) {
+            CronTab tab = new CronTab(spec, 1, Hash.from("seed"), "UTC");
+            for (int i = 0; i < 200; i++) {
+                long t = 946684800000L + (long) (r.nextDouble() * 30 * 365 * 24 * 3600 * 1000L); // 2000 to 2030
+                t -= t % 60000;
+                Calendar cal = new GregorianCalendar(utc, Locale.US);
+
+                long next = tab.nextFireTime(t);
+                cal.setTimeInMillis(next);
+                assertTrue(spec + " matches " + cal.getTime(), next >= t && tab.check(cal));
+                assertTrue(spec + " has nothing before " + cal.getTime(), next == t || tab.previousFireTime(next - 60000) < t);
+
+                long previous = tab.previousFireTime(t);
+                cal.setTimeInMillis(previous);
+                assertTrue(spec + " matches " + cal.getTime(), previous <= t && tab.check(cal));
+                assertTrue(spec + " has nothing after " + cal.getTime(), previous == t || tab.nextFireTime(previous + 60000) > t);
+            }
+        }
+        // same as the Calendar based computation in hashedMinute
+        assertEquals(new GregorianCalendar(2013, 2, 22, 13, 56).getTimeInMillis(),
+                new CronTab("H H(12-13) * * *", Hash.from("stuff")).nextFireTime(new GregorianCalendar(2013, 2, 21, 16, 0).getTimeInMillis()));
+    }
+
+    @Test public void fireTimesAcrossDaylightSavingTime() throws Exception {
+        CronTab tab = new CronTab("30 1 * * *", 1, null, "Europe/London");
+        // clocks go from 01:00 GMT to 02:00 BST on 2018-03-25, so there is no 01:30 that day
+        assertEquals(utc(2018, 3, 26, 0, 30), tab.nextFireTime(utc(2018, 3, 25, 0, 0)));
+        assertEquals(utc(2018, 3, 24, 1, 30), tab.previousFireTime(utc(2018, 3, 26, 0, 0)));
+        // clocks go from 02:00 BST back to 01:00 GMT on 2018-10-28, so 01:30 happens twice
+        assertEquals(utc(2018, 10, 28, 0, 30), tab.nextFireTime(utc(2018, 10, 28, 0, 0)));
+        assertEquals(utc(2018, 10, 28, 1, 30), tab.nextFireTime(utc(2018, 10, 28, 0, 31)));
+        assertEquals(utc(2018, 10, 28, 0, 30), tab.previousFireTime(utc(2018, 10, 28, 1, 0)));
+        // seconds are dropped
+        assertEquals(utc(2018, 10, 28, 1, 30), tab.nextFireTime(utc(2018, 10, 28, 1, 30) + 15000));
+    }
+
+    @Test public void nextFireTimes() throws Exception {
+        long start = utc(2018, 6, 1, 0, 0);
+        assertArrayEquals(new long[] {start, utc(2018, 6, 1, 1, 0), utc(2018, 6, 1, 2, 0)},
+                new CronTab("0 * * * *", 1, null, "UTC").nextFireTimes(start, 3));
+        assertArrayEquals(new long[] {start, utc(2018, 6, 1, 0, 30), utc(2018, 6, 1, 1, 0)},
+                CronTabList.create("TZ=UTC\n0 * * * *\n0,30 * * * *").nextFireTimes(start, 3));
+        assertArrayEquals(new long[0], new CronTab("0 0 31 2 *").nextFireTimes(start, 3));
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.US);
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute);
+        return cal.getTimeInMillis();
+    }
 }
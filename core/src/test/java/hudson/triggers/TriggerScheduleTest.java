@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.triggers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TriggerScheduleTest {
+
+    private static long at(int hour, int minute) {
+        return new GregorianCalendar(2018, 5, 1, hour, minute).getTimeInMillis();
+    }
+
+    @Test
+    public void dueInOrder() throws Exception {
+        TriggerSchedule s = new TriggerSchedule();
+        TimerTrigger quarter = new TimerTrigger("*/15 * * * *");
+        TimerTrigger hourly = new TimerTrigger("0 * * * *");
+        TimerTrigger daily = new TimerTrigger("30 3 * * *");
+        s.schedule(daily, at(1, 1));
+        s.schedule(hourly, at(1, 1));
+        s.schedule(quarter, at(1, 1));
+        assertEquals(3, s.size());
+
+        assertEquals(Collections.emptyList(), s.due(at(1, 14)));
+        assertEquals(Collections.<Trigger<?>>singletonList(quarter), s.due(at(1, 15)));
+        assertFalse(s.contains(quarter));
+        s.schedule(quarter, at(1, 16));
+
+        assertEquals(Arrays.<Trigger<?>>asList(quarter, hourly), s.due(at(2, 0)));
+        assertEquals(1, s.size());
+        assertEquals(Collections.<Trigger<?>>singletonList(daily), s.due(at(3, 30)));
+        assertEquals(0, s.size());
+    }
+
+    @Test
+    public void scheduleReplacesAndUnscheduleRemoves() throws Exception {
+        TriggerSchedule s = new TriggerSchedule();
+        TimerTrigger t = new TimerTrigger("0 * * * *");
+        s.schedule(t, at(1, 1));
+        s.schedule(t, at(5, 1));
+        assertEquals(1, s.size());
+        assertEquals(Collections.emptyList(), s.due(at(5, 59)));
+        assertEquals(Collections.<Trigger<?>>singletonList(t), s.due(at(6, 0)));
+
+        s.schedule(t, at(1, 1));
+        assertTrue(s.contains(t));
+        s.unschedule(t);
+        assertFalse(s.contains(t));
+        assertEquals(Collections.emptyList(), s.due(at(23, 0)));
+    }
+
+    @Test
+    public void triggerWithoutSpecIsNotScheduled() throws Exception {
+        TriggerSchedule s = new TriggerSchedule();
+        s.schedule(new TimerTrigger(""), at(1, 1));
+        assertEquals(0, s.size());
+    }
+}
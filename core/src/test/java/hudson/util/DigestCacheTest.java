@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package hudson.util;
+
+import hudson.Util;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class DigestCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File write(File f, String content, long age) throws Exception {
+        FileUtils.writeStringToFile(f, content, StandardCharsets.UTF_8);
+        assertTrue(f.setLastModified(System.currentTimeMillis() - age));
+        return f;
+    }
+
+    @Test
+    public void unchangedFilesAreNotReadAgain() throws Exception {
+        DigestCache cache = DigestCache.forDirectory(tmp.newFolder());
+        File f = write(tmp.newFile(), "hello", 60000);
+        assertEquals(Util.getDigestOf(f), cache.digest(f));
+        assertEquals(Util.getDigestOf(f), cache.digest(f));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(5, cache.getBytesHashed());
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void changedFilesAreReadAgain() throws Exception {
+        DigestCache cache = DigestCache.forDirectory(tmp.newFolder());
+        File f = write(tmp.newFile(), "hello", 60000);
+        cache.digest(f);
+        write(f, "hello world", 60000); // other size
+        assertEquals(Util.getDigestOf(f), cache.digest(f));
+        write(f, "jello world", 30000); // same size, other modification time
+        assertEquals(Util.getDigestOf(f), cache.digest(f));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void recentlyModifiedFilesAreNotRemembered() throws Exception {
+        DigestCache cache = DigestCache.forDirectory(tmp.newFolder());
+        File f = write(tmp.newFile(), "hello", 0);
+        cache.digest(f);
+        cache.digest(f);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void savedAndLoaded() throws Exception {
+        File dir = tmp.newFolder();
+        DigestCache cache = DigestCache.forDirectory(dir);
+        File a = write(tmp.newFile(), "a", 60000);
+        File b = write(tmp.newFile(), "b", 60000);
+        cache.digest(a);
+        cache.digest(b);
+        cache.save();
+        assertTrue(new File(dir, DigestCache.FILE_NAME).isFile());
+
+        DigestCache.unload();
+        DigestCache loaded = DigestCache.forDirectory(dir);
+        assertNotSame(cache, loaded);
+        assertEquals(2, loaded.size());
+        assertEquals(Util.getDigestOf(a), loaded.digest(a));
+        assertEquals(Util.getDigestOf(b), loaded.digest(b));
+        assertEquals(2, loaded.getHitCount());
+        assertEquals(0, loaded.getMissCount());
+    }
+
+}
@@ -24,11 +24,19 @@
 package hudson.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import com.google.common.base.Predicate;
+import hudson.model.Job;
+import hudson.model.Result;
 import hudson.model.Run;
+import jenkins.model.lazy.AbstractLazyLoadRunMap;
+import jenkins.model.lazy.BuildIndex;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.jvnet.hudson.test.Issue;
@@ -92,4 +100,81 @@ public class RunListTest {
 		assertEquals(1, tested.toArray().length);
 		assertEquals(2, tested.getFirstBuild().getNumber());
 	}
+
+	// builds of two jobs, merged by RunList(Collection)
+	private Run a1, a2, b1, b2;
+
+	private Run run(long timestamp, Result result) {
+		Run r = PowerMockito.mock(Run.class);
+		when(r.getTimeInMillis()).thenReturn(timestamp);
+		when(r.getResult()).thenReturn(result);
+		return r;
+	}
+
+	private Job job(Run... newestFirst) {
+		Job j = PowerMockito.mock(Job.class);
+		when(j.getBuilds()).thenReturn(RunList.fromRuns(Arrays.asList(newestFirst)));
+		return j;
+	}
+
+	private RunList<Run> mergedRuns() {
+		a1 = run(100, Result.SUCCESS);
+		a2 = run(400, Result.FAILURE);
+		b1 = run(200, Result.FAILURE);
+		b2 = run(300, Result.SUCCESS);
+		return new RunList<Run>(Arrays.asList(job(a2, a1), job(b2, b1)));
+	}
+
+	@PrepareForTest({Run.class, Job.class})
+	@Test
+	public void mergedByTimestamp() {
+		RunList<Run> merged = mergedRuns();
+		assertEquals(Arrays.asList(a2, b2, b1, a1), new ArrayList<Run>(merged));
+		assertEquals(4, merged.size());
+		assertEquals(a1, merged.getFirstBuild());
+		assertEquals(a2, merged.getLastBuild());
+		assertEquals(b1, merged.get(2));
+		assertEquals(Arrays.asList(b2, b1), merged.subList(1, 3));
+	}
+
+	@PrepareForTest({Run.class, Job.class})
+	@Test
+	public void mergedFilters() {
+		assertEquals(Arrays.asList(a2, b1), new ArrayList<Run>(mergedRuns().failureOnly()));
+		assertEquals(Arrays.asList(b2, b1), new ArrayList<Run>(mergedRuns().byTimestamp(150, 350)));
+		assertEquals(Arrays.asList(a2), new ArrayList<Run>(mergedRuns().limit(2).failureOnly()));
+		assertEquals(Arrays.asList(a2, b1), new ArrayList<Run>(mergedRuns().failureOnly().limit(2)));
+	}
+
+	private BuildIndex.Entry entry(int number, long timestamp) {
+		BuildIndex.Entry e = PowerMockito.mock(BuildIndex.Entry.class);
+		when(e.getNumber()).thenReturn(number);
+		when(e.getTimestamp()).thenReturn(timestamp);
+		return e;
+	}
+
+	@PrepareForTest({Run.class, Job.class, AbstractLazyLoadRunMap.class, BuildIndex.Entry.class})
+	@Test
+	public void mergedSkipsUnloadableBuilds() {
+		a1 = run(100, Result.SUCCESS);
+		Run a3 = run(400, Result.SUCCESS);
+		b1 = run(200, Result.FAILURE);
+		b2 = run(300, Result.SUCCESS);
+		// #2 is still indexed but cannot be loaded
+		AbstractLazyLoadRunMap<Run> map = PowerMockito.mock(AbstractLazyLoadRunMap.class);
+		when(map.selectEntries(anyInt(), any(Predicate.class), any(Predicate.class)))
+				.thenReturn(Arrays.asList(entry(3, 400), entry(2, 250), entry(1, 100)));
+		when(map.getByNumber(3)).thenReturn(a3);
+		when(map.getByNumber(1)).thenReturn(a1);
+		Job a = PowerMockito.mock(Job.class);
+		when(a.getBuilds()).thenReturn(RunList.fromRunMap(map));
+
+		RunList<Run> merged = new RunList<Run>(Arrays.asList(a, job(b2, b1)));
+		assertEquals(Arrays.asList(a3, b2, b1, a1), new ArrayList<Run>(merged));
+		assertEquals(4, merged.size());
+		assertEquals(a1, merged.getFirstBuild());
+		assertEquals(b1, merged.get(2));
+		assertEquals(a1, merged.get(3));
+		assertEquals(Arrays.asList(b1, a1), merged.subList(2, 4));
+	}
 }
@@ -271,6 +271,21 @@ public class XStream2Test {
         public int x,y;
     }
 
+    @Test
+    public void fieldAliasAddedAfterUse() {
+        XStream2 xs = new XStream2();
+        Point pt = (Point) xs.fromXML("<" + Point.class.getName() + "><x>1</x><y>2</y></" + Point.class.getName() + ">");
+        assertEquals(1, pt.x);
+        xs.aliasField("across", Point.class, "x");
+        pt = (Point) xs.fromXML("<" + Point.class.getName() + "><across>3</across><y>4</y></" + Point.class.getName() + ">");
+        assertEquals("field mappings looked up before the alias was added should not be reused", 3, pt.x);
+        assertEquals(4, pt.y);
+        XStream2.invalidateCaches();
+        pt = (Point) xs.fromXML("<" + Point.class.getName() + "><across>5</across><y>6</y></" + Point.class.getName() + ">");
+        assertEquals(5, pt.x);
+        assertEquals(6, pt.y);
+    }
+
     public static class Foo2 {
         ConcurrentHashMap<String,String> m = new ConcurrentHashMap<String,String>();
     }
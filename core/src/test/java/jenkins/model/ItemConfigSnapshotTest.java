@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model;
+
+import hudson.PluginWrapper;
+import hudson.XmlFile;
+import hudson.util.XStream2;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ItemConfigSnapshotTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final XStream2 XSTREAM = new XStream2();
+
+    public static final class Config {
+        String name;
+        int count;
+
+        Config(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ItemConfigSnapshot.close();
+    }
+
+    private XmlFile config(String job, String name, int count) throws IOException {
+        XmlFile f = new XmlFile(XSTREAM, new File(tmp.getRoot(), "jobs/" + job + "/config.xml"));
+        f.write(new Config(name, count));
+        return f;
+    }
+
+    private Config read(XmlFile f) throws IOException {
+        return (Config) ItemConfigSnapshot.read(f);
+    }
+
+    private void restart() {
+        ItemConfigSnapshot.close();
+        ItemConfigSnapshot.open(tmp.getRoot(), Collections.<PluginWrapper>emptyList());
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        XmlFile a = config("a", "first", 1);
+        XmlFile b = config("b", "second", 2);
+        restart();
+        assertEquals("first", read(a).name);
+        assertEquals(2, read(b).count);
+        restart();
+        assertTrue(new File(tmp.getRoot(), ItemConfigSnapshot.FILE_NAME).isFile());
+        // unchanged files are now taken from the snapshot; make their XML unreadable to be sure
+        corrupt(a);
+        assertEquals("first", read(a).name);
+        assertEquals(2, read(b).count);
+    }
+
+    @Test
+    public void changedFileIsParsedAgain() throws Exception {
+        XmlFile a = config("a", "first", 1);
+        restart();
+        read(a);
+        restart();
+        config("a", "changed name", 1);
+        assertTrue(a.getFile().setLastModified(a.getFile().lastModified() + 10000));
+        assertEquals("changed name", read(a).name);
+    }
+
+    @Test
+    public void savedFileIsParsedAgain() throws Exception {
+        XmlFile a = config("a", "first", 1);
+        restart();
+        read(a);
+        restart();
+        read(a);
+        ItemConfigSnapshot.close();
+        long lastModified = a.getFile().lastModified();
+        config("a", "other", 1);
+        assertTrue(a.getFile().setLastModified(lastModified)); // same size and time, as after a quick save
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(new File(tmp.getRoot(), ItemConfigSnapshot.INVALID_FILE_NAME)), StandardCharsets.UTF_8)) {
+            w.write("jobs" + File.separator + "a" + File.separator + "config.xml\n");
+        }
+        restart();
+        assertEquals("other", read(a).name);
+        ItemConfigSnapshot.close();
+        assertFalse(new File(tmp.getRoot(), ItemConfigSnapshot.INVALID_FILE_NAME).exists());
+    }
+
+    @Test
+    public void savedDuringStartupIsParsedAgain() throws Exception {
+        XmlFile a = config("a", "first", 1);
+        for (boolean firstSnapshot : new boolean[] {true, false}) {
+            restart();
+            assertEquals(!firstSnapshot, new File(tmp.getRoot(), ItemConfigSnapshot.FILE_NAME).exists());
+            read(a);
+            // saved while the next snapshot is being made, with the same size and time
+            long lastModified = a.getFile().lastModified();
+            config("a", firstSnapshot ? "other" : "third", 1);
+            assertTrue(a.getFile().setLastModified(lastModified));
+            ItemConfigSnapshot.invalidate(tmp.getRoot(), a.getFile());
+            restart();
+            assertEquals(firstSnapshot ? "other" : "third", read(a).name);
+        }
+    }
+
+    @Test
+    public void readsXmlWithoutSnapshot() throws Exception {
+        XmlFile a = config("a", "first", 1);
+        assertEquals("first", read(a).name);
+        assertFalse(new File(tmp.getRoot(), ItemConfigSnapshot.FILE_NAME).exists());
+    }
+
+    private static void corrupt(XmlFile f) throws IOException {
+        long lastModified = f.getFile().lastModified();
+        long size = f.getFile().length();
+        try (FileOutputStream out = new FileOutputStream(f.getFile())) {
+            for (long i = 0; i < size; i++) {
+                out.write('!');
+            }
+        }
+        assertTrue(f.getFile().setLastModified(lastModified));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model.lazy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BuildCacheTest {
+
+    /**
+     * Every build weighs 10 and is pinned while in {@link #pinned}.
+     */
+    private static class TestCache extends BuildCache {
+        final Set<Object> pinned = new HashSet<>();
+
+        TestCache(long budget) {
+            super(budget);
+        }
+
+        @Override
+        long weigh(Object referent) {
+            return 10;
+        }
+
+        @Override
+        boolean isPinned(Object referent) {
+            return pinned.contains(referent);
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        TestCache cache = new TestCache(30);
+        List<BuildReference.Holder<String>> holders = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            holders.add(cache.make("#" + i));
+        }
+        assertEquals(3, cache.getSize());
+        assertEquals(30, cache.getWeight());
+
+        // #0 was used since admitted, so #1 goes first
+        assertEquals("#0", holders.get(0).get());
+        BuildReference.Holder<String> h3 = cache.make("#3");
+        assertEquals(3, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("#3", h3.get());
+        assertEquals("#0", holders.get(0).get());
+        assertEquals("#2", holders.get(2).get());
+        assertEquals(4, cache.getHitCount());
+    }
+
+    @Test
+    public void pinnedBuildsKept() {
+        TestCache cache = new TestCache(20);
+        String running = "#1";
+        cache.pinned.add(running);
+        BuildReference.Holder<String> h1 = cache.make(running);
+        for (int i = 2; i < 10; i++) {
+            cache.make("#" + i);
+        }
+        assertSame(running, h1.get());
+        assertEquals(2, cache.getSize());
+
+        cache.pinned.clear();
+        cache.setBudget(0);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void evictedBuildInUseTakenBack() {
+        TestCache cache = new TestCache(10);
+        String b1 = "#1";
+        BuildReference.Holder<String> h1 = cache.make(b1);
+        cache.make("#2");
+        assertEquals(1, cache.getSize());
+        // still referenced from here, so it is not lost
+        assertSame(b1, h1.get());
+        assertEquals(1, cache.getSize());
+        assertEquals(10, cache.getWeight());
+    }
+
+    @Test
+    public void releasedBuildsLeave() {
+        TestCache cache = new TestCache(100);
+        BuildReference.Holder<String> h = cache.make("#2");
+        assertEquals(1, cache.getSize());
+        ((BuildCache.CachedHolder) h).release();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+        assertNull(h.get());
+    }
+
+    @Test
+    public void loadsCounted() {
+        TestCache cache = new TestCache(100);
+        cache.loaded(2000000);
+        cache.loaded(3000000);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(5, cache.getLoadTime());
+        assertTrue(cache.toString(), cache.toString().contains("2 misses"));
+    }
+}
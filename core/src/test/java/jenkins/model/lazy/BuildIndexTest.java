@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model.lazy;
+
+import hudson.model.Result;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BuildIndexTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private void build(int number, String result) throws IOException {
+        File dir = new File(tmp.getRoot(), Integer.toString(number));
+        assertTrue(dir.mkdirs());
+        Files.write(new File(dir, "build.xml").toPath(), ("<?xml version='1.1' encoding='UTF-8'?>\n"
+                + "<build>\n"
+                + "  <actions>\n"
+                + "    <hudson.model.CauseAction><result>nested</result></hudson.model.CauseAction>\n"
+                + "  </actions>\n"
+                + "  <timestamp>" + (1000 + number) + "</timestamp>\n"
+                + "  <duration>5</duration>\n"
+                + "  <builtOn>agent" + number + "</builtOn>\n"
+                + (result != null ? "  <result>" + result + "</result>\n" : "")
+                + "  <displayName>one &amp; " + number + "</displayName>\n"
+                + "</build>\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BuildIndex load(Integer... numbers) {
+        BuildIndex i = new BuildIndex(tmp.getRoot());
+        i.load(Arrays.asList(numbers));
+        return i;
+    }
+
+    @Test
+    public void rebuiltFromBuildXml() throws Exception {
+        build(1, "SUCCESS");
+        build(2, "FAILURE");
+        build(3, null);
+        BuildIndex i = load(3, 2, 1);
+        assertEquals(3, i.size());
+
+        BuildIndex.Entry e = i.get(1);
+        assertEquals(Result.SUCCESS, e.getResult());
+        assertFalse(e.isBuilding());
+        assertEquals(1001, e.getTimestamp());
+        assertEquals(5, e.getDuration());
+        assertEquals("one & 1", e.getDisplayName());
+        assertEquals("agent1", e.getBuiltOn());
+        assertEquals(Result.FAILURE, i.get(2).getResult());
+        assertNull(i.get(3).getResult());
+        assertTrue("no result is taken as still running", i.get(3).isBuilding());
+
+        List<Integer> order = new ArrayList<>();
+        for (BuildIndex.Entry x : i.getEntries()) {
+            order.add(x.getNumber());
+        }
+        assertEquals(Arrays.asList(3, 2, 1), order);
+        assertTrue(new File(tmp.getRoot(), BuildIndex.FILE_NAME).isFile());
+    }
+
+    @Test
+    public void journalReplayed() throws Exception {
+        build(1, "SUCCESS");
+        build(2, "FAILURE");
+        BuildIndex i = load(2, 1);
+        i.remove(1);
+        // as if #2 was saved again with another result, without touching build.xml
+        long lastModified = new File(tmp.getRoot(), "2/build.xml").lastModified();
+        i.put(new BuildIndex.Entry(2, "2", 1002, 7, Result.UNSTABLE, false, null, null, 0), lastModified);
+
+        i = load(2, 1);
+        assertEquals(Result.UNSTABLE, i.get(2).getResult());
+        assertEquals(7, i.get(2).getDuration());
+        assertEquals("#2", i.get(2).getDisplayName());
+        assertNull(i.get(2).getBuiltOn());
+        assertEquals("read again since it is on disk", Result.SUCCESS, i.get(1).getResult());
+
+        i = load(2);
+        assertNull("dropped since it is not on disk", i.get(1));
+        assertEquals(1, i.size());
+    }
+
+    @Test
+    public void savedBeforeLoadLeftToTheLoad() throws Exception {
+        build(1, "SUCCESS");
+        BuildIndex i = new BuildIndex(tmp.getRoot());
+        i.put(new BuildIndex.Entry(1, "1", 1001, 7, Result.UNSTABLE, false, null, null, 0), 0);
+        assertNull(i.get(1));
+        assertFalse(new File(tmp.getRoot(), BuildIndex.FILE_NAME).exists());
+        i.load(Collections.singletonList(1));
+        assertEquals("read from build.xml", Result.SUCCESS, i.get(1).getResult());
+    }
+
+    @Test
+    public void tornTailIgnored() throws Exception {
+        build(1, "SUCCESS");
+        build(2, "FAILURE");
+        load(2, 1);
+        File f = new File(tmp.getRoot(), BuildIndex.FILE_NAME);
+        long length = f.length();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(length);
+            raf.write(new byte[] {'P', 0, 0});
+        }
+        BuildIndex i = load(2, 1);
+        assertEquals(2, i.size());
+        assertEquals(Result.FAILURE, i.get(2).getResult());
+        assertEquals("rewritten without the torn record", length, f.length());
+    }
+
+    @Test
+    public void unreadableBuildLeftToTheBuild() throws Exception {
+        build(1, "SUCCESS");
+        File dir = new File(tmp.getRoot(), "2");
+        assertTrue(dir.mkdirs());
+        Files.write(new File(dir, "build.xml").toPath(), "<build><timestamp>x".getBytes(StandardCharsets.UTF_8));
+        BuildIndex i = load(2, 1);
+        assertTrue(i.get(2).isBuilding());
+        assertFalse(i.get(1).isBuilding());
+    }
+}
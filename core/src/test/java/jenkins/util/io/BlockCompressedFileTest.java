@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.util.io;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockCompressedFileTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Spans several blocks.
+     */
+    private static String text() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            b.append("line ").append(i).append(i % 100 == 0 ? StringUtils.repeat("x", 1000) : "").append('\n');
+        }
+        return b.toString();
+    }
+
+    private static String read(BlockCompressedFile f, long offset) throws Exception {
+        try (InputStream in = f.open(offset)) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void seekToOffsetsAndLines() throws Exception {
+        String text = text();
+        File file = new File(tmp.getRoot(), "log.blk");
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(file.length() * 5 < text.length());
+
+        BlockCompressedFile f = new BlockCompressedFile(file);
+        assertEquals(text.length(), f.length());
+        assertEquals(20000, f.lineCount());
+        assertEquals(text, read(f, 0));
+        for (int offset : new int[] {1, BlockCompressedFile.BLOCK_SIZE - 1, BlockCompressedFile.BLOCK_SIZE, 300000, text.length() - 3}) {
+            assertEquals(text.substring(offset), read(f, offset));
+        }
+        assertEquals("", read(f, text.length() + 10));
+
+        assertEquals(0, f.offsetOfLine(0));
+        assertEquals(text.indexOf("line 1\n"), f.offsetOfLine(1));
+        assertEquals(text.indexOf("line 12345\n"), f.offsetOfLine(12345));
+        assertEquals(text.length(), f.offsetOfLine(20000));
+        assertEquals(text.length(), f.offsetOfLine(30000));
+    }
+
+    @Test
+    public void readWhileWritingAndAppend() throws Exception {
+        File file = new File(tmp.getRoot(), "log.blk");
+        BlockCompressedFile f = new BlockCompressedFile(file);
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write("first\nsec".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertEquals("first\nsec", read(f, 0));
+            out.write("ond\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("first\nsecond\n", read(f, 0));
+
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write("third\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("first\nsecond\nthird\n", read(f, 0));
+        assertEquals("second\nthird\n", read(f, f.offsetOfLine(1)));
+        assertEquals(3, f.lineCount());
+    }
+
+    @Test
+    public void appendAfterCrash() throws Exception {
+        File file = new File(tmp.getRoot(), "log.blk");
+        BlockCompressedOutputStream crashed = new BlockCompressedOutputStream(file);
+        crashed.write("before\n".getBytes(StandardCharsets.UTF_8));
+        crashed.flush();
+        // never closed
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write("after\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("before\nafter\n", read(new BlockCompressedFile(file), 0));
+    }
+
+    @Test
+    public void unreadableLogIsMovedAside() throws Exception {
+        File file = new File(tmp.getRoot(), "log.blk");
+        File index = BlockCompressedFile.indexFileOf(file);
+        File corrupt = new File(file.getPath() + BlockCompressedOutputStream.CORRUPT_SUFFIX);
+        File corruptIndex = new File(index.getPath() + BlockCompressedOutputStream.CORRUPT_SUFFIX);
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write("first\n".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] data = Files.readAllBytes(file.toPath());
+
+        // missing index
+        assertTrue(index.delete());
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write("second\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("second\n", read(new BlockCompressedFile(file), 0));
+        assertArrayEquals(data, Files.readAllBytes(corrupt.toPath()));
+        assertFalse(corruptIndex.exists());
+
+        // corrupted index
+        data = Files.readAllBytes(file.toPath());
+        byte[] garbage = {1, 2, 3, 4, 5, 6, 7, 8};
+        Files.write(index.toPath(), garbage);
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write("third\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("third\n", read(new BlockCompressedFile(file), 0));
+        assertArrayEquals(data, Files.readAllBytes(corrupt.toPath()));
+        assertArrayEquals(garbage, Files.readAllBytes(corruptIndex.toPath()));
+    }
+
+    @Test
+    public void readBackwards() throws Exception {
+        String text = text();
+        File file = new File(tmp.getRoot(), "log.blk");
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        List<String> lines = new ArrayList<>();
+        try (ReverseLinesStream stream = new ReverseLinesStream(new BlockCompressedFile(file), StandardCharsets.UTF_8)) {
+            for (String line : stream) {
+                lines.add(line);
+                if (lines.size() == 3) {
+                    assertEquals(text.indexOf("line 19997\n"), stream.getPosition());
+                }
+            }
+        }
+        assertEquals(20000, lines.size());
+        assertEquals(Arrays.asList("line 19999", "line 19998"), lines.subList(0, 2));
+        assertEquals("line 0" + StringUtils.repeat("x", 1000), lines.get(19999));
+    }
+}
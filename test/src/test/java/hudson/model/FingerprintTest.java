@@ -120,6 +120,31 @@ public class FingerprintTest {
         assertTrue("Usages do not have a reference to " + project2, usages.containsKey(project2.getName()));       
     }
 
+    @Test
+    public void recordAll() throws Exception {
+        FreeStyleProject project = rule.createFreeStyleProject();
+        FreeStyleBuild build = rule.buildAndAssertSuccess(project);
+        String a = "0123456789abcdef0123456789abcdef", b = "fedcba9876543210fedcba9876543210";
+        Map<String, String> md5sums = new HashMap<String, String>();
+        md5sums.put("target/a.jar", a);
+        md5sums.put("lib/copy-of-a.jar", a);
+        md5sums.put("b.zip", b);
+        md5sums.put("bogus.txt", "not a checksum");
+
+        Map<String, Fingerprint> fingerprints = rule.jenkins.getFingerprintMap().recordAll(build, md5sums, new HashSet<String>(Arrays.asList("target/a.jar")));
+        assertEquals(3, fingerprints.size());
+        assertSame(fingerprints.get("target/a.jar"), fingerprints.get("lib/copy-of-a.jar"));
+        assertEquals("a.jar", fingerprints.get("target/a.jar").getFileName());
+        assertEquals(project.getFullName(), fingerprints.get("target/a.jar").getOriginal().getName());
+        assertNull(fingerprints.get("b.zip").getOriginal());
+
+        for (String id : new String[] {a, b}) {
+            Fingerprint saved = FingerprintStorage.get().load(id);
+            assertNotNull("saved " + id, saved);
+            assertTrue(saved.getRangeSet(project.getFullName()).includes(build.getNumber()));
+        }
+    }
+
     @Test
     @Issue("JENKINS-51179")
     public void shouldThrowIOExceptionWhenFileIsInvalid() throws Exception {
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class QueueRestartTest {
@@ -77,6 +78,57 @@ public class QueueRestartTest {
         });
     }
 
+    @Test
+    public void persistQueueOnCrashWithJournal() {
+        j.addStepWithDirtyShutdown(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                Queue.Saver.JOURNAL = true;
+                Queue.Saver.JOURNAL_DELAY_MILLIS = 0;
+                scheduleSomeBuild();
+                assertBuildIsScheduled();
+
+                ExtensionList.lookup(Queue.Saver.class).get(0).getNextFlush().get(3, TimeUnit.SECONDS);
+
+                Queue q = j.j.jenkins.getQueue();
+                assertTrue("queue.journal does not exist", q.getQueueJournalFile().exists());
+                assertFalse("queue.xml was written", q.getXMLQueueFile().exists());
+            }
+        });
+        j.addStep(new Statement() {
+            @Override public void evaluate() {
+                try {
+                    assertBuildIsScheduled();
+                } finally {
+                    Queue.Saver.JOURNAL = false;
+                    Queue.Saver.JOURNAL_DELAY_MILLIS = 1000;
+                }
+            }
+        });
+    }
+
+    @Test
+    public void compactJournal() {
+        j.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                Queue.Saver.JOURNAL = true;
+                Queue.Saver.JOURNAL_DELAY_MILLIS = 0;
+                Queue.Saver.COMPACTION_THRESHOLD = 1;
+                try {
+                    scheduleSomeBuild();
+                    ExtensionList.lookup(Queue.Saver.class).get(0).getNextFlush().get(3, TimeUnit.SECONDS);
+
+                    Queue q = j.j.jenkins.getQueue();
+                    assertTrue("queue.xml does not exist", q.getXMLQueueFile().exists());
+                    assertFalse("queue.journal was not discarded", q.getQueueJournalFile().exists());
+                } finally {
+                    Queue.Saver.JOURNAL = false;
+                    Queue.Saver.JOURNAL_DELAY_MILLIS = 1000;
+                    Queue.Saver.COMPACTION_THRESHOLD = 1000;
+                }
+            }
+        });
+    }
+
     private void assertBuildIsScheduled() {
         assertEquals(1, j.j.jenkins.getQueue().getItems().length);
     }
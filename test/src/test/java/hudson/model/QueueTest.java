@@ -23,6 +23,8 @@
  */
 package hudson.model;
 
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
 import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.HtmlFileInput;
@@ -50,6 +52,7 @@ import hudson.model.listeners.SaveableListener;
 import hudson.model.queue.CauseOfBlockage;
 import hudson.model.queue.QueueTaskDispatcher;
 import hudson.model.queue.QueueTaskFuture;
+import hudson.model.queue.ScheduleRequest;
 import hudson.model.queue.ScheduleResult;
 import hudson.model.queue.SubTask;
 import hudson.security.ACL;
@@ -105,6 +108,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -1020,6 +1024,131 @@ public class QueueTest {
         assertEquals(expected.getShortDescription(), actual.getShortDescription());
     }
 
+    @Test
+    public void incrementalMaintenanceSkipsUnchangedItems() throws Exception {
+        boolean incremental = Queue.INCREMENTAL_MAINTENANCE;
+        long interval = Queue.FULL_MAINTENANCE_INTERVAL;
+        Queue.INCREMENTAL_MAINTENANCE = true;
+        Queue.FULL_MAINTENANCE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+        try {
+            final Queue queue = r.jenkins.getQueue();
+            final FreeStyleProject p = r.createFreeStyleProject("p");
+            r.waitUntilNoActivity();
+            // only count what our own maintain() calls do, and keep the periodic maintenance out while we look
+            CountingBlocker.thread = Thread.currentThread();
+            CountingBlocker.blocked = true;
+            QueueTaskFuture<FreeStyleBuild> f = Queue.withLock(new java.util.concurrent.Callable<QueueTaskFuture<FreeStyleBuild>>() {
+                @Override public QueueTaskFuture<FreeStyleBuild> call() throws Exception {
+                    QueueTaskFuture<FreeStyleBuild> future = p.scheduleBuild2(0);
+                    queue.maintain();
+                    assertEquals(1, queue.getBlockedItems().size());
+                    Queue.Item item = queue.getBlockedItems().get(0);
+                    int calls = CountingBlocker.calls.get();
+                    assertTrue(calls > 0);
+
+                    queue.maintain();
+                    assertEquals("unchanged blocked item should not be looked at again", calls, CountingBlocker.calls.get());
+
+                    CountingBlocker.blocked = false;
+                    queue.maintain();
+                    assertEquals("nobody told the queue about the change yet", 1, queue.getBlockedItems().size());
+                    assertEquals(calls, CountingBlocker.calls.get());
+
+                    queue.markDirty(item);
+                    queue.maintain();
+                    assertTrue(CountingBlocker.calls.get() > calls);
+                    assertTrue(queue.getBlockedItems().isEmpty());
+                    return future;
+                }
+            });
+            r.assertBuildStatusSuccess(f);
+        } finally {
+            CountingBlocker.thread = null;
+            Queue.INCREMENTAL_MAINTENANCE = incremental;
+            Queue.FULL_MAINTENANCE_INTERVAL = interval;
+        }
+    }
+
+    @TestExtension("incrementalMaintenanceSkipsUnchangedItems")
+    public static class CountingBlocker extends QueueTaskDispatcher {
+        static volatile boolean blocked;
+        static volatile Thread thread;
+        static final AtomicInteger calls = new AtomicInteger();
+        @Override
+        public CauseOfBlockage canRun(Queue.Item item) {
+            if (Thread.currentThread() == thread) {
+                calls.incrementAndGet();
+            }
+            return blocked ? CauseOfBlockage.fromMessage(Messages._Queue_Unknown()) : null;
+        }
+    }
+
+    @Test
+    public void apiAnswersNotModifiedWhileQueueIsUnchanged() throws Exception {
+        long timeBucket = Queue.VersionedApi.TIME_BUCKET_MILLIS;
+        Queue.VersionedApi.TIME_BUCKET_MILLIS = Long.MAX_VALUE; // not crossing into another period while testing
+        try {
+            apiAnswersNotModifiedWhileQueueIsUnchanged(r.jenkins.getQueue());
+        } finally {
+            Queue.VersionedApi.TIME_BUCKET_MILLIS = timeBucket;
+        }
+    }
+
+    private void apiAnswersNotModifiedWhileQueueIsUnchanged(Queue queue) throws Exception {
+        JenkinsRule.WebClient wc = r.createWebClient();
+        wc.getOptions().setThrowExceptionOnFailingStatusCode(false);
+        WebRequest req = new WebRequest(new URL(r.getURL(), "queue/api/json"));
+
+        WebResponse rsp = wc.loadWebResponse(req);
+        assertEquals(HttpURLConnection.HTTP_OK, rsp.getStatusCode());
+        String etag = rsp.getResponseHeaderValue("ETag");
+        assertNotNull(etag);
+
+        req.setAdditionalHeader("If-None-Match", etag);
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, wc.loadWebResponse(req).getStatusCode());
+
+        long version = queue.getVersion();
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.scheduleBuild2(3600);
+        assertTrue(queue.getVersion() > version);
+        rsp = wc.loadWebResponse(req);
+        assertEquals(HttpURLConnection.HTTP_OK, rsp.getStatusCode());
+        assertNotEquals(etag, rsp.getResponseHeaderValue("ETag"));
+
+        assertEquals("Authorization, Cookie", rsp.getResponseHeaderValue("Vary"));
+
+        version = queue.getVersion();
+        queue.maintain();
+        queue.maintain();
+        assertEquals("nothing changed but the time", version, queue.getVersion());
+
+        queue.clear();
+        version = queue.getVersion();
+        queue.maintain();
+        assertEquals("nothing left to describe", version, queue.getVersion());
+    }
+
+    @Test
+    public void scheduleAllUpdatesSnapshotOnce() throws Exception {
+        Queue queue = r.jenkins.getQueue();
+        FreeStyleProject a = r.createFreeStyleProject("a");
+        FreeStyleProject b = r.createFreeStyleProject("b");
+        queue.schedule2(a, 3600);
+
+        long version = queue.getVersion();
+        List<ScheduleResult> results = queue.scheduleAll(Arrays.asList(
+                new ScheduleRequest(b, 3600, new CauseAction(new UserIdCause())),
+                new ScheduleRequest(a, 3600)));
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isCreated());
+        assertSame(b, results.get(0).getItem().task);
+        assertTrue(results.get(1).isAccepted());
+        assertFalse(results.get(1).isCreated());
+        assertSame(a, results.get(1).getItem().task);
+        assertEquals(version + 1, queue.getVersion());
+        assertEquals(2, queue.getItems().length);
+    }
+
     @Test @LocalData
     public void load_queue_xml() {
         Queue q = r.getInstance().getQueue();
@@ -148,6 +148,31 @@ public class LabelExpressionTest {
         assertSame(s.getLabelString(), "bar");
     }
 
+    @Test
+    public void nodesFollowNodeChanges() throws Exception {
+        Label l = j.jenkins.getLabel("foo && !bar");
+        assertTrue(l.getNodes().isEmpty());
+
+        DumbSlave s = j.createSlave("foo", null);
+        assertEquals(Collections.singleton(s), l.getNodes());
+
+        s.setLabelString("foo bar");
+        j.jenkins.updateNode(s);
+        assertTrue(l.getNodes().isEmpty());
+
+        s.setLabelString("foo");
+        j.jenkins.updateNode(s);
+        assertEquals(Collections.singleton(s), l.getNodes());
+
+        DumbSlave replacement = new DumbSlave(s.getNodeName(), s.getRemoteFS(), s.getLauncher());
+        replacement.setLabelString("foo");
+        j.jenkins.getNodesObject().replaceNode(s, replacement);
+        assertEquals(Collections.singleton(replacement), l.getNodes());
+
+        j.jenkins.removeNode(replacement);
+        assertTrue(l.getNodes().isEmpty());
+    }
+
     /**
      * Tests the expression parser.
      */
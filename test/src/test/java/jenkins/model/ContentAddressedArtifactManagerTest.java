@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model;
+
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.slaves.DumbSlave;
+import hudson.tasks.ArtifactArchiver;
+import jenkins.util.VirtualFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ContentAddressedArtifactManagerTest {
+
+    @Rule public JenkinsRule j = new JenkinsRule();
+
+    @Before public void useDeduplicatedStorage() {
+        ArtifactManagerConfiguration.get().getArtifactManagerFactories().add(new ContentAddressedArtifactManagerFactory());
+    }
+
+    private static String read(VirtualFile f) throws Exception {
+        try (InputStream in = f.open()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String digest(Run<?,?> b, String path) throws Exception {
+        return ArtifactManifest.read(new File(b.getRootDir(), ContentAddressedArtifactManager.MANIFEST)).get(path).getDigest();
+    }
+
+    @Test public void sameContentIsStoredOnce() throws Exception {
+        DumbSlave agent = j.createOnlineSlave();
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.setAssignedNode(agent);
+        FreeStyleBuild b0 = j.buildAndAssertSuccess(p); // creates the workspace
+        FilePath ws = b0.getWorkspace();
+        ws.child("lib/a.jar").write("same", "UTF-8");
+        ws.child("lib/b.jar").write("same", "UTF-8");
+        ws.child("report.txt").write("first", "UTF-8");
+        p.getPublishersList().add(new ArtifactArchiver("lib/*.jar,report.txt"));
+        FreeStyleBuild b1 = j.buildAndAssertSuccess(p);
+        ws.child("report.txt").write("second", "UTF-8");
+        FreeStyleBuild b2 = j.buildAndAssertSuccess(p);
+
+        assertTrue(b2.getArtifactManager() instanceof ContentAddressedArtifactManager);
+        List<? extends Run.Artifact> artifacts = b2.getArtifacts();
+        assertEquals(3, artifacts.size());
+        VirtualFile root = b2.getArtifactManager().root();
+        assertThat(root.list("**", null, false), containsInAnyOrder("lib/a.jar", "lib/b.jar", "report.txt"));
+        assertTrue(root.child("lib").isDirectory());
+        assertEquals("same", read(root.child("lib/b.jar")));
+        assertEquals("second", read(root.child("report.txt")));
+        assertEquals("first", read(b1.getArtifactManager().root().child("report.txt")));
+
+        ArtifactBlobStore store = ArtifactBlobStore.get();
+        String jar = digest(b1, "lib/a.jar");
+        assertEquals(jar, digest(b2, "lib/b.jar"));
+        assertEquals("two jars in each of two builds", 4, store.getReferences(jar));
+        String firstReport = digest(b1, "report.txt");
+        String secondReport = digest(b2, "report.txt");
+        assertEquals(1, store.getReferences(firstReport));
+
+        b1.delete();
+        assertEquals(2, store.getReferences(jar));
+        assertFalse(store.blob(firstReport).exists());
+        b2.deleteArtifacts();
+        assertFalse(store.blob(jar).exists());
+        assertFalse(store.blob(secondReport).exists());
+        assertFalse(b2.getArtifactManager().root().child("report.txt").exists());
+    }
+
+    @Test public void deletingTheJobReleasesItsArtifacts() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        FreeStyleBuild b0 = j.buildAndAssertSuccess(p);
+        b0.getWorkspace().child("a.jar").write("kept twice", "UTF-8");
+        p.getPublishersList().add(new ArtifactArchiver("a.jar"));
+        FreeStyleBuild b1 = j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+
+        ArtifactBlobStore store = ArtifactBlobStore.get();
+        String jar = digest(b1, "a.jar");
+        assertEquals(2, store.getReferences(jar));
+        p.delete();
+        assertEquals(0, store.getReferences(jar));
+        assertFalse(store.blob(jar).exists());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, Jenkins project contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.model;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.JobProperty;
+import hudson.model.JobPropertyDescriptor;
+import hudson.util.TextFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ParallelItemLoaderTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    private boolean enabled;
+
+    @Before
+    public void enable() {
+        enabled = ParallelItemLoader.ENABLED;
+        ParallelItemLoader.ENABLED = true;
+    }
+
+    @After
+    public void restore() {
+        ParallelItemLoader.ENABLED = enabled;
+    }
+
+    @Test
+    public void nestedItemsReloaded() throws Exception {
+        MockFolder outer = r.createFolder("outer");
+        MockFolder inner = outer.createProject(MockFolder.class, "inner");
+        for (int i = 0; i < 20; i++) {
+            r.createFreeStyleProject("top" + i).setDescription("top " + i);
+            inner.createProject(FreeStyleProject.class, "p" + i).setDescription("inner " + i);
+        }
+        // neither a job nor loadable
+        assertTrue(new File(r.jenkins.getRootDir(), "jobs/junk").mkdirs());
+        File broken = new File(r.jenkins.getRootDir(), "jobs/outer/jobs/inner/jobs/broken");
+        assertTrue(broken.mkdirs());
+        new TextFile(new File(broken, "config.xml")).write("<project><builders>");
+
+        r.jenkins.reload();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("top " + i, r.jenkins.getItemByFullName("top" + i, FreeStyleProject.class).getDescription());
+            FreeStyleProject p = r.jenkins.getItemByFullName("outer/inner/p" + i, FreeStyleProject.class);
+            assertEquals("inner " + i, p.getDescription());
+            assertEquals("outer/inner", ((Item) p.getParent()).getFullName());
+        }
+        assertNull(r.jenkins.getItemByFullName("outer/inner/broken"));
+        assertNull(r.jenkins.getItem("junk"));
+        assertEquals(21, r.jenkins.getItems().size());
+    }
+
+    @Test
+    public void errorInOnLoadLeavesOtherItems() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            r.createFreeStyleProject("p" + i);
+        }
+        r.createFreeStyleProject("bad").addProperty(new BrokenProperty());
+        BrokenProperty.broken = true;
+        try {
+            r.jenkins.reload();
+        } finally {
+            BrokenProperty.broken = false;
+        }
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(r.jenkins.getItem("p" + i));
+        }
+        assertNull(r.jenkins.getItem("bad"));
+    }
+
+    public static class BrokenProperty extends JobProperty<Job<?,?>> {
+        static volatile boolean broken;
+
+        @Override
+        protected void setOwner(Job<?,?> owner) {
+            if (broken) {
+                throw new AssertionError("not an Exception");
+            }
+            super.setOwner(owner);
+        }
+
+        @TestExtension("errorInOnLoadLeavesOtherItems")
+        public static class DescriptorImpl extends JobPropertyDescriptor {
+        }
+    }
+}